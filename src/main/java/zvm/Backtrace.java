@@ -0,0 +1,103 @@
+package zvm;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Throwable.fillInStackTrace 抓到的栈, 存在 guest Throwable 的 backtrace 字段 (与 HotSpot 一样, 对 guest 不透明)
+ * 隐式异常在抛出点抓, guest 对象创建之后再放进去, 见 ZThrowable
+ *
+ * 只记 (method, ip) 两个数组, 不创建 StackTraceElement, 很多异常抛出来只是被 catch 掉, 从来不看栈;
+ * getStackTraceDepth / getStackTraceElement 的时候才按需换算行号、创建 StackTraceElement, 创建过的缓存起来
+ *
+ * 与 HotSpot 一样跳过栈顶的 fillInStackTrace 与正在构造这个异常的 <init>
+ *
+ * @author chuxiaofeng
+ */
+final class Backtrace {
+    final ZMethod[] methods;
+    // 抓栈时 frame.ip, 即 DecodedCode 的 ip, 用到的时候才换算成字节码偏移
+    final int[] ips;
+    private @Nullable ZObject[] elements_cache_;
+
+    private Backtrace(ZMethod[] methods, int[] ips) {
+        this.methods = methods;
+        this.ips = ips;
+    }
+
+    static Backtrace capture(ZThread thread, ZObject throwable) {
+        int depth = thread.depth();
+        int n = 0;
+        while (n < depth && thread.frame(n).method.name().equals("fillInStackTrace")) {
+            n++;
+        }
+        while (n < depth && is_constructing(thread.frame(n), throwable)) {
+            n++;
+        }
+        return capture(thread, n);
+    }
+
+    // 隐式异常, 栈顶就是抛出点, 见 ZThrowable.implicit
+    static Backtrace capture(ZThread thread) {
+        return capture(thread, 0);
+    }
+
+    private static Backtrace capture(ZThread thread, int n) {
+        int depth = thread.depth();
+        ZMethod[] methods = new ZMethod[depth - n];
+        int[] ips = new int[depth - n];
+        for (int i = 0; i < methods.length; i++) {
+            ZThread.Frame frame = thread.frame(n + i);
+            methods[i] = frame.method;
+            ips[i] = frame.ip;
+        }
+        return new Backtrace(methods, ips);
+    }
+
+    // 构造方法的 this 在局部变量 0
+    private static boolean is_constructing(ZThread.Frame frame, ZObject throwable) {
+        return frame.method.name().equals("<init>")
+                && frame.limit > frame.base
+                && frame.chunk.refs[frame.base] == throwable;
+    }
+
+    int depth() {
+        return methods.length;
+    }
+
+    synchronized ZObject element(VM vm, int index) {
+        if (elements_cache_ == null) {
+            elements_cache_ = new ZObject[methods.length];
+        }
+        ZObject element = elements_cache_[index];
+        if (element == null) {
+            element = new_element(vm, methods[index], ips[index]);
+            elements_cache_[index] = element;
+        }
+        return element;
+    }
+
+    // 不走构造方法, 直接填字段
+    // public StackTraceElement(String declaringClass, String methodName, String fileName, int lineNumber)
+    private static ZObject new_element(VM vm, ZMethod method, int ip) {
+        ZClass stack_trace_element_class = vm.load_class("java/lang/StackTraceElement", true);
+        ZObject element = stack_trace_element_class.allocate();
+        String file_name = method.file_name();
+        stack_trace_element_class.field("declaringClass").put_value(element, Natives.new_string(vm, method.class_name().replace('/', '.')));
+        stack_trace_element_class.field("methodName").put_value(element, Natives.new_string(vm, method.name()));
+        stack_trace_element_class.field("fileName").put_value(element, file_name == null ? null : Natives.new_string(vm, file_name));
+        stack_trace_element_class.field("lineNumber").put_value(element, line_number(method, ip));
+        return element;
+    }
+
+    // -2 表示 native 方法, 与 StackTraceElement.isNativeMethod 一致
+    private static int line_number(ZMethod method, int ip) {
+        if (method.is_native()) {
+            return -2;
+        }
+        DecodedCode code = method.decoded_code();
+        if (code == null || ip < 0) {
+            return -1;
+        }
+        return method.line_number(code.bci(ip));
+    }
+}
@@ -1,8 +1,8 @@
 package zvm;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -87,7 +87,21 @@ public final class BootstrapClassLoader {
         loaded_classes.put(name, z_class);
     }
 
+    // 只查不加载, 没加载或者正在加载返回 null, 见 Verifier
+    @Nullable ZClass loaded_class(String name) {
+        synchronized (load_class_lock(name)) {
+            ZClass z_class = loaded_classes.get(name);
+            return z_class == ZClass.guard_ ? null : z_class;
+        }
+    }
+
     public ZClass load_class(String name, boolean initialize) {
+        // 加载要拿 load_class_lock, 初始化还会跑 <clinit>: 宿主线程拿着锁等 guest 线程, guest 线程再要同一把锁就死锁了
+        // 所以在拿锁之前就换到 guest 栈上, 见 VM.on_guest_stack
+        if (!vm.on_guest_stack()) {
+            String class_name = name;
+            return vm.on_guest_stack(() -> load_class(class_name, initialize));
+        }
         // 应该检查 init 发生的异常，标记类加载失败
         name = name.replace('.', '/');
 
@@ -139,8 +153,7 @@ public final class BootstrapClassLoader {
 
     ZClass load_class0(String name, boolean initialize) {
         if (VM.log_class_load) {
-            Deque<ZThread.Frame> frames = vm.stacks.get();
-            System.err.println(" [load class " + name.replace('/', '.') + "]" + " at " + frames.peek());
+            System.err.println(" [load class " + name.replace('/', '.') + "]" + " at " + vm.thread().top());
         }
 
         if (class_init_method_cache_ == null) {
@@ -177,7 +190,6 @@ public final class BootstrapClassLoader {
             // 这里不能是do_load_class, 因为 component_class 需要 init
             ZClass component_class = load_class(component_name, initialize);
             ZClass z_class = ZClass.array_class(vm, vm.java_lang_Class, component_class);
-            ZClass.allocate0(vm.java_lang_Class, z_class);
             class_init_method_cache_.invoke(z_class, new Object[] { null }); // todo class_loader 参数 !!!
             return z_class;
 
@@ -219,7 +231,9 @@ public final class BootstrapClassLoader {
             ZClass[] interfaces = load_class0_interfaces(class_file, initialize);
             z_class = ZClass.object_class(vm, vm.java_lang_Class, class_file, super_class, interfaces);
 //            }
-            ZClass.allocate0(vm.java_lang_Class, z_class);
+            if (VM.cha) {
+                vm.class_hierarchy.class_loaded(z_class);
+            }
             class_init_method_cache_.invoke(z_class, new Object[] { null }); // todo class_loader 参数 !!!
             return z_class;
         }
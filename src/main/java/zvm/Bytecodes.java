@@ -214,6 +214,45 @@ public class Bytecodes {
     public static final int JSR_W                = 201; // 0xC9
     public static final int BREAKPOINT           = 202; // 0xCA
 
+    // 以下是 zvm 内部指令, 不会出现在 class 文件里, 只会出现在 DecodedCode 的指令流中
+    // quick 指令: 第一次执行时解析常量池引用, 然后原地改写成 quick 版本, 解析结果放在 DecodedCode.quick_cache_[ip], 操作数不变
+    public static final int NEW_QUICK            = 203; // 0xCB [op, cpidx] quick_cache_: ZClass
+    public static final int ANEWARRAY_QUICK      = 204; // 0xCC [op, cpidx] quick_cache_: 元素 ZClass
+    public static final int CHECKCAST_QUICK      = 205; // 0xCD [op, cpidx] quick_cache_: ZClass
+    public static final int INSTANCEOF_QUICK     = 206; // 0xCE [op, cpidx] quick_cache_: ZClass
+    public static final int MULTIANEWARRAY_QUICK = 207; // 0xCF [op, cpidx, dims] quick_cache_: 数组 ZClass
+    public static final int LDC_QUICK            = 208; // 0xD0 [op, cpidx] quick_cache_: int 或 float 的 bits
+    public static final int LDC_REF_QUICK        = 209; // 0xD1 [op, cpidx] quick_cache_: String 或 Class
+    public static final int GETFIELD_QUICK       = 210; // 0xD2 [op, cpidx] quick_cache_: slot << 8 | kind
+    public static final int PUTFIELD_QUICK       = 211; // 0xD3 [op, cpidx] quick_cache_: slot << 8 | kind
+    public static final int GETSTATIC_QUICK      = 212; // 0xD4 [op, cpidx] quick_cache_: ZField
+    public static final int PUTSTATIC_QUICK      = 213; // 0xD5 [op, cpidx] quick_cache_: ZField
+    public static final int INVOKESPECIAL_QUICK  = 214; // 0xD6 [op, cpidx] quick_cache_: ZMethod
+    public static final int INVOKESTATIC_QUICK   = 215; // 0xD7 [op, cpidx] quick_cache_: ZMethod
+    public static final int LOOKUPSWITCH_QUICK   = 231; // 0xE7 [op, default, n_pairs, key, target...] quick_cache_: LookupSwitch
+    // Verifier 证明了不会失败的 aastore / checkcast, 见 DecodedCode.unchecked
+    public static final int AASTORE_UNCHECKED    = 232; // 0xE8 [op]
+    public static final int CHECKCAST_UNCHECKED  = 233; // 0xE9 [op, cpidx]
+    public static final int INVOKEVIRTUAL_QUICK  = 234; // 0xEA [op, cpidx] quick_cache_: InlineCache
+    public static final int INVOKEINTERFACE_QUICK= 235; // 0xEB [op, cpidx] quick_cache_: InlineCache
+
+    // 超级指令: 由 Superinstructions 在预解码之后融合, 只改写序列第一条指令的 opcode, 后面的指令原样保留
+    public static final int ALOAD_GETFIELD           = 216; // 0xD8 aload; getfield (getfield quicken 之前只执行 aload)
+    public static final int ALOAD_ILOAD              = 217; // 0xD9 aload; iload
+    public static final int ALOAD_ILOAD_IALOAD       = 218; // 0xDA aload; iload; iaload
+    public static final int ALOAD_ILOAD_DALOAD       = 219; // 0xDB aload; iload; daload
+    public static final int ALOAD_ILOAD_AALOAD       = 220; // 0xDC aload; iload; aaload
+    public static final int ILOAD_ILOAD              = 221; // 0xDD iload; iload
+    public static final int ILOAD_ILOAD_IF_ICMPEQ    = 222; // 0xDE iload; iload; if_icmpeq
+    public static final int ILOAD_ILOAD_IF_ICMPNE    = 223; // 0xDF iload; iload; if_icmpne
+    public static final int ILOAD_ILOAD_IF_ICMPLT    = 224; // 0xE0 iload; iload; if_icmplt
+    public static final int ILOAD_ILOAD_IF_ICMPGE    = 225; // 0xE1 iload; iload; if_icmpge
+    public static final int ILOAD_ILOAD_IF_ICMPGT    = 226; // 0xE2 iload; iload; if_icmpgt
+    public static final int ILOAD_ILOAD_IF_ICMPLE    = 227; // 0xE3 iload; iload; if_icmple
+    public static final int ILOAD_ICONST_IADD_ISTORE = 228; // 0xE4 iload; iconst_<n>; iadd; istore
+    public static final int ILOAD_BIPUSH_IADD_ISTORE = 229; // 0xE5 iload; bipush 或 sipush; iadd; istore
+    public static final int IINC_GOTO                = 230; // 0xE6 iinc; goto
+
     public static final int IMDEP_1 = 254;
     public static final int IMDEP_2 = 255;
     public static final int ILLEGAL = 255;
@@ -537,6 +576,42 @@ public class Bytecodes {
         def(GOTO_W              , "goto_w"          , "boooo",  0, STOP | BRANCH);
         def(JSR_W               , "jsr_w"           , "boooo",  0, STOP | BRANCH);
         def(BREAKPOINT          , "breakpoint"      , "b"    ,  0, TRAP);
+
+        def(NEW_QUICK           , "new_quick"            , "bii"  ,  1, TRAP);
+        def(ANEWARRAY_QUICK     , "anewarray_quick"      , "bii"  ,  0, TRAP);
+        def(CHECKCAST_QUICK     , "checkcast_quick"      , "bii"  ,  0, TRAP);
+        def(INSTANCEOF_QUICK    , "instanceof_quick"     , "bii"  ,  0, TRAP);
+        def(MULTIANEWARRAY_QUICK, "multianewarray_quick" , "biic" ,  1, TRAP);
+        def(LDC_QUICK           , "ldc_quick"            , "bi"   ,  1);
+        def(LDC_REF_QUICK       , "ldc_ref_quick"        , "bi"   ,  1);
+        def(GETFIELD_QUICK      , "getfield_quick"       , "bjj"  ,  0, TRAP | FIELD_READ);
+        def(PUTFIELD_QUICK      , "putfield_quick"       , "bjj"  , -2, TRAP | FIELD_WRITE);
+        def(GETSTATIC_QUICK     , "getstatic_quick"      , "bjj"  ,  1, TRAP | FIELD_READ);
+        def(PUTSTATIC_QUICK     , "putstatic_quick"      , "bjj"  , -1, TRAP | FIELD_WRITE);
+        def(INVOKESPECIAL_QUICK , "invokespecial_quick"  , "bjj"  , -1, TRAP | INVOKE);
+        def(INVOKESTATIC_QUICK  , "invokestatic_quick"   , "bjj"  ,  0, TRAP | INVOKE);
+        def(LOOKUPSWITCH_QUICK  , "lookupswitch_quick"   , ""     , -1, STOP);
+        def(AASTORE_UNCHECKED   , "aastore_unchecked"    , "b"    , -3, TRAP);
+        def(CHECKCAST_UNCHECKED , "checkcast_unchecked"  , "bii"  ,  0);
+        def(INVOKEVIRTUAL_QUICK , "invokevirtual_quick"  , "bjj"  , -1, TRAP | INVOKE);
+        def(INVOKEINTERFACE_QUICK, "invokeinterface_quick", "bjja_", -1, TRAP | INVOKE);
+
+        // 超级指令的长度按第一条指令算, 整个序列的长度见 Superinstructions
+        def(ALOAD_GETFIELD          , "aload_getfield"          , "bi" ,  1, TRAP | FIELD_READ);
+        def(ALOAD_ILOAD             , "aload_iload"             , "bi" ,  2);
+        def(ALOAD_ILOAD_IALOAD      , "aload_iload_iaload"      , "bi" ,  1, TRAP);
+        def(ALOAD_ILOAD_DALOAD      , "aload_iload_daload"      , "bi" ,  2, TRAP);
+        def(ALOAD_ILOAD_AALOAD      , "aload_iload_aaload"      , "bi" ,  1, TRAP);
+        def(ILOAD_ILOAD             , "iload_iload"             , "bi" ,  2);
+        def(ILOAD_ILOAD_IF_ICMPEQ   , "iload_iload_if_icmpeq"   , "bi" ,  0, COMMUTATIVE | FALL_THROUGH | BRANCH);
+        def(ILOAD_ILOAD_IF_ICMPNE   , "iload_iload_if_icmpne"   , "bi" ,  0, COMMUTATIVE | FALL_THROUGH | BRANCH);
+        def(ILOAD_ILOAD_IF_ICMPLT   , "iload_iload_if_icmplt"   , "bi" ,  0, FALL_THROUGH | BRANCH);
+        def(ILOAD_ILOAD_IF_ICMPGE   , "iload_iload_if_icmpge"   , "bi" ,  0, FALL_THROUGH | BRANCH);
+        def(ILOAD_ILOAD_IF_ICMPGT   , "iload_iload_if_icmpgt"   , "bi" ,  0, FALL_THROUGH | BRANCH);
+        def(ILOAD_ILOAD_IF_ICMPLE   , "iload_iload_if_icmple"   , "bi" ,  0, FALL_THROUGH | BRANCH);
+        def(ILOAD_ICONST_IADD_ISTORE, "iload_iconst_iadd_istore", "bi" ,  0);
+        def(ILOAD_BIPUSH_IADD_ISTORE, "iload_bipush_iadd_istore", "bi" ,  0);
+        def(IINC_GOTO               , "iinc_goto"               , "bi" ,  0, STOP | BRANCH);
     }
 
     /**
@@ -0,0 +1,334 @@
+package zvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static zvm.ClassParser.Constants.*;
+
+/**
+ * 给 JIT 用的最小 class 文件生成器, 只支持 JitCompiler 用得到的部分:
+ * 一个类、一个方法、常量池、跳转标签, 不生成 StackMapTable, 所以版本号固定 49, 走类型推导的老 verifier
+ *
+ * 常量池里可以放任意对象: 先占一个 CONSTANT_String, defineAnonymousClass 的时候用 cp_patches 替换成真正的对象,
+ * ldc 出来就是这个对象 (verifier 认为是 String, 用之前要 checkcast)
+ *
+ * @author chuxiaofeng
+ */
+final class ClassBuilder {
+    static final int JAVA_5_VERSION = 49;
+
+    private final ByteArrayOutputStream pool_bytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(pool_bytes);
+    private final Map<String, Integer> pool_index = new HashMap<>();
+    private final List<Object> patches = new ArrayList<>();
+    private int pool_size = 1;
+
+    final String this_class;
+    final String super_class;
+
+    ClassBuilder(String this_class, String super_class) {
+        this.this_class = this_class;
+        this.super_class = super_class;
+    }
+
+    // ==================== 常量池 ====================
+
+    private int entry(String key, int size) {
+        Integer idx = pool_index.get(key);
+        if (idx != null) {
+            return idx;
+        }
+        idx = pool_size;
+        pool_size += size;
+        pool_index.put(key, idx);
+        return -idx;
+    }
+
+    int utf8(String s) {
+        int idx = entry("U" + s, 1);
+        if (idx < 0) {
+            write(CONSTANT_Utf8);
+            try {
+                pool.writeUTF(s);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return Math.abs(idx);
+    }
+
+    int class_(String internal_name) {
+        int name = utf8(internal_name);
+        int idx = entry("C" + internal_name, 1);
+        if (idx < 0) {
+            write(CONSTANT_Class);
+            write2(name);
+        }
+        return Math.abs(idx);
+    }
+
+    int int_(int v) {
+        int idx = entry("I" + v, 1);
+        if (idx < 0) {
+            write(CONSTANT_Integer);
+            write4(v);
+        }
+        return Math.abs(idx);
+    }
+
+    int long_(long v) {
+        int idx = entry("J" + v, 2);
+        if (idx < 0) {
+            write(CONSTANT_Long);
+            write4((int) (v >>> 32));
+            write4((int) v);
+        }
+        return Math.abs(idx);
+    }
+
+    private int name_and_type(String name, String descriptor) {
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        int idx = entry("N" + name + ":" + descriptor, 1);
+        if (idx < 0) {
+            write(CONSTANT_NameAndType);
+            write2(n);
+            write2(d);
+        }
+        return Math.abs(idx);
+    }
+
+    int field_ref(String owner, String name, String descriptor) {
+        return member_ref(CONSTANT_Fieldref, "F", owner, name, descriptor);
+    }
+
+    int method_ref(String owner, String name, String descriptor) {
+        return member_ref(CONSTANT_Methodref, "M", owner, name, descriptor);
+    }
+
+    private int member_ref(int tag, String prefix, String owner, String name, String descriptor) {
+        int c = class_(owner);
+        int nt = name_and_type(name, descriptor);
+        int idx = entry(prefix + owner + "." + name + ":" + descriptor, 1);
+        if (idx < 0) {
+            write(tag);
+            write2(c);
+            write2(nt);
+        }
+        return Math.abs(idx);
+    }
+
+    // 占位的 CONSTANT_String, 同一个对象只占一项
+    int object(Object value) {
+        for (int i = 0; i < patches.size(); i += 2) {
+            if (patches.get(i + 1) == value) {
+                return (int) patches.get(i);
+            }
+        }
+        int placeholder = utf8("<patch " + patches.size() / 2 + ">");
+        int idx = pool_size++;
+        write(CONSTANT_String);
+        write2(placeholder);
+        patches.add(idx);
+        patches.add(value);
+        return idx;
+    }
+
+    // defineAnonymousClass 的 cp_patches, 下标是常量池下标
+    Object[] cp_patches() {
+        Object[] cp_patches = new Object[pool_size];
+        for (int i = 0; i < patches.size(); i += 2) {
+            cp_patches[(int) patches.get(i)] = patches.get(i + 1);
+        }
+        return cp_patches;
+    }
+
+    private void write(int b) {
+        pool_bytes.write(b);
+    }
+
+    private void write2(int v) {
+        pool_bytes.write(v >>> 8);
+        pool_bytes.write(v);
+    }
+
+    private void write4(int v) {
+        write2(v >>> 16);
+        write2(v);
+    }
+
+    // ==================== 方法体 ====================
+
+    static final class Code {
+        byte[] bytes = new byte[1024];
+        int size;
+        int max_stack;
+        int max_locals;
+
+        // label -> 偏移, -1 表示还没绑定
+        int[] labels = new int[64];
+        int n_labels;
+        // 待回填的跳转: 跳转指令的起始偏移, 操作数偏移, label, 是否 4 字节
+        private int[] fixups = new int[64];
+        private int n_fixups;
+
+        int new_label() {
+            if (n_labels == labels.length) {
+                labels = Arrays.copyOf(labels, labels.length * 2);
+            }
+            labels[n_labels] = -1;
+            return n_labels++;
+        }
+
+        void bind(int label) {
+            labels[label] = size;
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        void op1(int opcode, int operand) {
+            u1(opcode);
+            u1(operand);
+        }
+
+        void op2(int opcode, int operand) {
+            u1(opcode);
+            u2(operand);
+        }
+
+        // xload / xstore, 下标超过 255 的走 wide
+        void local(int opcode, int idx) {
+            if (idx > 255) {
+                u1(Bytecodes.WIDE);
+                u1(opcode);
+                u2(idx);
+            } else {
+                u1(opcode);
+                u1(idx);
+            }
+        }
+
+        void jump(int opcode, int label) {
+            int at = size;
+            u1(opcode);
+            fixup(at, size, label, false);
+            u2(0);
+        }
+
+        // tableswitch / lookupswitch 的操作数按 4 字节对齐
+        void pad() {
+            while ((size & 3) != 0) {
+                u1(0);
+            }
+        }
+
+        void switch_target(int switch_at, int label) {
+            fixup(switch_at, size, label, true);
+            u4(0);
+        }
+
+        private void fixup(int at, int operand_at, int label, boolean wide) {
+            if (n_fixups + 4 > fixups.length) {
+                fixups = Arrays.copyOf(fixups, fixups.length * 2);
+            }
+            fixups[n_fixups++] = at;
+            fixups[n_fixups++] = operand_at;
+            fixups[n_fixups++] = label;
+            fixups[n_fixups++] = wide ? 1 : 0;
+        }
+
+        void u1(int v) {
+            if (size + 4 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = (byte) v;
+        }
+
+        void u2(int v) {
+            u1(v >>> 8);
+            u1(v);
+        }
+
+        void u4(int v) {
+            u2(v >>> 16);
+            u2(v);
+        }
+
+        // 回填跳转偏移, 超出 short 范围的方法不编译
+        void resolve() {
+            for (int i = 0; i < n_fixups; i += 4) {
+                int at = fixups[i], operand_at = fixups[i + 1], label = fixups[i + 2];
+                assert labels[label] >= 0 : "label 没有绑定";
+                int offset = labels[label] - at;
+                if (fixups[i + 3] == 1) {
+                    bytes[operand_at] = (byte) (offset >>> 24);
+                    bytes[operand_at + 1] = (byte) (offset >>> 16);
+                    bytes[operand_at + 2] = (byte) (offset >>> 8);
+                    bytes[operand_at + 3] = (byte) offset;
+                } else {
+                    if (offset != (short) offset) {
+                        throw new UnsupportedOperationException("跳转偏移超出范围");
+                    }
+                    bytes[operand_at] = (byte) (offset >>> 8);
+                    bytes[operand_at + 1] = (byte) offset;
+                }
+            }
+        }
+    }
+
+    // ==================== class 文件 ====================
+
+    // 只有一个方法, 没有字段、没有其他属性
+    byte[] to_bytes(int access_flags, String method_name, String method_descriptor, int method_access, Code code) {
+        code.resolve();
+        if (code.size > 65535) {
+            throw new UnsupportedOperationException("方法太大");
+        }
+        int this_idx = class_(this_class);
+        int super_idx = class_(super_class);
+        int name_idx = utf8(method_name);
+        int desc_idx = utf8(method_descriptor);
+        int code_idx = utf8("Code");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(pool_bytes.size() + code.size + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(JAVA_5_VERSION);
+            out.writeShort(pool_size);
+            pool.flush();
+            pool_bytes.writeTo(out);
+            out.writeShort(access_flags);
+            out.writeShort(this_idx);
+            out.writeShort(super_idx);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(1); // methods
+            out.writeShort(method_access);
+            out.writeShort(name_idx);
+            out.writeShort(desc_idx);
+            out.writeShort(1); // attributes
+            out.writeShort(code_idx);
+            out.writeInt(2 + 2 + 4 + code.size + 2 + 2);
+            out.writeShort(code.max_stack);
+            out.writeShort(code.max_locals);
+            out.writeInt(code.size);
+            out.write(code.bytes, 0, code.size);
+            out.writeShort(0); // exception_table
+            out.writeShort(0); // attributes
+            out.writeShort(0); // class attributes
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,142 @@
+package zvm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static zvm.ClassParser.AccessFlags.ACC_ABSTRACT;
+
+/**
+ * 类层次分析 (CHA), 每个 VM 一个
+ * 记下已加载的类的直接子类型, 调用点第一次 miss 的时候看静态类型下面已经加载的具体类
+ * 都选到同一个方法就去虚拟化, 不再比较接收者类型, 见 InlineCache.Devirtualized
+ *
+ * 依赖: 去虚拟化的调用点登记在静态类型上 (ZClass.dependents_), 之后加载的类只要是它的子类型, 登记的调用点全部作废, 回到普通的内联缓存
+ *  类在 class_loaded 之后才会有实例, 所以作废之前不会有新类型的接收者走到去虚拟化的调用点
+ *  编译之后的代码每次调用都问 InlineCache, 作废调用点就是给编译之后的代码去优化, 不需要替换栈帧
+ *
+ * 🦋 一把锁, 只有类加载与调用点第一次 miss 会拿, 选方法 (可能要建 vtable / itable) 放在锁外面,
+ *  用 generation 发现这期间有没有新加载的类
+ *
+ * @author chuxiaofeng
+ */
+final class ClassHierarchy {
+    // 静态类型下面已加载的子类型超过这个数就不分析了
+    final static int max_subtypes = 64;
+
+    // 每加载一个类加一
+    private int generation;
+
+    // 在 ZClass.object_class 之后, 类有实例之前调用, 数组类不用登记
+    synchronized void class_loaded(ZClass z_class) {
+        assert !z_class.is_array() && !z_class.is_primitive();
+        generation++;
+        ZClass super_class = z_class.super_class();
+        if (super_class != null) {
+            add_subtype(super_class, z_class);
+        }
+        ZClass[] interfaces = z_class.interfaces();
+        if (interfaces != null) {
+            for (ZClass iface : interfaces) {
+                add_subtype(iface, z_class);
+            }
+        }
+        invalidate(z_class, new HashSet<>());
+    }
+
+    private static void add_subtype(ZClass supertype, ZClass subtype) {
+        if (supertype.subtypes_ == null) {
+            supertype.subtypes_ = new ArrayList<>();
+        }
+        supertype.subtypes_.add(subtype);
+    }
+
+    // 新类的所有父类型上登记的调用点作废
+    private static void invalidate(ZClass z_class, Set<ZClass> visited) {
+        if (!visited.add(z_class)) {
+            return;
+        }
+        List<InlineCache> dependents = z_class.dependents_;
+        if (dependents != null) {
+            z_class.dependents_ = null;
+            for (InlineCache cache : dependents) {
+                cache.deoptimize();
+            }
+        }
+        ZClass super_class = z_class.super_class();
+        if (super_class != null) {
+            invalidate(super_class, visited);
+        }
+        ZClass[] interfaces = z_class.interfaces();
+        if (interfaces != null) {
+            for (ZClass iface : interfaces) {
+                invalidate(iface, visited);
+            }
+        }
+    }
+
+    /**
+     * root 是 MethodRef 的静态类型, 它下面已加载的具体类都选到同一个方法就返回这个方法, 并且调用点登记在 root 上
+     * receiver_class 必须在里面, 不在说明有没登记的类, 不做
+     */
+    ZMethod devirtualize(InlineCache cache, ZClass root, ZMethod resolved, ZClass receiver_class) {
+        List<ZClass> concrete = new ArrayList<>();
+        int gen;
+        synchronized (this) {
+            if (!collect(root, new HashSet<>(), concrete)) {
+                return null;
+            }
+            gen = generation;
+        }
+        if (!concrete.contains(receiver_class)) {
+            return null;
+        }
+        ZMethod target = null;
+        for (ZClass z_class : concrete) {
+            ZMethod z_method = z_class.select(resolved);
+            if (target == null) {
+                target = z_method;
+            } else if (target != z_method) {
+                return null;
+            }
+        }
+        if (target == null || (target.access_flags() & ACC_ABSTRACT) != 0) {
+            return null;
+        }
+        synchronized (this) {
+            if (gen != generation) {
+                return null;
+            }
+            if (root.dependents_ == null) {
+                root.dependents_ = new ArrayList<>();
+            }
+            root.dependents_.add(cache);
+            // 在锁里改状态, 不然可能覆盖掉刚刚作废的结果
+            cache.devirtualized(target);
+        }
+        return target;
+    }
+
+    // 子类型太多返回 false
+    private static boolean collect(ZClass z_class, Set<ZClass> visited, List<ZClass> concrete) {
+        if (!visited.add(z_class)) {
+            return true;
+        }
+        if (visited.size() > max_subtypes) {
+            return false;
+        }
+        if (!z_class.is_interface() && (z_class.access_flags() & ACC_ABSTRACT) == 0) {
+            concrete.add(z_class);
+        }
+        List<ZClass> subtypes = z_class.subtypes_;
+        if (subtypes != null) {
+            for (ZClass subtype : subtypes) {
+                if (!collect(subtype, visited, concrete)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -531,12 +531,7 @@ public interface ClassParser {
 
                 case tag_stack_map_table:
                     assert major_version >= STACKMAP_ATTRIBUTE_MAJOR_VERSION;
-                    //noinspection ConstantConditions
-                    if (false) {
-                        parse_code_stackmap_table(code);
-                    } else {
-                        bytes.skip(Math.toIntExact(attribute_length));
-                    }
+                    parse_code_stackmap_table(code);
                     break;
 
                 case tag_runtime_visible_type_annotations:
@@ -589,34 +584,68 @@ public interface ClassParser {
         }
 
         @SuppressWarnings("unused")
+        // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-4.html#jvms-4.7.4
+        // 原样保存, 展开成每个跳转目标的完整 frame 在 Verifier 里做
         void parse_code_stackmap_table(Code code) throws IOException {
             int number_of_entries = bytes.u2();
+            StackMapFrame[] stack_map_table = new StackMapFrame[number_of_entries];
             for (int i = 0; i < number_of_entries; i++) {
-                parse_stackmap_table_entry();
+                stack_map_table[i] = parse_stackmap_table_entry();
             }
+            code.stack_map_table = stack_map_table;
         }
 
-        @SuppressWarnings("StatementWithEmptyBody")
-        void parse_stackmap_table_entry() throws IOException {
-            // static class StackMapFrame { }
+        StackMapFrame parse_stackmap_table_entry() throws IOException {
             int frame_type = bytes.u1();
+            int offset_delta;
+            VerificationType[] locals = StackMapFrame.EMPTY;
+            VerificationType[] stack = StackMapFrame.EMPTY;
             if (frame_type < 64) {
                 // same_frame
+                offset_delta = frame_type;
             } else if (frame_type < 128) {
                 // same_locals_1_stack_item_frame
+                offset_delta = frame_type - 64;
+                stack = new VerificationType[] { parse_verification_type() };
             } else if (frame_type < 247) {
                 // reserved
+                throw new ClassFormatError("stack map frame_type " + frame_type);
             } else if (frame_type == 247) {
                 // same_locals_1_stack_item_frame_extended
+                offset_delta = bytes.u2();
+                stack = new VerificationType[] { parse_verification_type() };
             } else if (frame_type < 251) {
                 // chop_frame
+                offset_delta = bytes.u2();
             } else if (frame_type == 251) {
                 // same_frame_extended
+                offset_delta = bytes.u2();
             } else if (frame_type < 255) {
                 // append_frame
-            } else if (frame_type == 255) {
+                offset_delta = bytes.u2();
+                locals = parse_verification_types(frame_type - 251);
+            } else {
                 // full_frame
+                offset_delta = bytes.u2();
+                locals = parse_verification_types(bytes.u2());
+                stack = parse_verification_types(bytes.u2());
+            }
+            return new StackMapFrame(frame_type, offset_delta, locals, stack);
+        }
+
+        VerificationType[] parse_verification_types(int n) throws IOException {
+            VerificationType[] types = new VerificationType[n];
+            for (int i = 0; i < n; i++) {
+                types[i] = parse_verification_type();
             }
+            return types;
+        }
+
+        VerificationType parse_verification_type() throws IOException {
+            int tag = bytes.u1();
+            // Object_variable_info: cpool_index, Uninitialized_variable_info: offset
+            int value = tag == VerificationType.ITEM_Object || tag == VerificationType.ITEM_Uninitialized ? bytes.u2() : 0;
+            return new VerificationType(tag, value);
         }
 
         void parse_code_runtime_visible_type_annotations(Code code) throws IOException {
@@ -1248,7 +1277,7 @@ public interface ClassParser {
             LineNumber[] line_number_table;
             LocalVariable[] local_variable_table;
             LocalVariableType[] local_variable_type_table;
-            // stack_map_table; // todo
+            @Nullable StackMapFrame[] stack_map_table;
             @Nullable TypeAnnotation[] type_annotations;
         }
         // static class Opcode { }
@@ -1275,6 +1304,38 @@ public interface ClassParser {
                 this.line_number = line_number;
             }
         }
+        static class StackMapFrame {
+            static final VerificationType[] EMPTY = new VerificationType[0];
+            final int frame_type;
+            final int offset_delta;
+            // append_frame 追加的 / full_frame 全部的局部变量, long double 只占一项
+            final VerificationType[] locals;
+            final VerificationType[] stack;
+            StackMapFrame(int frame_type, int offset_delta, VerificationType[] locals, VerificationType[] stack) {
+                this.frame_type = frame_type;
+                this.offset_delta = offset_delta;
+                this.locals = locals;
+                this.stack = stack;
+            }
+        }
+        static class VerificationType {
+            static final int ITEM_Top = 0;
+            static final int ITEM_Integer = 1;
+            static final int ITEM_Float = 2;
+            static final int ITEM_Double = 3;
+            static final int ITEM_Long = 4;
+            static final int ITEM_Null = 5;
+            static final int ITEM_UninitializedThis = 6;
+            static final int ITEM_Object = 7;
+            static final int ITEM_Uninitialized = 8;
+            final int tag;
+            // ITEM_Object 是常量池下标, ITEM_Uninitialized 是 new 指令的 bci
+            final int value;
+            VerificationType(int tag, int value) {
+                this.tag = tag;
+                this.value = value;
+            }
+        }
         static class LocalVariable {
             final int start_pc;
             final int length;
@@ -1689,11 +1750,20 @@ public interface ClassParser {
             final String name;
             final String descriptor;
             // String[] types_cache_; // todo
-            int[] types_size_cache_; // todo
+            char[] parameter_kinds_cache_;
+            int parameter_slots_cache_ = -1;
+            private String selector_cache_;
             NameAndType(String name, String descriptor) {
                 this.name = name;
                 this.descriptor = descriptor;
             }
+            // name + descriptor, 与 ZClass.method 的 key 一样
+            String selector() {
+                if (selector_cache_ == null) {
+                    selector_cache_ = name + descriptor;
+                }
+                return selector_cache_;
+            }
             @Override
             public String toString() {
                 return "NameAndType{" +
@@ -1706,7 +1776,7 @@ public interface ClassParser {
         static class FieldRef implements Reference {
             final String class_name; // class or interface
             final NameAndType name_and_type;
-            int slot_cache_ = -1; // todo 暂时先缓存这里吧...
+            int index_cache_ = -1; // 实例字段在 ZObject 基本类型区或者引用区的下标, 见 ZField.field_index
 //            ZClass z_class_cache_ = null; // todo 暂时先缓存这里吧...
             ZField z_field_cache_ = null; // todo 暂时先缓存这里吧...
             FieldRef(String class_name, NameAndType name_and_type) {
@@ -1727,6 +1797,8 @@ public interface ClassParser {
             final String class_name;
             final NameAndType name_and_type;
             ZClass z_class_cache_; // todo
+            // 解析结果, 与接收者无关; invokevirtual / invokeinterface 还要按接收者分派, 见 Interpreter.resolve_method_ref
+            ZMethod z_method_cache_;
             MethodRef(String class_name, NameAndType name_and_type) {
                 this.class_name = class_name;
                 this.name_and_type = name_and_type;
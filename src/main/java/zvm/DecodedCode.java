@@ -0,0 +1,382 @@
+package zvm;
+
+import org.jetbrains.annotations.Nullable;
+import zvm.ClassParser.ClassFile;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static zvm.Bytecodes.*;
+
+/**
+ * 预解码后的字节码, 每个 ZMethod 只解码一次, 缓存在 ZMethod.decoded_code_cache_
+ *
+ * code 是 int[] 格式的指令流: [opcode, operand...][opcode, operand...]...
+ * 指令在 code 中的下标称为 ip (instruction index), 与之相对 bci/pc 指原始字节码偏移
+ *
+ * 解码时做了这些归一化, 解释器不需要再处理:
+ *  1. xload_n / xstore_n 统一成 xload / xstore + 局部变量下标
+ *  2. wide 被吸收掉, 操作数直接是扩展后的下标或常量
+ *  3. ldc_w -> ldc, goto_w -> goto, jsr_w -> jsr
+ *  4. 所有跳转目标(包括 switch 的跳转表)都已经换算成 ip
+ *  5. bipush / sipush 直接是有符号的 int 立即数
+ *  6. invokeinterface 丢弃 count 与 0
+ *  7. tableswitch: [op, default, low, high, target...]
+ *     lookupswitch: [op, default, n_pairs, key, target, key, target...]
+ *
+ * 解码之后高频指令序列会融合成超级指令, 见 Superinstructions
+ * 执行过程中解释器还会把解析过的指令原地改写成 quick 版本, 见 Bytecodes.NEW_QUICK 等, quicken
+ *
+ * @author chuxiaofeng
+ */
+final class DecodedCode {
+    final ZMethod method;
+    final int[] code;
+    // ip -> bci, 只有指令起始位置有意义
+    final int[] bci;
+    // bci -> ip, 非指令起始位置为 -1, bci == bytes.length 映射到 code.length (exception_table 的 end_pc 可能指向这里)
+    final int[] ip_of_bci;
+    final int max_locals;
+    final int max_stack;
+    // quick 指令的解析结果, 按指令的 ip 存, 见 quicken
+    private final AtomicReferenceArray<Object> quick_cache_;
+    private HandlerTable handler_table_cache_;
+
+    private DecodedCode(ZMethod method, int[] code, int[] bci, int[] ip_of_bci, int max_locals, int max_stack) {
+        this.method = method;
+        this.code = code;
+        this.bci = bci;
+        this.ip_of_bci = ip_of_bci;
+        this.max_locals = max_locals;
+        this.max_stack = max_stack;
+        this.quick_cache_ = new AtomicReferenceArray<>(code.length);
+    }
+
+    int ip(int bci) {
+        int ip = ip_of_bci[bci];
+        assert ip != -1 : method + " 非法的跳转目标 " + bci;
+        return ip;
+    }
+
+    int bci(int ip) {
+        return ip < 0 ? -1 : bci[ip];
+    }
+
+    // 第一次抛异常的时候才构造, 见 HandlerTable
+    HandlerTable handler_table() {
+        if (handler_table_cache_ == null) {
+            ClassFile.Code code_attr = method.code();
+            assert code_attr != null;
+            handler_table_cache_ = HandlerTable.build(this, code_attr.exception_table);
+        }
+        return handler_table_cache_;
+    }
+
+    // 执行 aastore / checkcast (op) 的时候问 Verifier 能不能证明不会失败, 能的话把这条指令改写成 unchecked 版本
+    // 答案只看 Verifier 的结果 (不可变, 见 ZMethod.verifier), 不读回 code; 与 quicken 一样 opcode 是普通写、操作数不变,
+    // 别的线程看到哪个版本都能执行; 校验失败的方法不改写, 照常检查
+    boolean unchecked(int ip, int op) {
+        Verifier verifier = method.verifier();
+        if (verifier == null || !verifier.unchecked(ip)) {
+            return false;
+        }
+        code[ip] = op == AASTORE ? AASTORE_UNCHECKED : CHECKCAST_UNCHECKED;
+        return true;
+    }
+
+    // 把 ip 处的指令改写成 quick_op, 操作数不变 (一直是常量池下标), 解析结果放到 quick_cache_[ip]
+    // opcode 是普通写, 别的线程可能先看到 quick_op 后看到解析结果, 这时 quick(ip) 是 null, 见 unquicken
+    void quicken(int ip, int quick_op, Object resolved) {
+        quick_cache_.set(ip, resolved);
+        code[ip] = quick_op;
+    }
+
+    // 执行 quick 指令时取解析结果, 别的线程刚 quicken、解析结果这个线程还看不到的时候是 null
+    @Nullable Object quick(int ip) {
+        return quick_cache_.get(ip);
+    }
+
+    // quick(ip) 是 null 的时候把 opcode 改回原来的指令, 返回 ip, 解释器从这里重新执行:
+    // 再解析一遍、再 quicken 一遍, 结果是一样的; 操作数没变过, 看到哪个版本的 opcode 都能执行
+    // quick_op 传解释器读到的, 不重新读 code[ip], 别的线程可能已经又改过了
+    int unquicken(int ip, int quick_op) {
+        code[ip] = unquick(quick_op);
+        return ip;
+    }
+
+    private static int unquick(int quick_op) {
+        switch (quick_op) {
+            case NEW_QUICK:             return NEW;
+            case ANEWARRAY_QUICK:       return ANEWARRAY;
+            case CHECKCAST_QUICK:       return CHECKCAST;
+            case INSTANCEOF_QUICK:      return INSTANCEOF;
+            case MULTIANEWARRAY_QUICK:  return MULTIANEWARRAY;
+            case LDC_QUICK:
+            case LDC_REF_QUICK:         return LDC;
+            case GETFIELD_QUICK:        return GETFIELD;
+            case PUTFIELD_QUICK:        return PUTFIELD;
+            case GETSTATIC_QUICK:       return GETSTATIC;
+            case PUTSTATIC_QUICK:       return PUTSTATIC;
+            case INVOKESPECIAL_QUICK:   return INVOKESPECIAL;
+            case INVOKESTATIC_QUICK:    return INVOKESTATIC;
+            case INVOKEVIRTUAL_QUICK:   return INVOKEVIRTUAL;
+            case INVOKEINTERFACE_QUICK: return INVOKEINTERFACE;
+            case LOOKUPSWITCH_QUICK:    return LOOKUPSWITCH;
+            default: throw new AssertionError(quick_op);
+        }
+    }
+
+    static @Nullable DecodedCode decode(ZMethod method) {
+        return decode(method, VM.superinstructions);
+    }
+
+    // fuse = false 得到原样的指令流, 给 RegisterCode 翻译用
+    static @Nullable DecodedCode decode(ZMethod method, boolean fuse) {
+        ClassFile.Code code = method.code();
+        if (code == null) {
+            return null;
+        }
+        byte[] bytes = code.bytes;
+        int length = bytes.length;
+
+        // 第一遍: 计算每条指令的 ip
+        int[] ip_of_bci = new int[length + 1];
+        Arrays.fill(ip_of_bci, -1);
+        int ip = 0;
+        for (int pc = 0; pc < length; pc += length_of(bytes, pc)) {
+            ip_of_bci[pc] = ip;
+            ip += words_of(bytes, pc);
+        }
+        ip_of_bci[length] = ip;
+
+        // 第二遍: 生成指令流
+        int[] words = new int[ip];
+        int[] bci = new int[ip];
+        Arrays.fill(bci, -1);
+        ip = 0;
+        for (int pc = 0; pc < length; pc += length_of(bytes, pc)) {
+            bci[ip] = pc;
+            ip = decode_instruction(bytes, pc, words, ip, ip_of_bci);
+        }
+        assert ip == words.length;
+        DecodedCode decoded_code = new DecodedCode(method, words, bci, ip_of_bci, code.max_locals, code.max_stack);
+        if (fuse) {
+            Superinstructions.fuse(decoded_code);
+        }
+        return decoded_code;
+    }
+
+    // 解码 pc 处的一条指令写入 words[ip...], 返回下一条指令的 ip
+    private static int decode_instruction(byte[] bytes, int pc, int[] words, int ip, int[] ip_of_bci) {
+        int op = u1(bytes, pc);
+        switch (op) {
+            case BIPUSH:
+                words[ip] = op;
+                words[ip + 1] = bytes[pc + 1];
+                return ip + 2;
+            case SIPUSH:
+                words[ip] = op;
+                words[ip + 1] = s2(bytes, pc + 1);
+                return ip + 2;
+            case LDC:
+                words[ip] = LDC;
+                words[ip + 1] = u1(bytes, pc + 1);
+                return ip + 2;
+            case LDC_W:
+                words[ip] = LDC;
+                words[ip + 1] = u2(bytes, pc + 1);
+                return ip + 2;
+            case ILOAD: case LLOAD: case FLOAD: case DLOAD: case ALOAD:
+            case ISTORE: case LSTORE: case FSTORE: case DSTORE: case ASTORE:
+            case RET:
+                words[ip] = op;
+                words[ip + 1] = u1(bytes, pc + 1);
+                return ip + 2;
+            case ILOAD_0: case ILOAD_1: case ILOAD_2: case ILOAD_3:
+                return local(words, ip, ILOAD, op - ILOAD_0);
+            case LLOAD_0: case LLOAD_1: case LLOAD_2: case LLOAD_3:
+                return local(words, ip, LLOAD, op - LLOAD_0);
+            case FLOAD_0: case FLOAD_1: case FLOAD_2: case FLOAD_3:
+                return local(words, ip, FLOAD, op - FLOAD_0);
+            case DLOAD_0: case DLOAD_1: case DLOAD_2: case DLOAD_3:
+                return local(words, ip, DLOAD, op - DLOAD_0);
+            case ALOAD_0: case ALOAD_1: case ALOAD_2: case ALOAD_3:
+                return local(words, ip, ALOAD, op - ALOAD_0);
+            case ISTORE_0: case ISTORE_1: case ISTORE_2: case ISTORE_3:
+                return local(words, ip, ISTORE, op - ISTORE_0);
+            case LSTORE_0: case LSTORE_1: case LSTORE_2: case LSTORE_3:
+                return local(words, ip, LSTORE, op - LSTORE_0);
+            case FSTORE_0: case FSTORE_1: case FSTORE_2: case FSTORE_3:
+                return local(words, ip, FSTORE, op - FSTORE_0);
+            case DSTORE_0: case DSTORE_1: case DSTORE_2: case DSTORE_3:
+                return local(words, ip, DSTORE, op - DSTORE_0);
+            case ASTORE_0: case ASTORE_1: case ASTORE_2: case ASTORE_3:
+                return local(words, ip, ASTORE, op - ASTORE_0);
+            case IINC:
+                words[ip] = op;
+                words[ip + 1] = u1(bytes, pc + 1);
+                words[ip + 2] = bytes[pc + 2];
+                return ip + 3;
+            case WIDE:
+            {
+                int wide_op = u1(bytes, pc + 1);
+                words[ip] = wide_op;
+                words[ip + 1] = u2(bytes, pc + 2);
+                if (wide_op == IINC) {
+                    words[ip + 2] = s2(bytes, pc + 4);
+                    return ip + 3;
+                }
+                return ip + 2;
+            }
+            case IFEQ: case IFNE: case IFLT: case IFGE: case IFGT: case IFLE:
+            case IF_ICMPEQ: case IF_ICMPNE: case IF_ICMPLT: case IF_ICMPGE: case IF_ICMPGT: case IF_ICMPLE:
+            case IF_ACMPEQ: case IF_ACMPNE:
+            case IFNULL: case IFNONNULL:
+            case GOTO: case JSR:
+                words[ip] = op;
+                words[ip + 1] = target(ip_of_bci, pc + s2(bytes, pc + 1));
+                return ip + 2;
+            case GOTO_W:
+                words[ip] = GOTO;
+                words[ip + 1] = target(ip_of_bci, pc + s4(bytes, pc + 1));
+                return ip + 2;
+            case JSR_W:
+                words[ip] = JSR;
+                words[ip + 1] = target(ip_of_bci, pc + s4(bytes, pc + 1));
+                return ip + 2;
+            case TABLESWITCH:
+            {
+                int aligned = align(pc);
+                int low = s4(bytes, aligned + 4);
+                int high = s4(bytes, aligned + 8);
+                assert low <= high;
+                words[ip] = op;
+                words[ip + 1] = target(ip_of_bci, pc + s4(bytes, aligned));
+                words[ip + 2] = low;
+                words[ip + 3] = high;
+                int n = high - low + 1;
+                for (int i = 0; i < n; i++) {
+                    words[ip + 4 + i] = target(ip_of_bci, pc + s4(bytes, aligned + 12 + i * 4));
+                }
+                return ip + 4 + n;
+            }
+            case LOOKUPSWITCH:
+            {
+                int aligned = align(pc);
+                int n_pairs = s4(bytes, aligned + 4);
+                assert n_pairs >= 0;
+                words[ip] = op;
+                words[ip + 1] = target(ip_of_bci, pc + s4(bytes, aligned));
+                words[ip + 2] = n_pairs;
+                for (int i = 0; i < n_pairs; i++) {
+                    words[ip + 3 + i * 2] = s4(bytes, aligned + 8 + i * 8);
+                    words[ip + 3 + i * 2 + 1] = target(ip_of_bci, pc + s4(bytes, aligned + 8 + i * 8 + 4));
+                }
+                return ip + 3 + n_pairs * 2;
+            }
+            case LDC2_W:
+            case GETSTATIC: case PUTSTATIC: case GETFIELD: case PUTFIELD:
+            case INVOKEVIRTUAL: case INVOKESPECIAL: case INVOKESTATIC: case INVOKEINTERFACE: case INVOKEDYNAMIC:
+            case NEW: case ANEWARRAY: case CHECKCAST: case INSTANCEOF:
+                words[ip] = op;
+                words[ip + 1] = u2(bytes, pc + 1);
+                return ip + 2;
+            case NEWARRAY:
+                words[ip] = op;
+                words[ip + 1] = u1(bytes, pc + 1);
+                return ip + 2;
+            case MULTIANEWARRAY:
+                words[ip] = op;
+                words[ip + 1] = u2(bytes, pc + 1);
+                words[ip + 2] = u1(bytes, pc + 3);
+                return ip + 3;
+            default:
+                assert lengthOf(op) == 1 : nameOf(op);
+                words[ip] = op;
+                return ip + 1;
+        }
+    }
+
+    private static int local(int[] words, int ip, int op, int idx) {
+        words[ip] = op;
+        words[ip + 1] = idx;
+        return ip + 2;
+    }
+
+    private static int target(int[] ip_of_bci, int bci) {
+        int ip = ip_of_bci[bci];
+        assert ip != -1 : "非法的跳转目标 " + bci;
+        return ip;
+    }
+
+    // 原始字节码中一条指令占用的字节数
+    private static int length_of(byte[] bytes, int pc) {
+        int op = u1(bytes, pc);
+        switch (op) {
+            case WIDE:
+                return u1(bytes, pc + 1) == IINC ? 6 : 4;
+            case TABLESWITCH:
+            {
+                int aligned = align(pc);
+                int low = s4(bytes, aligned + 4);
+                int high = s4(bytes, aligned + 8);
+                return aligned + 12 + (high - low + 1) * 4 - pc;
+            }
+            case LOOKUPSWITCH:
+            {
+                int aligned = align(pc);
+                int n_pairs = s4(bytes, aligned + 4);
+                return aligned + 8 + n_pairs * 8 - pc;
+            }
+            default:
+                int len = lengthOf(op);
+                assert len > 0 : "非法指令 " + op;
+                return len;
+        }
+    }
+
+    // 解码后一条指令占用的 int 个数
+    private static int words_of(byte[] bytes, int pc) {
+        int op = u1(bytes, pc);
+        switch (op) {
+            case WIDE:
+                return u1(bytes, pc + 1) == IINC ? 3 : 2;
+            case IINC:
+            case MULTIANEWARRAY:
+                return 3;
+            case TABLESWITCH:
+            {
+                int aligned = align(pc);
+                return 4 + s4(bytes, aligned + 8) - s4(bytes, aligned + 4) + 1;
+            }
+            case LOOKUPSWITCH:
+                return 3 + s4(bytes, align(pc) + 4) * 2;
+            default:
+                if ((op >= ILOAD_0 && op <= ALOAD_3) || (op >= ISTORE_0 && op <= ASTORE_3)) {
+                    return 2;
+                }
+                return lengthOf(op) == 1 ? 1 : 2;
+        }
+    }
+
+    // switch 的操作数从方法第一条指令开始 4 字节对齐
+    private static int align(int pc) {
+        return pc + (4 - (pc % 4));
+    }
+
+    private static int u1(byte[] bytes, int i) {
+        return bytes[i] & 0xff;
+    }
+
+    private static int u2(byte[] bytes, int i) {
+        return ((bytes[i] & 0xff) << 8) | (bytes[i + 1] & 0xff);
+    }
+
+    private static int s2(byte[] bytes, int i) {
+        return (short) u2(bytes, i);
+    }
+
+    private static int s4(byte[] bytes, int i) {
+        return ((bytes[i] & 0xff) << 24) | ((bytes[i + 1] & 0xff) << 16) | ((bytes[i + 2] & 0xff) << 8) | (bytes[i + 3] & 0xff);
+    }
+}
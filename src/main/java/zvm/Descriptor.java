@@ -3,6 +3,7 @@ package zvm;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -36,6 +37,38 @@ public final class Descriptor {
         return parse(desc, 0, desc.length())[0];
     }
 
+    // kind 是描述符的首字母, 数组与对象统一成 L, 解释器用来区分 slot 的类型
+    // Z B C S I J F D V L
+    static char kind(String desc, int pos) {
+        char c = desc.charAt(pos);
+        return c == '[' ? 'L' : c;
+    }
+
+    static char[] parameter_kinds(String desc) {
+        assert desc.charAt(0) == '(';
+        char[] kinds = new char[desc.length()];
+        int n = 0;
+        int pos = 1;
+        while (desc.charAt(pos) != ')') {
+            kinds[n++] = kind(desc, pos);
+            while (desc.charAt(pos) == '[') {
+                pos++;
+            }
+            if (desc.charAt(pos) == 'L') {
+                pos = desc.indexOf(';', pos);
+                assert pos != -1;
+            }
+            pos++;
+        }
+        return Arrays.copyOf(kinds, n);
+    }
+
+    static char return_kind(String desc) {
+        int end = desc.indexOf(")");
+        assert end != -1;
+        return kind(desc, end + 1);
+    }
+
     private static String[] parse(String desc, int start, int end) {
         int pos = start;
         int dims = 0;
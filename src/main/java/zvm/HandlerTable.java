@@ -0,0 +1,214 @@
+package zvm;
+
+import org.jetbrains.annotations.Nullable;
+import zvm.ClassParser.ClassFile;
+
+import static zvm.Bytecodes.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预先算好的异常表, 每个方法第一次抛异常的时候构造, 缓存在 DecodedCode
+ *
+ * 原始的异常表是 bci 区间, 这里换算成 ip, 并且按 ip 展开成覆盖该 ip 的 handler 列表 (保持异常表的顺序),
+ * 抛异常时只看这几个候选, 不用换算 bci, 也不用扫整张表; 覆盖范围相同的 ip 共用一个列表
+ *
+ * catch 的类第一次匹配时才解析 (与 jvm 一样, 不能提前加载), 之后缓存在 Handler 上, 不再走 load_class 的锁
+ * catch any (finally) 与类型完全相同的情况不需要子类型检查
+ *
+ * 顺便算出 handler 用不用得到异常对象: 入口是 pop, 或者 astore 到一个之后没人读的局部变量,
+ * 这种 handler 压 null 就行, 隐式异常不用创建 guest 对象, 见 ZThrowable
+ *
+ * @author chuxiaofeng
+ */
+final class HandlerTable {
+    private static final Handler[] NONE = new Handler[0];
+
+    static final class Handler {
+        // [start_ip, end_ip)
+        final int start_ip;
+        final int end_ip;
+        final int handler_ip;
+        // null 表示 catch any
+        final @Nullable String catch_type;
+        // false 表示 handler 不读异常对象
+        boolean uses_exception = true;
+        private @Nullable ZClass catch_class_cache_;
+
+        Handler(int start_ip, int end_ip, int handler_ip, @Nullable String catch_type) {
+            this.start_ip = start_ip;
+            this.end_ip = end_ip;
+            this.handler_ip = handler_ip;
+            this.catch_type = catch_type;
+        }
+
+        boolean catches(VM vm, ZClass thrown) {
+            if (catch_type == null) {
+                return true;
+            }
+            ZClass catch_class = catch_class_cache_;
+            if (catch_class == null) {
+                catch_class = vm.load_class(catch_type, false); // 🦋 不需要初始化
+                catch_class_cache_ = catch_class;
+            }
+            return catch_class == thrown || catch_class.is_assignable_from(thrown);
+        }
+    }
+
+    // ip -> 覆盖这个 ip 的 handler
+    private final Handler[][] by_ip;
+
+    private HandlerTable(Handler[][] by_ip) {
+        this.by_ip = by_ip;
+    }
+
+    static HandlerTable build(DecodedCode decoded_code, ClassFile.Exception[] exception_table) {
+        Handler[] handlers = new Handler[exception_table.length];
+        for (int i = 0; i < handlers.length; i++) {
+            ClassFile.Exception exception = exception_table[i];
+            handlers[i] = new Handler(
+                    decoded_code.ip(exception.start_pc),
+                    decoded_code.ip(exception.end_pc),
+                    decoded_code.ip(exception.handler_pc),
+                    exception.catch_any() ? null : exception.catch_type());
+        }
+
+        int length = decoded_code.code.length;
+        Handler[][] by_ip = new Handler[length][];
+        Map<List<Handler>, Handler[]> shared = new HashMap<>();
+        List<Handler> covering = new ArrayList<>();
+        for (int ip = 0; ip < length; ip++) {
+            covering.clear();
+            for (Handler handler : handlers) {
+                if (ip >= handler.start_ip && ip < handler.end_ip) {
+                    covering.add(handler);
+                }
+            }
+            if (covering.isEmpty()) {
+                by_ip[ip] = NONE;
+            } else {
+                by_ip[ip] = shared.computeIfAbsent(new ArrayList<>(covering), l -> l.toArray(NONE));
+            }
+        }
+
+        // 快速指令与超级指令会改写 opcode, 分析用没有融合过的指令流, ip 是一样的
+        DecodedCode plain = DecodedCode.decode(decoded_code.method, false);
+        assert plain != null && plain.code.length == length;
+        for (Handler handler : handlers) {
+            handler.uses_exception = uses_exception(plain, handlers, handler.handler_ip);
+        }
+        return new HandlerTable(by_ip);
+    }
+
+    private static boolean uses_exception(DecodedCode plain, Handler[] handlers, int handler_ip) {
+        int[] code = plain.code;
+        switch (code[handler_ip]) {
+            case POP:
+                return false;
+            case ASTORE:
+                return reads_local(plain, handlers, next_ip(plain, handler_ip), code[handler_ip + 1]);
+            default:
+                return true;
+        }
+    }
+
+    // 从 start 开始的某条路径上, local 在被覆盖之前有没有被读
+    // try 块里的指令都可能跳到 handler, 局部变量原样带过去; jsr/ret 保守处理
+    private static boolean reads_local(DecodedCode plain, Handler[] handlers, int start, int local) {
+        int[] code = plain.code;
+        boolean[] visited = new boolean[code.length];
+        Deque<Integer> work = new ArrayDeque<>();
+        work.push(start);
+        while (!work.isEmpty()) {
+            int ip = work.pop();
+            if (ip >= code.length || visited[ip]) {
+                continue;
+            }
+            visited[ip] = true;
+            for (Handler handler : handlers) {
+                if (ip >= handler.start_ip && ip < handler.end_ip) {
+                    work.push(handler.handler_ip);
+                }
+            }
+            int op = code[ip];
+            switch (op) {
+                case ILOAD: case FLOAD: case ALOAD:
+                case IINC:
+                    if (code[ip + 1] == local) {
+                        return true;
+                    }
+                    break;
+                case LLOAD: case DLOAD:
+                    if (code[ip + 1] == local || code[ip + 1] + 1 == local) {
+                        return true;
+                    }
+                    break;
+                case ISTORE: case FSTORE: case ASTORE:
+                    if (code[ip + 1] == local) {
+                        continue;
+                    }
+                    break;
+                case LSTORE: case DSTORE:
+                    if (code[ip + 1] == local || code[ip + 1] + 1 == local) {
+                        continue;
+                    }
+                    break;
+                case JSR: case RET:
+                    return true;
+                case GOTO:
+                    work.push(code[ip + 1]);
+                    continue;
+                case IFEQ: case IFNE: case IFLT: case IFGE: case IFGT: case IFLE:
+                case IF_ICMPEQ: case IF_ICMPNE: case IF_ICMPLT: case IF_ICMPGE: case IF_ICMPGT: case IF_ICMPLE:
+                case IF_ACMPEQ: case IF_ACMPNE: case IFNULL: case IFNONNULL:
+                    work.push(code[ip + 1]);
+                    break;
+                case TABLESWITCH:
+                    // [op, default, low, high, target...]
+                    work.push(code[ip + 1]);
+                    for (int i = 0, n = code[ip + 3] - code[ip + 2] + 1; i < n; i++) {
+                        work.push(code[ip + 4 + i]);
+                    }
+                    continue;
+                case LOOKUPSWITCH:
+                    // [op, default, n_pairs, key, target, key, target...]
+                    work.push(code[ip + 1]);
+                    for (int i = 0, n = code[ip + 2]; i < n; i++) {
+                        work.push(code[ip + 4 + 2 * i]);
+                    }
+                    continue;
+                case IRETURN: case LRETURN: case FRETURN: case DRETURN: case ARETURN: case RETURN:
+                case ATHROW:
+                    continue;
+                default:
+                    break;
+            }
+            work.push(next_ip(plain, ip));
+        }
+        return false;
+    }
+
+    // 指令起始位置的 bci 不是 -1
+    private static int next_ip(DecodedCode plain, int ip) {
+        int next = ip + 1;
+        while (next < plain.bci.length && plain.bci[next] == -1) {
+            next++;
+        }
+        return next;
+    }
+
+    // 抛出 thrown 的指令在 ip, 返回第一个能处理的 handler, 没有返回 null
+    @Nullable Handler find(VM vm, int ip, ZClass thrown) {
+        for (Handler handler : by_ip[ip]) {
+            if (handler.catches(vm, thrown)) {
+                return handler;
+            }
+        }
+        return null;
+    }
+}
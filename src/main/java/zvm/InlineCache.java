@@ -1,199 +1,165 @@
 package zvm;
 
-import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
+import zvm.ClassParser.ConstantPool;
 
-import java.util.*;
+import java.util.Arrays;
+
+import static zvm.Bytecodes.INVOKEINTERFACE;
+import static zvm.Bytecodes.INVOKEVIRTUAL;
+import static zvm.ClassParser.AccessFlags.ACC_FINAL;
 
 /**
- * 玩具内联缓存
+ * invokevirtual / invokeinterface 调用点的内联缓存, 每个调用点一个, 不再是全局的 map
+ *  栈式解释器: 第一次执行时改写成 INVOKEVIRTUAL_QUICK / INVOKEINTERFACE_QUICK, 缓存放在 DecodedCode.quick_cache_[ip]
+ *  寄存器解释器: 改写成 INVOKEVIRTUAL_Q / INVOKEINTERFACE_Q, 缓存放在 RegisterCode.quick_cache_
+ *  编译之后的代码: 缓存是常量, 见 JitCompiler.invoke
+ *
+ * 状态: 空 -> 单态 (一个接收者类型) -> 多态 (最多 polymorphic_size 个) -> 超多态 (不再记接收者, 直接查 vtable / itable)
+ * miss 与超多态都走 ZClass.select, MethodRef 只解析一次, 见 Interpreter.resolve_method_ref
+ * VM.cha: 空的时候先做类层次分析, 成功就是去虚拟化, 不比较接收者类型; 加载了新的子类型作废, 回到空, 之后不再分析, 见 ClassHierarchy
+ *
+ * 🦋 不加锁: 每个状态都是不可变对象 (final 字段), 更新时整体换掉 state_, 别的线程要么看到旧状态要么看到完整的新状态
+ *  两个线程同时 miss 最多丢一个 entry, 下次 miss 再加上
+ *  state_ 是 volatile, 作废 (deoptimize) 之后别的线程不会一直用去虚拟化的结果
+ *
  * @author chuxiaofeng
  */
 public final class InlineCache {
-    final static boolean polymorphic = true;
-
-    final static int call_site_size = 1024;
     final static int polymorphic_size = 4;
 
-    private final MegamorphicCache<CallSite, Cache<ZClass, ZMethod>> polymorphic_inline_cache_ = new MegamorphicCache<>(call_site_size);
-    private final Map<CallSite, CacheItem> monomorphic_inline_cache_ = new HashMap<>();
-    static CallSite call_site(@NotNull ZMethod method, int pc) {
-        return new CallSite(method, pc);
+    final int instruction;
+    final ConstantPool.MethodRef method_ref;
+    // null 是空, 其它是 Devirtualized / Monomorphic / Polymorphic / MEGAMORPHIC
+    private volatile Object state_;
+    // 去虚拟化作废过, 不再做类层次分析
+    private boolean deoptimized_;
+
+    InlineCache(int instruction, ConstantPool.MethodRef method_ref) {
+        assert instruction == INVOKEVIRTUAL || instruction == INVOKEINTERFACE;
+        this.instruction = instruction;
+        this.method_ref = method_ref;
     }
 
-    synchronized
-    ZMethod get(CallSite call_site, @Nullable ZObject object_ref) {
-        if (polymorphic) {
-            Cache<ZClass, ZMethod> cache = polymorphic_inline_cache_.get(call_site);
-            if (cache == null) {
-                return null;
-            }
-            if (object_ref == null) {
-                return cache.get(null);
-            } else {
-                return cache.get(object_ref.z_class());
+    ZMethod lookup(ZClass receiver_class) {
+        Object state = state_;
+        if (state instanceof Devirtualized) {
+            return ((Devirtualized) state).z_method;
+        } else if (state instanceof Monomorphic) {
+            Monomorphic mono = (Monomorphic) state;
+            if (mono.z_class == receiver_class) {
+                return mono.z_method;
             }
-        } else {
-            CacheItem cache = monomorphic_inline_cache_.get(call_site);
-            if (cache == null) {
-                return null;
-            }
-            if (object_ref == null) {
-                if (cache.z_class == null) {
-                    return cache.z_method;
-                }
-            } else {
-                if (cache.z_class == object_ref.z_class()) {
-                    return cache.z_method;
+        } else if (state instanceof Polymorphic) {
+            Polymorphic poly = (Polymorphic) state;
+            ZClass[] classes = poly.classes;
+            for (int i = 0; i < classes.length; i++) {
+                if (classes[i] == receiver_class) {
+                    return poly.methods[i];
                 }
             }
-            return null;
+        } else if (state == MEGAMORPHIC) {
+            return select(receiver_class);
         }
+        return miss(state, receiver_class);
     }
 
-    // get = null 之后 put，这里 put 一定是加新的
-    synchronized
-    void put(CallSite call_site, @Nullable ZObject object_ref, ZMethod z_method) {
-        if (polymorphic) {
-            // cache = polymorphic_inline_cache_.computeIfAbsent(call_site, cs -> new LRUCache<>(polymorphic_size))
-            Cache<ZClass, ZMethod> cache = polymorphic_inline_cache_.get(call_site);
-
-//            if (cache == null) {
-//                // 默认单态
-//                cache = new MonomorphicCache();
-//                polymorphic_inline_cache_.put(call_site, cache);
-//            } else {
-//                // 单态切换成多态
-//                if (cache instanceof MonomorphicCache) {
-//                    MonomorphicCache cache0 = (MonomorphicCache) cache;
-//                    // cache = new MegamorphicCache<>(polymorphic_size);
-//                    cache = new PolymorphicCache(polymorphic_size);
-//                    cache.put(cache0.z_class, cache0.z_method);
-//                }
-//            }
-
-            if (cache == null) {
-                cache = new PolymorphicCache(polymorphic_size);
-                polymorphic_inline_cache_.put(call_site, cache);
-            }
-
-            if (object_ref == null) {
-                cache.put(null, z_method);
-            } else {
-                cache.put(object_ref.z_class(), z_method);
-            }
-        } else {
-            monomorphic_inline_cache_.put(call_site,
-                    new CacheItem(object_ref == null ? null : object_ref.z_class(), z_method));
+    private ZMethod resolved(ZClass receiver_class) {
+        ZMethod resolved = method_ref.z_method_cache_;
+        if (resolved == null) {
+            // 编译之后的代码里的调用点可能还没在解释器里执行过
+            resolved = Interpreter.resolve_method_ref(receiver_class.vm, instruction, method_ref);
         }
+        return resolved;
     }
 
-    static class CallSite {
-        final @NotNull ZMethod z_method;
-        final int pc;
+    private ZMethod select(ZClass receiver_class) {
+        return receiver_class.select(resolved(receiver_class));
+    }
 
-        CallSite(@NotNull ZMethod z_method, int pc) {
-            this.z_method = z_method;
-            this.pc = pc;
+    private ZMethod miss(Object state, ZClass receiver_class) {
+        if (state == null && VM.cha && !deoptimized_) {
+            ZMethod z_method = devirtualize(receiver_class);
+            if (z_method != null) {
+                return z_method;
+            }
         }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            return pc == ((CallSite) o).pc && z_method == ((CallSite) o).z_method;
+        ZMethod z_method = select(receiver_class);
+        if (state == null) {
+            state_ = new Monomorphic(receiver_class, z_method);
+        } else if (state instanceof Monomorphic) {
+            Monomorphic mono = (Monomorphic) state;
+            state_ = new Polymorphic(new ZClass[] { mono.z_class, receiver_class }, new ZMethod[] { mono.z_method, z_method });
+        } else {
+            Polymorphic poly = (Polymorphic) state;
+            int n = poly.classes.length;
+            if (n == polymorphic_size) {
+                state_ = MEGAMORPHIC;
+            } else {
+                ZClass[] classes = Arrays.copyOf(poly.classes, n + 1);
+                ZMethod[] methods = Arrays.copyOf(poly.methods, n + 1);
+                classes[n] = receiver_class;
+                methods[n] = z_method;
+                state_ = new Polymorphic(classes, methods);
+            }
         }
+        return z_method;
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(z_method, pc);
+    private ZMethod devirtualize(ZClass receiver_class) {
+        ZMethod resolved = resolved(receiver_class);
+        ZClass root = method_ref.z_class_cache_;
+        if (root == null || root.is_array() || root == receiver_class.vm.java_lang_Object) {
+            return null;
         }
+        // final 方法与 final 类不会有别的选择, 不用登记依赖
+        if (!root.is_interface() && ((resolved.access_flags() & ACC_FINAL) != 0
+                || (root.access_flags() & ACC_FINAL) != 0)) {
+            ZMethod z_method = receiver_class.select(resolved);
+            state_ = new Devirtualized(z_method);
+            return z_method;
+        }
+        return receiver_class.vm.class_hierarchy.devirtualize(this, root, resolved, receiver_class);
     }
 
-    static class CacheItem {
-        final ZClass z_class;
-        final ZMethod z_method;
-        CacheItem(ZClass z_class, ZMethod z_method) {
-            this.z_class = z_class;
-            this.z_method = z_method;
-        }
+    // ClassHierarchy 持锁调用
+    void devirtualized(ZMethod z_method) {
+        state_ = new Devirtualized(z_method);
     }
 
-    interface Cache<K, V> {
-        V get(Object z_class);
-        V put(K z_class, V z_method);
+    // ClassHierarchy 持锁调用, 加载了 method_ref 静态类型的新子类型
+    void deoptimize() {
+        deoptimized_ = true;
+        state_ = null;
     }
 
-    static class MonomorphicCache implements Cache<ZClass, ZMethod> {
-        ZClass z_class;
-        ZMethod z_method;
-        @Override
-        public ZMethod get(Object z_class) {
-            if (z_class == this.z_class) {
-                return z_method;
-            } else {
-                return null;
-            }
-        }
+    private final static Object MEGAMORPHIC = new Object();
 
-        @Override
-        public ZMethod put(ZClass z_class, ZMethod z_method) {
-            this.z_class = z_class;
+    private final static class Devirtualized {
+        final ZMethod z_method;
+
+        Devirtualized(ZMethod z_method) {
             this.z_method = z_method;
-            return z_method;
         }
     }
 
-    static class PolymorphicCache implements Cache<ZClass, ZMethod> {
-        int pos;
-        CacheItem[] buffer;
-
-        PolymorphicCache(int cap) {
-            assert cap > 0;
-            this.buffer = new CacheItem[cap];
-            this.pos = cap - 1;
-        }
-
-        // 不保证重复, 必须调用 get() 返回 null 再调用 add
-        @Override
-        public ZMethod put(ZClass z_class, ZMethod z_method) {
-            // 反方向加
-            pos = pos - 1;
-            pos = pos < 0 ? pos + buffer.length : pos;
-            buffer[pos] = new CacheItem(z_class, z_method);
-            return z_method;
-        }
+    private final static class Monomorphic {
+        final ZClass z_class;
+        final ZMethod z_method;
 
-        @Override
-        public ZMethod get(Object z_class) {
-            // 正方向加
-            // todo 实际容量!!!~~~
-            int cap = buffer.length;
-            int cap0 = cap;
-            // 下一次从上一次找到的开始找~~~
-            while (cap0-- > 0) {
-                CacheItem it = buffer[pos];
-                if (it != null && it.z_class == z_class) {
-                    return it.z_method;
-                }
-                pos = (pos + 1) % cap;
-            }
-            return null;
+        Monomorphic(ZClass z_class, ZMethod z_method) {
+            this.z_class = z_class;
+            this.z_method = z_method;
         }
     }
 
-    // LRUCache
-    static class MegamorphicCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
-        final int capacity;
-
-        public MegamorphicCache(int capacity) {
-            super(capacity + 1, 0.75f, true);
-            this.capacity = capacity;
-        }
+    // 两个数组创建之后不再修改
+    private final static class Polymorphic {
+        final ZClass[] classes;
+        final ZMethod[] methods;
 
-        @Override
-        protected boolean removeEldestEntry(java.util.Map.Entry<K, V> eldest) {
-            return (size() > this.capacity);
+        Polymorphic(ZClass[] classes, ZMethod[] methods) {
+            this.classes = classes;
+            this.methods = methods;
         }
     }
 }
@@ -0,0 +1,163 @@
+package zvm;
+
+import org.jetbrains.annotations.Nullable;
+import zvm.ClassParser.ConstantPool;
+
+import static zvm.Bytecodes.*;
+import static zvm.ClassParser.AccessFlags.ACC_STATIC;
+import static zvm.ClassParser.Constants.*;
+
+/**
+ * 平凡方法内联: 方法第一次被解释器调用时按原始字节码归类, 是下面四种之一的, 调用时不建 frame, 直接在调用者的 slot 上执行方法体
+ *  空方法        return                                    (Object.<init>, 只调父类空构造器的构造器也算)
+ *  getter       aload_0 getfield xreturn
+ *  setter       aload_0 xload_1 putfield return
+ *  返回常量      xconst / bipush / sipush / ldc / ldc2_w xreturn
+ *
+ * 所有的调用都经过 Interpreter.invoke, 不管调用点是 quicken 之后固定的目标、内联缓存选出来的还是编译之后的代码, 见 ZMethod.inliner
+ * 这几种方法体不会抛异常 (接收者调用之前已经判过空), 不建 frame 也不影响抓栈
+ * 同步方法、有异常表的方法不内联; 内联执行的调用不计入 MethodData 调用次数
+ *
+ * @author chuxiaofeng
+ */
+final class Inliner {
+    final static int EMPTY = 0;
+    final static int GETTER = 1;
+    final static int SETTER = 2;
+    final static int CONSTANT = 3;
+
+    // 不能内联的方法共用这一个, 省得每次调用都重新归类
+    final static Inliner NONE = new Inliner(-1, 0, (char) 0, 0, null);
+
+    final int kind;
+    // getter / setter 的字段下标与类型, 见 ZField.field_index
+    private final int field_index;
+    private final char field_kind;
+    // 常量, 基本类型按 slot 的格式存 (float double 是 bits)
+    private final long prim;
+    private final @Nullable Object ref;
+
+    private Inliner(int kind, int field_index, char field_kind, long prim, @Nullable Object ref) {
+        this.kind = kind;
+        this.field_index = field_index;
+        this.field_kind = field_kind;
+        this.prim = prim;
+        this.ref = ref;
+    }
+
+    /**
+     * 参数在 slot [args_base, ...), 非 static 方法 args_base 是 this, 返回值写回 args_base, 返回新的 sp, 与 Interpreter.invoke 一样
+     */
+    int execute(long[] prims, Object[] refs, @Nullable ZObject object_ref, int args_base, char return_kind) {
+        switch (kind) {
+            case EMPTY:
+                return args_base;
+            case GETTER:
+                assert object_ref != null;
+                return args_base + Interpreter.get_field(prims, refs, args_base, object_ref, field_index, field_kind);
+            case SETTER:
+                assert object_ref != null;
+                Interpreter.put_field(prims, refs, args_base + 1, object_ref, field_index, field_kind);
+                return args_base;
+            case CONSTANT:
+                if (return_kind == 'L') {
+                    refs[args_base] = ref;
+                } else {
+                    prims[args_base] = prim;
+                }
+                return args_base + Interpreter.slots_of(return_kind);
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    static Inliner classify(ZMethod z_method) {
+        ClassParser.ClassFile.Code code = z_method.code();
+        if (!z_method.is_interpreted() || z_method.synchronized_cache_ || code == null
+                || (code.exception_table != null && code.exception_table.length != 0)) {
+            return NONE;
+        }
+        byte[] bytes = code.bytes;
+        int n = bytes.length;
+        int last = bytes[n - 1] & 0xff;
+        boolean is_static = (z_method.access_flags() & ACC_STATIC) != 0;
+        VM vm = z_method.declared_class().vm;
+        ConstantPool cp = z_method.constant_pool();
+
+        if (n == 1 && last == RETURN) {
+            return new Inliner(EMPTY, 0, (char) 0, 0, null);
+        }
+
+        // 只调用了另一个空方法, 比如构造器 aload_0 invokespecial super.<init>()V return
+        if (n == 5 && !is_static && (bytes[0] & 0xff) == ALOAD_0 && (bytes[1] & 0xff) == INVOKESPECIAL && last == RETURN) {
+            ConstantPool.MethodRef method_ref = cp.method_ref_at(u2(bytes, 2), INVOKESPECIAL);
+            if (method_ref.name_and_type.descriptor.equals("()V")) {
+                ZMethod callee = Interpreter.resolve_method_ref(vm, INVOKESPECIAL, method_ref);
+                if (callee != z_method && callee.inliner().kind == EMPTY) {
+                    return new Inliner(EMPTY, 0, (char) 0, 0, null);
+                }
+            }
+            return NONE;
+        }
+
+        if (n == 5 && !is_static && (bytes[0] & 0xff) == ALOAD_0 && (bytes[1] & 0xff) == GETFIELD
+                && last >= IRETURN && last <= ARETURN) {
+            ConstantPool.FieldRef field_ref = cp.field_ref_at(u2(bytes, 2));
+            int index = Interpreter.resolve_field_index(vm, field_ref);
+            return new Inliner(GETTER, index, Descriptor.kind(field_ref.name_and_type.descriptor, 0), 0, null);
+        }
+
+        if (n == 6 && !is_static && (bytes[0] & 0xff) == ALOAD_0 && (bytes[1] & 0xff) >= ILOAD_1 && (bytes[1] & 0xff) <= ALOAD_1
+                && ((bytes[1] & 0xff) - ILOAD_1) % 4 == 0 && (bytes[2] & 0xff) == PUTFIELD && last == RETURN) {
+            ConstantPool.FieldRef field_ref = cp.field_ref_at(u2(bytes, 3));
+            int index = Interpreter.resolve_field_index(vm, field_ref);
+            return new Inliner(SETTER, index, Descriptor.kind(field_ref.name_and_type.descriptor, 0), 0, null);
+        }
+
+        if (last >= IRETURN && last <= ARETURN) {
+            int op = bytes[0] & 0xff;
+            if (n == 2) {
+                if (op == ACONST_NULL) {
+                    return constant(0, null);
+                } else if (op >= ICONST_M1 && op <= ICONST_5) {
+                    return constant(op - ICONST_0, null);
+                } else if (op == LCONST_0 || op == LCONST_1) {
+                    return constant(op - LCONST_0, null);
+                } else if (op >= FCONST_0 && op <= FCONST_2) {
+                    return constant(Interpreter.float_bits(op - FCONST_0), null);
+                } else if (op == DCONST_0 || op == DCONST_1) {
+                    return constant(Interpreter.double_bits(op - DCONST_0), null);
+                }
+            } else if (n == 3 && op == BIPUSH) {
+                return constant(bytes[1], null);
+            } else if (n == 3 && op == LDC) {
+                return ldc(vm, cp, bytes[1] & 0xff);
+            } else if (n == 4 && op == SIPUSH) {
+                return constant((short) u2(bytes, 1), null);
+            } else if (n == 4 && (op == LDC_W || op == LDC2_W)) {
+                return ldc(vm, cp, u2(bytes, 1));
+            }
+        }
+        return NONE;
+    }
+
+    private static Inliner constant(long prim, @Nullable Object ref) {
+        return new Inliner(CONSTANT, 0, (char) 0, prim, ref);
+    }
+
+    // 与 Interpreter 的 LDC 一样, 字符串是 intern 过的同一个对象
+    private static Inliner ldc(VM vm, ConstantPool cp, int idx) {
+        switch (cp.tag(idx)) {
+            case CONSTANT_Integer: return constant(cp.int_at(idx), null);
+            case CONSTANT_Float:   return constant(Interpreter.float_bits(cp.float_at(idx)), null);
+            case CONSTANT_Long:    return constant(cp.long_at(idx), null);
+            case CONSTANT_Double:  return constant(Interpreter.double_bits(cp.double_at(idx)), null);
+            case CONSTANT_String:  return constant(0, Natives.new_intern_string(vm, cp.string_at(idx)));
+            default:               return NONE;
+        }
+    }
+
+    private static int u2(byte[] bytes, int at) {
+        return (bytes[at] & 0xff) << 8 | (bytes[at + 1] & 0xff);
+    }
+}
@@ -1,7 +1,6 @@
 package zvm;
 
 import org.jetbrains.annotations.Nullable;
-import zvm.ClassParser.ClassFile;
 import zvm.ClassParser.ConstantPool;
 import zvm.ClassParser.ConstantPool.InvokeDynamic;
 
@@ -18,12 +17,6 @@ import static zvm.ClassParser.Constants.ReferenceKind.REF_invokeStatic;
  */
 class Interpreter {
 
-    static class CodeBytes extends ClassParser.Bytes {
-        CodeBytes(byte[] bytes) { super(bytes); }
-        int pc() { return is.pos(); }
-        void pc(int pos) { is.pos(pos); }
-    }
-
     /*
     https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-2.html#jvms-2.11.1
     https://ozh.github.io/ascii-tables/
@@ -81,53 +74,102 @@ class Interpreter {
     └───────────────┴────────────────────┴──────────┘
     */
 
+    // Invokable 入口, ZMethod.invoke 已经在 ZThread 上压好了 frame, 这里只负责把装箱的参数拆到局部变量表, 再把返回值装箱
+    // 解释器之间的调用不走这里, 见 invoke 系列指令
+    static Object interpret(VM vm, ZMethod method, @Nullable ZObject instance, Object[] method_args) throws ZThrowable {
+        ZThread thread = vm.thread();
+        ZThread.Frame frame = thread.top();
+        assert frame != null && frame.method == method;
+        long[] prims = frame.chunk.prims;
+        Object[] refs = frame.chunk.refs;
+        int locals_idx = frame.base;
+
+        // 填充 this 到局部变量表
+        if ((method.access_flags() & ACC_STATIC) == 0) {
+            refs[locals_idx++] = instance;
+        }
+
+        // 填充参数到局部变量表, 按参数类型拆箱
+        char[] parameter_kinds = method.parameter_kinds_cache_;
+        assert parameter_kinds.length == method_args.length : method + " 参数个数错误";
+        for (int i = 0; i < parameter_kinds.length; i++) {
+            locals_idx += unbox(prims, refs, locals_idx, parameter_kinds[i], method_args[i]);
+        }
+
+        execute(vm, thread, frame);
+
+        // 返回值放在 frame.base
+        char return_kind = method.return_kind_cache_;
+        return return_kind == 'V' ? null : box(prims, refs, frame.base, return_kind);
+    }
+
     // 这个方法可以做成 OO 的方式（不过我不想）：
     // 把局部变量表、操作数栈、pc、sp 等等直接维护在 frame 中
     // 把不同字节码的 handler 的都做成单独的与字节码同名的方法
     // 然后使用反射调用来分派字节码的处理逻辑..
-    @SuppressWarnings("RedundantCast")
-    static Object interpret(VM vm, ZMethod method, @Nullable ZObject instance, Object[] method_args) throws ZThrowable {
-        ClassFile.Code code = method.code();
+    private static void execute(VM vm, ZThread thread, ZThread.Frame frame) throws ZThrowable {
+        ZMethod method = frame.method;
+        // 调用次数、回边、分支、接收者类型, 见 MethodData
+        MethodData md = method.method_data();
+        md.invoked();
+        if (VM.register_ir) {
+            RegisterCode register_code = method.register_code();
+            if (register_code != null) {
+                try {
+                    if (VM.jit) {
+                        Jit.Compiled compiled = method.compiled_code_;
+                        if (compiled != null) {
+                            compiled.execute(vm, thread, frame);
+                            return;
+                        }
+                    }
+                    RegisterInterpreter.execute(vm, thread, frame, register_code, md);
+                } catch (NullPointerException | ArrayIndexOutOfBoundsException ex) {
+                    // 数组访问之前都设好了 frame.ip, 见 ZThrowable.translate
+                    throw ZThrowable.translate(vm, frame, ex);
+                }
+                return;
+            }
+        }
+        // 预解码的指令流, 每个方法只解码一次, 见 DecodedCode
+        DecodedCode decoded_code = method.decoded_code();
+        assert decoded_code != null;
+        int[] code = decoded_code.code;
         ConstantPool cp = method.constant_pool();
-        CodeBytes bytes = new CodeBytes(code.bytes);
-        assert bytes.pos() == 0;
 
         // 参考 https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html
-        // stack slot 默认 4byte
-        // 8byte-value 压栈约定 stack[++sp] = null; stack[++sp] = long/double
-        // 8byte-value 弹栈约定 stack[--sp]; stack[--sp] = null; (或者 sp--;)
-        // 8byte-value 局部变量表约定 local[idx] = long/double; local[idx++] = null;
-
-        // 局部变量表 slot = 4bytes
-        // long double 理论需要占用两个 slot, 但是这里用 Object[] 表示, 不需要占用两个 slot, 第二个 slot 留空
-        // [long|double, null] 字节码索引位置指向第一个 slot
-        Object[] locals = new Object[code.max_locals];
-        int locals_idx = 0;
-
-        // 操作数栈 stack slot = 4bytes
-        // long double 理论需要占用两个 slot, 但是这里用 Object[] 表示, 第一个 slot 留空
-        // [null, long|double] 写的时候用了第二个存值, 懒得改了
-        Object[] stack = new Object[code.max_stack];
-        // stack pointer 栈指针, 标记栈顶
-        int sp = 0;
-
-        // 程序计数器，其实是上一条指令的地址，而不是常规的下一条，因为这里直接用byte_stream 按固定格式读，只要格式没问题
-        // 所以这里偷懒用 byte_stream 的 pos 当 pc 用了
-        // 下一条 byte_code 地址可以在"读完当前 byte_code 剩余数据之后", 用 bytes.pc() 来获取
-        int pc;
-
-        // 给 需要 index 的指令用的, bci: byte code index
+        // 局部变量表与操作数栈是 ZThread slot arena 上的一个窗口, 见 ZThread
+        //  [base, base + max_locals) 是局部变量表, [base + max_locals, frame.limit) 是操作数栈
+        // 每个 slot 拆成两半, 解释器内部不装箱, 只有进出 Invokable 边界、读写字段的时候才装箱拆箱
+        //  prims: int/short/char/byte/boolean 符号扩展成 long, float 存 floatToRawIntBits, double 存 doubleToRawLongBits,
+        //         returnAddress 也存这里
+        //  refs:  reference
+        // long double 占两个 slot, 值统一放在低位 slot (局部变量表与操作数栈约定一致), 高位 slot 留空
+        //  压栈 prims[sp] = long/double; sp += 2;
+        //  弹栈 sp -= 2; prims[sp];
+        // 返回值写到 base, 调用者从这里取
+        // 👻 slot 的类型由字节码本身保证(javac + verifier), 这里不检查,
+        // 所以 refs 里可能残留已经出栈的引用, frame 出栈的时候清掉
+        long[] prims = frame.chunk.prims;
+        Object[] refs = frame.chunk.refs;
+        int base = frame.base;
+        int max_locals = decoded_code.max_locals;
+        assert frame.limit == base + max_locals + decoded_code.max_stack;
+
+        // stack pointer 栈指针, 标记栈顶, 操作数栈从 base + max_locals 开始
+        int sp = base + max_locals;
+
+        // 指令流游标, 读完当前指令的操作数之后指向下一条指令
+        int ip = 0;
+        // 当前指令的起始 ip, 异常表、内联缓存、栈帧行号都以此为准
+        int inst_ip;
+
+        // 给 需要 index 的指令用的
         int idx;
-        // 给跳转偏移用的
-        int offset; // jmp offset
-
-        // 用于 wide 指令, 扩展局部变量表索引
-        boolean next_wide = false;
+        // 给跳转用的, 解码时已经换算成目标指令的 ip
+        int target;
 
         // 主要给 Math 系列指令用的
-        Object b1; // byte boolean
-        char c1;
-        short s1;
         int i1, i2;
         long l1, l2;
         float f1, f2;
@@ -136,60 +178,32 @@ class Interpreter {
 
         ZArray z_arr;
 
-        // 主要给 Stack manipulation 指令用的，比如 dup 系列
-        Object fst, snd, trd, fth;
-
         ConstantPool.FieldRef field_ref;
         ConstantPool.MethodRef method_ref;
 
-        // 填充 this 到局部变量表
-        if ((method.access_flags() & ACC_STATIC) == 0) {
-            locals[locals_idx++] = instance;
-        }
-
-        // 填充参数到局部变量表
-//        String[] parameter_types = method.parameter_types();
-//        assert parameter_types.length == method_args.length : method + " 参数个数错误";
-//        for (int i = 0; i < parameter_types.length; i++) {
-//            String type = parameter_types[i];
-//            locals[locals_idx++] = method_args[i];
-//            if (type.equals("long") || type.equals("double")) {
-//                locals_idx++;
-//                assert method_args[i] instanceof Long || method_args[i] instanceof Double;
-//            }
-//        }
-
-        int[] parameter_type_size_cache_ = method.parameter_type_size_cache_;
-        assert parameter_type_size_cache_.length == method_args.length : method + " 参数个数错误";
-        for (int i = 0; i < parameter_type_size_cache_.length; i++) {
-            locals[locals_idx++] = method_args[i];
-            locals_idx += parameter_type_size_cache_[i];
-        }
-
-        // 把这些关键局部变量全部转移到 frame ???
-        ZThread.Frame vm_stack_frame = vm.stacks.get().peek();
-        assert vm_stack_frame != null;
-//        vm_stack_frame.local_variables = locals;
-//        vm_stack_frame.operand_stack = stack;
+        // 只给 VM.opcode_pair_stats 用
+        int prev_instruction = NOP;
 
         while (true) {
-            pc = bytes.pc();
+            inst_ip = ip;
             try {
-                int instruction = bytes.u1();
+                int instruction = code[ip++];
+                if (VM.opcode_pair_stats) {
+                    Superinstructions.record(prev_instruction, instruction);
+                    prev_instruction = instruction;
+                }
                 {
-                    vm_stack_frame.program_counter = pc;
-//                    vm_stack_frame.operand_stack_pointer = sp;
-//                    vm_stack_frame.instruction = instruction;
+                    frame.ip = inst_ip;
                 }
 
                 switch (instruction) {
                     case NOP                  : //  0    0x00
                         break;
                     case ACONST_NULL          : //  1    0x01
-                        stack[sp++] = null;
+                        refs[sp++] = null;
                         break;
                     case ICONST_M1            : //  2    0x02
-                        stack[sp++] = -1;
+                        prims[sp++] = -1;
                         break;
                     case ICONST_0             : //  3    0x03
                     case ICONST_1             : //  4    0x04
@@ -197,52 +211,58 @@ class Interpreter {
                     case ICONST_3             : //  6    0x06
                     case ICONST_4             : //  7    0x07
                     case ICONST_5             : //  8    0x08
-                        stack[sp++] = instruction - 3;
+                        prims[sp++] = instruction - 3;
                         break;
                     case LCONST_0             : //  9    0x09
                     case LCONST_1             : // 10    0x0A
                         // spec: 把 long value push 到 stack
-                        stack[sp++] = null;
-                        stack[sp++] = ((long) instruction) - 9;
+                        prims[sp] = ((long) instruction) - 9;
+                        sp += 2;
                         break;
                     case FCONST_0             : // 11    0x0B
                     case FCONST_1             : // 12    0x0C
                     case FCONST_2             : // 13    0x0D
                         // spec: 把 float value push 到 stack
-                        stack[sp++] = ((float) instruction) - 11;
+                        prims[sp++] = float_bits(((float) instruction) - 11);
                         break;
                     case DCONST_0             : // 14    0x0E
                     case DCONST_1             : // 15    0x0F
                         // spec: 把 double value push 到 stack
-                        stack[sp++] = null;
-                        stack[sp++] = ((double) instruction) - 14;
+                        prims[sp] = double_bits(((double) instruction) - 14);
+                        sp += 2;
                         break;
                     case BIPUSH               : // 16    0x10
                         // spec: 把 int value push 到 stack
-                        stack[sp++] = (int) bytes.s1();
+                        prims[sp++] = code[ip++];
                         break;
                     case SIPUSH               : // 17    0x11
                         // spec: 把 int value push 到 stack
-                        stack[sp++] = (int) bytes.s2();
+                        prims[sp++] = code[ip++];
                         break;
                     case LDC                  : // 18    0x12
-                    case LDC_W                : // 19    0x13
-                        idx = instruction == LDC ? bytes.u1() : bytes.u2();
+                        // ldc_w 解码时已经归一成 ldc
+                        idx = code[ip++];
                         switch (cp.tag(idx)) {
                             case CONSTANT_Integer:
-                                stack[sp++] = cp.int_at(idx);
+                                prims[sp++] = cp.int_at(idx);
+                                decoded_code.quicken(inst_ip, LDC_QUICK, cp.int_at(idx));
                                 break;
                             case CONSTANT_Float:
-                                stack[sp++] = cp.float_at(idx);
+                                prims[sp++] = float_bits(cp.float_at(idx));
+                                decoded_code.quicken(inst_ip, LDC_QUICK, Float.floatToRawIntBits(cp.float_at(idx)));
                                 break;
                             case CONSTANT_String:
                                 // https://stackoverflow.com/questions/5777131/java-string-intern-and-literal
                                 // All literal strings and string-valued constant expressions are interned.
                                 // 字面量和常量都要放在常量池
-                                stack[sp++] = Natives.new_intern_string(vm, cp.string_at(idx));
+                                a1 = Natives.new_intern_string(vm, cp.string_at(idx));
+                                refs[sp++] = a1;
+                                decoded_code.quicken(inst_ip, LDC_REF_QUICK, a1);
                                 break;
                             case CONSTANT_Class:
-                                stack[sp++] = vm.load_class(cp.class_at(idx), false);
+                                a1 = vm.load_class(cp.class_at(idx), false);
+                                refs[sp++] = a1;
+                                decoded_code.quicken(inst_ip, LDC_REF_QUICK, a1);
                                 break;
                             // 给动态语言用的... 先不管
                             case CONSTANT_MethodHandle:
@@ -252,866 +272,717 @@ class Interpreter {
                             default: throw new AssertionError();
                         }
                         break;
+                    case LDC_QUICK            : // 208    0xD0
+                        // int 或者 float 的 bits, float_bits 与 int 一样是按 int 符号扩展的
+                        a1 = decoded_code.quick(inst_ip);
+                        if (a1 == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
+                        }
+                        ip++;
+                        prims[sp++] = (Integer) a1;
+                        break;
+                    case LDC_REF_QUICK        : // 209    0xD1
+                        a1 = decoded_code.quick(inst_ip);
+                        if (a1 == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
+                        }
+                        ip++;
+                        refs[sp++] = a1;
+                        break;
+                    // long double 常量直接从常量池读, 不涉及解析, 不需要 quicken
                     case LDC2_W               : // 20    0x14
-                        idx = bytes.u2();
+                        idx = code[ip++];
                         switch (cp.tag(idx)) {
                             case CONSTANT_Long:
-                                stack[sp++] = null;
-                                stack[sp++] = cp.long_at(idx);
+                                prims[sp] = cp.long_at(idx);
+                                sp += 2;
                                 break;
                             case CONSTANT_Double:
-                                stack[sp++] = null;
-                                stack[sp++] = cp.double_at(idx);
+                                prims[sp] = double_bits(cp.double_at(idx));
+                                sp += 2;
                                 break;
                             default: throw new AssertionError();
                         }
                         break;
+                    // xload_n / xstore_n 与 wide 解码时已经归一成 xload / xstore + 下标
                     case ILOAD                : // 21    0x15
                     case FLOAD                : // 23    0x17
-                    case ALOAD                : // 25    0x19
-                        if (next_wide) {
-                            idx = bytes.u2();
-                            next_wide = false;
-                        } else {
-                            idx = bytes.u1();
-                        }
-                        stack[sp++] = locals[idx];
+                        idx = base + code[ip++];
+                        prims[sp++] = prims[idx];
                         break;
                     case LLOAD                : // 22    0x16
                     case DLOAD                : // 24    0x18
-                        if (next_wide) {
-                            idx = bytes.u2();
-                            next_wide = false;
-                        } else {
-                            idx = bytes.u1();
-                        }
-                        stack[sp++] = null;
-                        stack[sp++] = locals[idx];
-                        break;
-                    case ILOAD_0              : // 26    0x1A
-                    case ILOAD_1              : // 27    0x1B
-                    case ILOAD_2              : // 28    0x1C
-                    case ILOAD_3              : // 29    0x1D
-                        stack[sp++] = locals[instruction - 26];
-                        break;
-                    case LLOAD_0              : // 30    0x1E
-                    case LLOAD_1              : // 31    0x1F
-                    case LLOAD_2              : // 32    0x20
-                    case LLOAD_3              : // 33    0x21
-                        stack[sp++] = null;
-                        stack[sp++] = locals[instruction - 30];
-                        break;
-                    case FLOAD_0              : // 34    0x22
-                    case FLOAD_1              : // 35    0x23
-                    case FLOAD_2              : // 36    0x24
-                    case FLOAD_3              : // 37    0x25
-                        stack[sp++] = locals[instruction - 34];
-                        break;
-                    case DLOAD_0              : // 38    0x26
-                    case DLOAD_1              : // 39    0x27
-                    case DLOAD_2              : // 40    0x28
-                    case DLOAD_3              : // 41    0x29
-                        stack[sp++] = null;
-                        stack[sp++] = locals[instruction - 38];
-                        break;
-                    case ALOAD_0              : // 42    0x2A
-                    case ALOAD_1              : // 43    0x2B
-                    case ALOAD_2              : // 44    0x2C
-                    case ALOAD_3              : // 45    0x2D
-                        stack[sp++] = locals[instruction - 42];
-                        break;
-                    // {ilfdabcs}aload 不能复用代码, 是因为 Object[] 不是 {int,long,float,double}[]的父类
-                    // 不过这样也好, 可以检查类型
+                        idx = base + code[ip++];
+                        prims[sp] = prims[idx];
+                        sp += 2;
+                        break;
+                    case ALOAD                : // 25    0x19
+                        idx = base + code[ip++];
+                        refs[sp++] = refs[idx];
+                        break;
+                    // {ilfdabcs}aload 走 ZArray 的类型化读写, 不装箱
                     case IALOAD               : // 46    0x2E
-                        idx = int_val(stack[--sp]);
-                        z_arr = vm.check_null(((ZArray) stack[--sp]));
-                        stack[sp++] = ((int) z_arr.index(idx));
+                        idx = (int) prims[--sp];
+                        z_arr = vm.check_null_implicit(((ZArray) refs[--sp]));
+                        prims[sp++] = z_arr.int_at(idx);
                         break;
                     case LALOAD               : // 47    0x2F
-                        idx = int_val(stack[--sp]);
-                        z_arr = vm.check_null(((ZArray) stack[--sp]));
-                        stack[sp++] = null;
-                        stack[sp++] = ((long) z_arr.index(idx));
+                        idx = (int) prims[--sp];
+                        z_arr = vm.check_null_implicit(((ZArray) refs[--sp]));
+                        prims[sp] = z_arr.long_at(idx);
+                        sp += 2;
                         break;
                     case FALOAD               : // 48    0x30
-                        idx = int_val(stack[--sp]);
-                        z_arr = vm.check_null(((ZArray) stack[--sp]));
-                        stack[sp++] = ((float) z_arr.index(idx));
+                        idx = (int) prims[--sp];
+                        z_arr = vm.check_null_implicit(((ZArray) refs[--sp]));
+                        prims[sp++] = float_bits(z_arr.float_at(idx));
                         break;
                     case DALOAD               : // 49    0x31
-                        idx = int_val(stack[--sp]);
-                        z_arr = vm.check_null(((ZArray) stack[--sp]));
-                        stack[sp++] = null;
-                        stack[sp++] = ((double) z_arr.index(idx));
+                        idx = (int) prims[--sp];
+                        z_arr = vm.check_null_implicit(((ZArray) refs[--sp]));
+                        prims[sp] = double_bits(z_arr.double_at(idx));
+                        sp += 2;
                         break;
                     case AALOAD               : // 50    0x32
-                        idx = int_val(stack[--sp]);
-                        z_arr = vm.check_null(((ZArray) stack[--sp]));
-                        stack[sp++] = ((ZObject) z_arr.index(idx));
+                        idx = (int) prims[--sp];
+                        z_arr = vm.check_null_implicit(((ZArray) refs[--sp]));
+                        refs[sp++] = z_arr.ref_at(idx);
                         break;
                     case BALOAD               : // 51    0x33
                         // spec : baload 只处理 byte and boolean arrays.
                         // spec: 把 int value push 到 stack
-                        idx = int_val(stack[--sp]);
-                        z_arr = (ZArray) stack[--sp];
-                        if (z_arr.is_bool_array()) {
-                            stack[sp++] = ((boolean) z_arr.index(idx)) ? 1 : 0;
-                        } else if (z_arr.is_byte_array()) {
-                            stack[sp++] = ((int) ((byte) z_arr.index(idx)));
-                        } else {
-                            throw new AssertionError();
-                        }
+                        idx = (int) prims[--sp];
+                        z_arr = vm.check_null_implicit(((ZArray) refs[--sp]));
+                        prims[sp++] = z_arr.byte_or_bool_at(idx);
                         break;
                     case CALOAD               : // 52    0x34
-                        idx = int_val(stack[--sp]);
-                        z_arr = vm.check_null(((ZArray) stack[--sp]));
-                        stack[sp++] = ((int) ((char) z_arr.index(idx)));
+                        idx = (int) prims[--sp];
+                        z_arr = vm.check_null_implicit(((ZArray) refs[--sp]));
+                        prims[sp++] = z_arr.char_at(idx);
                         break;
                     case SALOAD               : // 53    0x35
-                        idx = int_val(stack[--sp]);
-                        z_arr = vm.check_null(((ZArray) stack[--sp]));
-                        stack[sp++] = ((int) ((short) z_arr.index(idx)));
+                        idx = (int) prims[--sp];
+                        z_arr = vm.check_null_implicit(((ZArray) refs[--sp]));
+                        prims[sp++] = z_arr.short_at(idx);
+                        break;
+                    case ISTORE               : // 54    0x36
+                    case FSTORE               : // 56    0x38
+                        idx = base + code[ip++];
+                        prims[idx] = prims[--sp];
                         break;
                     case LSTORE               : // 55    0x37
                     case DSTORE               : // 57    0x39
-                        if (next_wide) {
-                            idx = bytes.u2();
-                            next_wide = false;
-                        } else {
-                            idx = bytes.u1();
-                        }
-                        locals[idx] = stack[--sp]; sp--;
+                        idx = base + code[ip++];
+                        sp -= 2;
+                        prims[idx] = prims[sp];
                         break;
-                    case ISTORE               : // 54    0x36
-                    case FSTORE               : // 56    0x38
                     case ASTORE               : // 58    0x3A
-                        if (next_wide) {
-                            idx = bytes.u2();
-                            next_wide = false;
-                        } else {
-                            idx = bytes.u1();
-                        }
-                        locals[idx] = stack[--sp];
-                        break;
-                    case ISTORE_0             : // 59    0x3B
-                    case ISTORE_1             : // 60    0x3C
-                    case ISTORE_2             : // 61    0x3D
-                    case ISTORE_3             : // 62    0x3E
-                        locals[instruction - 59] = stack[--sp];
-                        break;
-                    case LSTORE_0             : // 63    0x3F
-                    case LSTORE_1             : // 64    0x40
-                    case LSTORE_2             : // 65    0x41
-                    case LSTORE_3             : // 66    0x42
-                        locals[instruction - 63] = stack[--sp]; sp--;
-                        break;
-                    case FSTORE_0             : // 67    0x43
-                    case FSTORE_1             : // 68    0x44
-                    case FSTORE_2             : // 69    0x45
-                    case FSTORE_3             : // 70    0x46
-                        locals[instruction - 67] = stack[--sp];
-                        break;
-                    case DSTORE_0             : // 71    0x47
-                    case DSTORE_1             : // 72    0x48
-                    case DSTORE_2             : // 73    0x49
-                    case DSTORE_3             : // 74    0x4A
-                        locals[instruction - 71] = stack[--sp]; sp--;
-                        break;
-                    case ASTORE_0             : // 75    0x4B
-                    case ASTORE_1             : // 76    0x4C
-                    case ASTORE_2             : // 77    0x4D
-                    case ASTORE_3             : // 78    0x4E
-                        locals[instruction - 75] = stack[--sp];
-                        break;
-                    // {ilfdabcs}astore 代码不能复用原因同上
+                        // astore 除了 reference 还可能存 jsr 压栈的 returnAddress, 两半都要拷贝
+                        idx = base + code[ip++];
+                        sp--;
+                        refs[idx] = refs[sp];
+                        prims[idx] = prims[sp];
+                        break;
+                    // {ilfdabcs}astore 同上
                     case IASTORE              : // 79    0x4F
-                        i1 = int_val(stack[--sp]);
-                        idx = int_val(stack[--sp]);
-                        vm.check_null(((ZArray) stack[--sp])).index(idx, i1);
+                        i1 = (int) prims[--sp];
+                        idx = (int) prims[--sp];
+                        vm.check_null_implicit(((ZArray) refs[--sp])).put_int(idx, i1);
                         break;
                     case LASTORE              : // 80    0x50
-                        l1 = long_val(stack[--sp]); sp--;
-                        idx = int_val(stack[--sp]);
-                        vm.check_null(((ZArray) stack[--sp])).index(idx, l1);
+                        sp -= 2;
+                        l1 = prims[sp];
+                        idx = (int) prims[--sp];
+                        vm.check_null_implicit(((ZArray) refs[--sp])).put_long(idx, l1);
                         break;
                     case FASTORE              : // 81    0x51
-                        f1 = ((float) stack[--sp]);
-                        idx = int_val(stack[--sp]);
-                        vm.check_null(((ZArray) stack[--sp])).index(idx, f1);
+                        f1 = as_float(prims[--sp]);
+                        idx = (int) prims[--sp];
+                        vm.check_null_implicit(((ZArray) refs[--sp])).put_float(idx, f1);
                         break;
                     case DASTORE              : // 82    0x52
-                        d1 = ((double) stack[--sp]); sp--;
-                        idx = int_val(stack[--sp]);
-                        vm.check_null(((ZArray) stack[--sp])).index(idx, d1);
+                        sp -= 2;
+                        d1 = as_double(prims[sp]);
+                        idx = (int) prims[--sp];
+                        vm.check_null_implicit(((ZArray) refs[--sp])).put_double(idx, d1);
                         break;
                     case AASTORE              : // 83    0x53
-                        a1 = stack[--sp];
-                        idx = int_val(stack[--sp]);
-                        vm.check_null(((ZArray) stack[--sp])).index(idx, (ZObject) a1);
-                        break;
-                    case BASTORE              : // 84    0x54
-                        b1 = stack[--sp];
-                        idx = int_val(stack[--sp]);
-                        z_arr = ((ZArray) stack[--sp]);
-                        if (z_arr.is_bool_array()) {
-                            z_arr.index(idx, bool_val(b1));
-                        } else if (z_arr.is_byte_array()) {
-                            z_arr.index(idx, byte_val(b1));
+                        // 数组协变, 只有引用数组需要运行时的 store check
+                        a1 = refs[--sp];
+                        idx = (int) prims[--sp];
+                        if (VM.verify && decoded_code.unchecked(inst_ip, AASTORE)) {
+                            vm.check_null_implicit(((ZArray) refs[--sp])).put_ref_unchecked(idx, a1);
                         } else {
-                            throw new AssertionError();
+                            vm.check_null_implicit(((ZArray) refs[--sp])).store_ref(idx, a1);
                         }
                         break;
+                    case AASTORE_UNCHECKED    : // 232    0xE8
+                        a1 = refs[--sp];
+                        idx = (int) prims[--sp];
+                        vm.check_null_implicit(((ZArray) refs[--sp])).put_ref_unchecked(idx, a1);
+                        break;
+                    case BASTORE              : // 84    0x54
+                        i1 = (int) prims[--sp];
+                        idx = (int) prims[--sp];
+                        vm.check_null_implicit(((ZArray) refs[--sp])).put_byte_or_bool(idx, i1);
+                        break;
                     case CASTORE              : // 85    0x55
-                        c1 = char_val(stack[--sp]);
-                        idx = int_val(stack[--sp]);
-                        vm.check_null(((ZArray) stack[--sp])).index(idx, c1);
+                        i1 = (int) prims[--sp];
+                        idx = (int) prims[--sp];
+                        vm.check_null_implicit(((ZArray) refs[--sp])).put_char(idx, (char) i1);
                         break;
                     case SASTORE              : // 86    0x56
-                        s1 = short_val(stack[--sp]);
-                        idx = int_val(stack[--sp]);
-                        vm.check_null(((ZArray) stack[--sp])).index(idx, s1);
+                        i1 = (int) prims[--sp];
+                        idx = (int) prims[--sp];
+                        vm.check_null_implicit(((ZArray) refs[--sp])).put_short(idx, (short) i1);
                         break;
                     case POP                  : // 87    0x57
-                        stack[--sp] = null;
+                        sp--;
                         break;
                     case POP2                 : // 88    0x58
-                        stack[--sp] = null;
-                        stack[--sp] = null;
+                        sp -= 2;
                         break;
+                    // Stack manipulation 不关心 slot 里是什么类型, prims 与 refs 一起搬
                     case DUP                  : // 89    0x59
                         //..., value →
                         //..., value, value
-                        fst = stack[sp - 1];
-                        stack[sp++] = fst;
+                        mov(prims, refs, sp - 1, sp);
+                        sp++;
                         break;
                     case DUP_X1               : // 90    0x5A
                         //..., value2, value1 →
                         //..., value1, value2, value1
-                        fst = stack[--sp];
-                        snd = stack[--sp];
-                        stack[sp++] = fst;
-                        stack[sp++] = snd;
-                        stack[sp++] = fst;
+                        mov(prims, refs, sp - 1, sp);
+                        mov(prims, refs, sp - 2, sp - 1);
+                        mov(prims, refs, sp, sp - 2);
+                        sp++;
                         break;
                     case DUP_X2               : // 91    0x5B
                         //..., value3, value2, value1 →
                         //..., value1, value3, value2, value1
-                        fst = stack[--sp];
-                        snd = stack[--sp];
-                        trd = stack[--sp];
-                        stack[sp++] = fst;
-                        stack[sp++] = trd;
-                        stack[sp++] = snd;
-                        stack[sp++] = fst;
+                        mov(prims, refs, sp - 1, sp);
+                        mov(prims, refs, sp - 2, sp - 1);
+                        mov(prims, refs, sp - 3, sp - 2);
+                        mov(prims, refs, sp, sp - 3);
+                        sp++;
                         break;
                     case DUP2                 : // 92    0x5C
                         //..., value2, value1 →
                         //..., value2, value1, value2, value1
-                        fst = stack[sp - 1];
-                        snd = stack[sp - 2];
-                        stack[sp++] = snd;
-                        stack[sp++] = fst;
+                        mov(prims, refs, sp - 2, sp);
+                        mov(prims, refs, sp - 1, sp + 1);
+                        sp += 2;
                         break;
                     case DUP2_X1              : // 93    0x5D
                         //..., value3, value2, value1 →
                         //..., value2, value1, value3, value2, value1
-                        fst = stack[--sp];
-                        snd = stack[--sp];
-                        trd = stack[--sp];
-                        stack[sp++] = snd;
-                        stack[sp++] = fst;
-                        stack[sp++] = trd;
-                        stack[sp++] = snd;
-                        stack[sp++] = fst;
+                        mov(prims, refs, sp - 1, sp + 1);
+                        mov(prims, refs, sp - 2, sp);
+                        mov(prims, refs, sp - 3, sp - 1);
+                        mov(prims, refs, sp + 1, sp - 2);
+                        mov(prims, refs, sp, sp - 3);
+                        sp += 2;
                         break;
                     case DUP2_X2              : // 94    0x5E
                         //..., value4, value3, value2, value1 →
                         //..., value2, value1, value4, value3, value2, value1
-                        fst = stack[--sp];
-                        snd = stack[--sp];
-                        trd = stack[--sp];
-                        fth = stack[--sp];
-                        stack[sp++] = snd;
-                        stack[sp++] = fst;
-                        stack[sp++] = fth;
-                        stack[sp++] = trd;
-                        stack[sp++] = snd;
-                        stack[sp++] = fst;
+                        mov(prims, refs, sp - 1, sp + 1);
+                        mov(prims, refs, sp - 2, sp);
+                        mov(prims, refs, sp - 3, sp - 1);
+                        mov(prims, refs, sp - 4, sp - 2);
+                        mov(prims, refs, sp + 1, sp - 3);
+                        mov(prims, refs, sp, sp - 4);
+                        sp += 2;
                         break;
                     case SWAP                 : // 95    0x5F
-                        fst = stack[sp - 1];
-                        stack[sp - 1] = stack[sp - 2];
-                        stack[sp - 2] = fst;
+                        l1 = prims[sp - 1];
+                        a1 = refs[sp - 1];
+                        mov(prims, refs, sp - 2, sp - 1);
+                        prims[sp - 2] = l1;
+                        refs[sp - 2] = a1;
                         break;
                     case IADD                 : // 96    0x60
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = i1 + i2;
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        prims[sp++] = i1 + i2;
                         break;
                     case LADD                 : // 97    0x61
-                        l2 = long_val(stack[--sp]); sp--;
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++]  = null;
-                        stack[sp++] = l1 + l2;
+                        l2 = prims[sp -= 2];
+                        l1 = prims[sp -= 2];
+                        prims[sp] = l1 + l2;
+                        sp += 2;
                         break;
                     case FADD                 : // 98    0x62
-                        f2 = ((float) stack[--sp]);
-                        f1 = ((float) stack[--sp]);
-                        stack[sp++] = f1 + f2;
+                        f2 = as_float(prims[--sp]);
+                        f1 = as_float(prims[--sp]);
+                        prims[sp++] = float_bits(f1 + f2);
                         break;
                     case DADD                 : // 99    0x63
-                        d2 = (double) stack[--sp]; sp--;
-                        d1 = (double) stack[--sp]; sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = d1 + d2;
+                        d2 = as_double(prims[sp -= 2]);
+                        d1 = as_double(prims[sp -= 2]);
+                        prims[sp] = double_bits(d1 + d2);
+                        sp += 2;
                         break;
                     case ISUB                 : // 100    0x64
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = i1 - i2;
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        prims[sp++] = i1 - i2;
                         break;
                     case LSUB                 : // 101    0x65
-                        l2 = long_val(stack[--sp]); sp--;
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = l1 - l2;
+                        l2 = prims[sp -= 2];
+                        l1 = prims[sp -= 2];
+                        prims[sp] = l1 - l2;
+                        sp += 2;
                         break;
                     case FSUB                 : // 102    0x66
-                        f2 = ((float) stack[--sp]);
-                        f1 = ((float) stack[--sp]);
-                        stack[sp++] = f1 - f2;
+                        f2 = as_float(prims[--sp]);
+                        f1 = as_float(prims[--sp]);
+                        prims[sp++] = float_bits(f1 - f2);
                         break;
                     case DSUB                 : // 103    0x67
-                        d2 = (double) stack[--sp]; sp--;
-                        d1 = (double) stack[--sp]; sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = d1 - d2;
+                        d2 = as_double(prims[sp -= 2]);
+                        d1 = as_double(prims[sp -= 2]);
+                        prims[sp] = double_bits(d1 - d2);
+                        sp += 2;
                         break;
                     case IMUL                 : // 104    0x68
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = i1 * i2;
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        prims[sp++] = i1 * i2;
                         break;
                     case LMUL                 : // 105    0x69
-                        l2 = long_val(stack[--sp]); sp--;
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = l1 * l2;
+                        l2 = prims[sp -= 2];
+                        l1 = prims[sp -= 2];
+                        prims[sp] = l1 * l2;
+                        sp += 2;
                         break;
                     case FMUL                 : // 106    0x6A
-                        f2 = ((float) stack[--sp]);
-                        f1 = ((float) stack[--sp]);
-                        stack[sp++] = f1 * f2;
+                        f2 = as_float(prims[--sp]);
+                        f1 = as_float(prims[--sp]);
+                        prims[sp++] = float_bits(f1 * f2);
                         break;
                     case DMUL                 : // 107    0x6B
-                        d2 = (double) stack[--sp]; sp--;
-                        d1 = (double) stack[--sp]; sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = d1 * d2;
+                        d2 = as_double(prims[sp -= 2]);
+                        d1 = as_double(prims[sp -= 2]);
+                        prims[sp] = double_bits(d1 * d2);
+                        sp += 2;
                         break;
                     case IDIV                 : // 108    0x6C
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
                         vm.check_div_zero(i2);
-                        stack[sp++] = i1 / i2;
+                        prims[sp++] = i1 / i2;
                         break;
                     case LDIV                 : // 109    0x6D
-                        l2 = long_val(stack[--sp]); sp--;
-                        l1 = long_val(stack[--sp]); sp--;
+                        l2 = prims[sp -= 2];
+                        l1 = prims[sp -= 2];
                         vm.check_div_zero(l2);
-                        stack[sp++] = null;
-                        stack[sp++] = l1 / l2;
+                        prims[sp] = l1 / l2;
+                        sp += 2;
                         break;
                     case FDIV                 : // 110    0x6E
-                        f2 = ((float) stack[--sp]);
-                        f1 = ((float) stack[--sp]);
-                        stack[sp++] = f1 / f2;
+                        f2 = as_float(prims[--sp]);
+                        f1 = as_float(prims[--sp]);
+                        prims[sp++] = float_bits(f1 / f2);
                         break;
                     case DDIV                 : // 111    0x6F
-                        d2 = (double) stack[--sp]; sp--;
-                        d1 = (double) stack[--sp]; sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = d1 / d2;
+                        d2 = as_double(prims[sp -= 2]);
+                        d1 = as_double(prims[sp -= 2]);
+                        prims[sp] = double_bits(d1 / d2);
+                        sp += 2;
                         break;
                     case IREM                 : // 112    0x70
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
                         vm.check_div_zero(i2);
-                        stack[sp++] = i1 % i2;
+                        prims[sp++] = i1 % i2;
                         break;
                     case LREM                 : // 113    0x71
-                        l2 = long_val(stack[--sp]); sp--;
-                        l1 = long_val(stack[--sp]); sp--;
+                        l2 = prims[sp -= 2];
+                        l1 = prims[sp -= 2];
                         vm.check_div_zero(l2);
-                        stack[sp++] = null;
-                        stack[sp++] = l1 % l2;
+                        prims[sp] = l1 % l2;
+                        sp += 2;
                         break;
                     case FREM                 : // 114    0x72
-                        f2 = ((float) stack[--sp]);
-                        f1 = ((float) stack[--sp]);
-                        stack[sp++] = f1 % f2;
+                        f2 = as_float(prims[--sp]);
+                        f1 = as_float(prims[--sp]);
+                        prims[sp++] = float_bits(f1 % f2);
                         break;
                     case DREM                 : // 115    0x73
-                        d2 = (double) stack[--sp]; sp--;
-                        d1 = (double) stack[--sp]; sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = d1 % d2;
+                        d2 = as_double(prims[sp -= 2]);
+                        d1 = as_double(prims[sp -= 2]);
+                        prims[sp] = double_bits(d1 % d2);
+                        sp += 2;
                         break;
                     case INEG                 : // 116    0x74
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = -i1;
+                        prims[sp - 1] = -((int) prims[sp - 1]);
                         break;
                     case LNEG                 : // 117    0x75
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = -l1;
+                        prims[sp - 2] = -prims[sp - 2];
                         break;
                     case FNEG                 : // 118    0x76
-                        f1 = ((float) stack[--sp]);
-                        stack[sp++] = -f1;
+                        prims[sp - 1] = float_bits(-as_float(prims[sp - 1]));
                         break;
                     case DNEG                 : // 119    0x77
-                        d1 = ((double) stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = -d1;
+                        prims[sp - 2] = double_bits(-as_double(prims[sp - 2]));
                         break;
                     case ISHL                 : // 120    0x78
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = i1 << i2;
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        prims[sp++] = i1 << i2;
                         break;
                     case LSHL                 : // 121    0x79
-                        i2 = int_val(stack[--sp]);
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = l1 << i2;
+                        i2 = (int) prims[--sp];
+                        prims[sp - 2] = prims[sp - 2] << i2;
                         break;
                     case ISHR                 : // 122    0x7A
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = i1 >> i2;
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        prims[sp++] = i1 >> i2;
                         break;
                     case LSHR                 : // 123    0x7B
-                        i2 = int_val(stack[--sp]);
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = l1 >> i2;
+                        i2 = (int) prims[--sp];
+                        prims[sp - 2] = prims[sp - 2] >> i2;
                         break;
                     case IUSHR                : // 124    0x7C
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = i1 >>> i2;
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        prims[sp++] = i1 >>> i2;
                         break;
                     case LUSHR                : // 125    0x7D
-                        i2 = int_val(stack[--sp]);
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = l1 >>> i2;
+                        i2 = (int) prims[--sp];
+                        prims[sp - 2] = prims[sp - 2] >>> i2;
                         break;
                     case IAND                 : // 126    0x7E
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = i1 & i2;
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        prims[sp++] = i1 & i2;
                         break;
                     case LAND                 : // 127    0x7F
-                        l2 = long_val(stack[--sp]); sp--;
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = l1 & l2;
+                        l2 = prims[sp -= 2];
+                        l1 = prims[sp -= 2];
+                        prims[sp] = l1 & l2;
+                        sp += 2;
                         break;
                     case IOR                  : // 128    0x80
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = i1 | i2;
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        prims[sp++] = i1 | i2;
                         break;
                     case LOR                  : // 129    0x81
-                        l2 = long_val(stack[--sp]); sp--;
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = l1 | l2;
+                        l2 = prims[sp -= 2];
+                        l1 = prims[sp -= 2];
+                        prims[sp] = l1 | l2;
+                        sp += 2;
                         break;
                     case IXOR                 : // 130    0x82
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        stack[sp++] = i1 ^ i2;
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        prims[sp++] = i1 ^ i2;
                         break;
                     case LXOR                 : // 131    0x83
-                        l2 = long_val(stack[--sp]); sp--;
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = null;
-                        stack[sp++] = l1 ^ l2;
+                        l2 = prims[sp -= 2];
+                        l1 = prims[sp -= 2];
+                        prims[sp] = l1 ^ l2;
+                        sp += 2;
                         break;
                     case IINC                 : // 132    0x84
-                        if (next_wide) {
-                            idx = bytes.u2();
-                            i1 = bytes.s2();
-                            next_wide = false;
-                        } else {
-                            idx = bytes.u1();
-                            i1 = bytes.s1();
-                        }
-                        locals[idx] = ((int) locals[idx]) + i1;
+                        idx = base + code[ip++];
+                        i1 = code[ip++];
+                        prims[idx] = ((int) prims[idx]) + i1;
                         break;
+                    // 类型转换都是原地改写栈顶, int 本来就是符号扩展存的, i2l 只需要多占一个 slot
                     case I2L                  : // 133    0x85
-                        i1 = (int) stack[sp - 1];
-                        stack[sp - 1] = null;
-                        stack[sp++] = (long) i1;
+                        sp++;
                         break;
                     case I2F                  : // 134    0x86
-                        i1 = (int) stack[sp - 1];
-                        stack[sp - 1] = (float) i1;
+                        prims[sp - 1] = float_bits((float) ((int) prims[sp - 1]));
                         break;
                     case I2D                  : // 135    0x87
-                        i1 = (int) stack[sp - 1];
-                        stack[sp - 1] = null;
-                        stack[sp++] = (double) i1;
+                        prims[sp - 1] = double_bits((double) ((int) prims[sp - 1]));
+                        sp++;
                         break;
                     case L2I                  : // 136    0x88
-                        l1 = ((long) stack[sp - 1]);
-                        stack[--sp] = null;
-                        stack[sp - 1] = (int) l1;
+                        sp--;
+                        prims[sp - 1] = (int) prims[sp - 1];
                         break;
                     case L2F                  : // 137    0x89
-                        l1 = ((long) stack[sp - 1]);
-                        stack[--sp] = null;
-                        stack[sp - 1] = (float) l1;
+                        sp--;
+                        prims[sp - 1] = float_bits((float) prims[sp - 1]);
                         break;
                     case L2D                  : // 138    0x8A
-                        l1 = ((long) stack[sp - 1]);
-                        stack[sp - 1] = (double) l1;
+                        prims[sp - 2] = double_bits((double) prims[sp - 2]);
                         break;
                     case F2I                  : // 139    0x8B
-                        f1 = (float) stack[sp - 1];
-                        stack[sp - 1] = (int) f1;
+                        prims[sp - 1] = (int) as_float(prims[sp - 1]);
                         break;
                     case F2L                  : // 140    0x8C
-                        f1 = (float) stack[sp - 1];
-                        stack[sp - 1] = null;
-                        stack[sp++] = (long) f1;
+                        prims[sp - 1] = (long) as_float(prims[sp - 1]);
+                        sp++;
                         break;
                     case F2D                  : // 141    0x8D
-                        f1 = (float) stack[sp - 1];
-                        stack[sp - 1] = null;
-                        stack[sp++] = (double) f1;
+                        prims[sp - 1] = double_bits((double) as_float(prims[sp - 1]));
+                        sp++;
                         break;
                     case D2I                  : // 142    0x8E
-                        d1 = (double) stack[sp - 1];
-                        stack[--sp] = null;
-                        stack[sp - 1] = (int) d1;
+                        sp--;
+                        prims[sp - 1] = (int) as_double(prims[sp - 1]);
                         break;
                     case D2L                  : // 143    0x8F
-                        d1 = (double) stack[sp - 1];
-                        stack[sp - 1] = (long) d1;
+                        prims[sp - 2] = (long) as_double(prims[sp - 2]);
                         break;
                     case D2F                  : // 144    0x90
-                        d1 = (double) stack[sp - 1];
-                        stack[--sp] = null;
-                        stack[sp - 1] = (float) d1;
+                        sp--;
+                        prims[sp - 1] = float_bits((float) as_double(prims[sp - 1]));
                         break;
                     case I2B                  : // 145    0x91
-                        i1 = (int) stack[sp - 1];
-                        stack[sp - 1] = (int) ((byte) i1);
+                        prims[sp - 1] = (byte) prims[sp - 1];
                         break;
                     case I2C                  : // 146    0x92
-                        i1 = (int) stack[sp - 1];
-                        stack[sp - 1] = (int) ((char) i1);
+                        prims[sp - 1] = (char) prims[sp - 1];
                         break;
                     case I2S                  : // 147    0x93
-                        i1 = (int) stack[sp - 1];
-                        stack[sp - 1] = (int) ((short) i1);
+                        prims[sp - 1] = (short) prims[sp - 1];
                         break;
                     case LCMP                 : // 148    0x94
-                        l2 = long_val(stack[--sp]); sp--;
-                        l1 = long_val(stack[--sp]); sp--;
-                        stack[sp++] = Long.compare(l1, l2);
+                        l2 = prims[sp -= 2];
+                        l1 = prims[sp -= 2];
+                        prims[sp++] = Long.compare(l1, l2);
                         break;
+                    // 注意不能用 Float.compare / Double.compare, 它们认为 -0.0 < 0.0, 字节码认为 -0.0 == 0.0
                     case FCMPL                : // 149    0x95
                     case FCMPG                : // 150    0x96
-                        f2 = ((float) stack[--sp]);
-                        f1 = ((float) stack[--sp]);
-                        if (Float.isNaN(f1) || Float.isNaN(f2)) {
-                            stack[sp++] = instruction == FCMPG ? 1 : -1;
+                        f2 = as_float(prims[--sp]);
+                        f1 = as_float(prims[--sp]);
+                        if (f1 > f2) {
+                            prims[sp++] = 1;
+                        } else if (f1 == f2) {
+                            prims[sp++] = 0;
+                        } else if (f1 < f2) {
+                            prims[sp++] = -1;
                         } else {
-                            stack[sp++] = Float.compare(f1, f2);
+                            // NaN
+                            prims[sp++] = instruction == FCMPG ? 1 : -1;
                         }
                         break;
                     case DCMPL                : // 151    0x97
                     case DCMPG                : // 152    0x98
-                        d2 = ((double) stack[--sp]); sp--;
-                        d1 = ((double) stack[--sp]); sp--;
-                        if (Double.isNaN(d1) || Double.isNaN(d2)) {
-                            stack[sp++] = instruction == DCMPG ? 1 : -1;
+                        d2 = as_double(prims[sp -= 2]);
+                        d1 = as_double(prims[sp -= 2]);
+                        if (d1 > d2) {
+                            prims[sp++] = 1;
+                        } else if (d1 == d2) {
+                            prims[sp++] = 0;
+                        } else if (d1 < d2) {
+                            prims[sp++] = -1;
                         } else {
-                            stack[sp++] = Double.compare(d1, d2);
+                            // NaN
+                            prims[sp++] = instruction == DCMPG ? 1 : -1;
                         }
                         break;
                     case IFEQ                 : // 153    0x99
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 == 0) {
-                            bytes.pc(pc + offset);
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 == 0, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IFNE                 : // 154    0x9A
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 != 0) {
-                            bytes.pc(pc + offset);
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 != 0, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IFLT                 : // 155    0x9B
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 < 0) {
-                            bytes.pc(pc + offset);
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 < 0, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IFGE                 : // 156    0x9C
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 >= 0) {
-                            bytes.pc(pc + offset);
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 >= 0, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IFGT                 : // 157    0x9D
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 > 0) {
-                            bytes.pc(pc + offset);
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 > 0, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IFLE                 : // 158    0x9E
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 <= 0) {
-                            bytes.pc(pc + offset);
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 <= 0, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IF_ICMPEQ            : // 159    0x9F
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 == i2) {
-                            bytes.pc(pc + offset);
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 == i2, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IF_ICMPNE            : // 160    0xA0
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 != i2) {
-                            bytes.pc(pc + offset);
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 != i2, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IF_ICMPLT            : // 161    0xA1
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 < i2) {
-                            bytes.pc(pc + offset);
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 < i2, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IF_ICMPGE            : // 162    0xA2
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 >= i2) {
-                            bytes.pc(pc + offset);
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 >= i2, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IF_ICMPGT            : // 163    0xA3
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 > i2) {
-                            bytes.pc(pc + offset);
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 > i2, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IF_ICMPLE            : // 164    0xA4
-                        i2 = int_val(stack[--sp]);
-                        i1 = int_val(stack[--sp]);
-                        offset = bytes.s2();
-                        if (i1 <= i2) {
-                            bytes.pc(pc + offset);
+                        i2 = (int) prims[--sp];
+                        i1 = (int) prims[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, i1 <= i2, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IF_ACMPEQ            : // 165    0xA5
-                        a2 = stack[--sp];
-                        a1 = stack[--sp];
-                        offset = bytes.s2();
-                        if (a1 == a2) {
-                            bytes.pc(pc + offset);
+                        a2 = refs[--sp];
+                        a1 = refs[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, a1 == a2, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IF_ACMPNE            : // 166    0xA6
-                        a2 = stack[--sp];
-                        a1 = stack[--sp];
-                        offset = bytes.s2();
-                        if (a1 != a2) {
-                            bytes.pc(pc + offset);
+                        a2 = refs[--sp];
+                        a1 = refs[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, a1 != a2, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case GOTO                 : // 167    0xA7
-                        offset = bytes.s2();
-                        bytes.pc(pc + offset);
-                        break;
-                    case GOTO_W               : // 200    0xC8
-                        offset = bytes.s4();
-                        bytes.pc(pc + offset);
+                        // goto_w 解码时已经归一成 goto
+                        target = code[ip];
+                        if (target < inst_ip) {
+                            md.backedge();
+                        }
+                        ip = target;
                         break;
                     // jsr & ret 用来配合实现 finally
                     case JSR                  : // 168    0xA8
-                        offset = bytes.s2();
-                        stack[sp++] = bytes.pc();
-                        bytes.pc(pc + offset);
-                        break;
-                    case JSR_W                : // 201    0xC9
-                        offset = bytes.s4();
-                        stack[sp++] = bytes.pc();
-                        bytes.pc(pc + offset);
+                        // jsr_w 解码时已经归一成 jsr, returnAddress 是下一条指令的 ip
+                        target = code[ip++];
+                        prims[sp] = ip;
+                        refs[sp] = null;
+                        sp++;
+                        ip = target;
                         break;
                     case RET                  : // 169    0xA9
-                        if (next_wide) {
-                            idx = bytes.u2();
-                            next_wide = false;
-                        } else {
-                            idx = bytes.u1();
-                        }
-                        bytes.pc(((int) locals[idx]));
+                        idx = base + code[ip++];
+                        ip = ((int) prims[idx]);
                         break;
                     case TABLESWITCH          : // 170    0xAA
+                    {
                         // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.tableswitch
-                        idx = int_val(stack[--sp]);
-                        // 从当前方法开始(第一条操作码指令)计算的地址的 4bytes 偏移
-                        bytes.pc(pc + (4 - (pc % 4)));
-                        offset = bytes.s4(); // default
-                        int low = bytes.s4();
-                        int high = bytes.s4();
+                        // 解码之后: [tableswitch, default, low, high, target...]
+                        idx = (int) prims[--sp];
+                        target = code[ip]; // default
+                        int low = code[ip + 1];
+                        int high = code[ip + 2];
                         assert low <= high;
-                        /*
-                        逻辑上有一张 jmp table, 实际直接跳到指定位置
-                        int n = high - low + 1;
-                        int[] jmp_tbl = new int[n];
-                        for (int i = 0; i < n; i++) {
-                            jmp_tbl[i] = bytes.s4();
-                        }
-                        if (idx >= low && idx <= high) {
-                            offset = jmp_tbl[idx - low];
-                        }*/
                         if (idx >= low && idx <= high) {
-                            bytes.pc(bytes.pc() + (idx - low) * 4);
-                            offset = bytes.s4();
+                            target = code[ip + 3 + (idx - low)];
                         }
-                        bytes.pc(pc + offset);
+                        ip = target;
                         break;
+                    }
                     case LOOKUPSWITCH         : // 171    0xAB
+                    {
                         // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.lookupswitch
-                        idx = int_val(stack[--sp]);
-                        // 从当前方法开始(第一条操作码指令)计算的地址的 4bytes 偏移
-                        bytes.pc(pc + (4 - (pc % 4)));
-                        offset = bytes.s4(); // default_offset
-                        int n_pairs = bytes.s4();
-                        assert n_pairs >= 0;
-                        if (n_pairs > 0) {
-                            // 逻辑上是一个key 从小到大排序的二维表 list<pair<value, offset>>
-                            // int[][] jmp_tbl = new int[n_pairs][2];
-                            for (int i = 0; i < n_pairs; i++) {
-                                int key = bytes.s4();
-                                if (idx < key) {
-                                    break;
-                                } else if (key == idx) {
-                                    offset = bytes.s4();
-                                    break;
-                                } else {
-                                    bytes.skip(4);
-                                }
-                            }
+                        // 解码之后: [lookupswitch, default, n_pairs, key, target, key, target...]
+                        // key 从小到大排序, 第一次执行时构造成二分或者完美哈希, 见 LookupSwitch
+                        LookupSwitch lookup_switch = new LookupSwitch(code, ip);
+                        decoded_code.quicken(inst_ip, LOOKUPSWITCH_QUICK, lookup_switch);
+                        ip = lookup_switch.target((int) prims[--sp]);
+                        break;
+                    }
+                    case LOOKUPSWITCH_QUICK   : // 231    0xE7
+                        a1 = decoded_code.quick(inst_ip);
+                        if (a1 == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
                         }
-                        bytes.pc(pc + offset);
+                        ip = ((LookupSwitch) a1).target((int) prims[--sp]);
                         break;
+                    // 返回值写到 base, 也就是调用者压第一个参数的位置
                     case IRETURN              : // 172    0xAC
                     case FRETURN              : // 174    0xAE
-                    case ARETURN              : // 176    0xB0
+                        prims[base] = prims[sp - 1];
+                        return;
                     case LRETURN              : // 173    0xAD
                     case DRETURN              : // 175    0xAF
-                        return stack[--sp];
+                        prims[base] = prims[sp - 2];
+                        return;
+                    case ARETURN              : // 176    0xB0
+                        refs[base] = refs[sp - 1];
+                        return;
                     case RETURN               : // 177    0xB1
-                        return null;
+                        return;
+                    // 字段仍旧是装箱存储的, 读写的时候按描述符拆箱装箱
                     case GETSTATIC            : // 178    0xB2
                     {
                         // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.getstatic
-                        idx = bytes.u2();
+                        idx = code[ip++];
                         field_ref = cp.field_ref_at(idx);
-                        if (field_ref.z_field_cache_ == null) {
-                            ZClass z_class = vm.load_class(field_ref.class_name, false);
-                            field_ref.z_field_cache_ = z_class.field(field_ref.name_and_type.name);
-                            // 🦋 只有声明该属性的类需要初始化
-                            field_ref.z_field_cache_.declared_class().initialize(vm);
+                        ZField z_field = resolve_static_field(vm, field_ref);
+                        // 🦋 初始化完成之后才能 quicken, <clinit> 执行过程中(或者别的线程正在初始化)还要走初始化检查
+                        if (z_field.declared_class().is_fully_initialized()) {
+                            decoded_code.quicken(inst_ip, GETSTATIC_QUICK, z_field);
                         }
-                        ZField z_field = field_ref.z_field_cache_;
                         Object static_value =  z_field.declared_class().get_static_field(z_field.field_slot());
-                        String type = field_ref.name_and_type.descriptor;
-                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-                            // 这里本来应该是 long double 被装箱了...
-                            assert static_value instanceof Long || static_value instanceof Double;
-                            stack[sp++] = null;
+                        sp += unbox(prims, refs, sp, field_ref.name_and_type.descriptor.charAt(0), static_value);
+                        break;
+                    }
+                    case GETSTATIC_QUICK      : // 212    0xD4
+                    {
+                        ZField z_field = (ZField) decoded_code.quick(inst_ip);
+                        if (z_field == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
                         }
-                        stack[sp++] = static_value;
+                        ip++;
+                        Object static_value =  z_field.declared_class().get_static_field(z_field.field_slot());
+                        sp += unbox(prims, refs, sp, z_field.kind(), static_value);
                         break;
-
-
-//                        // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.getstatic
-//                        idx = bytes.u2();
-//                        field_ref = cp.field_ref_at(idx);
-//                        // 🦋 只有声明该属性的类需要初始化
-//                        if (field_ref.z_class_cache_ == null) {
-//                            field_ref.z_class_cache_ = vm.load_class(field_ref.class_name, false);
-//                        }
-//                        ZClass z_class = field_ref.z_class_cache_;
-//
-//                        Object static_value;
-//                        if (field_ref.slot_cache_ == -1) {
-//                            ZField z_field = z_class.field(field_ref.name_and_type.name);
-//                            ZClass z_field_decl_class = z_field.declared_class();
-//                            z_field_decl_class.initialize(vm);
-//                            if (z_field_decl_class.is_interface()) {
-//                                // 对于数组可以缓存 z_field !!!
-//                                static_value = z_field_decl_class.get_static_field(z_field.field_slot());
-//                            } else {
-//                                field_ref.slot_cache_ = z_field.field_slot();
-//                                static_value = z_class.get_static_field(field_ref.slot_cache_);
-//                            }
-//                        } else {
-//                            static_value = z_class.get_static_field(field_ref.slot_cache_);
-//                        }
-//
-//                        String type = field_ref.name_and_type.descriptor;
-//                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-//                            // 这里本来应该是 long double 被装箱了...
-//                            assert static_value instanceof Long || static_value instanceof Double;
-//                            stack[sp++] = null;
-//                        }
-//                        stack[sp++] = static_value;
-//                        break;
-
-
-//                        // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.getstatic
-//                        idx = bytes.u2();
-//                        field_ref = cp.field_ref_at(idx);
-//                        // 🦋 只有声明该属性的类需要初始化
-//                        ZClass z_class = vm.load_class(field_ref.class_name, false);
-//                        ZField z_field = z_class.field(field_ref.name_and_type.name);
-//                        z_field.declared_class().initialize(vm);
-//
-//                        Object static_value = z_field.get_value(null);
-//                        String type = field_ref.name_and_type.descriptor;
-//                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-//                            // 这里本来应该是 long double 被装箱了...
-//                            assert static_value instanceof Long || static_value instanceof Double;
-//                            stack[sp++] = null;
-//                        }
-//                        stack[sp++] = static_value;
-//                        break;
                     }
                     case PUTSTATIC            : // 179    0xB3
                     {
@@ -1120,193 +991,97 @@ class Interpreter {
                         // 不对, interface I { int i = val(1); } 如果属性不是常量，接口的 clinit 仍旧需要 putstatic
                         // 但是, 接口静态属性的 putstatic 的 field_ref 一定不涉及多态, 所以不需要像 getstatic 那样处理
                         // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.putstatic
-                        idx = bytes.u2();
+                        idx = code[ip++];
                         field_ref = cp.field_ref_at(idx);
-                        if (field_ref.z_field_cache_ == null) {
-                            ZClass z_class = vm.load_class(field_ref.class_name, false);
-                            field_ref.z_field_cache_ = z_class.field(field_ref.name_and_type.name);
-                            // 🦋 只有声明该属性的类需要初始化
-                            field_ref.z_field_cache_.declared_class().initialize(vm);
+                        ZField z_field = resolve_static_field(vm, field_ref);
+                        if (z_field.declared_class().is_fully_initialized()) {
+                            decoded_code.quicken(inst_ip, PUTSTATIC_QUICK, z_field);
                         }
-                        ZField z_field = field_ref.z_field_cache_;
-                        Object static_value = stack[--sp];
-                        String type = field_ref.name_and_type.descriptor;
-                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-                            assert static_value instanceof Long || static_value instanceof Double;
-                            sp--;
+                        char kind = field_ref.name_and_type.descriptor.charAt(0);
+                        sp -= slots_of(kind);
+                        Object static_value = box(prims, refs, sp, kind);
+                        z_field.declared_class().put_static_field(z_field.field_slot(), static_value);
+                        break;
+                    }
+                    case PUTSTATIC_QUICK      : // 213    0xD5
+                    {
+                        ZField z_field = (ZField) decoded_code.quick(inst_ip);
+                        if (z_field == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
                         }
+                        ip++;
+                        char kind = z_field.kind();
+                        sp -= slots_of(kind);
+                        Object static_value = box(prims, refs, sp, kind);
                         z_field.declared_class().put_static_field(z_field.field_slot(), static_value);
                         break;
-
-//                        // putstatic 不需要处理 interface,
-//                        // ~因为interface的字段都是final的...~ 反射需要...
-//                        // 不对, interface I { int i = val(1); } 如果属性不是常量，接口的 clinit 仍旧需要 putstatic
-//                        // 但是, 接口静态属性的 putstatic 的 field_ref 一定不涉及多态, 所以不需要像 getstatic 那样处理
-//                        // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.putstatic
-//                        idx = bytes.u2();
-//                        field_ref = cp.field_ref_at(idx);
-//                        // 🦋 只有声明该属性的类需要初始化
-//                        if (field_ref.z_class_cache_ == null) {
-//                            field_ref.z_class_cache_ = vm.load_class(field_ref.class_name, false);
-//                        }
-//                        ZClass z_class = field_ref.z_class_cache_;
-//
-//                        if (field_ref.slot_cache_ == -1) {
-//                            ZField z_field = z_class.field(field_ref.name_and_type.name);
-//                            ZClass z_field_decl_class = z_field.declared_class();
-//                            z_field_decl_class.initialize(vm);
-//                            field_ref.slot_cache_ = z_field.field_slot();
-//                        }
-//
-//                        Object static_value = stack[--sp];
-//                        String type = field_ref.name_and_type.descriptor;
-//                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-//                            assert static_value instanceof Long || static_value instanceof Double;
-//                            sp--;
-//                        }
-//                        z_class.put_static_field(field_ref.slot_cache_, static_value);
-//                        break;
-
-//                        // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.putstatic
-//                        idx = bytes.u2();
-//                        field_ref = cp.field_ref_at(idx);
-//                        // 🦋 只有声明该属性的类需要初始化
-//                        ZClass z_class = vm.load_class(field_ref.class_name, false);
-//                        ZField z_field = z_class.field(field_ref.name_and_type.name);
-//                        z_field.declared_class().initialize(vm);
-//
-//                        Object static_value = stack[--sp];
-//                        String type = field_ref.name_and_type.descriptor;
-//                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-//                            assert static_value instanceof Long || static_value instanceof Double;
-//                            sp--;
-//                        }
-//                        z_field.put_value(null, static_value);
-//                        break;
                     }
                     case GETFIELD             : // 180    0xB4
                     {
                         // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.getfield
-                        idx = bytes.u2();
+                        idx = code[ip++];
                         field_ref = cp.field_ref_at(idx);
 
-                        if (field_ref.slot_cache_ == -1) {
-                            ZClass z_class = vm.load_class(field_ref.class_name, false); // 🦋 new 的时候类已经加载并初始化过了
-                            ZField field = z_class.field(field_ref.name_and_type.name);
-                            assert field.field_name().equals(field_ref.name_and_type.name);
-                            field_ref.slot_cache_ = field.field_slot();
-                        }
+                        int index = resolve_field_index(vm, field_ref);
 
-                        ZObject object_ref = ((ZObject) stack[--sp]);
-                        vm.check_null(object_ref);
-                        Object value = object_ref.get_field(field_ref.slot_cache_);
-                        String type = field_ref.name_and_type.descriptor;
-                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-                            assert value instanceof Long || value instanceof Double;
-                            stack[sp++] = null;
+                        char kind = Descriptor.kind(field_ref.name_and_type.descriptor, 0);
+                        // 下标与 kind 编码成一个 int 放在 quick_cache_, 操作数还是常量池下标
+                        decoded_code.quicken(inst_ip, GETFIELD_QUICK, index << 8 | kind);
+
+                        ZObject object_ref = ((ZObject) refs[--sp]);
+                        vm.check_null_implicit(object_ref);
+                        sp += get_field(prims, refs, sp, object_ref, index, kind);
+                        break;
+                    }
+                    case GETFIELD_QUICK       : // 210    0xD2
+                    {
+                        a1 = decoded_code.quick(inst_ip);
+                        if (a1 == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
                         }
-                        stack[sp++] = value;
+                        ip++;
+                        idx = (Integer) a1;
+                        ZObject object_ref = ((ZObject) refs[--sp]);
+                        vm.check_null_implicit(object_ref);
+                        sp += get_field(prims, refs, sp, object_ref, idx >>> 8, (char) (idx & 0xff));
                         break;
-
-//                        // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.getfield
-//                        idx = bytes.u2();
-//                        field_ref = cp.field_ref_at(idx);
-//
-//                        if (field_ref.z_field_cache_ == null) {
-//                            ZClass z_class = vm.load_class(field_ref.class_name, false); // 🦋 new 的时候类已经加载并初始化过了
-//                            ZField field = z_class.field(field_ref.name_and_type.name);
-//                            assert field.field_name().equals(field_ref.name_and_type.name);
-//                            field_ref.z_field_cache_ = field;
-//                        }
-//
-//                        ZObject object_ref = ((ZObject) stack[--sp]);
-//                        vm.check_null(object_ref);
-//                        Object value = object_ref.get_field(field_ref.z_field_cache_.field_slot());
-//                        String type = field_ref.name_and_type.descriptor;
-//                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-//                            assert value instanceof Long || value instanceof Double;
-//                            stack[sp++] = null;
-//                        }
-//                        stack[sp++] = value;
-//                        break;
-
-//                        // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.getfield
-//                        idx = bytes.u2();
-//                        field_ref = cp.field_ref_at(idx);
-//                        ZClass z_class = vm.load_class(field_ref.class_name, false); // 🦋 new 的时候类已经加载并初始化过了
-//                        ZField z_field = z_class.field(field_ref.name_and_type.name);
-//
-//                        ZObject object_ref = ((ZObject) stack[--sp]);
-//                        Object value = z_field.get_value(object_ref);
-//                        String type = field_ref.name_and_type.descriptor;
-//                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-//                            assert value instanceof Long || value instanceof Double;
-//                            stack[sp++] = null;
-//                        }
-//                        stack[sp++] = value;
-//                        break;
                     }
                     case PUTFIELD             : // 181    0xB5
                     {
                         // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.putfield
-                        idx = bytes.u2();
+                        idx = code[ip++];
                         field_ref = cp.field_ref_at(idx);
 
-                        if (field_ref.slot_cache_ == -1) {
-                            ZClass z_class = vm.load_class(field_ref.class_name, false); // 🦋 new 的时候类已经加载并初始化过了
-                            ZField field = z_class.field(field_ref.name_and_type.name);
-                            assert field.field_name().equals(field_ref.name_and_type.name);
-                            field_ref.slot_cache_ = field.field_slot();
-                        }
+                        int index = resolve_field_index(vm, field_ref);
+
+                        char kind = Descriptor.kind(field_ref.name_and_type.descriptor, 0);
+                        decoded_code.quicken(inst_ip, PUTFIELD_QUICK, index << 8 | kind);
 
-                        Object value = stack[--sp];
-                        String type = field_ref.name_and_type.descriptor;
-                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-                            assert value instanceof Long || value instanceof Double;
-                            sp--;
+                        sp -= slots_of(kind);
+                        ZObject object_ref = ((ZObject) refs[sp - 1]);
+                        vm.check_null_implicit(object_ref);
+                        put_field(prims, refs, sp, object_ref, index, kind);
+                        sp--;
+                        break;
+                    }
+                    case PUTFIELD_QUICK       : // 211    0xD3
+                    {
+                        a1 = decoded_code.quick(inst_ip);
+                        if (a1 == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
                         }
-                        ZObject object_ref = ((ZObject) stack[--sp]);
-                        vm.check_null(object_ref);
-                        object_ref.put_field(field_ref.slot_cache_, value);
+                        ip++;
+                        idx = (Integer) a1;
+                        char kind = (char) (idx & 0xff);
+                        sp -= slots_of(kind);
+                        ZObject object_ref = ((ZObject) refs[sp - 1]);
+                        vm.check_null_implicit(object_ref);
+                        put_field(prims, refs, sp, object_ref, idx >>> 8, kind);
+                        sp--;
                         break;
-
-//                        // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.putfield
-//                        idx = bytes.u2();
-//                        field_ref = cp.field_ref_at(idx);
-//
-//                        if (field_ref.z_field_cache_ == null) {
-//                            ZClass z_class = vm.load_class(field_ref.class_name, false); // 🦋 new 的时候类已经加载并初始化过了
-//                            ZField field = z_class.field(field_ref.name_and_type.name);
-//                            assert field.field_name().equals(field_ref.name_and_type.name);
-//                            field_ref.z_field_cache_ = field;
-//                        }
-//
-//                        Object value = stack[--sp];
-//                        String type = field_ref.name_and_type.descriptor;
-//                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-//                            assert value instanceof Long || value instanceof Double;
-//                            sp--;
-//                        }
-//                        ZObject object_ref = ((ZObject) stack[--sp]);
-//                        vm.check_null(object_ref);
-//                        object_ref.put_field(field_ref.z_field_cache_.field_slot(), value);
-//                        break;
-
-//                        // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.putfield
-//                        idx = bytes.u2();
-//                        field_ref = cp.field_ref_at(idx);
-//                        ZClass z_class = vm.load_class(field_ref.class_name, false); // 🦋 new 的时候类已经加载并初始化过了
-//                        ZField z_field = z_class.field(field_ref.name_and_type.name);
-//
-//                        Object value = stack[--sp];
-//                        String type = field_ref.name_and_type.descriptor;
-//                        if (type.charAt(0) == 'J' || type.charAt(0) == 'D') {
-//                            assert value instanceof Long || value instanceof Double;
-//                            sp--;
-//                        }
-//                        ZObject object_ref = ((ZObject) stack[--sp]);
-//                        z_field.put_value(object_ref, value);
-//                        break;
                     }
                     // 用于调用非私有实例方法
                     // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.invokevirtual
@@ -1319,155 +1094,93 @@ class Interpreter {
                     // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.invokeinterface
                     case INVOKEINTERFACE      : // 185    0xB9
                     {
-                        idx = bytes.u2();
+                        idx = code[ip++];
                         // INVOKESPECIAL + INVOKESTATIC: 实例方法或接口方法
                         // INVOKEVIRTUAL: 非私有实例方法
                         // INVOKEINTERFACE: 接口方法
                         method_ref = cp.method_ref_at(idx, instruction);
-                        if (instruction == INVOKEINTERFACE) {
-                            // 这俩玩意有毛用....
-                            // int cnt = bytes.u1(); assert cnt > 0;
-                            // int zero = bytes.u1(); assert zero == 0;
-                            bytes.skip(2);
-                        }
-
-
-                        if (method_ref.name_and_type.types_size_cache_ == null) {
-                            String[] types = Descriptor.parameter_types(method_ref.name_and_type.descriptor);
-                            int[] type_size_cache = new int[types.length];
-                            for (int i = types.length - 1; i >= 0; i--) {
-                                type_size_cache[i] = (types[i].equals("long") || types[i].equals("double")) ? 1 : 0;
-                            }
-                            method_ref.name_and_type.types_size_cache_ = type_size_cache;
-                        }
-
-                        int[] type_size_cache = method_ref.name_and_type.types_size_cache_;
-                        Object[] args = new Object[type_size_cache.length];
-                        for (int i = type_size_cache.length - 1; i >= 0; i--) {
-                            args[i] = stack[--sp];
-                            sp = sp - type_size_cache[i];
-                        }
-
-//                        if (method_ref.name_and_type.types_cache_ == null) {
-//                            method_ref.name_and_type.types_cache_ = Descriptor.parameter_types(method_ref.name_and_type.descriptor);
-//                        }
-//                        String[] types = method_ref.name_and_type.types_cache_;
-//                        int n_args = types.length;
-//                        Object[] args = new Object[n_args];
-//                        while (--n_args >= 0) {
-//                            Object arg = stack[--sp];
-//                            if (types[n_args].equals("long") || types[n_args].equals("double")) {
-//                                assert arg instanceof Long || arg instanceof Double;
-//                                sp--;
-//                            }
-//                            // 这里应该做参数类型检查...
-//                            args[n_args] = arg;
-//                        }
-
+                        // INVOKEINTERFACE 的 count 与 0 这俩玩意有毛用...., 解码时已经丢掉了
 
-                        // 🦋 对于非 invokestatic, 其实 new 的时候类已经加载并初始化过了
-                        // 🦋 如果 invokestatic, 只有声明该属方法的类或接口需要初始化
-                        if (method_ref.z_class_cache_ == null) {
-                            method_ref.z_class_cache_ = vm.load_class(method_ref.class_name, false);
-                        }
-                        ZClass method_class = method_ref.z_class_cache_;
+                        // 参数先留在操作数栈上, args_base 指向第一个参数, 非 static 方法是 this
+                        ConstantPool.NameAndType name_and_type = method_ref.name_and_type;
+                        int args_base = sp - parameter_slots(name_and_type);
 
                         ZObject object_ref;
-                        ZClass object_class;
                         if (instruction == INVOKESTATIC) {
                             object_ref = null;
-                            object_class = null;
                         } else {
-                            object_ref = (ZObject) stack[--sp];
+                            object_ref = (ZObject) refs[--args_base];
                             vm.check_null(object_ref);
-                            object_class = object_ref.z_class();
-                            assert method_class.is_assignable_from(object_class);
-                        }
-
-                        // 其实这里可以把方法 resolve 过程全部统一掉, 不区分指令, 统一缓存
-                        // 目前只有 INVOKESPECIAL 处理方式比较简单直接
-//                        static ZMethod resolve_method(VM vm, InlineCache.CallSite call_site, int invoke_inst,
-//                        ConstantPool.MethodRef method_ref, ZClass method_class, ZObject object_ref) {}
-
-                        // todo invoke special 不需要内联缓存
-                        ZMethod z_method = resolve_method(vm,
-                                InlineCache.call_site(method, pc), instruction, method_ref, method_class, object_ref);
-                        if (instruction == INVOKEVIRTUAL) {
-                            // z_method = object_class.virtual_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
-
-                            // todo 提取一个方法, 看不下去了...
-                            // !!! 可以提前缓存 invoke 、 invokeExact 等
-                            // !!! 这里不能初始化... bug...
-//                            if (z_method.is_signature_polymorphic()) {
-//                                ZClass method_handle_class = vm.load_class("java/lang/invoke/MethodHandle", false);
-//                                if (z_method.declared_class() == method_handle_class) {
-//                                    // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.invokevirtual
-//                                    ZObject method_type = Natives.method_type(vm, method_ref.name_and_type.descriptor);
-//
-//                                    // object_ref instanceof java/lang/invoke/MethodHandle
-//                                    ZClass z_class = object_ref.z_class();
-//                                    ZMethod get_type = z_class.virtual_method("type", "()Ljava/lang/invoke/MethodType;");
-//                                    ZObject method_type_in_handle = (ZObject) get_type.invoke(object_ref, new Object[0]);
-//                                    ZMethod as_type = z_class.virtual_method("asType", "(Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/MethodType;");
-//
-//                                    String method_name = z_method.name();
-//                                    if (method_name.equals("invokeExact")) {
-//                                        assert method_type == method_type_in_handle;
-//                                    } else if (method_name.equals("invoke")) {
-//                                        if (method_type != method_type_in_handle) {
-//                                            object_ref = (ZObject) as_type.invoke(object_ref, new Object[] { method_type });
-//                                        }
-//                                    }
-//                                    // 实际参数类型放后面了
-//                                    // todo  this frame is not visible 隐藏栈帧
-//                                }
-//                                if (z_method.declared_class().major_version() >= JAVA_9_VERSION) {
-//                                    ZClass var_handle_class = vm.load_class("java/lang/invoke/VarHandle", false);
-//                                    if (z_method.declared_class() == var_handle_class) {
-//                                        throw new UnsupportedOperationException(); // todo
-//                                    }
-//                                }
-//                            }
-
-                            if (instruction == INVOKEVIRTUAL) {
-                                assert !z_method.is_instance_init() && !z_method.is_class_init();
+                            if (instruction != INVOKESPECIAL) {
+                                md.receiver(inst_ip, object_ref.z_class());
                             }
-                        } else if (instruction == INVOKESPECIAL) {
-                            // z_method = method_class.special_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
-                        } else if (instruction == INVOKEINTERFACE) {
-                            // assert method_class.is_interface();
-                            // z_method = object_class.interface_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
+                        }
+                        ZMethod z_method = resolve_invoke(vm, instruction, method_ref, object_ref);
+                        if (instruction == INVOKESPECIAL) {
+                            // invokespecial 的目标与接收者类型无关, 解析一次就固定了
+                            decoded_code.quicken(inst_ip, INVOKESPECIAL_QUICK, z_method);
                         } else if (instruction == INVOKESTATIC) {
-                            // z_method = method_class.static_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
-                            // !!! 注意这里, 只有声明该属方法的类或接口需要初始化
-                            z_method.declared_class().initialize(vm);
+                            // 🦋 与 getstatic 一样, 初始化完成之后才能 quicken
+                            if (z_method.declared_class().is_fully_initialized()) {
+                                decoded_code.quicken(inst_ip, INVOKESTATIC_QUICK, z_method);
+                            }
                         } else {
-                            throw new AssertionError();
+                            // 调用点自己的内联缓存
+                            decoded_code.quicken(inst_ip, instruction == INVOKEVIRTUAL ? INVOKEVIRTUAL_QUICK : INVOKEINTERFACE_QUICK,
+                                    new InlineCache(instruction, method_ref));
                         }
 
-                        vm_stack_frame.program_counter = bytes.pc();
-//                        vm_stack_frame.operand_stack_pointer = sp;
-
-                        // 参数类型检查
-                        z_method.check_args(args);
-                        Object return_value = z_method.invoke(object_ref, args);
-                        if (z_method.has_return()) {
-                            // 返回类型检查
-                            z_method.check_return(return_value);
-                            if (return_value instanceof Long || return_value instanceof Double) {
-                                String return_type = z_method.return_type();
-                                assert return_type.equals("long") || return_type.equals("double");
-                                stack[sp++] = null;
-                            }
-                            stack[sp++] = return_value;
+                        sp = invoke(vm, thread, frame, z_method, object_ref, args_base, sp, name_and_type.parameter_kinds_cache_);
+                        break;
+                    }
+                    case INVOKESPECIAL_QUICK  : // 214    0xD6
+                    {
+                        ZMethod z_method = (ZMethod) decoded_code.quick(inst_ip);
+                        if (z_method == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
+                        }
+                        ip++;
+                        int args_base = sp - z_method.parameter_slots_cache_;
+                        ZObject object_ref = (ZObject) refs[--args_base];
+                        vm.check_null(object_ref);
+                        sp = invoke(vm, thread, frame, z_method, object_ref, args_base, sp, z_method.parameter_kinds_cache_);
+                        break;
+                    }
+                    case INVOKESTATIC_QUICK   : // 215    0xD7
+                    {
+                        ZMethod z_method = (ZMethod) decoded_code.quick(inst_ip);
+                        if (z_method == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
                         }
+                        ip++;
+                        int args_base = sp - z_method.parameter_slots_cache_;
+                        sp = invoke(vm, thread, frame, z_method, null, args_base, sp, z_method.parameter_kinds_cache_);
+                        break;
+                    }
+                    case INVOKEVIRTUAL_QUICK  : // 234    0xEA
+                    case INVOKEINTERFACE_QUICK: // 235    0xEB
+                    {
+                        InlineCache cache = (InlineCache) decoded_code.quick(inst_ip);
+                        if (cache == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
+                        }
+                        ip++;
+                        ConstantPool.NameAndType name_and_type = cache.method_ref.name_and_type;
+                        int args_base = sp - name_and_type.parameter_slots_cache_;
+                        ZObject object_ref = (ZObject) refs[--args_base];
+                        vm.check_null(object_ref);
+                        ZClass receiver_class = object_ref.z_class();
+                        md.receiver(inst_ip, receiver_class);
+                        ZMethod z_method = cache.lookup(receiver_class);
+                        sp = invoke(vm, thread, frame, z_method, object_ref, args_base, sp, name_and_type.parameter_kinds_cache_);
                         break;
                     }
                     case INVOKEDYNAMIC        : // 186    0xBA
-                        idx = bytes.u2();
+                        idx = code[ip++];
                         InvokeDynamic invoke_dynamic = cp.invoke_dynamic_at(idx);
-                        int a = bytes.u1(); assert a == 0;
-                        int b = bytes.u1(); assert b == 0;
                         // 注意 CallSite 是个抽象类....
                         // "java/lang/invoke/CallSite"
                         // todo 缓存起来...
@@ -1553,95 +1266,265 @@ class Interpreter {
                         // vm.load_class("java/lang/invoke/CallSite", true)
                         throw new UnsupportedOperationException(); // todo
                     case NEW                  : // 187    0xBB
-                        String z_class = cp.class_at(bytes.u2()); // class
+                    {
+                        ZClass z_class = vm.load_class(cp.class_at(code[ip++]), true); // class
                         // 🦋 如果类木有初始化需要初始化 💥💥💥
-                        // todo 缓存加载的 class
-                        stack[sp++] = vm.load_class(z_class, true).allocate();
+                        // <clinit> 里头 new 自己的时候类还没初始化完, 这时不能 quicken, 不然别的线程会跳过初始化检查
+                        if (z_class.is_fully_initialized()) {
+                            decoded_code.quicken(inst_ip, NEW_QUICK, z_class);
+                        }
+                        refs[sp++] = z_class.allocate();
+                        break;
+                    }
+                    case NEW_QUICK            : // 203    0xCB
+                        a1 = decoded_code.quick(inst_ip);
+                        if (a1 == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
+                        }
+                        ip++;
+                        refs[sp++] = ((ZClass) a1).allocate();
                         break;
                     case NEWARRAY             : // 188    0xBC
                         // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.newarray
-                        i1 = int_val(stack[--sp]); // array_length
-                        int a_type = bytes.u1(); // a_type
+                        i1 = (int) prims[--sp]; // array_length
+                        int a_type = code[ip++]; // a_type
                         if (i1 < 0) {
-                            throw new ZThrowable(vm.load_class("java/lang/NegativeArraySizeException", true).new_instance());
+                            throw ZThrowable.implicit(vm, "java/lang/NegativeArraySizeException", null);
                         }
-                        stack[sp++] = vm.new_primitive_array(a_type, i1);
+                        refs[sp++] = vm.new_primitive_array(a_type, i1);
                         break;
                     case ANEWARRAY            : // 189    0xBD
-                        i1 = int_val(stack[--sp]); // array_length
+                        i1 = (int) prims[--sp]; // array_length
                         if (i1 < 0) {
-                            throw new ZThrowable(vm.load_class("java/lang/NegativeArraySizeException", true).new_instance());
+                            throw ZThrowable.implicit(vm, "java/lang/NegativeArraySizeException", null);
                         }
-                        String component_type = cp.class_at(bytes.u2()); // class | array | interface
-                        // todo 缓存加载的 class
-                        stack[sp++] = vm.load_class(component_type, false).new_array(i1); // 🦋 不需要初始化
+                        String component_type = cp.class_at(code[ip++]); // class | array | interface
+                        a1 = vm.load_class(component_type, false); // 🦋 不需要初始化
+                        decoded_code.quicken(inst_ip, ANEWARRAY_QUICK, a1);
+                        refs[sp++] = ((ZClass) a1).new_array(i1);
+                        break;
+                    case ANEWARRAY_QUICK      : // 204    0xCC
+                        a1 = decoded_code.quick(inst_ip);
+                        if (a1 == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
+                        }
+                        i1 = (int) prims[--sp]; // array_length
+                        if (i1 < 0) {
+                            throw ZThrowable.implicit(vm, "java/lang/NegativeArraySizeException", null);
+                        }
+                        ip++;
+                        refs[sp++] = ((ZClass) a1).new_array(i1);
                         break;
                     case ARRAYLENGTH          : // 190    0xBE
-                        a1 = stack[--sp];
-                        vm.check_null(a1);
-                        stack[sp++] = ((ZArray) a1).length();
+                        a1 = refs[--sp];
+                        vm.check_null_implicit(a1);
+                        prims[sp++] = ((ZArray) a1).length();
                         break;
                     case ATHROW               : // 191    0xBF
-                        ZObject throwable = (ZObject) stack[--sp];
-                        throw new ZThrowable(throwable);
+                        ZObject throwable = (ZObject) refs[--sp];
+                        throw new ZThrowable(vm.check_null(throwable));
                     case CHECKCAST            : // 192    0xC0
-                        String cast_type = cp.class_at(bytes.u2()); // class | array | interface
-                        a1 = stack[sp - 1];
+                    case CHECKCAST_QUICK      : // 205    0xCD
+                    {
+                        ZClass cast_class;
+                        if (instruction == CHECKCAST && VM.verify && decoded_code.unchecked(inst_ip, CHECKCAST)) {
+                            ip++;
+                            break;
+                        } else if (instruction == CHECKCAST) {
+                            cast_class = vm.load_class(cp.class_at(code[ip++]), false); // class | array | interface 🦋 不需要初始化
+                            decoded_code.quicken(inst_ip, CHECKCAST_QUICK, cast_class);
+                        } else {
+                            cast_class = (ZClass) decoded_code.quick(inst_ip);
+                            if (cast_class == null) {
+                                ip = decoded_code.unquicken(inst_ip, instruction);
+                                continue;
+                            }
+                            ip++;
+                        }
+                        a1 = refs[sp - 1];
                         if (a1 == null) {
                             // null 不处理, jls 允许将 null cast 成其他类型
                         } else {
-                            // todo 缓存加载的 class
-                            if (!vm.load_class(cast_type, false).is_instance(vm, false, a1)) { // 🦋 不需要初始化
-                                throw new ZThrowable(vm.load_class("java/lang/ClassCastException", true).new_instance());
+                            if (!cast_class.is_instance(vm, false, a1)) {
+                                throw vm.class_cast_exception(a1, cast_class);
                             }
                         }
                         break;
+                    }
+                    case CHECKCAST_UNCHECKED  : // 233    0xE9
+                        // 与 jvm 不同, 不再解析目标类
+                        ip++;
+                        break;
                     case INSTANCEOF           : // 193    0xC1
-                        a1 = stack[--sp];
-                        String ins_type = cp.class_at(bytes.u2()); // // class | array | interface
-                        //if (a1 == null) {
-                        //    stack[sp++] = 0;
-                        //} else {
-                            // todo 缓存加载的 class
-                            stack[sp++] = vm.load_class(ins_type, false).is_instance(vm, false, a1) ? 1 : 0; // 🦋 不需要初始化
-                        //}
+                        a1 = refs[--sp];
+                        String ins_type = cp.class_at(code[ip++]); // // class | array | interface
+                        a2 = vm.load_class(ins_type, false); // 🦋 不需要初始化
+                        decoded_code.quicken(inst_ip, INSTANCEOF_QUICK, a2);
+                        prims[sp++] = ((ZClass) a2).is_instance(vm, false, a1) ? 1 : 0;
+                        break;
+                    case INSTANCEOF_QUICK     : // 206    0xCE
+                        a2 = decoded_code.quick(inst_ip);
+                        if (a2 == null) {
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
+                        }
+                        a1 = refs[--sp];
+                        ip++;
+                        prims[sp++] = ((ZClass) a2).is_instance(vm, false, a1) ? 1 : 0;
                         break;
                     case MONITORENTER         : // 194    0xC2
-                        a1 = vm.check_null(stack[--sp]);
+                        a1 = vm.check_null_implicit(refs[--sp]);
                         ((ZObject) a1).monitor_enter();
                         break;
                     case MONITOREXIT          : // 195    0xC3
-                        a1 = vm.check_null(stack[--sp]);
+                        a1 = vm.check_null_implicit(refs[--sp]);
                         ((ZObject) a1).monitor_exit();
                         break;
-                    case WIDE                 : // 196    0xC4
-                        next_wide = true;
-                        break;
                     case MULTIANEWARRAY       : // 197    0xC5
-                        // int array_length = int_val(stack[--sp]);
-                        String ma_array_type = cp.class_at(bytes.u2()); // class | array | interface
-                        int dims = bytes.u1();
+                        String ma_array_type = cp.class_at(code[ip++]); // class | array | interface
+                        int dims = code[ip++];
                         assert dims >= 1;
                         int[] dimensions = new int[dims];
                         while (--dims >= 0) {
-                            dimensions[dims] = int_val(stack[--sp]);
+                            dimensions[dims] = (int) prims[--sp];
                         }
-                        // todo 缓存加载的 class
-                        stack[sp++] = vm.load_class(ma_array_type, false).new_multi_array(dimensions); // 🦋 不需要初始化
+                        a1 = vm.load_class(ma_array_type, false); // 🦋 不需要初始化
+                        decoded_code.quicken(inst_ip, MULTIANEWARRAY_QUICK, a1);
+                        refs[sp++] = ((ZClass) a1).new_multi_array(dimensions);
                         break;
-                    case IFNULL               : // 198    0xC6
-                        a1 = stack[--sp];
-                        offset = bytes.s2();
+                    case MULTIANEWARRAY_QUICK : // 207    0xCF
+                    {
+                        a1 = decoded_code.quick(inst_ip);
                         if (a1 == null) {
-                            bytes.pc(pc + offset);
+                            ip = decoded_code.unquicken(inst_ip, instruction);
+                            continue;
+                        }
+                        ip++;
+                        int qdims = code[ip++];
+                        int[] q_dimensions = new int[qdims];
+                        while (--qdims >= 0) {
+                            q_dimensions[qdims] = (int) prims[--sp];
+                        }
+                        refs[sp++] = ((ZClass) a1).new_multi_array(q_dimensions);
+                        break;
+                    }
+                    case IFNULL               : // 198    0xC6
+                        a1 = refs[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, a1 == null, target < inst_ip)) {
+                            ip = target;
                         }
                         break;
                     case IFNONNULL            : // 199    0xC7
-                        a1 = stack[--sp];
-                        offset = bytes.s2();
-                        if (a1 != null) {
-                            bytes.pc(pc + offset);
+                        a1 = refs[--sp];
+                        target = code[ip++];
+                        if (md.branch(inst_ip, a1 != null, target < inst_ip)) {
+                            ip = target;
+                        }
+                        break;
+                    // 超级指令, 见 Superinstructions, 序列后面几条指令原样留在指令流里, 这里直接读它们的操作数然后跳过
+                    case ALOAD_GETFIELD       : // 216    0xD8
+                        // [aload, idx][getfield, cpidx] 或者 [aload, idx][getfield_quick, cpidx], 后者的 slot << 8 | kind 在 quick_cache_
+                        a1 = refs[base + code[ip++]];
+                        a2 = code[ip] == GETFIELD_QUICK ? decoded_code.quick(ip) : null;
+                        if (a2 == null) {
+                            // getfield 还没解析过 (或者解析结果还看不到), 只做 aload, 留给下一轮的 getfield 去 quicken
+                            refs[sp++] = a1;
+                            break;
+                        }
+                        idx = (Integer) a2;
+                        ip += 2;
+                        vm.check_null_implicit(a1);
+                        sp += get_field(prims, refs, sp, (ZObject) a1, idx >>> 8, (char) (idx & 0xff));
+                        break;
+                    case ALOAD_ILOAD          : // 217    0xD9
+                        // [aload, a][iload, i]
+                        refs[sp++] = refs[base + code[ip]];
+                        prims[sp++] = prims[base + code[ip + 2]];
+                        ip += 3;
+                        break;
+                    case ALOAD_ILOAD_IALOAD   : // 218    0xDA
+                        // [aload, a][iload, i][iaload]
+                        z_arr = vm.check_null_implicit(((ZArray) refs[base + code[ip]]));
+                        idx = (int) prims[base + code[ip + 2]];
+                        ip += 4;
+                        prims[sp++] = z_arr.int_at(idx);
+                        break;
+                    case ALOAD_ILOAD_DALOAD   : // 219    0xDB
+                        z_arr = vm.check_null_implicit(((ZArray) refs[base + code[ip]]));
+                        idx = (int) prims[base + code[ip + 2]];
+                        ip += 4;
+                        prims[sp] = double_bits(z_arr.double_at(idx));
+                        sp += 2;
+                        break;
+                    case ALOAD_ILOAD_AALOAD   : // 220    0xDC
+                        z_arr = vm.check_null_implicit(((ZArray) refs[base + code[ip]]));
+                        idx = (int) prims[base + code[ip + 2]];
+                        ip += 4;
+                        refs[sp++] = z_arr.ref_at(idx);
+                        break;
+                    case ILOAD_ILOAD          : // 221    0xDD
+                        // [iload, a][iload, b]
+                        prims[sp++] = prims[base + code[ip]];
+                        prims[sp++] = prims[base + code[ip + 2]];
+                        ip += 3;
+                        break;
+                    case ILOAD_ILOAD_IF_ICMPEQ: // 222    0xDE
+                        // [iload, a][iload, b][if_icmpxx, target]
+                        i1 = (int) prims[base + code[ip]];
+                        i2 = (int) prims[base + code[ip + 2]];
+                        ip = md.branch(inst_ip, i1 == i2, code[ip + 4] < inst_ip) ? code[ip + 4] : ip + 5;
+                        break;
+                    case ILOAD_ILOAD_IF_ICMPNE: // 223    0xDF
+                        i1 = (int) prims[base + code[ip]];
+                        i2 = (int) prims[base + code[ip + 2]];
+                        ip = md.branch(inst_ip, i1 != i2, code[ip + 4] < inst_ip) ? code[ip + 4] : ip + 5;
+                        break;
+                    case ILOAD_ILOAD_IF_ICMPLT: // 224    0xE0
+                        i1 = (int) prims[base + code[ip]];
+                        i2 = (int) prims[base + code[ip + 2]];
+                        ip = md.branch(inst_ip, i1 < i2, code[ip + 4] < inst_ip) ? code[ip + 4] : ip + 5;
+                        break;
+                    case ILOAD_ILOAD_IF_ICMPGE: // 225    0xE1
+                        i1 = (int) prims[base + code[ip]];
+                        i2 = (int) prims[base + code[ip + 2]];
+                        ip = md.branch(inst_ip, i1 >= i2, code[ip + 4] < inst_ip) ? code[ip + 4] : ip + 5;
+                        break;
+                    case ILOAD_ILOAD_IF_ICMPGT: // 226    0xE2
+                        i1 = (int) prims[base + code[ip]];
+                        i2 = (int) prims[base + code[ip + 2]];
+                        ip = md.branch(inst_ip, i1 > i2, code[ip + 4] < inst_ip) ? code[ip + 4] : ip + 5;
+                        break;
+                    case ILOAD_ILOAD_IF_ICMPLE: // 227    0xE3
+                        i1 = (int) prims[base + code[ip]];
+                        i2 = (int) prims[base + code[ip + 2]];
+                        ip = md.branch(inst_ip, i1 <= i2, code[ip + 4] < inst_ip) ? code[ip + 4] : ip + 5;
+                        break;
+                    case ILOAD_ICONST_IADD_ISTORE: // 228    0xE4
+                        // [iload, a][iconst_<n>][iadd][istore, b], 不经过操作数栈
+                        i1 = (int) prims[base + code[ip]];
+                        i2 = code[ip + 1] - ICONST_0;
+                        prims[base + code[ip + 4]] = i1 + i2;
+                        ip += 5;
+                        break;
+                    case ILOAD_BIPUSH_IADD_ISTORE: // 229    0xE5
+                        // [iload, a][bipush|sipush, n][iadd][istore, b]
+                        i1 = (int) prims[base + code[ip]];
+                        i2 = code[ip + 2];
+                        prims[base + code[ip + 5]] = i1 + i2;
+                        ip += 6;
+                        break;
+                    case IINC_GOTO            : // 230    0xE6
+                        // [iinc, idx, const][goto, target], 循环的回边
+                        idx = base + code[ip];
+                        prims[idx] = ((int) prims[idx]) + code[ip + 1];
+                        target = code[ip + 3];
+                        if (target < inst_ip) {
+                            md.backedge();
                         }
+                        ip = target;
                         break;
                     case BREAKPOINT           : // 202    0xCA
                     case IMDEP_1              : // 254    0xFE
@@ -1649,41 +1532,20 @@ class Interpreter {
                         throw new UnsupportedOperationException(); // todo
                     default: throw new AssertionError();
                 }
-            } catch (ZThrowable zt) {
-                {
-                    vm_stack_frame.program_counter = bytes.pc();
-//                    vm_stack_frame.operand_stack_pointer = sp;
-                }
-
-//                // debug
-//                for (ClassFile.Exception exception : code.exception_table) {
-//                    System.out.println(exception.start_pc + "-" + exception.end_pc + " > " + exception.catch_type());
-//                }
-
-                ZObject z_throwable = zt.z_throwable;
-                vm.check_null(z_throwable);
-
-                // todo 优化下这里的查找过程
-                ClassFile.Exception caught = null;
-                for (ClassFile.Exception exception : code.exception_table) {
-                    // 包括 from 不包括 to
-                    if (pc >= exception.start_pc && pc < exception.end_pc) {
-                        if (exception.catch_any() ||
-                                vm.load_class(exception.catch_type(), false) // 🦋 不需要初始化
-                                        .is_assignable_from(z_throwable.z_class())
-                        ) {
-                            bytes.pc(exception.handler_pc);
-                            caught = exception;
-                            break;
-                        }
-                    }
-                }
+            } catch (ZThrowable | NullPointerException | ArrayIndexOutOfBoundsException ex) {
+                // frame.ip 就是 inst_ip, 隐式检查抛出的宿主异常在这里换成 guest 的
+                ZThrowable zt = ZThrowable.translate(vm, frame, ex);
+                // 异常表已经换算成 ip 并按 ip 展开, catch 的类解析一次就缓存, 见 HandlerTable
+                HandlerTable.Handler caught = decoded_code.handler_table().find(vm, inst_ip, zt.z_class());
                 if (caught == null) {
                     Natives.sneakyThrows(zt);
-                    return null;
+                    return;
                 } else {
-                    stack[sp++] = z_throwable;
-                    bytes.pc(caught.handler_pc);
+                    // 进入 handler 之前清空操作数栈
+                    sp = base + max_locals;
+                    // handler 不读异常对象就压 null, 隐式异常不用创建 guest 对象
+                    refs[sp++] = caught.uses_exception ? zt.z_throwable() : null;
+                    ip = caught.handler_ip;
                 }
             } catch (Throwable t) {
                 Natives.sneakyThrows(t);
@@ -1691,33 +1553,278 @@ class Interpreter {
         }
     }
 
-    static ZMethod resolve_method(VM vm, InlineCache.CallSite call_site, int invoke_inst,
-                           ConstantPool.MethodRef method_ref, ZClass method_class, ZObject object_ref) {
-        ZMethod method = vm.inline_cache_.get(call_site, object_ref);
-        if (method == null) {
-            method = resolve_method0(invoke_inst, method_ref, method_class, object_ref);
-            vm.inline_cache_.put(call_site, object_ref, method);
+    // 参数占用的 slot 数, 不包括 this, 顺便缓存参数类型
+    static int parameter_slots(ConstantPool.NameAndType name_and_type) {
+        if (name_and_type.parameter_slots_cache_ == -1) {
+            char[] kinds = Descriptor.parameter_kinds(name_and_type.descriptor);
+            int n_slots = 0;
+            for (char kind : kinds) {
+                n_slots += slots_of(kind);
+            }
+            name_and_type.parameter_kinds_cache_ = kinds;
+            name_and_type.parameter_slots_cache_ = n_slots;
+        }
+        return name_and_type.parameter_slots_cache_;
+    }
+
+    static ZField resolve_static_field(VM vm, ConstantPool.FieldRef field_ref) {
+        if (field_ref.z_field_cache_ == null) {
+            ZClass z_class = vm.load_class(field_ref.class_name, false);
+            field_ref.z_field_cache_ = z_class.field(field_ref.name_and_type.name);
+            // 🦋 只有声明该属性的类需要初始化
+            field_ref.z_field_cache_.declared_class().initialize(vm);
+        }
+        return field_ref.z_field_cache_;
+    }
+
+    static int resolve_field_index(VM vm, ConstantPool.FieldRef field_ref) {
+        if (field_ref.index_cache_ == -1) {
+            ZClass z_class = vm.load_class(field_ref.class_name, false); // 🦋 new 的时候类已经加载并初始化过了
+            ZField field = z_class.field(field_ref.name_and_type.name);
+            assert field.field_name().equals(field_ref.name_and_type.name);
+            field_ref.index_cache_ = field.field_index();
+        }
+        return field_ref.index_cache_;
+    }
+
+    // 实例字段读到 slot, 基本类型区与 slot 的格式一样, 直接拷贝, 返回占用的 slot 个数
+    static int get_field(long[] prims, Object[] refs, int slot, ZObject object_ref, int index, char kind) {
+        if (kind == 'L') {
+            refs[slot] = object_ref.get_ref(index);
+            return 1;
+        } else {
+            prims[slot] = object_ref.get_prim(index);
+            return slots_of(kind);
+        }
+    }
+
+    static void put_field(long[] prims, Object[] refs, int slot, ZObject object_ref, int index, char kind) {
+        if (kind == 'L') {
+            object_ref.put_ref(index, refs[slot]);
+        } else {
+            object_ref.put_prim(index, prims[slot]);
         }
-        return method;
     }
 
-    private static ZMethod resolve_method0(int invoke_inst, ConstantPool.MethodRef method_ref, ZClass method_class, ZObject object_ref) {
-        ZMethod z_method;
-        if (invoke_inst == INVOKEVIRTUAL) {
-            z_method = object_ref.z_class().virtual_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
-        } else if (invoke_inst == INVOKESPECIAL) {
-            z_method = method_class.special_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
-        } else if (invoke_inst == INVOKEINTERFACE) {
-            assert method_class.is_interface();
-            z_method = object_ref.z_class().interface_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
-        } else if (invoke_inst == INVOKESTATIC) {
-            z_method = method_class.static_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
+    // invoke* 的方法解析, 非 static 方法 object_ref 已经判过空, invokestatic 会初始化声明方法的类
+    static ZMethod resolve_invoke(VM vm, int instruction, ConstantPool.MethodRef method_ref, @Nullable ZObject object_ref) {
+        // 🦋 对于非 invokestatic, 其实 new 的时候类已经加载并初始化过了
+        // 🦋 如果 invokestatic, 只有声明该属方法的类或接口需要初始化
+        if (method_ref.z_class_cache_ == null) {
+            method_ref.z_class_cache_ = vm.load_class(method_ref.class_name, false);
+        }
+        ZClass method_class = method_ref.z_class_cache_;
+
+        assert object_ref == null || method_class.is_assignable_from(object_ref.z_class());
+        // 其实这里可以把方法 resolve 过程全部统一掉, 不区分指令, 统一缓存
+        // 目前只有 INVOKESPECIAL 处理方式比较简单直接
+
+        ZMethod z_method = resolve_method(vm, instruction, method_ref, object_ref);
+        if (instruction == INVOKEVIRTUAL) {
+            // z_method = object_class.virtual_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
+
+            // todo 提取一个方法, 看不下去了...
+            // !!! 可以提前缓存 invoke 、 invokeExact 等
+            // !!! 这里不能初始化... bug...
+//                            if (z_method.is_signature_polymorphic()) {
+//                                ZClass method_handle_class = vm.load_class("java/lang/invoke/MethodHandle", false);
+//                                if (z_method.declared_class() == method_handle_class) {
+//                                    // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-6.html#jvms-6.5.invokevirtual
+//                                    ZObject method_type = Natives.method_type(vm, method_ref.name_and_type.descriptor);
+//
+//                                    // object_ref instanceof java/lang/invoke/MethodHandle
+//                                    ZClass z_class = object_ref.z_class();
+//                                    ZMethod get_type = z_class.virtual_method("type", "()Ljava/lang/invoke/MethodType;");
+//                                    ZObject method_type_in_handle = (ZObject) get_type.invoke(object_ref, new Object[0]);
+//                                    ZMethod as_type = z_class.virtual_method("asType", "(Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/MethodType;");
+//
+//                                    String method_name = z_method.name();
+//                                    if (method_name.equals("invokeExact")) {
+//                                        assert method_type == method_type_in_handle;
+//                                    } else if (method_name.equals("invoke")) {
+//                                        if (method_type != method_type_in_handle) {
+//                                            object_ref = (ZObject) as_type.invoke(object_ref, new Object[] { method_type });
+//                                        }
+//                                    }
+//                                    // 实际参数类型放后面了
+//                                    // todo  this frame is not visible 隐藏栈帧
+//                                }
+//                                if (z_method.declared_class().major_version() >= JAVA_9_VERSION) {
+//                                    ZClass var_handle_class = vm.load_class("java/lang/invoke/VarHandle", false);
+//                                    if (z_method.declared_class() == var_handle_class) {
+//                                        throw new UnsupportedOperationException(); // todo
+//                                    }
+//                                }
+//                            }
+
+            if (instruction == INVOKEVIRTUAL) {
+                assert !z_method.is_instance_init() && !z_method.is_class_init();
+            }
+        } else if (instruction == INVOKESPECIAL) {
+            // z_method = method_class.special_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
+        } else if (instruction == INVOKEINTERFACE) {
+            // assert method_class.is_interface();
+            // z_method = object_class.interface_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
+        } else if (instruction == INVOKESTATIC) {
+            // z_method = method_class.static_method(method_ref.name_and_type.name, method_ref.name_and_type.descriptor);
+            // !!! 注意这里, 只有声明该属方法的类或接口需要初始化
+            z_method.declared_class().initialize(vm);
         } else {
             throw new AssertionError();
         }
         return z_method;
     }
 
+    private static final Object[] NO_ARGS = new Object[0];
+
+    // 调用解析好的方法, 参数在 [args_base, sp) 上(非 static 方法的 this 已经取出来了), 返回调用之后的 sp
+    static int invoke(VM vm, ZThread thread, ZThread.Frame frame, ZMethod z_method,
+                              @Nullable ZObject object_ref, int args_base, int sp, char[] kinds) throws ZThrowable {
+        long[] prims = frame.chunk.prims;
+        Object[] refs = frame.chunk.refs;
+        Intrinsics.Intrinsic intrinsic = z_method.intrinsic_;
+        if (intrinsic != null) {
+            int ret = intrinsic.invoke(vm, prims, refs, args_base);
+            if (ret != -1) {
+                return ret;
+            }
+        }
+        if (VM.inline_trivial_methods) {
+            Inliner inliner = z_method.inliner();
+            if (inliner != Inliner.NONE) {
+                return inliner.execute(prims, refs, object_ref, args_base, z_method.return_kind_cache_);
+            }
+        }
+        if (z_method.is_interpreted()) {
+            // 被调用者的 frame 从 args_base 开始, 参数原地变成它的局部变量, 返回值写回 args_base
+            ZThread.Frame callee = thread.push_frame(z_method, frame.chunk, args_base, sp - args_base);
+            try {
+                z_method.debug();
+                if (z_method.synchronized_cache_) {
+                    // 与 ZMethod.resolve_invokable 锁同一个对象
+                    synchronized (z_method.lock_object(object_ref)) {
+                        execute(vm, thread, callee);
+                    }
+                } else {
+                    execute(vm, thread, callee);
+                }
+            } finally {
+                thread.pop_frame(callee);
+            }
+            sp = args_base;
+            char return_kind = z_method.return_kind_cache_;
+            if (return_kind != 'V') {
+                if (callee.chunk != frame.chunk) {
+                    // 被调用者放不下换了 chunk, 返回值要拷回来
+                    prims[sp] = callee.chunk.prims[callee.base];
+                    refs[sp] = callee.chunk.refs[callee.base];
+                }
+                sp += slots_of(return_kind);
+            }
+        } else {
+            // native 等走 Invokable, 按参数类型从 slot 装箱参数, 没有参数的共用一个空数组
+            Object[] args = kinds.length == 0 ? NO_ARGS : new Object[kinds.length];
+            for (int i = kinds.length - 1; i >= 0; i--) {
+                sp -= slots_of(kinds[i]);
+                args[i] = box(prims, refs, sp, kinds[i]);
+            }
+            sp = args_base;
+            // 参数类型检查: 调用者校验通过的话, invoke 指令的参数类型校验的时候已经查过了
+            assert (VM.verify && frame.method.verifier() != null) || z_method.check_args(args);
+            Object return_value = z_method.invoke(object_ref, args);
+            if (z_method.has_return()) {
+                // 返回类型检查: 走到这里的都是 native 之类没有字节码的方法, 返回值校验器管不到
+                assert z_method.check_return(return_value);
+                sp += unbox(prims, refs, sp, z_method.return_kind_cache_, return_value);
+            }
+        }
+        return sp;
+    }
+
+    // slot 搬运, 给 dup 系列用
+    private static void mov(long[] prims, Object[] refs, int from, int to) {
+        prims[to] = prims[from];
+        refs[to] = refs[from];
+    }
+
+    // kind 见 Descriptor.kind
+    static int slots_of(char kind) {
+        return kind == 'J' || kind == 'D' ? 2 : 1;
+    }
+
+    // 按类型把 slot 装箱, int 系列统一装箱成 Integer
+    static Object box(long[] prims, Object[] refs, int slot, char kind) {
+        switch (kind) {
+            case 'Z': case 'B': case 'C': case 'S': case 'I':
+                return (int) prims[slot];
+            case 'J':
+                return prims[slot];
+            case 'F':
+                return as_float(prims[slot]);
+            case 'D':
+                return as_double(prims[slot]);
+            default:
+                return refs[slot];
+        }
+    }
+
+    // 按类型拆箱写入 slot, 返回占用的 slot 个数
+    static int unbox(long[] prims, Object[] refs, int slot, char kind, Object value) {
+        switch (kind) {
+            case 'Z': case 'B': case 'C': case 'S': case 'I':
+                // native 可能返回 Boolean Character 之类的
+                prims[slot] = int_val(value);
+                return 1;
+            case 'J':
+                prims[slot] = long_val(value);
+                return 2;
+            case 'F':
+                prims[slot] = float_bits((float) value);
+                return 1;
+            case 'D':
+                prims[slot] = double_bits((double) value);
+                return 2;
+            default:
+                refs[slot] = value;
+                return 1;
+        }
+    }
+    // invokevirtual / invokeinterface 再按接收者类型查 vtable / itable 选出实际调用的方法, 调用点还有内联缓存, 见 InlineCache
+    private static ZMethod resolve_method(VM vm, int invoke_inst, ConstantPool.MethodRef method_ref, ZObject object_ref) {
+        ZMethod resolved = resolve_method_ref(vm, invoke_inst, method_ref);
+        if (invoke_inst == INVOKEVIRTUAL || invoke_inst == INVOKEINTERFACE) {
+            return object_ref.z_class().select(resolved);
+        }
+        return resolved;
+    }
+
+    // MethodRef 只解析一次, 缓存在 MethodRef, invokespecial / invokestatic 解析出来的就是调用目标
+    static ZMethod resolve_method_ref(VM vm, int invoke_inst, ConstantPool.MethodRef method_ref) {
+        if (method_ref.z_method_cache_ == null) {
+            if (method_ref.z_class_cache_ == null) {
+                method_ref.z_class_cache_ = vm.load_class(method_ref.class_name, false);
+            }
+            ZClass method_class = method_ref.z_class_cache_;
+            String name = method_ref.name_and_type.name;
+            String descriptor = method_ref.name_and_type.descriptor;
+            ZMethod z_method;
+            if (invoke_inst == INVOKEVIRTUAL) {
+                z_method = method_class.virtual_method(name, descriptor);
+            } else if (invoke_inst == INVOKEINTERFACE) {
+                assert method_class.is_interface();
+                z_method = method_class.interface_method(name, descriptor);
+            } else if (invoke_inst == INVOKESPECIAL) {
+                z_method = method_class.special_method(name, descriptor);
+            } else if (invoke_inst == INVOKESTATIC) {
+                z_method = method_class.static_method(name, descriptor);
+            } else {
+                throw new AssertionError();
+            }
+            method_ref.z_method_cache_ = z_method;
+        }
+        return method_ref.z_method_cache_;
+    }
+
 
     static boolean bool_val(Object object) {
         return ((Integer) object) == 1;
@@ -1751,4 +1858,21 @@ class Interpreter {
     static long long_val(Object object) {
         return ((Long) object);
     }
+
+    // float double 在 slot 里存的是原始 bit, 不能用 floatToIntBits, 会把 NaN 归一化
+    static float as_float(long slot) {
+        return Float.intBitsToFloat((int) slot);
+    }
+
+    static long float_bits(float f) {
+        return Float.floatToRawIntBits(f);
+    }
+
+    static double as_double(long slot) {
+        return Double.longBitsToDouble(slot);
+    }
+
+    static long double_bits(double d) {
+        return Double.doubleToRawLongBits(d);
+    }
 }
@@ -0,0 +1,694 @@
+package zvm;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static zvm.Interpreter.*;
+
+/**
+ * 内建方法 (intrinsic): JDK 里最热的一些小方法换成宿主实现, 直接读写 guest String 的 char[] (ZArray) 与基本类型的 slot
+ *
+ * 按 类名 + 方法名 + 描述符 登记, 创建 ZMethod 的时候 (链接时) 查一次, 放在 ZMethod.intrinsic_
+ * Interpreter.invoke 先看 intrinsic, 不建 frame、不装箱, 也不走 Natives 的分派 (StrictMath.sqrt, System.arraycopy, Object.hashCode)
+ * 编译之后的代码: 纯函数的 static 方法 (pure) 直接调用宿主的同名方法, 见 JitCompiler.invoke; 其它的也经过 Interpreter.invoke
+ *
+ * 语义与 JDK8 的方法体一样, 包括 String.hash 的缓存; 方法体会抛异常或者走少见分支的情况 (下标越界、参数是 null、增补字符)
+ * intrinsic 不处理, 返回 -1, 照旧执行方法体
+ *
+ * java.util.Arrays 的 fill copyOf copyOfRange equals hashCode sort binarySearch 直接处理 ZArray 背后的宿主数组
+ *  引用数组的 equals hashCode compareTo compare 回调 guest 方法, 排序与二分用的宿主 TimSort / binarySearch 与 JDK8 的代码一样,
+ *  回调的顺序也一样; 回调抛的 guest 异常照常往外抛, 只是栈里少了 Arrays 自己的几层
+ *
+ * @author chuxiaofeng
+ */
+final class Intrinsics {
+
+    interface Intrinsic {
+        /**
+         * 参数在 slot [args_base, ...), 非 static 方法 args_base 是 this (已经判过空)
+         * 返回值写回 args_base, 返回新的 sp, 与 Interpreter.invoke 一样; 返回 -1 表示不处理
+         */
+        int invoke(VM vm, long[] prims, Object[] refs, int args_base);
+    }
+
+    // 类名 -> 方法名 + 描述符 -> Intrinsic, 启动之后只读
+    private final static Map<String, Map<String, Intrinsic>> intrinsics = new HashMap<>();
+    // 类名 + 方法名 + 描述符, 宿主有同名同描述符的 static 方法, 没有副作用也不会抛异常, 编译之后的代码直接调用
+    private final static Set<String> pure = new HashSet<>();
+
+    static @Nullable Intrinsic lookup(String class_name, String name, String descriptor) {
+        Map<String, Intrinsic> methods = intrinsics.get(class_name);
+        return methods == null ? null : methods.get(name + descriptor);
+    }
+
+    // 宿主的类就是 class_name 本身
+    static boolean is_pure(String class_name, String name, String descriptor) {
+        return pure.contains(class_name + "." + name + descriptor);
+    }
+
+    private static void register(String class_name, String name, String descriptor, Intrinsic intrinsic) {
+        intrinsics.computeIfAbsent(class_name, k -> new HashMap<>()).put(name + descriptor, intrinsic);
+    }
+
+    private static void register_pure(String class_name, String name, String descriptor, Intrinsic intrinsic) {
+        register(class_name, name, descriptor, intrinsic);
+        pure.add(class_name + "." + name + descriptor);
+    }
+
+    // ==================== 返回值写回 slot ====================
+
+    private static int ireturn(long[] prims, int at, int v) {
+        prims[at] = v;
+        return at + 1;
+    }
+
+    private static int zreturn(long[] prims, int at, boolean v) {
+        prims[at] = v ? 1 : 0;
+        return at + 1;
+    }
+
+    private static int lreturn(long[] prims, int at, long v) {
+        prims[at] = v;
+        return at + 2;
+    }
+
+    private static int freturn(long[] prims, int at, float v) {
+        prims[at] = float_bits(v);
+        return at + 1;
+    }
+
+    private static int dreturn(long[] prims, int at, double v) {
+        prims[at] = double_bits(v);
+        return at + 2;
+    }
+
+    private static int areturn(Object[] refs, int at, Object v) {
+        refs[at] = v;
+        return at + 1;
+    }
+
+    // ==================== guest String ====================
+
+    // 与 Natives.java_lang_String_field_value_index 一样可以跨实例缓存
+    private static int string_value_index = -1;
+    private static int string_hash_index = -1;
+
+    private static int value_index(ZObject str) {
+        if (string_value_index == -1) {
+            string_value_index = str.z_class().field("value").field_index();
+        }
+        return string_value_index;
+    }
+
+    private static char[] chars(ZObject str) {
+        return ((ZArray) str.get_ref(value_index(str))).char_array();
+    }
+
+    private static int hash_index(ZObject str) {
+        if (string_hash_index == -1) {
+            string_hash_index = str.z_class().field("hash").field_index();
+        }
+        return string_hash_index;
+    }
+
+    // 新的 String 对象, 不 intern, 与 new String(char[]) 之后的状态一样 (hash 是 0)
+    private static ZObject new_string(VM vm, char[] value) {
+        ZObject str = vm.load_class("java/lang/String", false).allocate();
+        str.put_ref(value_index(str), vm.class_char.new_array(value));
+        return str;
+    }
+
+    // String 是 final 的, 类相同就是 String
+    private static boolean is_string(Object obj, ZObject str) {
+        return obj instanceof ZObject && ((ZObject) obj).z_class() == str.z_class();
+    }
+
+    static {
+        String S = "java/lang/String";
+        register(S, "length", "()I", (vm, prims, refs, at) -> ireturn(prims, at, chars((ZObject) refs[at]).length));
+        register(S, "isEmpty", "()Z", (vm, prims, refs, at) -> zreturn(prims, at, chars((ZObject) refs[at]).length == 0));
+        register(S, "charAt", "(I)C", (vm, prims, refs, at) -> {
+            char[] value = chars((ZObject) refs[at]);
+            int index = (int) prims[at + 1];
+            if (index < 0 || index >= value.length) {
+                return -1;
+            }
+            return ireturn(prims, at, value[index]);
+        });
+        register(S, "equals", "(Ljava/lang/Object;)Z", (vm, prims, refs, at) -> {
+            ZObject str = (ZObject) refs[at];
+            Object other = refs[at + 1];
+            if (str == other) {
+                return zreturn(prims, at, true);
+            }
+            return zreturn(prims, at, is_string(other, str) && Arrays.equals(chars(str), chars((ZObject) other)));
+        });
+        register(S, "hashCode", "()I", (vm, prims, refs, at) -> {
+            ZObject str = (ZObject) refs[at];
+            int index = hash_index(str);
+            int h = (int) str.get_prim(index);
+            char[] value = chars(str);
+            if (h == 0 && value.length > 0) {
+                for (char c : value) {
+                    h = 31 * h + c;
+                }
+                str.put_prim(index, h);
+            }
+            return ireturn(prims, at, h);
+        });
+        register(S, "indexOf", "(I)I", (vm, prims, refs, at) -> {
+            char[] value = chars((ZObject) refs[at]);
+            int ch = (int) prims[at + 1];
+            if (ch >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                return -1;
+            }
+            for (int i = 0; i < value.length; i++) {
+                if (value[i] == ch) {
+                    return ireturn(prims, at, i);
+                }
+            }
+            return ireturn(prims, at, -1);
+        });
+        register(S, "indexOf", "(II)I", (vm, prims, refs, at) -> {
+            char[] value = chars((ZObject) refs[at]);
+            int ch = (int) prims[at + 1];
+            int from = Math.max((int) prims[at + 2], 0);
+            if (ch >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                return -1;
+            }
+            for (int i = from; i < value.length; i++) {
+                if (value[i] == ch) {
+                    return ireturn(prims, at, i);
+                }
+            }
+            return ireturn(prims, at, -1);
+        });
+        register(S, "compareTo", "(Ljava/lang/String;)I", (vm, prims, refs, at) -> {
+            Object other = refs[at + 1];
+            if (other == null) {
+                return -1; // npe 交给方法体
+            }
+            char[] v1 = chars((ZObject) refs[at]);
+            char[] v2 = chars((ZObject) other);
+            int lim = Math.min(v1.length, v2.length);
+            for (int k = 0; k < lim; k++) {
+                if (v1[k] != v2[k]) {
+                    return ireturn(prims, at, v1[k] - v2[k]);
+                }
+            }
+            return ireturn(prims, at, v1.length - v2.length);
+        });
+
+        register("java/lang/Integer", "toString", "(I)Ljava/lang/String;",
+                (vm, prims, refs, at) -> areturn(refs, at, new_string(vm, Integer.toString((int) prims[at]).toCharArray())));
+        register("java/lang/Long", "toString", "(J)Ljava/lang/String;",
+                (vm, prims, refs, at) -> areturn(refs, at, new_string(vm, Long.toString(prims[at]).toCharArray())));
+
+        // ==================== 纯函数 ====================
+
+        String I = "java/lang/Integer";
+        register_pure(I, "numberOfLeadingZeros", "(I)I", (vm, prims, refs, at) -> ireturn(prims, at, Integer.numberOfLeadingZeros((int) prims[at])));
+        register_pure(I, "numberOfTrailingZeros", "(I)I", (vm, prims, refs, at) -> ireturn(prims, at, Integer.numberOfTrailingZeros((int) prims[at])));
+        register_pure(I, "bitCount", "(I)I", (vm, prims, refs, at) -> ireturn(prims, at, Integer.bitCount((int) prims[at])));
+        register_pure(I, "reverseBytes", "(I)I", (vm, prims, refs, at) -> ireturn(prims, at, Integer.reverseBytes((int) prims[at])));
+        register_pure(I, "rotateLeft", "(II)I", (vm, prims, refs, at) -> ireturn(prims, at, Integer.rotateLeft((int) prims[at], (int) prims[at + 1])));
+        register_pure(I, "rotateRight", "(II)I", (vm, prims, refs, at) -> ireturn(prims, at, Integer.rotateRight((int) prims[at], (int) prims[at + 1])));
+
+        String L = "java/lang/Long";
+        register_pure(L, "numberOfLeadingZeros", "(J)I", (vm, prims, refs, at) -> ireturn(prims, at, Long.numberOfLeadingZeros(prims[at])));
+        register_pure(L, "numberOfTrailingZeros", "(J)I", (vm, prims, refs, at) -> ireturn(prims, at, Long.numberOfTrailingZeros(prims[at])));
+        register_pure(L, "bitCount", "(J)I", (vm, prims, refs, at) -> ireturn(prims, at, Long.bitCount(prims[at])));
+        register_pure(L, "reverseBytes", "(J)J", (vm, prims, refs, at) -> lreturn(prims, at, Long.reverseBytes(prims[at])));
+        register_pure(L, "rotateLeft", "(JI)J", (vm, prims, refs, at) -> lreturn(prims, at, Long.rotateLeft(prims[at], (int) prims[at + 2])));
+        register_pure(L, "rotateRight", "(JI)J", (vm, prims, refs, at) -> lreturn(prims, at, Long.rotateRight(prims[at], (int) prims[at + 2])));
+
+        // Math.sin 之类的宿主可能与 StrictMath (fdlibm) 差最后一位, 只放结果唯一的
+        for (String M : new String[] { "java/lang/Math", "java/lang/StrictMath" }) {
+            register_pure(M, "min", "(II)I", (vm, prims, refs, at) -> ireturn(prims, at, Math.min((int) prims[at], (int) prims[at + 1])));
+            register_pure(M, "max", "(II)I", (vm, prims, refs, at) -> ireturn(prims, at, Math.max((int) prims[at], (int) prims[at + 1])));
+            register_pure(M, "min", "(JJ)J", (vm, prims, refs, at) -> lreturn(prims, at, Math.min(prims[at], prims[at + 2])));
+            register_pure(M, "max", "(JJ)J", (vm, prims, refs, at) -> lreturn(prims, at, Math.max(prims[at], prims[at + 2])));
+            register_pure(M, "min", "(FF)F", (vm, prims, refs, at) -> freturn(prims, at, Math.min(as_float(prims[at]), as_float(prims[at + 1]))));
+            register_pure(M, "max", "(FF)F", (vm, prims, refs, at) -> freturn(prims, at, Math.max(as_float(prims[at]), as_float(prims[at + 1]))));
+            register_pure(M, "min", "(DD)D", (vm, prims, refs, at) -> dreturn(prims, at, Math.min(as_double(prims[at]), as_double(prims[at + 2]))));
+            register_pure(M, "max", "(DD)D", (vm, prims, refs, at) -> dreturn(prims, at, Math.max(as_double(prims[at]), as_double(prims[at + 2]))));
+            register_pure(M, "abs", "(I)I", (vm, prims, refs, at) -> ireturn(prims, at, Math.abs((int) prims[at])));
+            register_pure(M, "abs", "(J)J", (vm, prims, refs, at) -> lreturn(prims, at, Math.abs(prims[at])));
+            register_pure(M, "abs", "(F)F", (vm, prims, refs, at) -> freturn(prims, at, Math.abs(as_float(prims[at]))));
+            register_pure(M, "abs", "(D)D", (vm, prims, refs, at) -> dreturn(prims, at, Math.abs(as_double(prims[at]))));
+            register_pure(M, "sqrt", "(D)D", (vm, prims, refs, at) -> dreturn(prims, at, Math.sqrt(as_double(prims[at]))));
+            register_pure(M, "floor", "(D)D", (vm, prims, refs, at) -> dreturn(prims, at, Math.floor(as_double(prims[at]))));
+            register_pure(M, "ceil", "(D)D", (vm, prims, refs, at) -> dreturn(prims, at, Math.ceil(as_double(prims[at]))));
+        }
+
+        register_arrays();
+        register_natives();
+    }
+
+    // ==================== 热的 native ====================
+
+    // 走 Natives 要把参数装进 Object[], 再检查参数、返回值的类型, 这几个调用得太多
+    private static void register_natives() {
+        String O = "java/lang/Object";
+        register(O, "hashCode", "()I", (vm, prims, refs, at) -> ireturn(prims, at, System.identityHashCode(refs[at])));
+        register("java/lang/System", "identityHashCode", "(Ljava/lang/Object;)I",
+                (vm, prims, refs, at) -> ireturn(prims, at, System.identityHashCode(refs[at])));
+
+        // 宿主的 arraycopy 先检查下标与数组类型再拷贝, 抛异常的交给 native 重新抛 guest 异常
+        register("java/lang/System", "arraycopy", "(Ljava/lang/Object;ILjava/lang/Object;II)V", (vm, prims, refs, at) -> {
+            Object src = refs[at], dest = refs[at + 2];
+            if (!(src instanceof ZArray) || !(dest instanceof ZArray)) {
+                return -1;
+            }
+            try {
+                ZArray.copy((ZArray) src, (int) prims[at + 1], (ZArray) dest, (int) prims[at + 3], (int) prims[at + 4]);
+            } catch (ArrayStoreException | IndexOutOfBoundsException e) {
+                return -1;
+            }
+            return at;
+        });
+
+        String F = "java/lang/Float";
+        register_pure(F, "floatToRawIntBits", "(F)I", (vm, prims, refs, at) -> ireturn(prims, at, Float.floatToRawIntBits(as_float(prims[at]))));
+        register_pure(F, "floatToIntBits", "(F)I", (vm, prims, refs, at) -> ireturn(prims, at, Float.floatToIntBits(as_float(prims[at]))));
+        register_pure(F, "intBitsToFloat", "(I)F", (vm, prims, refs, at) -> freturn(prims, at, Float.intBitsToFloat((int) prims[at])));
+        String D = "java/lang/Double";
+        register_pure(D, "doubleToRawLongBits", "(D)J", (vm, prims, refs, at) -> lreturn(prims, at, Double.doubleToRawLongBits(as_double(prims[at]))));
+        register_pure(D, "doubleToLongBits", "(D)J", (vm, prims, refs, at) -> lreturn(prims, at, Double.doubleToLongBits(as_double(prims[at]))));
+        register_pure(D, "longBitsToDouble", "(J)D", (vm, prims, refs, at) -> dreturn(prims, at, Double.longBitsToDouble(prims[at])));
+    }
+
+    // ==================== java.util.Arrays ====================
+
+    // Arrays.rangeCheck 会抛异常的交给方法体
+    private static boolean in_range(ZArray array, int from, int to) {
+        return from <= to && from >= 0 && to <= array.length();
+    }
+
+    // copyOfRange 的检查, to 可以超过长度
+    private static boolean in_copy_range(ZArray array, int from, int to) {
+        return from <= to && from >= 0 && from <= array.length();
+    }
+
+    // fill 的值在 slot 里, 按宿主数组的类型转换
+    private static void fill(Object array, int from, int to, long v) {
+        if (array instanceof int[]) {
+            Arrays.fill((int[]) array, from, to, (int) v);
+        } else if (array instanceof long[]) {
+            Arrays.fill((long[]) array, from, to, v);
+        } else if (array instanceof short[]) {
+            Arrays.fill((short[]) array, from, to, (short) v);
+        } else if (array instanceof char[]) {
+            Arrays.fill((char[]) array, from, to, (char) v);
+        } else if (array instanceof byte[]) {
+            Arrays.fill((byte[]) array, from, to, (byte) v);
+        } else if (array instanceof boolean[]) {
+            Arrays.fill((boolean[]) array, from, to, v != 0);
+        } else if (array instanceof float[]) {
+            Arrays.fill((float[]) array, from, to, as_float(v));
+        } else {
+            Arrays.fill((double[]) array, from, to, as_double(v));
+        }
+    }
+
+    // 引用数组也可以, 宿主数组的运行时类型不变
+    private static Object copy_of_range(Object array, int from, int to) {
+        if (array instanceof int[]) {
+            return Arrays.copyOfRange((int[]) array, from, to);
+        } else if (array instanceof long[]) {
+            return Arrays.copyOfRange((long[]) array, from, to);
+        } else if (array instanceof short[]) {
+            return Arrays.copyOfRange((short[]) array, from, to);
+        } else if (array instanceof char[]) {
+            return Arrays.copyOfRange((char[]) array, from, to);
+        } else if (array instanceof byte[]) {
+            return Arrays.copyOfRange((byte[]) array, from, to);
+        } else if (array instanceof boolean[]) {
+            return Arrays.copyOfRange((boolean[]) array, from, to);
+        } else if (array instanceof float[]) {
+            return Arrays.copyOfRange((float[]) array, from, to);
+        } else if (array instanceof double[]) {
+            return Arrays.copyOfRange((double[]) array, from, to);
+        } else {
+            return Arrays.copyOfRange((Object[]) array, from, to);
+        }
+    }
+
+    // 两个数组的元素类型一样, 由描述符保证
+    private static boolean equals(Object a, Object b) {
+        if (a instanceof int[]) {
+            return Arrays.equals((int[]) a, (int[]) b);
+        } else if (a instanceof long[]) {
+            return Arrays.equals((long[]) a, (long[]) b);
+        } else if (a instanceof short[]) {
+            return Arrays.equals((short[]) a, (short[]) b);
+        } else if (a instanceof char[]) {
+            return Arrays.equals((char[]) a, (char[]) b);
+        } else if (a instanceof byte[]) {
+            return Arrays.equals((byte[]) a, (byte[]) b);
+        } else if (a instanceof boolean[]) {
+            return Arrays.equals((boolean[]) a, (boolean[]) b);
+        } else if (a instanceof float[]) {
+            return Arrays.equals((float[]) a, (float[]) b);
+        } else {
+            return Arrays.equals((double[]) a, (double[]) b);
+        }
+    }
+
+    private static int hash_code(Object a) {
+        if (a instanceof int[]) {
+            return Arrays.hashCode((int[]) a);
+        } else if (a instanceof long[]) {
+            return Arrays.hashCode((long[]) a);
+        } else if (a instanceof short[]) {
+            return Arrays.hashCode((short[]) a);
+        } else if (a instanceof char[]) {
+            return Arrays.hashCode((char[]) a);
+        } else if (a instanceof byte[]) {
+            return Arrays.hashCode((byte[]) a);
+        } else if (a instanceof boolean[]) {
+            return Arrays.hashCode((boolean[]) a);
+        } else if (a instanceof float[]) {
+            return Arrays.hashCode((float[]) a);
+        } else {
+            return Arrays.hashCode((double[]) a);
+        }
+    }
+
+    private static void sort(Object a, int from, int to) {
+        if (a instanceof int[]) {
+            Arrays.sort((int[]) a, from, to);
+        } else if (a instanceof long[]) {
+            Arrays.sort((long[]) a, from, to);
+        } else if (a instanceof short[]) {
+            Arrays.sort((short[]) a, from, to);
+        } else if (a instanceof char[]) {
+            Arrays.sort((char[]) a, from, to);
+        } else if (a instanceof byte[]) {
+            Arrays.sort((byte[]) a, from, to);
+        } else if (a instanceof float[]) {
+            Arrays.sort((float[]) a, from, to);
+        } else {
+            Arrays.sort((double[]) a, from, to);
+        }
+    }
+
+    private static int binary_search(Object a, int from, int to, long key) {
+        if (a instanceof int[]) {
+            return Arrays.binarySearch((int[]) a, from, to, (int) key);
+        } else if (a instanceof long[]) {
+            return Arrays.binarySearch((long[]) a, from, to, key);
+        } else if (a instanceof short[]) {
+            return Arrays.binarySearch((short[]) a, from, to, (short) key);
+        } else if (a instanceof char[]) {
+            return Arrays.binarySearch((char[]) a, from, to, (char) key);
+        } else if (a instanceof byte[]) {
+            return Arrays.binarySearch((byte[]) a, from, to, (byte) key);
+        } else if (a instanceof float[]) {
+            return Arrays.binarySearch((float[]) a, from, to, as_float(key));
+        } else {
+            return Arrays.binarySearch((double[]) a, from, to, as_double(key));
+        }
+    }
+
+    // ---------- 引用数组, 回调 guest 方法 ----------
+
+    // 与 invokevirtual / invokeinterface 一样按接收者类型选方法
+    private static Object call(ZObject receiver, ZMethod resolved, Object... args) {
+        return receiver.z_class().select(resolved).invoke(receiver, args);
+    }
+
+    // 元素是数组的 equals hashCode 交给方法体
+    private static boolean has_array(Object[] a) {
+        for (Object o : a) {
+            if (o instanceof ZArray) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ComparableTimSort 与 binarySearch0 会把元素强转成 Comparable, 有 null 或者不是 Comparable 的交给方法体去抛异常
+    private static @Nullable Comparator<Object> natural_order(VM vm, Object[] a, int from, int to) {
+        ZClass comparable = vm.load_class("java/lang/Comparable", false);
+        for (int i = from; i < to; i++) {
+            Object o = a[i];
+            if (!(o instanceof ZObject) || o instanceof ZArray || !comparable.is_instance(vm, false, o)) {
+                return null;
+            }
+        }
+        ZMethod compare_to = comparable.interface_method("compareTo", "(Ljava/lang/Object;)I");
+        return (x, y) -> int_val(call((ZObject) x, compare_to, y));
+    }
+
+    // comparator 是 null 的与 JDK8 一样按自然顺序
+    private static @Nullable Comparator<Object> order(VM vm, Object[] a, int from, int to, @Nullable ZObject comparator) {
+        if (comparator == null) {
+            return natural_order(vm, a, from, to);
+        }
+        ZMethod compare = comparator.z_class().select(vm.load_class("java/util/Comparator", false)
+                .interface_method("compare", "(Ljava/lang/Object;Ljava/lang/Object;)I"));
+        return (x, y) -> int_val(compare.invoke(comparator, new Object[] { x, y }));
+    }
+
+    // TimSort 发现比较不满足约定抛的是宿主的 IllegalArgumentException
+    private static void sort(VM vm, Object[] a, int from, int to, Comparator<Object> c) {
+        try {
+            Arrays.sort(a, from, to, c);
+        } catch (IllegalArgumentException e) {
+            throw ZThrowable.implicit(vm, "java/lang/IllegalArgumentException", e.getMessage());
+        }
+    }
+
+    private static int sort(VM vm, Object[] refs, int at, int from, int to, @Nullable ZObject comparator) {
+        ZArray a = (ZArray) refs[at];
+        Object[] array = (Object[]) a.host_array();
+        Comparator<Object> c = order(vm, array, from, to, comparator);
+        if (c == null) {
+            return -1;
+        }
+        sort(vm, array, from, to, c);
+        return at;
+    }
+
+    private static int binary_search(VM vm, long[] prims, Object[] refs, int at, int from, int to, Object key, @Nullable ZObject comparator) {
+        ZArray a = (ZArray) refs[at];
+        Object[] array = (Object[]) a.host_array();
+        Comparator<Object> c = order(vm, array, from, to, comparator);
+        if (c == null) {
+            return -1;
+        }
+        return ireturn(prims, at, Arrays.binarySearch(array, from, to, key, c));
+    }
+
+    private static void register_arrays() {
+        String A = "java/util/Arrays";
+        for (char t : "IJSCBZFD".toCharArray()) {
+            String arr = "[" + t;
+            register(A, "fill", "(" + arr + t + ")V", (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at];
+                if (a == null) {
+                    return -1;
+                }
+                fill(a.host_array(), 0, a.length(), prims[at + 1]);
+                return at;
+            });
+            register(A, "fill", "(" + arr + "II" + t + ")V", (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at];
+                int from = (int) prims[at + 1], to = (int) prims[at + 2];
+                if (a == null || !in_range(a, from, to)) {
+                    return -1;
+                }
+                fill(a.host_array(), from, to, prims[at + 3]);
+                return at;
+            });
+            register(A, "copyOf", "(" + arr + "I)" + arr, (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at];
+                int length = (int) prims[at + 1];
+                if (a == null || length < 0) {
+                    return -1;
+                }
+                return areturn(refs, at, new ZArray(vm, a.z_class(), copy_of_range(a.host_array(), 0, length)));
+            });
+            register(A, "copyOfRange", "(" + arr + "II)" + arr, (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at];
+                int from = (int) prims[at + 1], to = (int) prims[at + 2];
+                if (a == null || !in_copy_range(a, from, to)) {
+                    return -1;
+                }
+                return areturn(refs, at, new ZArray(vm, a.z_class(), copy_of_range(a.host_array(), from, to)));
+            });
+            register(A, "equals", "(" + arr + arr + ")Z", (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at], a2 = (ZArray) refs[at + 1];
+                return zreturn(prims, at, a == a2 || (a != null && a2 != null && equals(a.host_array(), a2.host_array())));
+            });
+            register(A, "hashCode", "(" + arr + ")I", (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at];
+                return ireturn(prims, at, a == null ? 0 : hash_code(a.host_array()));
+            });
+            if (t == 'Z') {
+                continue;
+            }
+            register(A, "sort", "(" + arr + ")V", (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at];
+                if (a == null) {
+                    return -1;
+                }
+                sort(a.host_array(), 0, a.length());
+                return at;
+            });
+            register(A, "sort", "(" + arr + "II)V", (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at];
+                int from = (int) prims[at + 1], to = (int) prims[at + 2];
+                if (a == null || !in_range(a, from, to)) {
+                    return -1;
+                }
+                sort(a.host_array(), from, to);
+                return at;
+            });
+            register(A, "binarySearch", "(" + arr + t + ")I", (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at];
+                if (a == null) {
+                    return -1;
+                }
+                return ireturn(prims, at, binary_search(a.host_array(), 0, a.length(), prims[at + 1]));
+            });
+            register(A, "binarySearch", "(" + arr + "II" + t + ")I", (vm, prims, refs, at) -> {
+                ZArray a = (ZArray) refs[at];
+                int from = (int) prims[at + 1], to = (int) prims[at + 2];
+                if (a == null || !in_range(a, from, to)) {
+                    return -1;
+                }
+                return ireturn(prims, at, binary_search(a.host_array(), from, to, prims[at + 3]));
+            });
+        }
+
+        String O = "Ljava/lang/Object;", OA = "[Ljava/lang/Object;", C = "Ljava/util/Comparator;";
+        register(A, "fill", "(" + OA + O + ")V", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            if (a == null || !storable(vm, a, refs[at + 1])) {
+                return -1;
+            }
+            Arrays.fill((Object[]) a.host_array(), refs[at + 1]);
+            return at;
+        });
+        register(A, "fill", "(" + OA + "II" + O + ")V", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            int from = (int) prims[at + 1], to = (int) prims[at + 2];
+            if (a == null || !in_range(a, from, to) || !storable(vm, a, refs[at + 3])) {
+                return -1;
+            }
+            Arrays.fill((Object[]) a.host_array(), from, to, refs[at + 3]);
+            return at;
+        });
+        register(A, "copyOf", "(" + OA + "I)" + OA, (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            int length = (int) prims[at + 1];
+            if (a == null || length < 0) {
+                return -1;
+            }
+            return areturn(refs, at, new ZArray(vm, a.z_class(), copy_of_range(a.host_array(), 0, length)));
+        });
+        // 新数组的类型与原来的一样才处理, 不一样的要逐个 store check
+        register(A, "copyOf", "(" + OA + "ILjava/lang/Class;)" + OA, (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            int length = (int) prims[at + 1];
+            if (a == null || length < 0 || refs[at + 2] != a.z_class()) {
+                return -1;
+            }
+            return areturn(refs, at, new ZArray(vm, a.z_class(), copy_of_range(a.host_array(), 0, length)));
+        });
+        register(A, "copyOfRange", "(" + OA + "II)" + OA, (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            int from = (int) prims[at + 1], to = (int) prims[at + 2];
+            if (a == null || !in_copy_range(a, from, to)) {
+                return -1;
+            }
+            return areturn(refs, at, new ZArray(vm, a.z_class(), copy_of_range(a.host_array(), from, to)));
+        });
+        register(A, "equals", "(" + OA + OA + ")Z", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at], a2 = (ZArray) refs[at + 1];
+            if (a == a2) {
+                return zreturn(prims, at, true);
+            }
+            if (a == null || a2 == null || a.length() != a2.length()) {
+                return zreturn(prims, at, false);
+            }
+            Object[] x = (Object[]) a.host_array(), y = (Object[]) a2.host_array();
+            if (has_array(x)) {
+                return -1;
+            }
+            ZMethod equals = vm.java_lang_Object.virtual_method("equals", "(Ljava/lang/Object;)Z");
+            for (int i = 0; i < x.length; i++) {
+                Object o1 = x[i], o2 = y[i];
+                if (!(o1 == null ? o2 == null : int_val(call((ZObject) o1, equals, o2)) != 0)) {
+                    return zreturn(prims, at, false);
+                }
+            }
+            return zreturn(prims, at, true);
+        });
+        register(A, "hashCode", "(" + OA + ")I", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            if (a == null) {
+                return ireturn(prims, at, 0);
+            }
+            Object[] x = (Object[]) a.host_array();
+            if (has_array(x)) {
+                return -1;
+            }
+            ZMethod hash_code = vm.java_lang_Object.virtual_method("hashCode", "()I");
+            int result = 1;
+            for (Object o : x) {
+                result = 31 * result + (o == null ? 0 : int_val(call((ZObject) o, hash_code)));
+            }
+            return ireturn(prims, at, result);
+        });
+        register(A, "sort", "(" + OA + ")V", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            return a == null ? -1 : sort(vm, refs, at, 0, a.length(), null);
+        });
+        register(A, "sort", "(" + OA + "II)V", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            int from = (int) prims[at + 1], to = (int) prims[at + 2];
+            return a == null || !in_range(a, from, to) ? -1 : sort(vm, refs, at, from, to, null);
+        });
+        register(A, "sort", "(" + OA + C + ")V", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            return a == null ? -1 : sort(vm, refs, at, 0, a.length(), (ZObject) refs[at + 1]);
+        });
+        register(A, "sort", "(" + OA + "II" + C + ")V", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            int from = (int) prims[at + 1], to = (int) prims[at + 2];
+            return a == null || !in_range(a, from, to) ? -1 : sort(vm, refs, at, from, to, (ZObject) refs[at + 3]);
+        });
+        register(A, "binarySearch", "(" + OA + O + ")I", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            return a == null ? -1 : binary_search(vm, prims, refs, at, 0, a.length(), refs[at + 1], null);
+        });
+        register(A, "binarySearch", "(" + OA + "II" + O + ")I", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            int from = (int) prims[at + 1], to = (int) prims[at + 2];
+            return a == null || !in_range(a, from, to) ? -1 : binary_search(vm, prims, refs, at, from, to, refs[at + 3], null);
+        });
+        register(A, "binarySearch", "(" + OA + O + C + ")I", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            return a == null ? -1 : binary_search(vm, prims, refs, at, 0, a.length(), refs[at + 1], (ZObject) refs[at + 2]);
+        });
+        register(A, "binarySearch", "(" + OA + "II" + O + C + ")I", (vm, prims, refs, at) -> {
+            ZArray a = (ZArray) refs[at];
+            int from = (int) prims[at + 1], to = (int) prims[at + 2];
+            return a == null || !in_range(a, from, to) ? -1 : binary_search(vm, prims, refs, at, from, to, refs[at + 3], (ZObject) refs[at + 4]);
+        });
+    }
+
+    // fill 引用数组会 store check, 失败的交给方法体抛 ArrayStoreException
+    private static boolean storable(VM vm, ZArray a, Object value) {
+        return value == null || a.z_class().component_class().is_instance(vm, false, value);
+    }
+}
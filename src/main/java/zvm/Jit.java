@@ -0,0 +1,154 @@
+package zvm;
+
+import org.jetbrains.annotations.Nullable;
+import zvm.helper.Reflect;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 分层执行: 栈式解释器 -> 寄存器 IR 解释器 -> 编译成宿主字节码
+ *
+ * 寄存器 IR 的方法调用次数加回边次数 (见 MethodData) 到了 VM.jit_threshold 提交编译,
+ * 后台 zvm-jit 线程用 JitCompiler 编译, defineAnonymousClass 定义成 Compiled 的子类, 装到 ZMethod 上,
+ * 之后的调用直接走编译好的代码
+ *
+ * 只调用一次、一直在循环里的方法 (main 之类的) 靠 OSR: 回边次数到了 VM.osr_threshold, 以循环头为入口单独编译一份,
+ * 编译好之后寄存器解释器在回边上直接转进去, 见 osr
+ *
+ * 编译失败的方法不再编译, 继续解释执行
+ *
+ * @author chuxiaofeng
+ */
+final class Jit {
+    // 编译好的方法, 子类由 JitCompiler 生成
+    abstract static class Compiled implements Invokable {
+        // 参数已经在 frame 的 slot 上, 返回值写到 frame.base, 与 RegisterInterpreter.execute 一样
+        public abstract void execute(VM vm, ZThread thread, ZThread.Frame frame) throws ZThrowable;
+
+        // 从 Invokable 进来的调用, 拆箱装箱还是 Interpreter.interpret 那一套, 它会分派到 execute
+        @Override
+        public Object invoke(VM vm, ZMethod method, @Nullable ZObject object, Object[] args) {
+            return Interpreter.interpret(vm, method, object, args);
+        }
+    }
+
+    // OSR 表里的占位: 已经提交, 还没编译好 / 编译失败
+    private static final Object PENDING = new Object();
+    private static final Object FAILED = new Object();
+
+    private static final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+
+    static {
+        if (VM.jit_background) {
+            Thread compiler = new Thread(Jit::compile_loop, "zvm-jit");
+            compiler.setDaemon(true);
+            compiler.start();
+        }
+    }
+
+    // 计数到阈值的时候调用, 每个方法只提交一次
+    static void submit(ZMethod method) {
+        if (method.jit_submitted_) {
+            return;
+        }
+        method.jit_submitted_ = true;
+        schedule(() -> {
+            Compiled compiled = compile(method, -1);
+            if (compiled != null) {
+                method.install(compiled);
+            }
+        });
+    }
+
+    // 回边次数到了 VM.osr_threshold, 寄存器解释器在循环头 pc 问一下有没有 OSR 版本
+    // 第一次问的时候提交编译, 编译好之前返回 null, 继续解释执行
+    // 多个线程同时跑到同一个循环头, CAS 抢到 PENDING 的那个才提交, 编译结果也用 CAS 发布
+    static @Nullable Compiled osr(ZMethod method, int pc) {
+        AtomicReferenceArray<Object> table = method.osr_code_;
+        if (table == null) {
+            synchronized (method) {
+                table = method.osr_code_;
+                if (table == null) {
+                    RegisterCode rc = method.register_code();
+                    assert rc != null;
+                    table = new AtomicReferenceArray<>(rc.code.length >> 2);
+                    method.osr_code_ = table;
+                }
+            }
+        }
+        int at = pc >> 2;
+        Object entry = table.get(at);
+        if (entry == null) {
+            if (table.compareAndSet(at, null, PENDING)) {
+                AtomicReferenceArray<Object> osr_table = table;
+                schedule(() -> {
+                    Compiled compiled = compile(method, pc);
+                    boolean published = osr_table.compareAndSet(at, PENDING, compiled == null ? FAILED : compiled);
+                    assert published;
+                });
+            }
+            return null;
+        }
+        return entry instanceof Compiled ? (Compiled) entry : null;
+    }
+
+    private static void schedule(Runnable task) {
+        if (VM.jit_background) {
+            queue.offer(task);
+        } else {
+            task.run();
+        }
+    }
+
+    private static void compile_loop() {
+        while (true) {
+            try {
+                queue.take().run();
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    private static @Nullable Compiled compile(ZMethod method, int osr_pc) {
+        try {
+            // 解释器用的那份会原地 quicken, 编译线程自己翻译一份, 翻译是确定的, pc 与解释器的一致
+            RegisterCode rc = RegisterCode.translate(method);
+            if (rc == null) {
+                return null;
+            }
+            JitCompiler compiler = new JitCompiler(method, rc, osr_pc);
+            byte[] bytes = compiler.compile();
+            Compiled compiled = define(bytes, compiler.cp_patches());
+            if (VM.log_jit) {
+                System.err.println("[jit] " + method + (osr_pc >= 0 ? " osr@" + osr_pc : "") + " " + bytes.length + " bytes");
+            }
+            return compiled;
+        } catch (UnsupportedOperationException | LinkageError e) {
+            // 💥 JitCompiler 不支持的指令, 或者生成的类过不了宿主的校验/链接, 就一直解释执行
+            // 其他异常是 JitCompiler 的 bug, 不吞
+            if (VM.log_jit) {
+                System.err.println("[jit] " + method + (osr_pc >= 0 ? " osr@" + osr_pc : "") + " 编译失败: " + e);
+            }
+            return null;
+        }
+    }
+
+    // 🦋 jdk8 没有 Lookup.defineHiddenClass, 只能用 Unsafe.defineAnonymousClass:
+    // host class 是 Compiled, 生成的类能访问包里的东西, cp_patches 把常量池的占位换成 ZMethod 之类的活对象
+    // Jit 用到 Unsafe 的地方只有这里
+    @SuppressWarnings("sunapi")
+    private static final sun.misc.Unsafe UNSAFE = Reflect.of(sun.misc.Unsafe.class).field("theUnsafe").get();
+
+    @SuppressWarnings("sunapi")
+    private static Compiled define(byte[] bytes, Object[] cp_patches) {
+        Class<?> clazz = UNSAFE.defineAnonymousClass(Compiled.class, bytes, cp_patches);
+        try {
+            return (Compiled) UNSAFE.allocateInstance(clazz);
+        } catch (InstantiationException e) {
+            // Compiled 的子类不是抽象类, 不会走到这里
+            throw new AssertionError(e);
+        }
+    }
+}
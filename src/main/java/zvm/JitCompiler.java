@@ -0,0 +1,910 @@
+package zvm;
+
+import zvm.ClassParser.ConstantPool;
+
+import java.util.BitSet;
+
+import static zvm.Bytecodes.*;
+
+/**
+ * 把 RegisterCode 编译成宿主 jvm 字节码, 生成的类继承 Jit.Compiled, 由宿主 JIT 接着优化
+ *
+ * 寄存器变成宿主方法的局部变量, 每个寄存器两个: long 放 prims 那一半, Object 放 refs 那一半, 与 slot 的表示一致
+ *  int 符号扩展成 long, float 存 floatToRawIntBits, double 存 doubleToRawLongBits
+ * 只有进出方法、调用其他方法的时候才与 frame 的 slot 同步: 入口从 slot 读参数, 调用前把参数写到 slot, 返回值写到 base
+ *
+ * OSR 版本的入口在循环头: 寄存器解释器的状态全在 slot 上, 入口把循环头活跃的寄存器从 slot 读进来, 直接跳到循环头
+ *
+ * 运行时的常量 (ConstantPool, FieldRef, 解析结果的 cell ...) 通过 cp_patches 直接放进宿主常量池
+ * 可能抛异常的慢路径都在 JitRuntime 里
+ *
+ * ┌───────────┬──────────────────────────────────────────┐
+ * │ 宿主局部变量 │                                          │
+ * ├───────────┼──────────────────────────────────────────┤
+ * │ 0 ~ 3     │ this vm thread frame                     │
+ * │ 4 ~ 6     │ prims refs base                          │
+ * │ 7 + 3r    │ 寄存器 r 的 long, 占两个                   │
+ * │ 7 + 3r + 2│ 寄存器 r 的 Object                         │
+ * └───────────┴──────────────────────────────────────────┘
+ *
+ * @author chuxiaofeng
+ */
+final class JitCompiler {
+    static final String COMPILED = "zvm/Jit$Compiled";
+    static final String EXECUTE = "execute";
+    static final String EXECUTE_DESC = "(Lzvm/VM;Lzvm/ZThread;Lzvm/ZThread$Frame;)V";
+
+    private static final String OBJ = "Ljava/lang/Object;";
+    private static final String VM_ = "Lzvm/VM;";
+    private static final String FRAME = "Lzvm/ZThread$Frame;";
+    private static final String CP = "Lzvm/ClassParser$ConstantPool;";
+    private static final String CELL = "[Ljava/lang/Object;";
+    private static final String FIELD_REF = "Lzvm/ClassParser$ConstantPool$FieldRef;";
+    private static final String METHOD_REF = "Lzvm/ClassParser$ConstantPool$MethodRef;";
+    private static final String Z_ARRAY = "Lzvm/ZArray;";
+    private static final String Z_METHOD = "Lzvm/ZMethod;";
+    private static final String INLINE_CACHE = "Lzvm/InlineCache;";
+    private static final String RT = "zvm/JitRuntime";
+
+    private static final int L_VM = 1;
+    private static final int L_THREAD = 2;
+    private static final int L_FRAME = 3;
+    private static final int L_PRIMS = 4;
+    private static final int L_REFS = 5;
+    private static final int L_BASE = 6;
+    private static final int L_REGS = 7;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final ZMethod method;
+    private final RegisterCode rc;
+    private final ConstantPool cp;
+    private final ClassBuilder cb;
+    private final ClassBuilder.Code code = new ClassBuilder.Code();
+    // RegisterCode 指令下标 -> label
+    private final int[] labels;
+    // OSR 入口的 pc, 普通编译是 -1
+    private final int osr_pc;
+
+    JitCompiler(ZMethod method, RegisterCode rc, int osr_pc) {
+        this.method = method;
+        this.rc = rc;
+        this.osr_pc = osr_pc;
+        this.cp = method.constant_pool();
+        this.cb = new ClassBuilder("zvm/JitCode$" + mangle(method) + (osr_pc >= 0 ? "$osr" + osr_pc : ""), COMPILED);
+        this.labels = new int[rc.code.length >> 2];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = code.new_label();
+        }
+    }
+
+    // 类名只是给 profiler 看的, 匿名类不要求唯一
+    private static String mangle(ZMethod method) {
+        String name = method.declared_class().name() + "$" + method.name();
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    // 生成 class 文件, 常量池里的运行时对象见 cp_patches
+    byte[] compile() {
+        int n_regs = rc.n_regs;
+        code.max_locals = L_REGS + 3 * n_regs;
+        code.max_stack = 16;
+        if (code.max_locals > 65535) {
+            throw new UnsupportedOperationException("寄存器太多");
+        }
+        prologue();
+        int[] ir = rc.code;
+        for (int at = 0; at < ir.length; at += 4) {
+            code.bind(labels[at >> 2]);
+            emit(at, ir[at], ir[at + 1], ir[at + 2], ir[at + 3]);
+        }
+        return cb.to_bytes(ACC_FINAL | ACC_SUPER, EXECUTE, EXECUTE_DESC, ACC_PUBLIC, code);
+    }
+
+    Object[] cp_patches() {
+        return cb.cp_patches();
+    }
+
+    // 取出 prims refs base, 寄存器清零, 参数从 slot 读进来, OSR 读循环头活跃的寄存器
+    private void prologue() {
+        code.local(ALOAD, L_FRAME);
+        code.op2(GETFIELD, cb.field_ref("zvm/ZThread$Frame", "chunk", "Lzvm/ZThread$Chunk;"));
+        code.op(DUP);
+        code.op2(GETFIELD, cb.field_ref("zvm/ZThread$Chunk", "prims", "[J"));
+        code.local(ASTORE, L_PRIMS);
+        code.op2(GETFIELD, cb.field_ref("zvm/ZThread$Chunk", "refs", CELL));
+        code.local(ASTORE, L_REFS);
+        code.local(ALOAD, L_FRAME);
+        code.op2(GETFIELD, cb.field_ref("zvm/ZThread$Frame", "base", "I"));
+        code.local(ISTORE, L_BASE);
+
+        // 宿主 verifier 要求局部变量先赋值再使用
+        for (int r = 0; r < rc.n_regs; r++) {
+            code.op(LCONST_0);
+            code.local(LSTORE, prim(r));
+            code.op(ACONST_NULL);
+            code.local(ASTORE, ref(r));
+        }
+
+        if (osr_pc >= 0) {
+            // 不知道 slot 里是哪种值, 两半都读
+            BitSet live = RegisterPasses.live_in(rc, osr_pc);
+            for (int r = live.nextSetBit(0); r >= 0; r = live.nextSetBit(r + 1)) {
+                load_slot_prim(r);
+                load_slot_ref(r);
+            }
+            code.jump(GOTO, label(osr_pc));
+            return;
+        }
+
+        int r = 0;
+        if ((method.access_flags() & ClassParser.AccessFlags.ACC_STATIC) == 0) {
+            load_slot_ref(r++);
+        }
+        for (char kind : method.parameter_kinds_cache_) {
+            if (kind == 'L') {
+                load_slot_ref(r);
+            } else {
+                load_slot_prim(r);
+            }
+            r += Interpreter.slots_of(kind);
+        }
+    }
+
+    private void emit(int at, int op, int a, int b, int c) {
+        switch (op) {
+            case RegisterCode.NOP:
+                break;
+            case RegisterCode.MOV:
+                lload(b);
+                lstore(a);
+                aload(b);
+                astore(a);
+                break;
+            case RegisterCode.MOV_P:
+                lload(b);
+                lstore(a);
+                break;
+            case RegisterCode.MOV_A:
+                aload(b);
+                astore(a);
+                break;
+            case RegisterCode.CONST_I:
+                push_long(b);
+                lstore(a);
+                break;
+            case RegisterCode.CONST_W:
+                push_long((b & 0xffffffffL) | ((long) c << 32));
+                lstore(a);
+                break;
+            case RegisterCode.CONST_NULL:
+                code.op(ACONST_NULL);
+                astore(a);
+                break;
+            case RegisterCode.LDC_A:
+                vm();
+                constant(cp, CP);
+                push_int(b);
+                cell();
+                frame_ip(at);
+                runtime("ldc", "(" + VM_ + CP + "I" + CELL + FRAME + "I)" + OBJ);
+                astore(a);
+                break;
+            case RegisterCode.NULL_CHECK:
+                aload(a);
+                vm();
+                frame_ip(at);
+                runtime("null_check", "(" + OBJ + VM_ + FRAME + "I)V");
+                break;
+
+            case RegisterCode.IADD: int_binary(a, b, c, IADD); break;
+            case RegisterCode.ISUB: int_binary(a, b, c, ISUB); break;
+            case RegisterCode.IMUL: int_binary(a, b, c, IMUL); break;
+            case RegisterCode.ISHL: int_binary(a, b, c, ISHL); break;
+            case RegisterCode.ISHR: int_binary(a, b, c, ISHR); break;
+            case RegisterCode.IUSHR: int_binary(a, b, c, IUSHR); break;
+            case RegisterCode.IAND: int_binary(a, b, c, IAND); break;
+            case RegisterCode.IOR: int_binary(a, b, c, IOR); break;
+            case RegisterCode.IXOR: int_binary(a, b, c, IXOR); break;
+            case RegisterCode.IDIV:
+            case RegisterCode.IREM:
+                iload(b);
+                iload(c);
+                vm();
+                frame_ip(at);
+                runtime(op == RegisterCode.IDIV ? "idiv" : "irem", "(II" + VM_ + FRAME + "I)I");
+                istore(a);
+                break;
+            case RegisterCode.INEG:
+                iload(b);
+                code.op(INEG);
+                istore(a);
+                break;
+            case RegisterCode.IADD_I:
+                iload(b);
+                push_int(c);
+                code.op(IADD);
+                istore(a);
+                break;
+            case RegisterCode.IINC:
+                iload(a);
+                push_int(b);
+                code.op(IADD);
+                istore(a);
+                break;
+
+            case RegisterCode.LADD: long_binary(a, b, c, LADD); break;
+            case RegisterCode.LSUB: long_binary(a, b, c, LSUB); break;
+            case RegisterCode.LMUL: long_binary(a, b, c, LMUL); break;
+            case RegisterCode.LAND: long_binary(a, b, c, LAND); break;
+            case RegisterCode.LOR: long_binary(a, b, c, LOR); break;
+            case RegisterCode.LXOR: long_binary(a, b, c, LXOR); break;
+            case RegisterCode.LDIV:
+            case RegisterCode.LREM:
+                lload(b);
+                lload(c);
+                vm();
+                frame_ip(at);
+                runtime(op == RegisterCode.LDIV ? "ldiv" : "lrem", "(JJ" + VM_ + FRAME + "I)J");
+                lstore(a);
+                break;
+            case RegisterCode.LSHL:
+            case RegisterCode.LSHR:
+            case RegisterCode.LUSHR:
+                lload(b);
+                iload(c);
+                code.op(op == RegisterCode.LSHL ? LSHL : op == RegisterCode.LSHR ? LSHR : LUSHR);
+                lstore(a);
+                break;
+            case RegisterCode.LNEG:
+                lload(b);
+                code.op(LNEG);
+                lstore(a);
+                break;
+
+            case RegisterCode.FADD: float_binary(a, b, c, FADD); break;
+            case RegisterCode.FSUB: float_binary(a, b, c, FSUB); break;
+            case RegisterCode.FMUL: float_binary(a, b, c, FMUL); break;
+            case RegisterCode.FDIV: float_binary(a, b, c, FDIV); break;
+            case RegisterCode.FREM: float_binary(a, b, c, FREM); break;
+            case RegisterCode.FNEG:
+                fload(b);
+                code.op(FNEG);
+                fstore(a);
+                break;
+            case RegisterCode.DADD: double_binary(a, b, c, DADD); break;
+            case RegisterCode.DSUB: double_binary(a, b, c, DSUB); break;
+            case RegisterCode.DMUL: double_binary(a, b, c, DMUL); break;
+            case RegisterCode.DDIV: double_binary(a, b, c, DDIV); break;
+            case RegisterCode.DREM: double_binary(a, b, c, DREM); break;
+            case RegisterCode.DNEG:
+                dload(b);
+                code.op(DNEG);
+                dstore(a);
+                break;
+
+            case RegisterCode.I2F: iload(b); code.op(I2F); fstore(a); break;
+            case RegisterCode.I2D: iload(b); code.op(I2D); dstore(a); break;
+            case RegisterCode.L2I: iload(b); istore(a); break;
+            case RegisterCode.L2F: lload(b); code.op(L2F); fstore(a); break;
+            case RegisterCode.L2D: lload(b); code.op(L2D); dstore(a); break;
+            case RegisterCode.F2I: fload(b); code.op(F2I); istore(a); break;
+            case RegisterCode.F2L: fload(b); code.op(F2L); lstore(a); break;
+            case RegisterCode.F2D: fload(b); code.op(F2D); dstore(a); break;
+            case RegisterCode.D2I: dload(b); code.op(D2I); istore(a); break;
+            case RegisterCode.D2L: dload(b); code.op(D2L); lstore(a); break;
+            case RegisterCode.D2F: dload(b); code.op(D2F); fstore(a); break;
+            case RegisterCode.I2B: iload(b); code.op(I2B); istore(a); break;
+            case RegisterCode.I2C: iload(b); code.op(I2C); istore(a); break;
+            case RegisterCode.I2S: iload(b); code.op(I2S); istore(a); break;
+            case RegisterCode.LCMP: lload(b); lload(c); code.op(LCMP); istore(a); break;
+            // 宿主的 fcmpl fcmpg 与解释器的语义一样
+            case RegisterCode.FCMPL: fload(b); fload(c); code.op(FCMPL); istore(a); break;
+            case RegisterCode.FCMPG: fload(b); fload(c); code.op(FCMPG); istore(a); break;
+            case RegisterCode.DCMPL: dload(b); dload(c); code.op(DCMPL); istore(a); break;
+            case RegisterCode.DCMPG: dload(b); dload(c); code.op(DCMPG); istore(a); break;
+
+            case RegisterCode.IFEQ:
+            case RegisterCode.IFNE:
+            case RegisterCode.IFLT:
+            case RegisterCode.IFGE:
+            case RegisterCode.IFGT:
+            case RegisterCode.IFLE:
+                iload(a);
+                code.jump(IFEQ + (op - RegisterCode.IFEQ), label(b));
+                break;
+            case RegisterCode.IF_ICMPEQ:
+            case RegisterCode.IF_ICMPNE:
+            case RegisterCode.IF_ICMPLT:
+            case RegisterCode.IF_ICMPGE:
+            case RegisterCode.IF_ICMPGT:
+            case RegisterCode.IF_ICMPLE:
+                iload(a);
+                iload(b);
+                code.jump(IF_ICMPEQ + (op - RegisterCode.IF_ICMPEQ), label(c));
+                break;
+            case RegisterCode.IF_ACMPEQ:
+            case RegisterCode.IF_ACMPNE:
+                aload(a);
+                aload(b);
+                code.jump(op == RegisterCode.IF_ACMPEQ ? IF_ACMPEQ : IF_ACMPNE, label(c));
+                break;
+            case RegisterCode.IFNULL:
+            case RegisterCode.IFNONNULL:
+                aload(a);
+                code.jump(op == RegisterCode.IFNULL ? IFNULL : IFNONNULL, label(b));
+                break;
+            case RegisterCode.GOTO:
+                code.jump(GOTO, label(a));
+                break;
+            case RegisterCode.TABLESWITCH:
+            {
+                // { default, low, high, target... }
+                int[] table = (int[]) rc.aux[at >> 2];
+                iload(a);
+                int switch_at = code.size;
+                code.op(TABLESWITCH);
+                code.pad();
+                code.switch_target(switch_at, label(table[0]));
+                code.u4(table[1]);
+                code.u4(table[2]);
+                for (int i = 3; i < table.length; i++) {
+                    code.switch_target(switch_at, label(table[i]));
+                }
+                break;
+            }
+            case RegisterCode.LOOKUPSWITCH:
+            {
+                // { default, n_pairs, key, target... }
+                int[] table = (int[]) rc.aux[at >> 2];
+                iload(a);
+                int switch_at = code.size;
+                code.op(LOOKUPSWITCH);
+                code.pad();
+                code.switch_target(switch_at, label(table[0]));
+                code.u4(table[1]);
+                for (int i = 2; i < table.length; i += 2) {
+                    code.u4(table[i]);
+                    code.switch_target(switch_at, label(table[i + 1]));
+                }
+                break;
+            }
+            case RegisterCode.RETURN_P:
+                code.local(ALOAD, L_PRIMS);
+                code.local(ILOAD, L_BASE);
+                lload(a);
+                code.op(LASTORE);
+                code.op(RETURN);
+                break;
+            case RegisterCode.RETURN_A:
+                code.local(ALOAD, L_REFS);
+                code.local(ILOAD, L_BASE);
+                aload(a);
+                code.op(AASTORE);
+                code.op(RETURN);
+                break;
+            case RegisterCode.RETURN:
+                code.op(RETURN);
+                break;
+            case RegisterCode.ATHROW:
+                aload(a);
+                vm();
+                frame_ip(at);
+                runtime("athrow", "(" + OBJ + VM_ + FRAME + "I)Lzvm/ZThrowable;");
+                code.op(ATHROW);
+                break;
+
+            case RegisterCode.IALOAD: array_load(at, b, c, "iaload", "I"); istore(a); break;
+            case RegisterCode.LALOAD: array_load(at, b, c, "laload", "J"); lstore(a); break;
+            case RegisterCode.FALOAD: array_load(at, b, c, "faload", "F"); fstore(a); break;
+            case RegisterCode.DALOAD: array_load(at, b, c, "daload", "D"); dstore(a); break;
+            case RegisterCode.AALOAD: array_load(at, b, c, "aaload", OBJ); astore(a); break;
+            case RegisterCode.BALOAD: array_load(at, b, c, "baload", "I"); istore(a); break;
+            case RegisterCode.CALOAD: array_load(at, b, c, "caload", "I"); istore(a); break;
+            case RegisterCode.SALOAD: array_load(at, b, c, "saload", "I"); istore(a); break;
+            case RegisterCode.IASTORE: array_ref(a, b); iload(c); array_store(at, "iastore", "I"); break;
+            case RegisterCode.LASTORE: array_ref(a, b); lload(c); array_store(at, "lastore", "J"); break;
+            case RegisterCode.FASTORE: array_ref(a, b); fload(c); array_store(at, "fastore", "F"); break;
+            case RegisterCode.DASTORE: array_ref(a, b); dload(c); array_store(at, "dastore", "D"); break;
+            case RegisterCode.AASTORE: array_ref(a, b); aload(c); array_store(at, "aastore", OBJ); break;
+            case RegisterCode.AASTORE_U: array_ref(a, b); aload(c); array_store(at, "aastore_unchecked", OBJ); break;
+            case RegisterCode.BASTORE: array_ref(a, b); iload(c); array_store(at, "bastore", "I"); break;
+            case RegisterCode.CASTORE: array_ref(a, b); iload(c); array_store(at, "castore", "I"); break;
+            case RegisterCode.SASTORE: array_ref(a, b); iload(c); array_store(at, "sastore", "I"); break;
+            case RegisterCode.ARRAYLENGTH:
+                aload(b);
+                checkcast("zvm/ZArray");
+                code.op2(INVOKEVIRTUAL, cb.method_ref("zvm/ZArray", "length", "()I"));
+                istore(a);
+                break;
+            case RegisterCode.NEWARRAY:
+                vm();
+                push_int(c);
+                iload(b);
+                frame_ip(at);
+                runtime("newarray", "(" + VM_ + "II" + FRAME + "I)" + OBJ);
+                astore(a);
+                break;
+            case RegisterCode.ANEWARRAY:
+                vm();
+                constant(cp, CP);
+                push_int(c);
+                cell();
+                iload(b);
+                frame_ip(at);
+                runtime("anewarray", "(" + VM_ + CP + "I" + CELL + "I" + FRAME + "I)" + OBJ);
+                astore(a);
+                break;
+
+            case RegisterCode.NEW:
+                vm();
+                constant(cp, CP);
+                push_int(b);
+                cell();
+                frame_ip(at);
+                runtime("new_object", "(" + VM_ + CP + "I" + CELL + FRAME + "I)" + OBJ);
+                astore(a);
+                break;
+            case RegisterCode.GETFIELD:
+            {
+                ConstantPool.FieldRef field_ref = cp.field_ref_at(c);
+                char kind = Descriptor.kind(field_ref.name_and_type.descriptor, 0);
+                aload(b);
+                checkcast("zvm/ZObject");
+                field_index(at, field_ref);
+                // 基本类型区与寄存器的格式一样, 不装箱
+                if (kind == 'L') {
+                    code.op2(INVOKEVIRTUAL, cb.method_ref("zvm/ZObject", "get_ref", "(I)" + OBJ));
+                    astore(a);
+                } else {
+                    code.op2(INVOKEVIRTUAL, cb.method_ref("zvm/ZObject", "get_prim", "(I)J"));
+                    lstore(a);
+                }
+                break;
+            }
+            case RegisterCode.PUTFIELD:
+            {
+                ConstantPool.FieldRef field_ref = cp.field_ref_at(c);
+                char kind = Descriptor.kind(field_ref.name_and_type.descriptor, 0);
+                aload(a);
+                checkcast("zvm/ZObject");
+                field_index(at, field_ref);
+                if (kind == 'L') {
+                    aload(b);
+                    code.op2(INVOKEVIRTUAL, cb.method_ref("zvm/ZObject", "put_ref", "(I" + OBJ + ")V"));
+                } else {
+                    lload(b);
+                    code.op2(INVOKEVIRTUAL, cb.method_ref("zvm/ZObject", "put_prim", "(IJ)V"));
+                }
+                break;
+            }
+            case RegisterCode.GETSTATIC:
+            {
+                ConstantPool.FieldRef field_ref = cp.field_ref_at(b);
+                vm();
+                constant(field_ref, FIELD_REF);
+                cell();
+                frame_ip(at);
+                runtime("get_static", "(" + VM_ + FIELD_REF + CELL + FRAME + "I)" + OBJ);
+                unbox(a, field_ref.name_and_type.descriptor.charAt(0));
+                break;
+            }
+            case RegisterCode.PUTSTATIC:
+            {
+                ConstantPool.FieldRef field_ref = cp.field_ref_at(b);
+                vm();
+                constant(field_ref, FIELD_REF);
+                cell();
+                box(a, field_ref.name_and_type.descriptor.charAt(0));
+                frame_ip(at);
+                runtime("put_static", "(" + VM_ + FIELD_REF + CELL + OBJ + FRAME + "I)V");
+                break;
+            }
+            case RegisterCode.CHECKCAST:
+                aload(a);
+                vm();
+                constant(cp, CP);
+                push_int(b);
+                cell();
+                frame_ip(at);
+                runtime("checkcast", "(" + OBJ + VM_ + CP + "I" + CELL + FRAME + "I)V");
+                break;
+            case RegisterCode.INSTANCEOF:
+                aload(b);
+                vm();
+                constant(cp, CP);
+                push_int(c);
+                cell();
+                frame_ip(at);
+                runtime("instance_of", "(" + OBJ + VM_ + CP + "I" + CELL + FRAME + "I)I");
+                istore(a);
+                break;
+
+            case RegisterCode.INVOKEVIRTUAL:
+            case RegisterCode.INVOKESPECIAL:
+            case RegisterCode.INVOKESTATIC:
+            case RegisterCode.INVOKEINTERFACE:
+                invoke(at, op, a, b, c);
+                break;
+            // 编译线程自己翻译一份 RegisterCode, 不会有 quicken 之后的指令
+            default: throw new UnsupportedOperationException(RegisterCode.name_of(op));
+        }
+    }
+
+    // 参数写回 slot, 设置 frame.ip, 解析, 调用, 从 args_base 取返回值
+    private void invoke(int at, int op, int a, int b, int c) {
+        int ip = rc.src_ip[at >> 2];
+        int instruction = Bytecodes.INVOKEVIRTUAL + (op - RegisterCode.INVOKEVIRTUAL);
+        boolean is_static = op == RegisterCode.INVOKESTATIC;
+        ConstantPool.MethodRef method_ref = cp.method_ref_at(b, instruction);
+        String descriptor = method_ref.name_and_type.descriptor;
+        char[] kinds = Descriptor.parameter_kinds(descriptor);
+
+        if (is_static && VM.intrinsics && Intrinsics.is_pure(method_ref.class_name, method_ref.name_and_type.name, descriptor)) {
+            // Math.min 之类直接调用宿主的同名方法, 参数、返回值都在寄存器里, 见 Intrinsics
+            int r = a;
+            for (char kind : kinds) {
+                load(r, kind);
+                r += Interpreter.slots_of(kind);
+            }
+            code.op2(INVOKESTATIC, cb.method_ref(method_ref.class_name, method_ref.name_and_type.name, descriptor));
+            store(a, Descriptor.return_kind(descriptor));
+            return;
+        }
+
+        int r = a;
+        if (!is_static) {
+            store_slot_ref(r++);
+        }
+        for (char kind : kinds) {
+            if (kind == 'L') {
+                store_slot_ref(r);
+            } else {
+                store_slot_prim(r);
+            }
+            r += Interpreter.slots_of(kind);
+        }
+        assert r == a + c;
+
+        code.local(ALOAD, L_FRAME);
+        push_int(ip);
+        code.op2(PUTFIELD, cb.field_ref("zvm/ZThread$Frame", "ip", "I"));
+        if (!is_static) {
+            aload(a);
+            vm();
+            frame_ip(at);
+            runtime("null_check", "(" + OBJ + VM_ + FRAME + "I)V");
+        }
+
+        // Interpreter.invoke(vm, thread, frame, z_method, object_ref, args_base, sp, kinds)
+        vm();
+        code.local(ALOAD, L_THREAD);
+        code.local(ALOAD, L_FRAME);
+        if (op == RegisterCode.INVOKESPECIAL || is_static) {
+            vm();
+            push_int(instruction);
+            constant(method_ref, METHOD_REF);
+            object_ref(is_static, a);
+            cell();
+            runtime("resolve_fixed", "(" + VM_ + "I" + METHOD_REF + OBJ + CELL + ")" + Z_METHOD);
+        } else {
+            // 每个调用点一个内联缓存
+            constant(new InlineCache(instruction, method_ref), INLINE_CACHE);
+            object_ref(false, a);
+            runtime("resolve", "(" + INLINE_CACHE + OBJ + ")" + Z_METHOD);
+        }
+        object_ref(is_static, a);
+        checkcast("zvm/ZObject");
+        slot(a);
+        slot(a + c);
+        constant(kinds, "[C");
+        code.op2(INVOKESTATIC, cb.method_ref("zvm/Interpreter", "invoke",
+                "(" + VM_ + "Lzvm/ZThread;" + FRAME + Z_METHOD + "Lzvm/ZObject;II[C)I"));
+        code.op(POP);
+
+        char return_kind = Descriptor.return_kind(descriptor);
+        if (return_kind == 'L') {
+            load_slot_ref(a);
+        } else if (return_kind != 'V') {
+            load_slot_prim(a);
+        }
+    }
+
+    private void object_ref(boolean is_static, int r) {
+        if (is_static) {
+            code.op(ACONST_NULL);
+        } else {
+            aload(r);
+        }
+    }
+
+    private void field_index(int at, ConstantPool.FieldRef field_ref) {
+        if (field_ref.index_cache_ != -1) {
+            push_int(field_ref.index_cache_);
+        } else {
+            vm();
+            constant(field_ref, FIELD_REF);
+            frame_ip(at);
+            runtime("field_index", "(" + VM_ + FIELD_REF + FRAME + "I)I");
+        }
+    }
+
+    // 栈顶的字段值按 kind 拆箱到寄存器, 见 Interpreter.unbox
+    private void unbox(int r, char kind) {
+        switch (kind) {
+            case 'Z': case 'B': case 'C': case 'S': case 'I':
+                code.op2(INVOKESTATIC, cb.method_ref("zvm/Interpreter", "int_val", "(" + OBJ + ")I"));
+                istore(r);
+                break;
+            case 'J':
+                code.op2(INVOKESTATIC, cb.method_ref("zvm/Interpreter", "long_val", "(" + OBJ + ")J"));
+                lstore(r);
+                break;
+            case 'F':
+                checkcast("java/lang/Float");
+                code.op2(INVOKEVIRTUAL, cb.method_ref("java/lang/Float", "floatValue", "()F"));
+                fstore(r);
+                break;
+            case 'D':
+                checkcast("java/lang/Double");
+                code.op2(INVOKEVIRTUAL, cb.method_ref("java/lang/Double", "doubleValue", "()D"));
+                dstore(r);
+                break;
+            default:
+                astore(r);
+        }
+    }
+
+    // 寄存器按 kind 压栈, 不装箱
+    private void load(int r, char kind) {
+        switch (kind) {
+            case 'Z': case 'B': case 'C': case 'S': case 'I': iload(r); break;
+            case 'J': lload(r); break;
+            case 'F': fload(r); break;
+            case 'D': dload(r); break;
+            default: aload(r);
+        }
+    }
+
+    private void store(int r, char kind) {
+        switch (kind) {
+            case 'Z': case 'B': case 'C': case 'S': case 'I': istore(r); break;
+            case 'J': lstore(r); break;
+            case 'F': fstore(r); break;
+            case 'D': dstore(r); break;
+            default: astore(r);
+        }
+    }
+
+    // 寄存器按 kind 装箱压栈, 见 Interpreter.box
+    private void box(int r, char kind) {
+        switch (kind) {
+            case 'Z': case 'B': case 'C': case 'S': case 'I':
+                iload(r);
+                code.op2(INVOKESTATIC, cb.method_ref("java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;"));
+                break;
+            case 'J':
+                lload(r);
+                code.op2(INVOKESTATIC, cb.method_ref("java/lang/Long", "valueOf", "(J)Ljava/lang/Long;"));
+                break;
+            case 'F':
+                fload(r);
+                code.op2(INVOKESTATIC, cb.method_ref("java/lang/Float", "valueOf", "(F)Ljava/lang/Float;"));
+                break;
+            case 'D':
+                dload(r);
+                code.op2(INVOKESTATIC, cb.method_ref("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"));
+                break;
+            default:
+                aload(r);
+        }
+    }
+
+    private void array_load(int at, int arr, int idx, String name, String type) {
+        aload(arr);
+        checkcast("zvm/ZArray");
+        iload(idx);
+        frame_ip(at);
+        runtime(name, "(" + Z_ARRAY + "I" + FRAME + "I)" + type);
+    }
+
+    // 数组与下标先压栈, 值由调用者压, 再 array_store
+    private void array_ref(int arr, int idx) {
+        aload(arr);
+        checkcast("zvm/ZArray");
+        iload(idx);
+    }
+
+    private void array_store(int at, String name, String type) {
+        frame_ip(at);
+        runtime(name, "(" + Z_ARRAY + "I" + type + FRAME + "I)V");
+    }
+
+    private void int_binary(int d, int r1, int r2, int opcode) {
+        iload(r1);
+        iload(r2);
+        code.op(opcode);
+        istore(d);
+    }
+
+    private void long_binary(int d, int r1, int r2, int opcode) {
+        lload(r1);
+        lload(r2);
+        code.op(opcode);
+        lstore(d);
+    }
+
+    private void float_binary(int d, int r1, int r2, int opcode) {
+        fload(r1);
+        fload(r2);
+        code.op(opcode);
+        fstore(d);
+    }
+
+    private void double_binary(int d, int r1, int r2, int opcode) {
+        dload(r1);
+        dload(r2);
+        code.op(opcode);
+        dstore(d);
+    }
+
+    // ==================== 寄存器 ====================
+
+    private static int prim(int r) {
+        return L_REGS + 3 * r;
+    }
+
+    private static int ref(int r) {
+        return L_REGS + 3 * r + 2;
+    }
+
+    private void lload(int r) {
+        code.local(LLOAD, prim(r));
+    }
+
+    private void lstore(int r) {
+        code.local(LSTORE, prim(r));
+    }
+
+    private void iload(int r) {
+        lload(r);
+        code.op(L2I);
+    }
+
+    private void istore(int r) {
+        code.op(I2L);
+        lstore(r);
+    }
+
+    private void fload(int r) {
+        iload(r);
+        code.op2(INVOKESTATIC, cb.method_ref("java/lang/Float", "intBitsToFloat", "(I)F"));
+    }
+
+    private void fstore(int r) {
+        code.op2(INVOKESTATIC, cb.method_ref("java/lang/Float", "floatToRawIntBits", "(F)I"));
+        istore(r);
+    }
+
+    private void dload(int r) {
+        lload(r);
+        code.op2(INVOKESTATIC, cb.method_ref("java/lang/Double", "longBitsToDouble", "(J)D"));
+    }
+
+    private void dstore(int r) {
+        code.op2(INVOKESTATIC, cb.method_ref("java/lang/Double", "doubleToRawLongBits", "(D)J"));
+        lstore(r);
+    }
+
+    private void aload(int r) {
+        code.local(ALOAD, ref(r));
+    }
+
+    private void astore(int r) {
+        code.local(ASTORE, ref(r));
+    }
+
+    // ==================== frame 的 slot ====================
+
+    // base + r
+    private void slot(int r) {
+        code.local(ILOAD, L_BASE);
+        if (r != 0) {
+            push_int(r);
+            code.op(IADD);
+        }
+    }
+
+    private void load_slot_prim(int r) {
+        code.local(ALOAD, L_PRIMS);
+        slot(r);
+        code.op(LALOAD);
+        lstore(r);
+    }
+
+    private void load_slot_ref(int r) {
+        code.local(ALOAD, L_REFS);
+        slot(r);
+        code.op(AALOAD);
+        astore(r);
+    }
+
+    private void store_slot_prim(int r) {
+        code.local(ALOAD, L_PRIMS);
+        slot(r);
+        lload(r);
+        code.op(LASTORE);
+    }
+
+    private void store_slot_ref(int r) {
+        code.local(ALOAD, L_REFS);
+        slot(r);
+        aload(r);
+        code.op(AASTORE);
+    }
+
+    // ==================== 其他 ====================
+
+    private int label(int target_pc) {
+        return labels[target_pc >> 2];
+    }
+
+    private void vm() {
+        code.local(ALOAD, L_VM);
+    }
+
+    // frame 与指令 ip, JitRuntime 的方法都以这两个参数结尾
+    private void frame_ip(int at) {
+        code.local(ALOAD, L_FRAME);
+        push_int(rc.src_ip[at >> 2]);
+    }
+
+    private void runtime(String name, String descriptor) {
+        code.op2(INVOKESTATIC, cb.method_ref(RT, name, descriptor));
+    }
+
+    private void checkcast(String internal_name) {
+        code.op2(CHECKCAST, cb.class_(internal_name));
+    }
+
+    // 运行时对象放进常量池, verifier 认为 ldc 出来是 String, 要 checkcast 成真正的类型
+    private void constant(Object value, String descriptor) {
+        code.op2(LDC_W, cb.object(value));
+        checkcast(descriptor.charAt(0) == 'L' ? descriptor.substring(1, descriptor.length() - 1) : descriptor);
+    }
+
+    // 每条指令一个解析结果的 cell, 见 JitRuntime
+    private void cell() {
+        constant(new Object[1], CELL);
+    }
+
+    private void push_int(int v) {
+        if (v >= -1 && v <= 5) {
+            code.op(ICONST_0 + v);
+        } else if (v == (byte) v) {
+            code.op1(BIPUSH, v);
+        } else if (v == (short) v) {
+            code.op2(SIPUSH, v);
+        } else {
+            code.op2(LDC_W, cb.int_(v));
+        }
+    }
+
+    private void push_long(long v) {
+        if (v == 0 || v == 1) {
+            code.op(LCONST_0 + (int) v);
+        } else if (v == (int) v) {
+            push_int((int) v);
+            code.op(I2L);
+        } else {
+            code.op2(LDC2_W, cb.long_(v));
+        }
+    }
+}
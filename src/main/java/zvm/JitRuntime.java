@@ -0,0 +1,276 @@
+package zvm;
+
+import zvm.ClassParser.ConstantPool;
+
+/**
+ * JIT 生成的代码调用的辅助方法, 都很短, 宿主 JIT 会内联进去
+ *
+ * 可能抛异常的操作都带着 frame 和指令的 ip: 只在真要抛异常的慢路径上写 frame.ip, 栈帧行号跟解释执行一致,
+ * 快路径上没有多余的写
+ *
+ * 解析结果缓存在编译时生成的 Object[1] cell 里, 与解释器的 quicken 一个意思
+ *
+ * @author chuxiaofeng
+ */
+final class JitRuntime {
+
+    // ==================== 判空 除零 ====================
+
+    static void null_check(Object obj, VM vm, ZThread.Frame frame, int ip) {
+        if (obj == null) {
+            frame.ip = ip;
+            vm.check_null(null);
+        }
+    }
+
+    static int idiv(int a, int b, VM vm, ZThread.Frame frame, int ip) {
+        if (b == 0) {
+            frame.ip = ip;
+            vm.check_div_zero(b);
+        }
+        return a / b;
+    }
+
+    static int irem(int a, int b, VM vm, ZThread.Frame frame, int ip) {
+        if (b == 0) {
+            frame.ip = ip;
+            vm.check_div_zero(b);
+        }
+        return a % b;
+    }
+
+    static long ldiv(long a, long b, VM vm, ZThread.Frame frame, int ip) {
+        if (b == 0) {
+            frame.ip = ip;
+            vm.check_div_zero(b);
+        }
+        return a / b;
+    }
+
+    static long lrem(long a, long b, VM vm, ZThread.Frame frame, int ip) {
+        if (b == 0) {
+            frame.ip = ip;
+            vm.check_div_zero(b);
+        }
+        return a % b;
+    }
+
+    static ZThrowable athrow(Object throwable, VM vm, ZThread.Frame frame, int ip) {
+        frame.ip = ip;
+        return new ZThrowable(vm.check_null((ZObject) throwable));
+    }
+
+    // ==================== 数组 ====================
+
+    private static void bound(ZArray arr, int idx, ZThread.Frame frame, int ip) {
+        if (idx < 0 || idx >= arr.length()) {
+            frame.ip = ip;
+        }
+    }
+
+    static int iaload(ZArray arr, int idx, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        return arr.int_at(idx);
+    }
+
+    static long laload(ZArray arr, int idx, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        return arr.long_at(idx);
+    }
+
+    static float faload(ZArray arr, int idx, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        return arr.float_at(idx);
+    }
+
+    static double daload(ZArray arr, int idx, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        return arr.double_at(idx);
+    }
+
+    static Object aaload(ZArray arr, int idx, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        return arr.ref_at(idx);
+    }
+
+    static int baload(ZArray arr, int idx, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        return arr.byte_or_bool_at(idx);
+    }
+
+    static int caload(ZArray arr, int idx, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        return arr.char_at(idx);
+    }
+
+    static int saload(ZArray arr, int idx, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        return arr.short_at(idx);
+    }
+
+    static void iastore(ZArray arr, int idx, int val, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        arr.put_int(idx, val);
+    }
+
+    static void lastore(ZArray arr, int idx, long val, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        arr.put_long(idx, val);
+    }
+
+    static void fastore(ZArray arr, int idx, float val, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        arr.put_float(idx, val);
+    }
+
+    static void dastore(ZArray arr, int idx, double val, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        arr.put_double(idx, val);
+    }
+
+    // 还有 store check, 直接写 frame.ip
+    static void aastore(ZArray arr, int idx, Object val, ZThread.Frame frame, int ip) {
+        frame.ip = ip;
+        arr.store_ref(idx, val);
+    }
+
+    static void aastore_unchecked(ZArray arr, int idx, Object val, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        arr.put_ref_unchecked(idx, val);
+    }
+
+    static void bastore(ZArray arr, int idx, int val, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        arr.put_byte_or_bool(idx, val);
+    }
+
+    static void castore(ZArray arr, int idx, int val, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        arr.put_char(idx, (char) val);
+    }
+
+    static void sastore(ZArray arr, int idx, int val, ZThread.Frame frame, int ip) {
+        bound(arr, idx, frame, ip);
+        arr.put_short(idx, (short) val);
+    }
+
+    static Object newarray(VM vm, int atype, int length, ZThread.Frame frame, int ip) {
+        if (length < 0) {
+            frame.ip = ip;
+            throw ZThrowable.implicit(vm, "java/lang/NegativeArraySizeException", null);
+        }
+        return vm.new_primitive_array(atype, length);
+    }
+
+    static Object anewarray(VM vm, ConstantPool cp, int idx, Object[] cell, int length, ZThread.Frame frame, int ip) {
+        ZClass component_class = class_at(vm, cp, idx, cell, frame, ip);
+        if (length < 0) {
+            frame.ip = ip;
+            throw ZThrowable.implicit(vm, "java/lang/NegativeArraySizeException", null);
+        }
+        return component_class.new_array(length);
+    }
+
+    // ==================== 类 字段 常量 ====================
+
+    // 🦋 不需要初始化
+    static ZClass class_at(VM vm, ConstantPool cp, int idx, Object[] cell, ZThread.Frame frame, int ip) {
+        ZClass z_class = (ZClass) cell[0];
+        if (z_class == null) {
+            frame.ip = ip;
+            z_class = vm.load_class(cp.class_at(idx), false);
+            cell[0] = z_class;
+        }
+        return z_class;
+    }
+
+    // 与解释器一样, 类初始化完成之后才缓存
+    static Object new_object(VM vm, ConstantPool cp, int idx, Object[] cell, ZThread.Frame frame, int ip) {
+        ZClass z_class = (ZClass) cell[0];
+        if (z_class == null) {
+            frame.ip = ip;
+            z_class = vm.load_class(cp.class_at(idx), true);
+            if (z_class.is_fully_initialized()) {
+                cell[0] = z_class;
+            }
+        }
+        return z_class.allocate();
+    }
+
+    static void checkcast(Object obj, VM vm, ConstantPool cp, int idx, Object[] cell, ZThread.Frame frame, int ip) {
+        if (obj != null) {
+            ZClass cast_class = class_at(vm, cp, idx, cell, frame, ip);
+            if (!cast_class.is_instance(vm, false, obj)) {
+                frame.ip = ip;
+                throw vm.class_cast_exception(obj, cast_class);
+            }
+        }
+    }
+
+    static int instance_of(Object obj, VM vm, ConstantPool cp, int idx, Object[] cell, ZThread.Frame frame, int ip) {
+        return class_at(vm, cp, idx, cell, frame, ip).is_instance(vm, false, obj) ? 1 : 0;
+    }
+
+    static Object ldc(VM vm, ConstantPool cp, int idx, Object[] cell, ZThread.Frame frame, int ip) {
+        Object constant = cell[0];
+        if (constant == null) {
+            frame.ip = ip;
+            if (cp.tag(idx) == ClassParser.Constants.CONSTANT_String) {
+                constant = Natives.new_intern_string(vm, cp.string_at(idx));
+            } else {
+                constant = vm.load_class(cp.class_at(idx), false);
+            }
+            cell[0] = constant;
+        }
+        return constant;
+    }
+
+    static int field_index(VM vm, ConstantPool.FieldRef field_ref, ZThread.Frame frame, int ip) {
+        if (field_ref.index_cache_ == -1) {
+            frame.ip = ip;
+            return Interpreter.resolve_field_index(vm, field_ref);
+        }
+        return field_ref.index_cache_;
+    }
+
+    private static ZField static_field(VM vm, ConstantPool.FieldRef field_ref, Object[] cell, ZThread.Frame frame, int ip) {
+        ZField z_field = (ZField) cell[0];
+        if (z_field == null) {
+            frame.ip = ip;
+            z_field = Interpreter.resolve_static_field(vm, field_ref);
+            if (z_field.declared_class().is_fully_initialized()) {
+                cell[0] = z_field;
+            }
+        }
+        return z_field;
+    }
+
+    static Object get_static(VM vm, ConstantPool.FieldRef field_ref, Object[] cell, ZThread.Frame frame, int ip) {
+        ZField z_field = static_field(vm, field_ref, cell, frame, ip);
+        return z_field.declared_class().get_static_field(z_field.field_slot());
+    }
+
+    static void put_static(VM vm, ConstantPool.FieldRef field_ref, Object[] cell, Object value, ZThread.Frame frame, int ip) {
+        ZField z_field = static_field(vm, field_ref, cell, frame, ip);
+        z_field.declared_class().put_static_field(z_field.field_slot(), value);
+    }
+
+    // ==================== 调用 ====================
+
+    // invokespecial 解析一次就固定了, invokestatic 要等类初始化完成
+    static ZMethod resolve_fixed(VM vm, int instruction, ConstantPool.MethodRef method_ref, Object object_ref, Object[] cell) {
+        ZMethod z_method = (ZMethod) cell[0];
+        if (z_method == null) {
+            z_method = Interpreter.resolve_invoke(vm, instruction, method_ref, (ZObject) object_ref);
+            if (instruction == Bytecodes.INVOKESPECIAL || z_method.declared_class().is_fully_initialized()) {
+                cell[0] = z_method;
+            }
+        }
+        return z_method;
+    }
+
+    // invokevirtual invokeinterface 走调用点自己的内联缓存, 见 InlineCache
+    static ZMethod resolve(InlineCache cache, Object object_ref) {
+        return cache.lookup(((ZObject) object_ref).z_class());
+    }
+}
@@ -0,0 +1,112 @@
+package zvm;
+
+import java.util.Arrays;
+
+/**
+ * lookupswitch 第一次执行时构造, 之后按 key 直接找跳转目标, 不再线性扫 key/target 对
+ *
+ * case 少的二分; 多的 (字符串 switch 按 hashCode 分派, 几十个 case 很常见) 找一个乘法完美哈希:
+ *  slot = (key * multiplier) >>> shift, 表长是 2 的幂, 所有 key 互不冲突, 查一次比较一次
+ *  空 slot 的 target 就是 default, 不在表里的 key 即使落到空 slot 也是 default
+ * 找不到完美哈希 (表放大到 8 倍还冲突) 就退回二分
+ *
+ * 栈式解释器放在 DecodedCode.quick_cache_, 寄存器解释器放在 RegisterCode.quick_cache_, 见 LOOKUPSWITCH_QUICK, RegisterCode.LOOKUPSWITCH_Q
+ *
+ * @author chuxiaofeng
+ */
+final class LookupSwitch {
+    // 至少这么多 case 才找完美哈希
+    static final int HASH_MIN = 8;
+    private static final int MAX_TRIES = 64;
+
+    final int default_target;
+    // key 从小到大
+    private final int[] keys;
+    private final int[] targets;
+    // 完美哈希, 没找到是 null
+    private final int[] hash_keys;
+    private final int[] hash_targets;
+    private final int multiplier;
+    private final int shift;
+
+    // table[off...]: default, n_pairs, key, target, key, target...
+    LookupSwitch(int[] table, int off) {
+        default_target = table[off];
+        int n = table[off + 1];
+        keys = new int[n];
+        targets = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = table[off + 2 + 2 * i];
+            targets[i] = table[off + 3 + 2 * i];
+        }
+
+        int[] hash_keys = null, hash_targets = null;
+        int multiplier = 0, shift = 0;
+        if (n >= HASH_MIN) {
+            int bits = 32 - Integer.numberOfLeadingZeros(n * 2 - 1);
+            search:
+            for (int extra = 0; extra <= 2; extra++, bits++) {
+                int size = 1 << bits;
+                int m = 0x9E3779B9;
+                for (int t = 0; t < MAX_TRIES; t++, m = m * 0x5DEECE6D + 0x2B) {
+                    int mul = m | 1;
+                    int[] hk = new int[size];
+                    int[] ht = new int[size];
+                    Arrays.fill(ht, -1);
+                    boolean ok = true;
+                    for (int i = 0; i < n && ok; i++) {
+                        int slot = (keys[i] * mul) >>> (32 - bits);
+                        if (ht[slot] != -1) {
+                            ok = false;
+                        } else {
+                            hk[slot] = keys[i];
+                            ht[slot] = targets[i];
+                        }
+                    }
+                    if (ok) {
+                        for (int slot = 0; slot < size; slot++) {
+                            if (ht[slot] == -1) {
+                                ht[slot] = default_target;
+                                // 空 slot 的 key 随便填一个 hash 不到这里的值, 找不到就用 default, 结果一样
+                                hk[slot] = keys[0];
+                            }
+                        }
+                        hash_keys = hk;
+                        hash_targets = ht;
+                        multiplier = mul;
+                        shift = 32 - bits;
+                        break search;
+                    }
+                }
+            }
+        }
+        this.hash_keys = hash_keys;
+        this.hash_targets = hash_targets;
+        this.multiplier = multiplier;
+        this.shift = shift;
+    }
+
+    int target(int key) {
+        if (hash_keys != null) {
+            int slot = (key * multiplier) >>> shift;
+            return hash_keys[slot] == key ? hash_targets[slot] : default_target;
+        }
+        int lo = 0, hi = keys.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int k = keys[mid];
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return targets[mid];
+            }
+        }
+        return default_target;
+    }
+
+    boolean is_hashed() {
+        return hash_keys != null;
+    }
+}
@@ -0,0 +1,162 @@
+package zvm;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * 方法的运行时 profile, 参考 HotSpot 的 MethodData (MDO)
+ *
+ * 调用次数、回边次数驱动 Jit, 也用来找出耗时的 guest 方法, 见 VM.method_profiles
+ * 分支与调用点的数据按 DecodedCode 的 ip 索引, 两个解释器都记录
+ * 编译之后的代码只记调用次数 (在 Interpreter.execute 里), 回边计数放在宿主的循环里太贵, 与 HotSpot 的 C2 代码一样不记
+ *  分支: 跳转与不跳转的次数
+ *  invokevirtual / invokeinterface: 接收者类型, 记两种, 再多就只记次数 (megamorphic)
+ *
+ * 计数器不加锁, 多线程下丢几次无所谓, 与 HotSpot 一样
+ *
+ * @author chuxiaofeng
+ */
+final class MethodData {
+    final ZMethod method;
+    long invocations;
+    long backedges;
+    // 按 DecodedCode ip 索引, 只有分支指令的位置有值, 没有字节码的方法 (native) 长度是 0
+    private final int[] taken;
+    private final int[] not_taken;
+    private final ReceiverTypeData[] receivers;
+
+    MethodData(ZMethod method) {
+        this.method = method;
+        DecodedCode code = method.decoded_code();
+        int n = code == null ? 0 : code.code.length;
+        taken = new int[n];
+        not_taken = new int[n];
+        receivers = new ReceiverTypeData[n];
+    }
+
+    // ==================== 记录 ====================
+
+    // 每次执行方法体, 包括编译好的代码
+    void invoked() {
+        invocations++;
+        if (VM.jit && !method.jit_submitted_ && invocations + backedges >= VM.jit_threshold) {
+            Jit.submit(method);
+        }
+    }
+
+    // 向后跳转
+    void backedge() {
+        backedges++;
+        if (VM.jit && !method.jit_submitted_ && invocations + backedges >= VM.jit_threshold) {
+            Jit.submit(method);
+        }
+    }
+
+    // 返回 is_taken, 解释器直接拿来判断, 向后跳转顺便记一次回边
+    boolean branch(int ip, boolean is_taken, boolean backward) {
+        if (is_taken) {
+            taken[ip]++;
+            if (backward) {
+                backedge();
+            }
+        } else {
+            not_taken[ip]++;
+        }
+        return is_taken;
+    }
+
+    void receiver(int ip, ZClass z_class) {
+        ReceiverTypeData data = receivers[ip];
+        if (data == null) {
+            data = new ReceiverTypeData();
+            receivers[ip] = data;
+        }
+        data.record(z_class);
+    }
+
+    // ==================== 查询 ====================
+
+    // 按 ip 索引的数组长度
+    int length() {
+        return taken.length;
+    }
+
+    long invocation_count() {
+        return invocations;
+    }
+
+    long backedge_count() {
+        return backedges;
+    }
+
+    int taken_count(int ip) {
+        return ip < taken.length ? taken[ip] : 0;
+    }
+
+    int not_taken_count(int ip) {
+        return ip < not_taken.length ? not_taken[ip] : 0;
+    }
+
+    @Nullable ReceiverTypeData receiver_types(int ip) {
+        return ip < receivers.length ? receivers[ip] : null;
+    }
+
+    // 每个调用点记录两种接收者类型, 第三种开始只计数
+    static final class ReceiverTypeData {
+        static final int ROWS = 2;
+        final ZClass[] types = new ZClass[ROWS];
+        final int[] counts = new int[ROWS];
+        int megamorphic;
+
+        void record(ZClass z_class) {
+            for (int i = 0; i < ROWS; i++) {
+                if (types[i] == z_class) {
+                    counts[i]++;
+                    return;
+                }
+                if (types[i] == null) {
+                    types[i] = z_class;
+                    counts[i] = 1;
+                    return;
+                }
+            }
+            megamorphic++;
+        }
+
+        boolean is_monomorphic() {
+            return types[1] == null && megamorphic == 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < ROWS && types[i] != null; i++) {
+                sb.append(types[i].name()).append('=').append(counts[i]).append(' ');
+            }
+            return sb.append("other=").append(megamorphic).toString();
+        }
+    }
+
+    // ==================== 打印 ====================
+
+    void dump(PrintStream out) {
+        out.printf("%12d %12d  %s%n", invocations, backedges, method);
+        for (int ip = 0; ip < taken.length; ip++) {
+            if (taken[ip] != 0 || not_taken[ip] != 0) {
+                out.printf("    @%-6d branch taken=%d not_taken=%d%n", ip, taken[ip], not_taken[ip]);
+            }
+            if (receivers[ip] != null) {
+                out.printf("    @%-6d receivers %s%n", ip, receivers[ip]);
+            }
+        }
+    }
+
+    static void dump(PrintStream out, List<MethodData> profiles, int top_n) {
+        out.println("=== method profiles, invocations backedges ===");
+        for (int i = 0; i < top_n && i < profiles.size(); i++) {
+            profiles.get(i).dump(out);
+        }
+    }
+}
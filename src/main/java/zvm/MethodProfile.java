@@ -0,0 +1,128 @@
+package zvm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MethodData 的只读快照, 给 VM 外面用, 见 VM.method_profile_snapshot
+ *
+ * 拍快照的时候计数器还在涨, 各个计数之间不保证一致, 与 MethodData 不加锁一样
+ *
+ * @author chuxiaofeng
+ */
+public final class MethodProfile {
+    private final String method;
+    private final long invocations;
+    private final long backedges;
+    private final List<Branch> branches;
+    private final List<CallSite> call_sites;
+
+    private MethodProfile(String method, long invocations, long backedges, List<Branch> branches, List<CallSite> call_sites) {
+        this.method = method;
+        this.invocations = invocations;
+        this.backedges = backedges;
+        this.branches = Collections.unmodifiableList(branches);
+        this.call_sites = Collections.unmodifiableList(call_sites);
+    }
+
+    static MethodProfile of(MethodData md) {
+        List<Branch> branches = new ArrayList<>();
+        List<CallSite> call_sites = new ArrayList<>();
+        for (int ip = 0; ip < md.length(); ip++) {
+            int taken = md.taken_count(ip);
+            int not_taken = md.not_taken_count(ip);
+            if (taken != 0 || not_taken != 0) {
+                branches.add(new Branch(ip, taken, not_taken));
+            }
+            MethodData.ReceiverTypeData data = md.receiver_types(ip);
+            if (data != null) {
+                Map<String, Integer> receivers = new LinkedHashMap<>();
+                for (int i = 0; i < MethodData.ReceiverTypeData.ROWS && data.types[i] != null; i++) {
+                    receivers.put(data.types[i].name(), data.counts[i]);
+                }
+                call_sites.add(new CallSite(ip, receivers, data.megamorphic));
+            }
+        }
+        return new MethodProfile(md.method.toString(), md.invocation_count(), md.backedge_count(), branches, call_sites);
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public long invocation_count() {
+        return invocations;
+    }
+
+    public long backedge_count() {
+        return backedges;
+    }
+
+    // 按 ip 从小到大, 只有执行过的分支
+    public List<Branch> branches() {
+        return branches;
+    }
+
+    // 按 ip 从小到大, 只有执行过的 invokevirtual / invokeinterface
+    public List<CallSite> call_sites() {
+        return call_sites;
+    }
+
+    @Override
+    public String toString() {
+        return method + " invocations=" + invocations + " backedges=" + backedges;
+    }
+
+    public static final class Branch {
+        private final int ip;
+        private final int taken;
+        private final int not_taken;
+
+        private Branch(int ip, int taken, int not_taken) {
+            this.ip = ip;
+            this.taken = taken;
+            this.not_taken = not_taken;
+        }
+
+        public int ip() {
+            return ip;
+        }
+
+        public int taken_count() {
+            return taken;
+        }
+
+        public int not_taken_count() {
+            return not_taken;
+        }
+    }
+
+    public static final class CallSite {
+        private final int ip;
+        private final Map<String, Integer> receivers;
+        private final int megamorphic;
+
+        private CallSite(int ip, Map<String, Integer> receivers, int megamorphic) {
+            this.ip = ip;
+            this.receivers = Collections.unmodifiableMap(receivers);
+            this.megamorphic = megamorphic;
+        }
+
+        public int ip() {
+            return ip;
+        }
+
+        // 接收者类名 -> 次数, 最多 MethodData.ReceiverTypeData.ROWS 种
+        public Map<String, Integer> receiver_counts() {
+            return receivers;
+        }
+
+        // 记满之后其他接收者类型的次数
+        public int other_count() {
+            return megamorphic;
+        }
+    }
+}
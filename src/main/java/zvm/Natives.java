@@ -7,6 +7,11 @@ import zvm.ClassParser.ClassFile.Method;
 import zvm.helper.Reflect;
 
 import java.io.*;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -51,15 +56,26 @@ public class Natives {
             throw new UnsupportedOperationException(class_name + "." + method_name);
         }
         if (jni instanceof Invokable) {
-            return (Invokable) jni;
+            return bound((Invokable) jni);
         } else {
+            // 重载: 描述符一样的优先, 其次是没标描述符的; 每个 ZMethod 只 resolve 一次, 见 ZMethod.resolve_invokable
+            Invokable fallback = null;
             for (Invokable invokable : ((Invokable[]) jni)) {
                 if (descriptor.equals(invokable.descriptor())) {
-                    return invokable;
+                    return bound(invokable);
+                } else if (invokable.descriptor() == null) {
+                    fallback = invokable;
                 }
             }
+            if (fallback != null) {
+                return bound(fallback);
+            }
         }
-        throw new AssertionError();
+        throw new AssertionError(class_name + "." + method_name + descriptor);
+    }
+
+    private static Invokable bound(Invokable invokable) {
+        return invokable instanceof NativeMethod ? ((NativeMethod) invokable).bound() : invokable;
     }
 
     static void register(VM vm, String class_name) {
@@ -89,7 +105,7 @@ public class Natives {
 
             Object o = map.get(method_name);
             if (o == null) {
-                map.put(method_name, createInvokable(null, java_method));
+                map.put(method_name, createInvokable(descriptor, java_method));
             } else {
                 Invokable[] arr;
                 if (o instanceof Invokable) {
@@ -106,16 +122,75 @@ public class Natives {
     }
 
     private static Invokable createInvokable(String descriptor, java.lang.reflect.Method java_method) {
-        return new Invokable() {
-            @Override
-            public @Nullable String descriptor() {
-                return descriptor;
+        return new NativeMethod(descriptor, java_method);
+    }
+
+    /**
+     * 注册的时候只记下反射的 Method, 第一次 resolve 到的时候再用 LambdaMetafactory 绑定成 Invokable,
+     * 之后调用不走 Method.invoke (反射调用每次还要把 vm, method, object, args 再包一个数组)
+     * 参数还是装在 Object[] args 里, 这一点与反射调用一样
+     */
+    static final class NativeMethod implements Invokable {
+        private final @Nullable String descriptor;
+        private final java.lang.reflect.Method java_method;
+        private volatile @Nullable Invokable bound_cache_;
+
+        NativeMethod(@Nullable String descriptor, java.lang.reflect.Method java_method) {
+            this.descriptor = descriptor;
+            this.java_method = java_method;
+        }
+
+        @Override
+        public @Nullable String descriptor() {
+            return descriptor;
+        }
+
+        @Override
+        public Object invoke(VM vm, ZMethod method, @Nullable ZObject object, Object[] args) {
+            return bound().invoke(vm, method, object, args);
+        }
+
+        Invokable bound() {
+            Invokable bound = bound_cache_;
+            if (bound == null) {
+                bound = bind(java_method);
+                bound_cache_ = bound;
             }
-            @Override
-            public Object invoke(VM vm, ZMethod method, @Nullable ZObject object, Object[] args) {
-                return method_invoke0(java_method, null, vm, method, object, args);
+            return bound;
+        }
+    }
+
+    // LambdaMetafactory 不能把 void 适配成 Object, 返回 void 的 native 先绑到这个接口上
+    interface VoidInvokable {
+        void invoke(VM vm, ZMethod method, @Nullable ZObject object, Object[] args);
+    }
+
+    private static Invokable bind(java.lang.reflect.Method java_method) {
+        MethodType invokable_type = MethodType.methodType(Object.class, VM.class, ZMethod.class, ZObject.class, Object[].class);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle target = lookup.unreflect(java_method);
+            if (java_method.getReturnType() == void.class) {
+                MethodType void_type = invokable_type.changeReturnType(void.class);
+                VoidInvokable invokable = (VoidInvokable) LambdaMetafactory.metafactory(lookup, "invoke",
+                        MethodType.methodType(VoidInvokable.class), void_type, target, void_type).getTarget().invoke();
+                return (vm, method, object, args) -> {
+                    invokable.invoke(vm, method, object, args);
+                    return null;
+                };
+            } else {
+                return (Invokable) LambdaMetafactory.metafactory(lookup, "invoke",
+                        MethodType.methodType(Invokable.class), invokable_type, target, invokable_type).getTarget().invoke();
             }
-        };
+        } catch (IllegalAccessException | LambdaConversionException e) {
+            // resolve 到的 native 都是包可见的 static 方法, 签名与 Invokable 一致, 绑不上说明 native 写错了
+            assert false : "bind " + java_method + ": " + e;
+            System.err.println("[native " + java_method + " falls back to reflection: " + e + "]");
+            return (vm, method, object, args) -> method_invoke0(java_method, null, vm, method, object, args);
+        } catch (Throwable e) {
+            // 不捕获变量的 lambda 工厂只是返回同一个实例, 不会抛
+            throw new AssertionError(e);
+        }
     }
 
     //~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-+-~-
@@ -190,10 +265,10 @@ public class Natives {
         vm.check_null(str);
         ZClass java_lang_string = vm.load_class("java/lang/String", false);
         assert java_lang_string.is_assignable_from(str.z_class());
-        if (java_lang_String_field_value_slot == -1) {
-            java_lang_String_field_value_slot = java_lang_string.field("value").field_slot();
+        if (java_lang_String_field_value_index == -1) {
+            java_lang_String_field_value_index = java_lang_string.field("value").field_index();
         }
-        String value = new String(((ZArray) str.get_field(java_lang_String_field_value_slot)).char_array());
+        String value = new String(((ZArray) str.get_ref(java_lang_String_field_value_index)).char_array());
         // String value = new String(((ZArray) java_lang_string.field("value").get_value(str)).char_array());
         return new_intern_string(vm, value);
     }
@@ -233,21 +308,24 @@ public class Natives {
     }
 
     // 可以跨实例缓存
-    static int java_lang_String_field_value_slot = -1;
+    // 实例字段在 ZObject 引用区的下标, 见 ZField.field_index
+    static int java_lang_String_field_value_index = -1;
+    static int java_lang_Throwable_field_backtrace_index = -1;
     static String from_string(VM vm, ZObject z_object) {
         vm.check_null(z_object);
         ZClass java_lang_string = vm.load_class("java/lang/String", false);
         assert z_object.z_class() == java_lang_string;
-        if (java_lang_String_field_value_slot == -1) {
-            java_lang_String_field_value_slot = java_lang_string.field("value").field_slot();
+        if (java_lang_String_field_value_index == -1) {
+            java_lang_String_field_value_index = java_lang_string.field("value").field_index();
         }
-        ZArray value = (ZArray) z_object.get_field(java_lang_String_field_value_slot);
+        ZArray value = (ZArray) z_object.get_ref(java_lang_String_field_value_index);
         // ZArray value = (ZArray) java_lang_string.field("value").get_value(z_object);
         return new String(value.char_array());
     }
 
     static ZThrowable new_throwable(VM vm, Exception e) {
-        Object[] args = { new_string(vm, e.getMessage()) };
+        // 宿主异常可能没有 message, 比如 System.arraycopy 越界
+        Object[] args = { e.getMessage() == null ? null : new_string(vm, e.getMessage()) };
         String class_name = e.getClass().getName().replace('.', '/');
         ZObject ex_object = vm.load_class(class_name)
                 // new_instance 会触发填充堆栈
@@ -876,7 +954,7 @@ public class Natives {
             int length = (int) args[4];
 
             vm.check_null(src);
-            vm.check_null(dest_pos);
+            vm.check_null(dest);
 
             try {
                 ZArray.copy(src, src_pos, dest, dest_pos, length);
@@ -892,6 +970,10 @@ public class Natives {
             float value = (float) args[0];
             return Float.floatToRawIntBits(value);
         }
+        static float intBitsToFloat(VM vm, ZMethod method, ZObject object, Object[] args) {
+            int bits = (int) args[0];
+            return Float.intBitsToFloat(bits);
+        }
     }
 
     static class java_lang_Double {
@@ -951,27 +1033,26 @@ public class Natives {
 
     static class java_lang_Throwable {
         static void registerNatives(VM vm, ZMethod method, ZObject object, Object[] args) { }
-        private static ZObject[] stack_trace_elements(VM vm) {
-            ZClass stack_trace_element_class = vm.load_class("java/lang/StackTraceElement", true);
-            Deque<ZThread.Frame> stack = vm.stacks.get();
-            ZObject[] stack_trace_elements = new ZObject[stack.size()];
-            int i = 0;
-            for (ZThread.Frame frame : stack) {
-                // public StackTraceElement(String declaringClass, String methodName, String fileName, int lineNumber) {
-                stack_trace_elements[i++] = stack_trace_element_class
-                        .new_instance("(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;I)V",
-                                new Object[] {
-                                        new_string(vm, frame.method.class_name()),
-                                        new_string(vm, frame.method.name()),
-                                        new_string(vm, frame.method.file_name()),
-                                        frame.line_number(),
-                                });
+        // backtrace 字段放 Backtrace, 见 Backtrace
+        private static int backtrace_index(ZClass z_class) {
+            if (java_lang_Throwable_field_backtrace_index == -1) {
+                java_lang_Throwable_field_backtrace_index = z_class.field("backtrace").field_index();
             }
-            return stack_trace_elements;
+            return java_lang_Throwable_field_backtrace_index;
+        }
+        static void set_backtrace(ZObject z_throwable, Backtrace backtrace) {
+            ZClass throwable_class = z_throwable.vm.load_class("java/lang/Throwable", false);
+            z_throwable.put_ref(backtrace_index(throwable_class), backtrace);
+        }
+        // 子类覆盖了 fillInStackTrace 没有抓栈, 与 HotSpot 一样深度是 0
+        private static @Nullable Backtrace backtrace(ZClass z_class, ZObject z_object) {
+            return (Backtrace) z_object.get_ref(backtrace_index(z_class));
         }
-        private static void fillInStackTrace0(VM vm, ZClass z_class, ZObject z_object) {
-            ZClass stack_trace_element_class = vm.load_class("java/lang/StackTraceElement", true);
-            z_class.field("backtrace").put_value(z_object, stack_trace_element_class.new_array(stack_trace_elements(vm)));
+        private static Backtrace fillInStackTrace0(VM vm, ZClass z_class, ZObject z_object) {
+            Backtrace backtrace = Backtrace.capture(vm.thread(), z_object);
+            // 🦋 不是 guest 对象, 不走 ZField.put_value 的类型检查
+            z_object.put_ref(backtrace_index(z_class), backtrace);
+            return backtrace;
         }
         // private native Throwable fillInStackTrace(int dummy);
         static void fillInStackTrace(VM vm, ZMethod method, ZObject object, Object[] args) {
@@ -981,26 +1062,17 @@ public class Natives {
         }
         // native int getStackTraceDepth();
         static int getStackTraceDepth(VM vm, ZMethod method, ZObject object, Object[] args) {
-            ZClass stack_trace_element_class = vm.load_class("java/lang/StackTraceElement", true);
-            ZArray backtrace = (ZArray) method.declared_class().field("backtrace").get_value(object);
-            if (backtrace == null) {
-                fillInStackTrace0(vm, method.declared_class(), object);
-                return getStackTraceDepth(vm, method, object, args);
-            } else {
-                return backtrace.length();
-            }
+            Backtrace backtrace = backtrace(method.declared_class(), object);
+            return backtrace == null ? 0 : backtrace.depth();
         }
         // native StackTraceElement getStackTraceElement(int index);
         static ZObject getStackTraceElement(VM vm, ZMethod method, ZObject object, Object[] args) {
-            ZClass stack_trace_element_class = vm.load_class("java/lang/StackTraceElement", true);
-            ZArray backtrace = (ZArray) method.declared_class().field("backtrace").get_value(object);
-            if (backtrace == null) {
-                fillInStackTrace0(vm, method.declared_class(), object);
-                return getStackTraceElement(vm, method, object, args);
-            } else {
-                int index = (int) args[0];
-                return backtrace.z_object_array()[index];
+            int index = (int) args[0];
+            Backtrace backtrace = backtrace(method.declared_class(), object);
+            if (backtrace == null || index < 0 || index >= backtrace.depth()) {
+                throw new_throwable(vm, new IndexOutOfBoundsException(String.valueOf(index)));
             }
+            return backtrace.element(vm, index);
         }
     }
 
@@ -1643,15 +1715,15 @@ public class Natives {
     static class sun_reflect_Reflection {
         static void registerNatives(VM vm, ZMethod method, ZObject object, Object[] args) { }
         static ZClass getCallerClass(VM vm, ZMethod method, ZObject object, Object[] args) {
-            ZThread.Frame[] bt = vm.stacks.get().toArray(new ZThread.Frame[0]);
-            assert bt.length >= 3;
+            ZThread thread = vm.thread();
+            assert thread.depth() >= 3;
 //            // 0 是 getCallerClass
 //            // 1 是获取 caller 的 frame
 //            // 2 是 caller 的 class
 //            // todo 需要忽略  java.lang.reflect.Method.invoke 反射调用的帧
 //            // todo 需要忽略 MethodHandle 的帧
 //            // todo 需要忽略其他隐藏帧
-            return vm.load_class(bt[2].method.class_name(), true);
+            return vm.load_class(thread.frame(2).method.class_name(), true);
 //            String class_name = bt[1].method.class_name();
 //            for (int i = 2; i < bt.length; i++) {
 //                String class_name1 = bt[i].method.class_name();
@@ -1752,8 +1824,12 @@ public class Natives {
             // PrivilegedAction
             ZObject act = ((ZObject) args[0]);
             // todo test
-            return act.z_class().interface_method("run", "()Ljava/lang/Object;")
-                    .invoke(act, new Object[0]);
+            // 重载的 doPrivileged 都走这里, 参数可能是 PrivilegedAction 或 PrivilegedExceptionAction
+            String action = method.descriptor().startsWith("(Ljava/security/PrivilegedExceptionAction;")
+                    ? "java/security/PrivilegedExceptionAction" : "java/security/PrivilegedAction";
+            ZMethod run = vm.load_class(action, false)
+                    .interface_method("run", "()Ljava/lang/Object;");
+            return act.z_class().select(run).invoke(act, new Object[0]);
         }
 
         // private static native AccessControlContext getStackAccessControlContext();
@@ -0,0 +1,993 @@
+package zvm;
+
+import org.jetbrains.annotations.Nullable;
+import zvm.ClassParser.ClassFile;
+import zvm.ClassParser.ConstantPool;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static zvm.Bytecodes.*;
+import static zvm.ClassParser.AccessFlags.ACC_STATIC;
+import static zvm.ClassParser.Constants.*;
+
+/**
+ * 寄存器形式的 IR, 由未融合的 DecodedCode 翻译而来, 由 RegisterInterpreter 执行
+ *
+ * 寄存器就是 frame 在 slot arena 上的 slot, 与栈式解释器的 frame 布局完全一样:
+ *  r < max_locals 是局部变量, max_locals + d 是操作数栈深度 d 处的 slot
+ * 翻译时静态算出每条指令的栈深度, 操作数直接换成寄存器编号, load / store / dup / swap 变成 mov,
+ * 然后跑一遍 RegisterPasses 的 pass, 大部分 mov 会被消掉
+ *
+ * 指令定长 4 个 int: [op, a, b, c], pc 按 int 计, 下一条指令是 pc + 4, 跳转目标也是 pc
+ *  src_ip[pc >> 2] 是对应的 DecodedCode ip, frame.ip、栈帧行号、内联缓存都用这个
+ *  aux[pc >> 2] 放 switch 表, 翻译完就不再改
+ *  quick_cache_[pc >> 2] 放运行时的解析结果 (ZClass / ZField / ZMethod / 常量 / LookupSwitch), 见 quicken
+ *
+ * 不支持的方法翻译失败返回 null, 继续走栈式解释器:
+ *  有异常表的、jsr/ret、monitorenter/monitorexit、invokedynamic、multianewarray
+ *
+ * @author chuxiaofeng
+ */
+final class RegisterCode {
+
+    // ==================== 指令 ====================
+    // 操作数说明: d 目标寄存器, r 源寄存器, i 立即数或常量池下标, t 跳转目标 pc
+
+    static final int NOP            = 0;
+    static final int MOV            = 1;  // d r     prims refs 一起搬, dup 系列用
+    static final int MOV_P          = 2;  // d r
+    static final int MOV_A          = 3;  // d r
+    static final int CONST_I        = 4;  // d i     int 以及 float 的 bits
+    static final int CONST_W        = 5;  // d i i   long 以及 double 的 bits, b 低 32 位, c 高 32 位
+    static final int CONST_NULL     = 6;  // d
+    static final int LDC_A          = 7;  // d i     String 或者 Class, 第一次执行后改写成 CONST_A
+    static final int CONST_A        = 8;  // d       quick_cache_ 里的引用
+    static final int NULL_CHECK     = 9;  // r
+
+    static final int IADD           = 10; // d r r
+    static final int ISUB           = 11;
+    static final int IMUL           = 12;
+    static final int IDIV           = 13;
+    static final int IREM           = 14;
+    static final int ISHL           = 15;
+    static final int ISHR           = 16;
+    static final int IUSHR          = 17;
+    static final int IAND           = 18;
+    static final int IOR            = 19;
+    static final int IXOR           = 20;
+    static final int INEG           = 21; // d r
+    static final int IADD_I         = 22; // d r i
+    static final int IINC           = 23; // r i     原地
+
+    static final int LADD           = 24; // d r r
+    static final int LSUB           = 25;
+    static final int LMUL           = 26;
+    static final int LDIV           = 27;
+    static final int LREM           = 28;
+    static final int LSHL           = 29; // d r r   移位数是 int
+    static final int LSHR           = 30;
+    static final int LUSHR          = 31;
+    static final int LAND           = 32;
+    static final int LOR            = 33;
+    static final int LXOR           = 34;
+    static final int LNEG           = 35; // d r
+
+    static final int FADD           = 36; // d r r
+    static final int FSUB           = 37;
+    static final int FMUL           = 38;
+    static final int FDIV           = 39;
+    static final int FREM           = 40;
+    static final int FNEG           = 41; // d r
+    static final int DADD           = 42; // d r r
+    static final int DSUB           = 43;
+    static final int DMUL           = 44;
+    static final int DDIV           = 45;
+    static final int DREM           = 46;
+    static final int DNEG           = 47; // d r
+
+    static final int I2F            = 48; // d r     i2l 不需要指令, int 本来就是符号扩展存的
+    static final int I2D            = 49;
+    static final int L2I            = 50;
+    static final int L2F            = 51;
+    static final int L2D            = 52;
+    static final int F2I            = 53;
+    static final int F2L            = 54;
+    static final int F2D            = 55;
+    static final int D2I            = 56;
+    static final int D2L            = 57;
+    static final int D2F            = 58;
+    static final int I2B            = 59;
+    static final int I2C            = 60;
+    static final int I2S            = 61;
+    static final int LCMP           = 62; // d r r
+    static final int FCMPL          = 63;
+    static final int FCMPG          = 64;
+    static final int DCMPL          = 65;
+    static final int DCMPG          = 66;
+
+    static final int IFEQ           = 67; // r t
+    static final int IFNE           = 68;
+    static final int IFLT           = 69;
+    static final int IFGE           = 70;
+    static final int IFGT           = 71;
+    static final int IFLE           = 72;
+    static final int IF_ICMPEQ      = 73; // r r t
+    static final int IF_ICMPNE      = 74;
+    static final int IF_ICMPLT      = 75;
+    static final int IF_ICMPGE      = 76;
+    static final int IF_ICMPGT      = 77;
+    static final int IF_ICMPLE      = 78;
+    static final int IF_ACMPEQ      = 79; // r r t
+    static final int IF_ACMPNE      = 80;
+    static final int IFNULL         = 81; // r t
+    static final int IFNONNULL      = 82;
+    static final int GOTO           = 83; // t
+    static final int TABLESWITCH    = 84; // r       aux: int[] { default, low, high, target... }
+    static final int LOOKUPSWITCH   = 85; // r       aux: int[] { default, n_pairs, key, target... }
+    static final int RETURN_P       = 86; // r
+    static final int RETURN_A       = 87; // r
+    static final int RETURN         = 88;
+    static final int ATHROW         = 89; // r
+
+    static final int IALOAD         = 90; // d r r   数组 下标, 判空是单独的 NULL_CHECK
+    static final int LALOAD         = 91;
+    static final int FALOAD         = 92;
+    static final int DALOAD         = 93;
+    static final int AALOAD         = 94;
+    static final int BALOAD         = 95;
+    static final int CALOAD         = 96;
+    static final int SALOAD         = 97;
+    static final int IASTORE        = 98; // r r r   数组 下标 值
+    static final int LASTORE        = 99;
+    static final int FASTORE        = 100;
+    static final int DASTORE        = 101;
+    static final int AASTORE        = 102;
+    static final int BASTORE        = 103;
+    static final int CASTORE        = 104;
+    static final int SASTORE        = 105;
+    static final int ARRAYLENGTH    = 106; // d r
+    static final int NEWARRAY       = 107; // d r i  长度 atype
+    static final int ANEWARRAY      = 108; // d r i  长度 cpidx
+
+    static final int NEW            = 109; // d i
+    static final int NEW_Q          = 110; // d      quick_cache_: ZClass
+    static final int GETFIELD       = 111; // d r i  对象 cpidx, 判空是单独的 NULL_CHECK
+    static final int GETFIELD_Q     = 112; // d r i  对象 cpidx, quick_cache_: 下标 << 8 | kind, 见 ZField.field_index
+    static final int PUTFIELD       = 113; // r r i  对象 值 cpidx
+    static final int PUTFIELD_Q     = 114; // r r i  对象 值 cpidx, quick_cache_: 下标 << 8 | kind
+    static final int GETSTATIC      = 115; // d i
+    static final int GETSTATIC_Q    = 116; // d      quick_cache_: ZField
+    static final int PUTSTATIC      = 117; // r i
+    static final int PUTSTATIC_Q    = 118; // r      quick_cache_: ZField
+    static final int CHECKCAST      = 119; // r i
+    static final int INSTANCEOF     = 120; // d r i
+
+    // 参数在 [a, a + c) 上, 非 static 方法 a 是 this, 返回值写回 a, 调用之后 a 以上的寄存器都被被调用者的 frame 占用过
+    static final int INVOKEVIRTUAL  = 121; // r i i  args_base cpidx 参数 slot 数
+    static final int INVOKESPECIAL  = 122;
+    static final int INVOKESTATIC   = 123;
+    static final int INVOKEINTERFACE= 124;
+    static final int INVOKESPECIAL_Q= 125; // r - i  quick_cache_: ZMethod
+    static final int INVOKESTATIC_Q = 126;
+    static final int INVOKEVIRTUAL_Q= 127; // r - i  quick_cache_: InlineCache
+    static final int INVOKEINTERFACE_Q = 128;
+    static final int LOOKUPSWITCH_Q = 129; // r       quick_cache_: LookupSwitch
+    static final int AASTORE_U      = 130; // r r r   Verifier 证明了不需要 store check
+
+    static final int N_OPS          = 131;
+
+    // ==================== 指令元数据, 给 RegisterPasses 用 ====================
+
+    // a b c 三个操作数的用途: d 定义 r 使用 u 既使用又定义 t 跳转目标 - 其他
+    static final String[] FORMAT = new String[N_OPS];
+    // 没有副作用, 目标寄存器死了就可以删掉
+    static final int PURE = 1;
+    // 后面的指令不会顺序执行到
+    static final int STOP = 2;
+    // 有跳转目标 (不包括 switch)
+    static final int BRANCH = 4;
+    // 可以直接把结果写到别的寄存器里, 见 RegisterPasses.copy_propagation
+    static final int RETARGETABLE = 8;
+    static final int[] FLAGS = new int[N_OPS];
+
+    private static void def(int op, String format, int flags) {
+        assert format.length() == 3;
+        FORMAT[op] = format;
+        FLAGS[op] = flags;
+    }
+
+    private static void def(int from, int to, String format, int flags) {
+        for (int op = from; op <= to; op++) {
+            def(op, format, flags);
+        }
+    }
+
+    static {
+        def(NOP,            "---", PURE);
+        def(MOV,            "dr-", PURE | RETARGETABLE);
+        def(MOV_P,          "dr-", PURE | RETARGETABLE);
+        def(MOV_A,          "dr-", PURE | RETARGETABLE);
+        def(CONST_I,        "d--", PURE | RETARGETABLE);
+        def(CONST_W,        "d--", PURE | RETARGETABLE);
+        def(CONST_NULL,     "d--", PURE | RETARGETABLE);
+        def(LDC_A,          "d--", RETARGETABLE);
+        def(CONST_A,        "d--", PURE | RETARGETABLE);
+        def(NULL_CHECK,     "r--", 0);
+        def(IADD, IXOR,     "drr", PURE | RETARGETABLE);
+        def(IDIV,           "drr", RETARGETABLE);
+        def(IREM,           "drr", RETARGETABLE);
+        def(INEG,           "dr-", PURE | RETARGETABLE);
+        def(IADD_I,         "dr-", PURE | RETARGETABLE);
+        def(IINC,           "u--", PURE);
+        def(LADD, LXOR,     "drr", PURE | RETARGETABLE);
+        def(LDIV,           "drr", RETARGETABLE);
+        def(LREM,           "drr", RETARGETABLE);
+        def(LNEG,           "dr-", PURE | RETARGETABLE);
+        def(FADD, FREM,     "drr", PURE | RETARGETABLE);
+        def(FNEG,           "dr-", PURE | RETARGETABLE);
+        def(DADD, DREM,     "drr", PURE | RETARGETABLE);
+        def(DNEG,           "dr-", PURE | RETARGETABLE);
+        def(I2F, I2S,       "dr-", PURE | RETARGETABLE);
+        def(LCMP, DCMPG,    "drr", PURE | RETARGETABLE);
+        def(IFEQ, IFLE,     "rt-", BRANCH);
+        def(IF_ICMPEQ, IF_ACMPNE, "rrt", BRANCH);
+        def(IFNULL, IFNONNULL, "rt-", BRANCH);
+        def(GOTO,           "t--", BRANCH | STOP);
+        def(TABLESWITCH,    "r--", STOP);
+        def(LOOKUPSWITCH,   "r--", STOP);
+        def(LOOKUPSWITCH_Q, "r--", STOP);
+        def(RETURN_P,       "r--", STOP);
+        def(RETURN_A,       "r--", STOP);
+        def(RETURN,         "---", STOP);
+        def(ATHROW,         "r--", STOP);
+        def(IALOAD, SALOAD, "drr", RETARGETABLE);
+        def(IASTORE, SASTORE, "rrr", 0);
+        def(AASTORE_U,      "rrr", 0);
+        def(ARRAYLENGTH,    "dr-", RETARGETABLE);
+        def(NEWARRAY,       "dr-", 0);
+        def(ANEWARRAY,      "dr-", 0);
+        def(NEW,            "d--", 0);
+        def(NEW_Q,          "d--", 0);
+        def(GETFIELD,       "dr-", RETARGETABLE);
+        def(GETFIELD_Q,     "dr-", RETARGETABLE);
+        def(PUTFIELD,       "rr-", 0);
+        def(PUTFIELD_Q,     "rr-", 0);
+        def(GETSTATIC,      "d--", RETARGETABLE);
+        def(GETSTATIC_Q,    "d--", RETARGETABLE);
+        def(PUTSTATIC,      "r--", 0);
+        def(PUTSTATIC_Q,    "r--", 0);
+        def(CHECKCAST,      "r--", 0);
+        def(INSTANCEOF,     "dr-", RETARGETABLE);
+        // 参数是 [a, a + c) 一段寄存器, RegisterPasses 单独处理
+        def(INVOKEVIRTUAL, INVOKEINTERFACE_Q, "d--", 0);
+    }
+
+    static boolean is_invoke(int op) {
+        return op >= INVOKEVIRTUAL && op <= INVOKEINTERFACE_Q;
+    }
+
+    // ==================== IR ====================
+
+    final ZMethod method;
+    final int max_locals;
+    // max_locals + max_stack
+    final int n_regs;
+    int[] code;
+    int[] src_ip;
+    Object[] aux;
+    // pass 跑完、compact 之后才分配, 之后 pc 不再变
+    AtomicReferenceArray<Object> quick_cache_;
+
+    private RegisterCode(ZMethod method, int max_locals, int n_regs, int[] code, int[] src_ip, Object[] aux) {
+        this.method = method;
+        this.max_locals = max_locals;
+        this.n_regs = n_regs;
+        this.code = code;
+        this.src_ip = src_ip;
+        this.aux = aux;
+    }
+
+    boolean is_static() {
+        return (method.access_flags() & ACC_STATIC) != 0;
+    }
+
+    // 与 DecodedCode.quicken 一样: 先写解析结果, 再普通写 opcode, 操作数不改
+    // 别的线程可能先看到 quick_op 后看到解析结果, 这时 quick(pc) 是 null, 见 unquicken
+    void quicken(int pc, int quick_op, Object resolved) {
+        quick_cache_.set(pc >> 2, resolved);
+        code[pc] = quick_op;
+    }
+
+    @Nullable Object quick(int pc) {
+        return quick_cache_.get(pc >> 2);
+    }
+
+    // quick(pc) 是 null 的时候把 opcode 改回 quick_op 原来的指令, 返回 pc, 解释器从这里重新执行
+    int unquicken(int pc, int quick_op) {
+        code[pc] = unquick(quick_op);
+        return pc;
+    }
+
+    private static int unquick(int quick_op) {
+        switch (quick_op) {
+            case CONST_A:           return LDC_A;
+            case LOOKUPSWITCH_Q:    return LOOKUPSWITCH;
+            case NEW_Q:             return NEW;
+            case GETFIELD_Q:        return GETFIELD;
+            case PUTFIELD_Q:        return PUTFIELD;
+            case GETSTATIC_Q:       return GETSTATIC;
+            case PUTSTATIC_Q:       return PUTSTATIC;
+            case INVOKESPECIAL_Q:   return INVOKESPECIAL;
+            case INVOKESTATIC_Q:    return INVOKESTATIC;
+            case INVOKEVIRTUAL_Q:   return INVOKEVIRTUAL;
+            case INVOKEINTERFACE_Q: return INVOKEINTERFACE;
+            default: throw new AssertionError(name_of(quick_op));
+        }
+    }
+
+    // ==================== 翻译 ====================
+
+    static @Nullable RegisterCode translate(ZMethod method) {
+        ClassFile.Code code_attr = method.code();
+        if (code_attr == null || code_attr.exception_table.length > 0) {
+            return null;
+        }
+        DecodedCode decoded_code = DecodedCode.decode(method, false);
+        assert decoded_code != null;
+        RegisterCode register_code = new Translator(method, decoded_code).translate();
+        if (register_code == null) {
+            return null;
+        }
+        for (RegisterPasses.Pass pass : RegisterPasses.pipeline) {
+            pass.run(register_code);
+        }
+        register_code.compact();
+        register_code.quick_cache_ = new AtomicReferenceArray<>(register_code.code.length >> 2);
+        return register_code;
+    }
+
+    private static final class Translator {
+        final ZMethod method;
+        final DecodedCode decoded_code;
+        final int[] words;
+        final ConstantPool cp;
+        final int max_locals;
+        // 校验失败或者关掉了是 null
+        final @Nullable Verifier verifier;
+
+        // 每条指令翻译出来的 IR 片段, 下标是 DecodedCode ip, 跳转目标先填 ip, 拼起来之后再换成 pc
+        final int[][] fragments;
+        final Object[][] fragment_aux;
+        final int[] depth_at;
+        final int[] worklist;
+        int worklist_size;
+
+        // 当前片段
+        int[] buf = new int[32];
+        Object[] buf_aux = new Object[8];
+        int buf_size;
+
+        Translator(ZMethod method, DecodedCode decoded_code) {
+            this.method = method;
+            this.decoded_code = decoded_code;
+            this.words = decoded_code.code;
+            this.cp = method.constant_pool();
+            this.max_locals = decoded_code.max_locals;
+            this.verifier = VM.verify ? method.verifier() : null;
+            this.fragments = new int[words.length][];
+            this.fragment_aux = new Object[words.length][];
+            this.depth_at = new int[words.length];
+            this.worklist = new int[words.length];
+            Arrays.fill(depth_at, -1);
+        }
+
+        int s(int depth) {
+            return max_locals + depth;
+        }
+
+        void emit(int op, int a, int b, int c) {
+            emit(op, a, b, c, null);
+        }
+
+        void emit(int op, int a, int b, int c, @Nullable Object aux) {
+            if (buf_size + 4 > buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+                buf_aux = Arrays.copyOf(buf_aux, buf_aux.length * 2);
+            }
+            buf_aux[buf_size >> 2] = aux;
+            buf[buf_size++] = op;
+            buf[buf_size++] = a;
+            buf[buf_size++] = b;
+            buf[buf_size++] = c;
+        }
+
+        boolean unchecked(int ip) {
+            return verifier != null && verifier.unchecked(ip);
+        }
+
+        boolean reach(int ip, int depth) {
+            if (depth_at[ip] == -1) {
+                depth_at[ip] = depth;
+                worklist[worklist_size++] = ip;
+                return true;
+            }
+            return depth_at[ip] == depth;
+        }
+
+        @Nullable RegisterCode translate() {
+            reach(0, 0);
+            while (worklist_size > 0) {
+                int ip = worklist[--worklist_size];
+                buf_size = 0;
+                if (!translate(ip, depth_at[ip])) {
+                    return null;
+                }
+                fragments[ip] = Arrays.copyOf(buf, buf_size);
+                fragment_aux[ip] = Arrays.copyOf(buf_aux, buf_size >> 2);
+            }
+            return link();
+        }
+
+        // 按 ip 顺序把片段拼起来, 跳转目标从 ip 换成 pc, 没有执行到的指令直接扔掉
+        RegisterCode link() {
+            int[] pc_of_ip = new int[words.length + 1];
+            int size = 0;
+            for (int ip = 0; ip < words.length; ip++) {
+                pc_of_ip[ip] = size;
+                if (fragments[ip] != null) {
+                    size += fragments[ip].length;
+                }
+            }
+            pc_of_ip[words.length] = size;
+
+            int[] code = new int[size];
+            int[] src_ip = new int[size >> 2];
+            Object[] aux = new Object[size >> 2];
+            for (int ip = 0; ip < words.length; ip++) {
+                int[] fragment = fragments[ip];
+                if (fragment == null) {
+                    continue;
+                }
+                int pc = pc_of_ip[ip];
+                System.arraycopy(fragment, 0, code, pc, fragment.length);
+                System.arraycopy(fragment_aux[ip], 0, aux, pc >> 2, fragment.length >> 2);
+                Arrays.fill(src_ip, pc >> 2, (pc + fragment.length) >> 2, ip);
+            }
+            for (int pc = 0; pc < size; pc += 4) {
+                int op = code[pc];
+                String format = FORMAT[op];
+                for (int i = 0; i < 3; i++) {
+                    if (format.charAt(i) == 't') {
+                        code[pc + 1 + i] = pc_of_ip[code[pc + 1 + i]];
+                    }
+                }
+                if (op == TABLESWITCH) {
+                    int[] table = (int[]) aux[pc >> 2];
+                    table[0] = pc_of_ip[table[0]];
+                    for (int i = 3; i < table.length; i++) {
+                        table[i] = pc_of_ip[table[i]];
+                    }
+                } else if (op == LOOKUPSWITCH) {
+                    int[] table = (int[]) aux[pc >> 2];
+                    table[0] = pc_of_ip[table[0]];
+                    for (int i = 3; i < table.length; i += 2) {
+                        table[i] = pc_of_ip[table[i]];
+                    }
+                }
+            }
+            return new RegisterCode(method, max_locals, max_locals + decoded_code.max_stack, code, src_ip, aux);
+        }
+
+        static int size_of(char kind) {
+            return kind == 'J' || kind == 'D' ? 2 : 1;
+        }
+
+        // 翻译一条指令, 并把后继指令放进 worklist, 不支持的指令返回 false
+        boolean translate(int ip, int d) {
+            int op = words[ip];
+            int next = ip + 1;
+            int target;
+            switch (op) {
+                case Bytecodes.NOP: break;
+                case ACONST_NULL: emit(CONST_NULL, s(d), 0, 0); d++; break;
+                case ICONST_M1: case ICONST_0: case ICONST_1: case ICONST_2: case ICONST_3: case ICONST_4: case ICONST_5:
+                    emit(CONST_I, s(d), op - ICONST_0, 0); d++; break;
+                case LCONST_0: case LCONST_1:
+                    emit(CONST_W, s(d), op - LCONST_0, 0); d += 2; break;
+                case FCONST_0: case FCONST_1: case FCONST_2:
+                    emit(CONST_I, s(d), Float.floatToRawIntBits(op - FCONST_0), 0); d++; break;
+                case DCONST_0: case DCONST_1:
+                    wide_const(s(d), Double.doubleToRawLongBits(op - DCONST_0)); d += 2; break;
+                case BIPUSH: case SIPUSH:
+                    emit(CONST_I, s(d), words[ip + 1], 0); d++; next++; break;
+                case LDC:
+                {
+                    int idx = words[ip + 1];
+                    next++;
+                    switch (cp.tag(idx)) {
+                        case CONSTANT_Integer: emit(CONST_I, s(d), cp.int_at(idx), 0); break;
+                        case CONSTANT_Float: emit(CONST_I, s(d), Float.floatToRawIntBits(cp.float_at(idx)), 0); break;
+                        case CONSTANT_String:
+                        case CONSTANT_Class: emit(LDC_A, s(d), idx, 0); break;
+                        default: return false;
+                    }
+                    d++;
+                    break;
+                }
+                case LDC2_W:
+                {
+                    int idx = words[ip + 1];
+                    next++;
+                    switch (cp.tag(idx)) {
+                        case CONSTANT_Long: wide_const(s(d), cp.long_at(idx)); break;
+                        case CONSTANT_Double: wide_const(s(d), Double.doubleToRawLongBits(cp.double_at(idx))); break;
+                        default: return false;
+                    }
+                    d += 2;
+                    break;
+                }
+                case ILOAD: case FLOAD: emit(MOV_P, s(d), words[ip + 1], 0); d++; next++; break;
+                case LLOAD: case DLOAD: emit(MOV_P, s(d), words[ip + 1], 0); d += 2; next++; break;
+                case ALOAD: emit(MOV_A, s(d), words[ip + 1], 0); d++; next++; break;
+                case ISTORE: case FSTORE: emit(MOV_P, words[ip + 1], s(d - 1), 0); d--; next++; break;
+                case LSTORE: case DSTORE: emit(MOV_P, words[ip + 1], s(d - 2), 0); d -= 2; next++; break;
+                case ASTORE: emit(MOV_A, words[ip + 1], s(d - 1), 0); d--; next++; break;
+
+                case Bytecodes.IALOAD: case Bytecodes.FALOAD: case Bytecodes.AALOAD:
+                case Bytecodes.BALOAD: case Bytecodes.CALOAD: case Bytecodes.SALOAD:
+                    emit(NULL_CHECK, s(d - 2), 0, 0);
+                    emit(array_load(op), s(d - 2), s(d - 2), s(d - 1));
+                    d--;
+                    break;
+                case Bytecodes.LALOAD: case Bytecodes.DALOAD:
+                    emit(NULL_CHECK, s(d - 2), 0, 0);
+                    emit(array_load(op), s(d - 2), s(d - 2), s(d - 1));
+                    break;
+                case Bytecodes.IASTORE: case Bytecodes.FASTORE: case Bytecodes.AASTORE:
+                case Bytecodes.BASTORE: case Bytecodes.CASTORE: case Bytecodes.SASTORE:
+                    emit(NULL_CHECK, s(d - 3), 0, 0);
+                    emit(op == Bytecodes.AASTORE && unchecked(ip) ? AASTORE_U : array_store(op), s(d - 3), s(d - 2), s(d - 1));
+                    d -= 3;
+                    break;
+                case Bytecodes.LASTORE: case Bytecodes.DASTORE:
+                    emit(NULL_CHECK, s(d - 4), 0, 0);
+                    emit(array_store(op), s(d - 4), s(d - 3), s(d - 2));
+                    d -= 4;
+                    break;
+
+                case POP: d--; break;
+                case POP2: d -= 2; break;
+                // 与 Interpreter 的 dup 系列同样的搬法, mov(from, to) -> MOV to from
+                case DUP:
+                    emit(MOV, s(d), s(d - 1), 0);
+                    d++;
+                    break;
+                case DUP_X1:
+                    emit(MOV, s(d), s(d - 1), 0);
+                    emit(MOV, s(d - 1), s(d - 2), 0);
+                    emit(MOV, s(d - 2), s(d), 0);
+                    d++;
+                    break;
+                case DUP_X2:
+                    emit(MOV, s(d), s(d - 1), 0);
+                    emit(MOV, s(d - 1), s(d - 2), 0);
+                    emit(MOV, s(d - 2), s(d - 3), 0);
+                    emit(MOV, s(d - 3), s(d), 0);
+                    d++;
+                    break;
+                case DUP2:
+                    emit(MOV, s(d), s(d - 2), 0);
+                    emit(MOV, s(d + 1), s(d - 1), 0);
+                    d += 2;
+                    break;
+                case DUP2_X1:
+                    emit(MOV, s(d + 1), s(d - 1), 0);
+                    emit(MOV, s(d), s(d - 2), 0);
+                    emit(MOV, s(d - 1), s(d - 3), 0);
+                    emit(MOV, s(d - 2), s(d + 1), 0);
+                    emit(MOV, s(d - 3), s(d), 0);
+                    d += 2;
+                    break;
+                case DUP2_X2:
+                    emit(MOV, s(d + 1), s(d - 1), 0);
+                    emit(MOV, s(d), s(d - 2), 0);
+                    emit(MOV, s(d - 1), s(d - 3), 0);
+                    emit(MOV, s(d - 2), s(d - 4), 0);
+                    emit(MOV, s(d - 3), s(d + 1), 0);
+                    emit(MOV, s(d - 4), s(d), 0);
+                    d += 2;
+                    break;
+                case SWAP:
+                    // 借栈顶上面一个 slot 倒腾, 栈已经满了就不支持
+                    if (d >= decoded_code.max_stack) {
+                        return false;
+                    }
+                    emit(MOV, s(d), s(d - 1), 0);
+                    emit(MOV, s(d - 1), s(d - 2), 0);
+                    emit(MOV, s(d - 2), s(d), 0);
+                    break;
+
+                case Bytecodes.IADD: case Bytecodes.ISUB: case Bytecodes.IMUL: case Bytecodes.IDIV: case Bytecodes.IREM:
+                case Bytecodes.ISHL: case Bytecodes.ISHR: case Bytecodes.IUSHR:
+                case Bytecodes.IAND: case Bytecodes.IOR: case Bytecodes.IXOR:
+                case Bytecodes.FADD: case Bytecodes.FSUB: case Bytecodes.FMUL: case Bytecodes.FDIV: case Bytecodes.FREM:
+                case Bytecodes.FCMPL: case Bytecodes.FCMPG:
+                    emit(binary(op), s(d - 2), s(d - 2), s(d - 1));
+                    d--;
+                    break;
+                case Bytecodes.LADD: case Bytecodes.LSUB: case Bytecodes.LMUL: case Bytecodes.LDIV: case Bytecodes.LREM:
+                case Bytecodes.LAND: case Bytecodes.LOR: case Bytecodes.LXOR:
+                case Bytecodes.DADD: case Bytecodes.DSUB: case Bytecodes.DMUL: case Bytecodes.DDIV: case Bytecodes.DREM:
+                    emit(binary(op), s(d - 4), s(d - 4), s(d - 2));
+                    d -= 2;
+                    break;
+                case Bytecodes.LSHL: case Bytecodes.LSHR: case Bytecodes.LUSHR:
+                    emit(binary(op), s(d - 3), s(d - 3), s(d - 1));
+                    d--;
+                    break;
+                case Bytecodes.LCMP: case Bytecodes.DCMPL: case Bytecodes.DCMPG:
+                    emit(binary(op), s(d - 4), s(d - 4), s(d - 2));
+                    d -= 3;
+                    break;
+                case Bytecodes.INEG: case Bytecodes.FNEG:
+                    emit(binary(op), s(d - 1), s(d - 1), 0);
+                    break;
+                case Bytecodes.LNEG: case Bytecodes.DNEG:
+                    emit(binary(op), s(d - 2), s(d - 2), 0);
+                    break;
+                case Bytecodes.IINC:
+                    emit(IINC, words[ip + 1], words[ip + 2], 0);
+                    next += 2;
+                    break;
+
+                // 类型转换都是原地的, 结果与操作数在同一个寄存器
+                case I2L: d++; break;
+                case Bytecodes.I2F: case Bytecodes.I2B: case Bytecodes.I2C: case Bytecodes.I2S:
+                    emit(binary(op), s(d - 1), s(d - 1), 0);
+                    break;
+                case Bytecodes.F2I:
+                    emit(F2I, s(d - 1), s(d - 1), 0);
+                    break;
+                case Bytecodes.I2D: case Bytecodes.F2L: case Bytecodes.F2D:
+                    emit(binary(op), s(d - 1), s(d - 1), 0);
+                    d++;
+                    break;
+                case Bytecodes.L2I: case Bytecodes.L2F: case Bytecodes.D2I: case Bytecodes.D2F:
+                    emit(binary(op), s(d - 2), s(d - 2), 0);
+                    d--;
+                    break;
+                case Bytecodes.L2D: case Bytecodes.D2L:
+                    emit(binary(op), s(d - 2), s(d - 2), 0);
+                    break;
+
+                case Bytecodes.IFEQ: case Bytecodes.IFNE: case Bytecodes.IFLT:
+                case Bytecodes.IFGE: case Bytecodes.IFGT: case Bytecodes.IFLE:
+                case Bytecodes.IFNULL: case Bytecodes.IFNONNULL:
+                    target = words[ip + 1];
+                    emit(branch(op), s(d - 1), target, 0);
+                    d--;
+                    next++;
+                    if (!reach(target, d)) {
+                        return false;
+                    }
+                    break;
+                case Bytecodes.IF_ICMPEQ: case Bytecodes.IF_ICMPNE: case Bytecodes.IF_ICMPLT:
+                case Bytecodes.IF_ICMPGE: case Bytecodes.IF_ICMPGT: case Bytecodes.IF_ICMPLE:
+                case Bytecodes.IF_ACMPEQ: case Bytecodes.IF_ACMPNE:
+                    target = words[ip + 1];
+                    emit(branch(op), s(d - 2), s(d - 1), target);
+                    d -= 2;
+                    next++;
+                    if (!reach(target, d)) {
+                        return false;
+                    }
+                    break;
+                case Bytecodes.GOTO:
+                    target = words[ip + 1];
+                    emit(GOTO, target, 0, 0);
+                    return reach(target, d);
+                case Bytecodes.TABLESWITCH:
+                {
+                    int n = words[ip + 3] - words[ip + 2] + 1;
+                    int[] table = Arrays.copyOfRange(words, ip + 1, ip + 4 + n);
+                    emit(TABLESWITCH, s(d - 1), 0, 0, table);
+                    d--;
+                    if (!reach(table[0], d)) {
+                        return false;
+                    }
+                    for (int i = 3; i < table.length; i++) {
+                        if (!reach(table[i], d)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                case Bytecodes.LOOKUPSWITCH:
+                {
+                    int n_pairs = words[ip + 2];
+                    int[] table = Arrays.copyOfRange(words, ip + 1, ip + 3 + n_pairs * 2);
+                    emit(LOOKUPSWITCH, s(d - 1), 0, 0, table);
+                    d--;
+                    if (!reach(table[0], d)) {
+                        return false;
+                    }
+                    for (int i = 3; i < table.length; i += 2) {
+                        if (!reach(table[i], d)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                case IRETURN: case FRETURN:
+                    emit(RETURN_P, s(d - 1), 0, 0);
+                    return true;
+                case LRETURN: case DRETURN:
+                    emit(RETURN_P, s(d - 2), 0, 0);
+                    return true;
+                case ARETURN:
+                    emit(RETURN_A, s(d - 1), 0, 0);
+                    return true;
+                case Bytecodes.RETURN:
+                    emit(RETURN, 0, 0, 0);
+                    return true;
+                case Bytecodes.ATHROW:
+                    emit(ATHROW, s(d - 1), 0, 0);
+                    return true;
+
+                case Bytecodes.GETSTATIC:
+                {
+                    int idx = words[ip + 1];
+                    emit(GETSTATIC, s(d), idx, 0);
+                    d += size_of(cp.field_ref_at(idx).name_and_type.descriptor.charAt(0));
+                    next++;
+                    break;
+                }
+                case Bytecodes.PUTSTATIC:
+                {
+                    int idx = words[ip + 1];
+                    d -= size_of(cp.field_ref_at(idx).name_and_type.descriptor.charAt(0));
+                    emit(PUTSTATIC, s(d), idx, 0);
+                    next++;
+                    break;
+                }
+                case Bytecodes.GETFIELD:
+                {
+                    int idx = words[ip + 1];
+                    emit(NULL_CHECK, s(d - 1), 0, 0);
+                    emit(GETFIELD, s(d - 1), s(d - 1), idx);
+                    d += size_of(cp.field_ref_at(idx).name_and_type.descriptor.charAt(0)) - 1;
+                    next++;
+                    break;
+                }
+                case Bytecodes.PUTFIELD:
+                {
+                    int idx = words[ip + 1];
+                    int size = size_of(cp.field_ref_at(idx).name_and_type.descriptor.charAt(0));
+                    emit(NULL_CHECK, s(d - 1 - size), 0, 0);
+                    emit(PUTFIELD, s(d - 1 - size), s(d - size), idx);
+                    d -= 1 + size;
+                    next++;
+                    break;
+                }
+                case Bytecodes.INVOKEVIRTUAL: case Bytecodes.INVOKESPECIAL:
+                case Bytecodes.INVOKESTATIC: case Bytecodes.INVOKEINTERFACE:
+                {
+                    int idx = words[ip + 1];
+                    ConstantPool.NameAndType name_and_type = cp.method_ref_at(idx, op).name_and_type;
+                    int n_slots = Interpreter.parameter_slots(name_and_type) + (op == Bytecodes.INVOKESTATIC ? 0 : 1);
+                    d -= n_slots;
+                    emit(invoke(op), s(d), idx, n_slots);
+                    char return_kind = Descriptor.return_kind(name_and_type.descriptor);
+                    d += return_kind == 'V' ? 0 : size_of(return_kind);
+                    next++;
+                    break;
+                }
+                case Bytecodes.NEW:
+                    emit(NEW, s(d), words[ip + 1], 0);
+                    d++;
+                    next++;
+                    break;
+                case Bytecodes.NEWARRAY:
+                    emit(NEWARRAY, s(d - 1), s(d - 1), words[ip + 1]);
+                    next++;
+                    break;
+                case Bytecodes.ANEWARRAY:
+                    emit(ANEWARRAY, s(d - 1), s(d - 1), words[ip + 1]);
+                    next++;
+                    break;
+                case Bytecodes.ARRAYLENGTH:
+                    emit(NULL_CHECK, s(d - 1), 0, 0);
+                    emit(ARRAYLENGTH, s(d - 1), s(d - 1), 0);
+                    break;
+                case Bytecodes.CHECKCAST:
+                    if (!unchecked(ip)) {
+                        emit(CHECKCAST, s(d - 1), words[ip + 1], 0);
+                    }
+                    next++;
+                    break;
+                case Bytecodes.INSTANCEOF:
+                    emit(INSTANCEOF, s(d - 1), s(d - 1), words[ip + 1]);
+                    next++;
+                    break;
+                // JSR RET MONITORENTER MONITOREXIT INVOKEDYNAMIC MULTIANEWARRAY ...
+                default:
+                    return false;
+            }
+            assert d >= 0 && d <= decoded_code.max_stack : method + " 栈深度不对 " + d;
+            return next < words.length && reach(next, d);
+        }
+
+        void wide_const(int reg, long bits) {
+            emit(CONST_W, reg, (int) bits, (int) (bits >>> 32));
+        }
+
+        static int array_load(int op) {
+            return IALOAD + (op - Bytecodes.IALOAD);
+        }
+
+        static int array_store(int op) {
+            return IASTORE + (op - Bytecodes.IASTORE);
+        }
+
+        static int branch(int op) {
+            if (op >= Bytecodes.IFEQ && op <= Bytecodes.IF_ACMPNE) {
+                return IFEQ + (op - Bytecodes.IFEQ);
+            }
+            return op == Bytecodes.IFNULL ? IFNULL : IFNONNULL;
+        }
+
+        static int invoke(int op) {
+            return INVOKEVIRTUAL + (op - Bytecodes.INVOKEVIRTUAL);
+        }
+
+        static int binary(int op) {
+            switch (op) {
+                case Bytecodes.IADD: return IADD;
+                case Bytecodes.ISUB: return ISUB;
+                case Bytecodes.IMUL: return IMUL;
+                case Bytecodes.IDIV: return IDIV;
+                case Bytecodes.IREM: return IREM;
+                case Bytecodes.ISHL: return ISHL;
+                case Bytecodes.ISHR: return ISHR;
+                case Bytecodes.IUSHR: return IUSHR;
+                case Bytecodes.IAND: return IAND;
+                case Bytecodes.IOR: return IOR;
+                case Bytecodes.IXOR: return IXOR;
+                case Bytecodes.INEG: return INEG;
+                case Bytecodes.LADD: return LADD;
+                case Bytecodes.LSUB: return LSUB;
+                case Bytecodes.LMUL: return LMUL;
+                case Bytecodes.LDIV: return LDIV;
+                case Bytecodes.LREM: return LREM;
+                case Bytecodes.LSHL: return LSHL;
+                case Bytecodes.LSHR: return LSHR;
+                case Bytecodes.LUSHR: return LUSHR;
+                case Bytecodes.LAND: return LAND;
+                case Bytecodes.LOR: return LOR;
+                case Bytecodes.LXOR: return LXOR;
+                case Bytecodes.LNEG: return LNEG;
+                case Bytecodes.FADD: return FADD;
+                case Bytecodes.FSUB: return FSUB;
+                case Bytecodes.FMUL: return FMUL;
+                case Bytecodes.FDIV: return FDIV;
+                case Bytecodes.FREM: return FREM;
+                case Bytecodes.FNEG: return FNEG;
+                case Bytecodes.DADD: return DADD;
+                case Bytecodes.DSUB: return DSUB;
+                case Bytecodes.DMUL: return DMUL;
+                case Bytecodes.DDIV: return DDIV;
+                case Bytecodes.DREM: return DREM;
+                case Bytecodes.DNEG: return DNEG;
+                case Bytecodes.I2F: return I2F;
+                case Bytecodes.I2D: return I2D;
+                case Bytecodes.L2I: return L2I;
+                case Bytecodes.L2F: return L2F;
+                case Bytecodes.L2D: return L2D;
+                case Bytecodes.F2L: return F2L;
+                case Bytecodes.F2D: return F2D;
+                case Bytecodes.D2I: return D2I;
+                case Bytecodes.D2L: return D2L;
+                case Bytecodes.D2F: return D2F;
+                case Bytecodes.I2B: return I2B;
+                case Bytecodes.I2C: return I2C;
+                case Bytecodes.I2S: return I2S;
+                case Bytecodes.LCMP: return LCMP;
+                case Bytecodes.FCMPL: return FCMPL;
+                case Bytecodes.FCMPG: return FCMPG;
+                case Bytecodes.DCMPL: return DCMPL;
+                case Bytecodes.DCMPG: return DCMPG;
+                default: throw new AssertionError(nameOf(op));
+            }
+        }
+    }
+
+    // ==================== 压缩 ====================
+
+    // 去掉 pass 留下的 NOP, 跳转目标指向 NOP 的顺延到下一条指令
+    void compact() {
+        int n = code.length >> 2;
+        int[] new_pc = new int[n + 1];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            new_pc[i] = size;
+            if (code[i << 2] != NOP) {
+                size += 4;
+            }
+        }
+        new_pc[n] = size;
+        if (size == code.length) {
+            return;
+        }
+
+        int[] new_code = new int[size];
+        int[] new_src_ip = new int[size >> 2];
+        Object[] new_aux = new Object[size >> 2];
+        for (int i = 0; i < n; i++) {
+            int pc = i << 2;
+            int op = code[pc];
+            if (op == NOP) {
+                continue;
+            }
+            int to = new_pc[i];
+            System.arraycopy(code, pc, new_code, to, 4);
+            new_src_ip[to >> 2] = src_ip[i];
+            new_aux[to >> 2] = aux[i];
+            String format = FORMAT[op];
+            for (int k = 0; k < 3; k++) {
+                if (format.charAt(k) == 't') {
+                    new_code[to + 1 + k] = new_pc[code[pc + 1 + k] >> 2];
+                }
+            }
+            if (op == TABLESWITCH || op == LOOKUPSWITCH) {
+                int[] table = (int[]) aux[i];
+                table[0] = new_pc[table[0] >> 2];
+                int step = op == TABLESWITCH ? 1 : 2;
+                for (int k = 3; k < table.length; k += step) {
+                    table[k] = new_pc[table[k] >> 2];
+                }
+            }
+        }
+        code = new_code;
+        src_ip = new_src_ip;
+        aux = new_aux;
+    }
+
+    // ==================== debug ====================
+
+    private static String[] names;
+
+    static String name_of(int op) {
+        if (names == null) {
+            String[] ns = new String[N_OPS];
+            for (Field f : RegisterCode.class.getDeclaredFields()) {
+                int m = f.getModifiers();
+                if (Modifier.isStatic(m) && Modifier.isFinal(m) && f.getType() == int.class
+                        && !f.getName().equals("N_OPS") && f.getName().equals(f.getName().toUpperCase())) {
+                    try {
+                        int v = f.getInt(null);
+                        if (v >= 0 && v < N_OPS && ns[v] == null && FORMAT[v] != null) {
+                            ns[v] = f.getName().toLowerCase();
+                        }
+                    } catch (IllegalAccessException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+            names = ns;
+        }
+        return names[op];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(method.toString()).append('\n');
+        for (int pc = 0; pc < code.length; pc += 4) {
+            sb.append(String.format("%4d %-16s %4d %4d %4d  ; ip %d%n",
+                    pc, name_of(code[pc]), code[pc + 1], code[pc + 2], code[pc + 3], src_ip[pc >> 2]));
+        }
+        return sb.toString();
+    }
+}
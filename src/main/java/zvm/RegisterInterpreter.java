@@ -0,0 +1,700 @@
+package zvm;
+
+import zvm.ClassParser.ConstantPool;
+
+import static zvm.ClassParser.Constants.CONSTANT_String;
+import static zvm.Interpreter.as_double;
+import static zvm.Interpreter.as_float;
+import static zvm.Interpreter.double_bits;
+import static zvm.Interpreter.float_bits;
+import static zvm.RegisterCode.*;
+
+/**
+ * RegisterCode 的解释器, 每条指令定长 [op, a, b, c], 操作数直接是寄存器, 没有 sp
+ *
+ * 寄存器就是 frame 的 slot, 见 RegisterCode, 与栈式解释器的约定一样:
+ *  prims / refs 两半, long double 只放低位 slot, 返回值写到 base, invoke 的参数原地变成被调用者的局部变量
+ *
+ * 翻译时已经排除了有异常表的方法, 所以这里不需要查异常表, 异常直接抛给调用者
+ * 可能抛异常或者调用方法的指令之前设置 frame.ip, 栈帧行号、内联缓存都按对应的 DecodedCode ip 算
+ *
+ * @author chuxiaofeng
+ */
+final class RegisterInterpreter {
+
+    static void execute(VM vm, ZThread thread, ZThread.Frame frame, RegisterCode rc, MethodData md) throws ZThrowable {
+        ZMethod method = frame.method;
+        int[] code = rc.code;
+        int[] src_ip = rc.src_ip;
+        Object[] aux = rc.aux;
+        ConstantPool cp = method.constant_pool();
+        long[] prims = frame.chunk.prims;
+        Object[] refs = frame.chunk.refs;
+        int base = frame.base;
+
+        int pc = 0;
+        int i1, i2;
+        long l1, l2;
+        float f1, f2;
+        double d1, d2;
+        ZArray z_arr;
+
+        while (true) {
+            int at = pc;
+            int op = code[pc];
+            int a = code[pc + 1];
+            int b = code[pc + 2];
+            int c = code[pc + 3];
+            pc += 4;
+
+            switch (op) {
+                case NOP:
+                    break;
+                case MOV:
+                    prims[base + a] = prims[base + b];
+                    refs[base + a] = refs[base + b];
+                    break;
+                case MOV_P:
+                    prims[base + a] = prims[base + b];
+                    break;
+                case MOV_A:
+                    refs[base + a] = refs[base + b];
+                    break;
+                case CONST_I:
+                    prims[base + a] = b;
+                    break;
+                case CONST_W:
+                    prims[base + a] = (b & 0xffffffffL) | ((long) c << 32);
+                    break;
+                case CONST_NULL:
+                    refs[base + a] = null;
+                    break;
+                case LDC_A:
+                {
+                    frame.ip = src_ip[at >> 2];
+                    Object constant;
+                    if (cp.tag(b) == CONSTANT_String) {
+                        constant = Natives.new_intern_string(vm, cp.string_at(b));
+                    } else {
+                        constant = vm.load_class(cp.class_at(b), false);
+                    }
+                    rc.quicken(at, CONST_A, constant);
+                    refs[base + a] = constant;
+                    break;
+                }
+                case CONST_A:
+                {
+                    Object constant = rc.quick(at);
+                    if (constant == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    refs[base + a] = constant;
+                    break;
+                }
+                case NULL_CHECK:
+                    if (refs[base + a] == null) {
+                        frame.ip = src_ip[at >> 2];
+                        vm.check_null(null);
+                    }
+                    break;
+
+                case IADD:
+                    prims[base + a] = (int) prims[base + b] + (int) prims[base + c];
+                    break;
+                case ISUB:
+                    prims[base + a] = (int) prims[base + b] - (int) prims[base + c];
+                    break;
+                case IMUL:
+                    prims[base + a] = (int) prims[base + b] * (int) prims[base + c];
+                    break;
+                case IDIV:
+                    i2 = (int) prims[base + c];
+                    if (i2 == 0) {
+                        frame.ip = src_ip[at >> 2];
+                        vm.check_div_zero(i2);
+                    }
+                    prims[base + a] = (int) prims[base + b] / i2;
+                    break;
+                case IREM:
+                    i2 = (int) prims[base + c];
+                    if (i2 == 0) {
+                        frame.ip = src_ip[at >> 2];
+                        vm.check_div_zero(i2);
+                    }
+                    prims[base + a] = (int) prims[base + b] % i2;
+                    break;
+                case ISHL:
+                    prims[base + a] = (int) prims[base + b] << (int) prims[base + c];
+                    break;
+                case ISHR:
+                    prims[base + a] = (int) prims[base + b] >> (int) prims[base + c];
+                    break;
+                case IUSHR:
+                    prims[base + a] = (int) prims[base + b] >>> (int) prims[base + c];
+                    break;
+                case IAND:
+                    prims[base + a] = (int) prims[base + b] & (int) prims[base + c];
+                    break;
+                case IOR:
+                    prims[base + a] = (int) prims[base + b] | (int) prims[base + c];
+                    break;
+                case IXOR:
+                    prims[base + a] = (int) prims[base + b] ^ (int) prims[base + c];
+                    break;
+                case INEG:
+                    prims[base + a] = -(int) prims[base + b];
+                    break;
+                case IADD_I:
+                    prims[base + a] = (int) prims[base + b] + c;
+                    break;
+                case IINC:
+                    prims[base + a] = (int) prims[base + a] + b;
+                    break;
+
+                case LADD:
+                    prims[base + a] = prims[base + b] + prims[base + c];
+                    break;
+                case LSUB:
+                    prims[base + a] = prims[base + b] - prims[base + c];
+                    break;
+                case LMUL:
+                    prims[base + a] = prims[base + b] * prims[base + c];
+                    break;
+                case LDIV:
+                    l2 = prims[base + c];
+                    if (l2 == 0) {
+                        frame.ip = src_ip[at >> 2];
+                        vm.check_div_zero(l2);
+                    }
+                    prims[base + a] = prims[base + b] / l2;
+                    break;
+                case LREM:
+                    l2 = prims[base + c];
+                    if (l2 == 0) {
+                        frame.ip = src_ip[at >> 2];
+                        vm.check_div_zero(l2);
+                    }
+                    prims[base + a] = prims[base + b] % l2;
+                    break;
+                case LSHL:
+                    prims[base + a] = prims[base + b] << (int) prims[base + c];
+                    break;
+                case LSHR:
+                    prims[base + a] = prims[base + b] >> (int) prims[base + c];
+                    break;
+                case LUSHR:
+                    prims[base + a] = prims[base + b] >>> (int) prims[base + c];
+                    break;
+                case LAND:
+                    prims[base + a] = prims[base + b] & prims[base + c];
+                    break;
+                case LOR:
+                    prims[base + a] = prims[base + b] | prims[base + c];
+                    break;
+                case LXOR:
+                    prims[base + a] = prims[base + b] ^ prims[base + c];
+                    break;
+                case LNEG:
+                    prims[base + a] = -prims[base + b];
+                    break;
+
+                case FADD:
+                    prims[base + a] = float_bits(as_float(prims[base + b]) + as_float(prims[base + c]));
+                    break;
+                case FSUB:
+                    prims[base + a] = float_bits(as_float(prims[base + b]) - as_float(prims[base + c]));
+                    break;
+                case FMUL:
+                    prims[base + a] = float_bits(as_float(prims[base + b]) * as_float(prims[base + c]));
+                    break;
+                case FDIV:
+                    prims[base + a] = float_bits(as_float(prims[base + b]) / as_float(prims[base + c]));
+                    break;
+                case FREM:
+                    prims[base + a] = float_bits(as_float(prims[base + b]) % as_float(prims[base + c]));
+                    break;
+                case FNEG:
+                    prims[base + a] = float_bits(-as_float(prims[base + b]));
+                    break;
+                case DADD:
+                    prims[base + a] = double_bits(as_double(prims[base + b]) + as_double(prims[base + c]));
+                    break;
+                case DSUB:
+                    prims[base + a] = double_bits(as_double(prims[base + b]) - as_double(prims[base + c]));
+                    break;
+                case DMUL:
+                    prims[base + a] = double_bits(as_double(prims[base + b]) * as_double(prims[base + c]));
+                    break;
+                case DDIV:
+                    prims[base + a] = double_bits(as_double(prims[base + b]) / as_double(prims[base + c]));
+                    break;
+                case DREM:
+                    prims[base + a] = double_bits(as_double(prims[base + b]) % as_double(prims[base + c]));
+                    break;
+                case DNEG:
+                    prims[base + a] = double_bits(-as_double(prims[base + b]));
+                    break;
+
+                case I2F:
+                    prims[base + a] = float_bits((float) (int) prims[base + b]);
+                    break;
+                case I2D:
+                    prims[base + a] = double_bits((double) (int) prims[base + b]);
+                    break;
+                case L2I:
+                    prims[base + a] = (int) prims[base + b];
+                    break;
+                case L2F:
+                    prims[base + a] = float_bits((float) prims[base + b]);
+                    break;
+                case L2D:
+                    prims[base + a] = double_bits((double) prims[base + b]);
+                    break;
+                case F2I:
+                    prims[base + a] = (int) as_float(prims[base + b]);
+                    break;
+                case F2L:
+                    prims[base + a] = (long) as_float(prims[base + b]);
+                    break;
+                case F2D:
+                    prims[base + a] = double_bits((double) as_float(prims[base + b]));
+                    break;
+                case D2I:
+                    prims[base + a] = (int) as_double(prims[base + b]);
+                    break;
+                case D2L:
+                    prims[base + a] = (long) as_double(prims[base + b]);
+                    break;
+                case D2F:
+                    prims[base + a] = float_bits((float) as_double(prims[base + b]));
+                    break;
+                case I2B:
+                    prims[base + a] = (byte) prims[base + b];
+                    break;
+                case I2C:
+                    prims[base + a] = (char) prims[base + b];
+                    break;
+                case I2S:
+                    prims[base + a] = (short) prims[base + b];
+                    break;
+                case LCMP:
+                    prims[base + a] = Long.compare(prims[base + b], prims[base + c]);
+                    break;
+                // 与栈式解释器一样, 不能用 Float.compare / Double.compare
+                case FCMPL:
+                case FCMPG:
+                    f1 = as_float(prims[base + b]);
+                    f2 = as_float(prims[base + c]);
+                    prims[base + a] = f1 > f2 ? 1 : f1 == f2 ? 0 : f1 < f2 ? -1 : op == FCMPG ? 1 : -1;
+                    break;
+                case DCMPL:
+                case DCMPG:
+                    d1 = as_double(prims[base + b]);
+                    d2 = as_double(prims[base + c]);
+                    prims[base + a] = d1 > d2 ? 1 : d1 == d2 ? 0 : d1 < d2 ? -1 : op == DCMPG ? 1 : -1;
+                    break;
+
+                case IFEQ:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] == 0, b < at)) pc = b;
+                    break;
+                case IFNE:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] != 0, b < at)) pc = b;
+                    break;
+                case IFLT:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] < 0, b < at)) pc = b;
+                    break;
+                case IFGE:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] >= 0, b < at)) pc = b;
+                    break;
+                case IFGT:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] > 0, b < at)) pc = b;
+                    break;
+                case IFLE:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] <= 0, b < at)) pc = b;
+                    break;
+                case IF_ICMPEQ:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] == (int) prims[base + b], c < at)) pc = c;
+                    break;
+                case IF_ICMPNE:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] != (int) prims[base + b], c < at)) pc = c;
+                    break;
+                case IF_ICMPLT:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] < (int) prims[base + b], c < at)) pc = c;
+                    break;
+                case IF_ICMPGE:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] >= (int) prims[base + b], c < at)) pc = c;
+                    break;
+                case IF_ICMPGT:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] > (int) prims[base + b], c < at)) pc = c;
+                    break;
+                case IF_ICMPLE:
+                    if (md.branch(src_ip[at >> 2], (int) prims[base + a] <= (int) prims[base + b], c < at)) pc = c;
+                    break;
+                case IF_ACMPEQ:
+                    if (md.branch(src_ip[at >> 2], refs[base + a] == refs[base + b], c < at)) pc = c;
+                    break;
+                case IF_ACMPNE:
+                    if (md.branch(src_ip[at >> 2], refs[base + a] != refs[base + b], c < at)) pc = c;
+                    break;
+                case IFNULL:
+                    if (md.branch(src_ip[at >> 2], refs[base + a] == null, b < at)) pc = b;
+                    break;
+                case IFNONNULL:
+                    if (md.branch(src_ip[at >> 2], refs[base + a] != null, b < at)) pc = b;
+                    break;
+                case GOTO:
+                    // 循环的回边
+                    if (a < at) {
+                        md.backedge();
+                        if (VM.jit && md.backedges >= VM.osr_threshold) {
+                            Jit.Compiled osr = Jit.osr(method, a);
+                            if (osr != null) {
+                                // 状态全在 frame 的 slot 上, 直接从循环头接着跑, 返回值也是写到 base
+                                osr.execute(vm, thread, frame);
+                                return;
+                            }
+                        }
+                    }
+                    pc = a;
+                    break;
+                case TABLESWITCH:
+                {
+                    // aux: { default, low, high, target... }
+                    int[] table = (int[]) aux[at >> 2];
+                    i1 = (int) prims[base + a];
+                    pc = i1 >= table[1] && i1 <= table[2] ? table[3 + (i1 - table[1])] : table[0];
+                    break;
+                }
+                case LOOKUPSWITCH:
+                {
+                    // aux: { default, n_pairs, key, target... }, key 从小到大排序, 第一次执行时换成 LookupSwitch
+                    LookupSwitch lookup_switch = new LookupSwitch((int[]) aux[at >> 2], 0);
+                    rc.quicken(at, LOOKUPSWITCH_Q, lookup_switch);
+                    pc = lookup_switch.target((int) prims[base + a]);
+                    break;
+                }
+                case LOOKUPSWITCH_Q:
+                {
+                    LookupSwitch lookup_switch = (LookupSwitch) rc.quick(at);
+                    if (lookup_switch == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    pc = lookup_switch.target((int) prims[base + a]);
+                    break;
+                }
+                case RETURN_P:
+                    prims[base] = prims[base + a];
+                    return;
+                case RETURN_A:
+                    refs[base] = refs[base + a];
+                    return;
+                case RETURN:
+                    return;
+                case ATHROW:
+                    frame.ip = src_ip[at >> 2];
+                    throw new ZThrowable(vm.check_null((ZObject) refs[base + a]));
+
+                // 数组与对象判空都是单独的 NULL_CHECK, 已经被 RegisterPasses 消掉一部分
+                case IALOAD:
+                    frame.ip = src_ip[at >> 2];
+                    prims[base + a] = ((ZArray) refs[base + b]).int_at((int) prims[base + c]);
+                    break;
+                case LALOAD:
+                    frame.ip = src_ip[at >> 2];
+                    prims[base + a] = ((ZArray) refs[base + b]).long_at((int) prims[base + c]);
+                    break;
+                case FALOAD:
+                    frame.ip = src_ip[at >> 2];
+                    prims[base + a] = float_bits(((ZArray) refs[base + b]).float_at((int) prims[base + c]));
+                    break;
+                case DALOAD:
+                    frame.ip = src_ip[at >> 2];
+                    prims[base + a] = double_bits(((ZArray) refs[base + b]).double_at((int) prims[base + c]));
+                    break;
+                case AALOAD:
+                    frame.ip = src_ip[at >> 2];
+                    refs[base + a] = ((ZArray) refs[base + b]).ref_at((int) prims[base + c]);
+                    break;
+                case BALOAD:
+                    frame.ip = src_ip[at >> 2];
+                    prims[base + a] = ((ZArray) refs[base + b]).byte_or_bool_at((int) prims[base + c]);
+                    break;
+                case CALOAD:
+                    frame.ip = src_ip[at >> 2];
+                    prims[base + a] = ((ZArray) refs[base + b]).char_at((int) prims[base + c]);
+                    break;
+                case SALOAD:
+                    frame.ip = src_ip[at >> 2];
+                    prims[base + a] = ((ZArray) refs[base + b]).short_at((int) prims[base + c]);
+                    break;
+                case IASTORE:
+                    frame.ip = src_ip[at >> 2];
+                    ((ZArray) refs[base + a]).put_int((int) prims[base + b], (int) prims[base + c]);
+                    break;
+                case LASTORE:
+                    frame.ip = src_ip[at >> 2];
+                    ((ZArray) refs[base + a]).put_long((int) prims[base + b], prims[base + c]);
+                    break;
+                case FASTORE:
+                    frame.ip = src_ip[at >> 2];
+                    ((ZArray) refs[base + a]).put_float((int) prims[base + b], as_float(prims[base + c]));
+                    break;
+                case DASTORE:
+                    frame.ip = src_ip[at >> 2];
+                    ((ZArray) refs[base + a]).put_double((int) prims[base + b], as_double(prims[base + c]));
+                    break;
+                case AASTORE:
+                    frame.ip = src_ip[at >> 2];
+                    ((ZArray) refs[base + a]).store_ref((int) prims[base + b], refs[base + c]);
+                    break;
+                case AASTORE_U:
+                    frame.ip = src_ip[at >> 2];
+                    ((ZArray) refs[base + a]).put_ref_unchecked((int) prims[base + b], refs[base + c]);
+                    break;
+                case BASTORE:
+                    frame.ip = src_ip[at >> 2];
+                    ((ZArray) refs[base + a]).put_byte_or_bool((int) prims[base + b], (int) prims[base + c]);
+                    break;
+                case CASTORE:
+                    frame.ip = src_ip[at >> 2];
+                    ((ZArray) refs[base + a]).put_char((int) prims[base + b], (char) prims[base + c]);
+                    break;
+                case SASTORE:
+                    frame.ip = src_ip[at >> 2];
+                    ((ZArray) refs[base + a]).put_short((int) prims[base + b], (short) prims[base + c]);
+                    break;
+                case ARRAYLENGTH:
+                    prims[base + a] = ((ZArray) refs[base + b]).length();
+                    break;
+                case NEWARRAY:
+                    frame.ip = src_ip[at >> 2];
+                    i1 = (int) prims[base + b];
+                    if (i1 < 0) {
+                        throw ZThrowable.implicit(vm, "java/lang/NegativeArraySizeException", null);
+                    }
+                    refs[base + a] = vm.new_primitive_array(c, i1);
+                    break;
+                case ANEWARRAY:
+                {
+                    frame.ip = src_ip[at >> 2];
+                    i1 = (int) prims[base + b];
+                    if (i1 < 0) {
+                        throw ZThrowable.implicit(vm, "java/lang/NegativeArraySizeException", null);
+                    }
+                    ZClass component_class = (ZClass) rc.quick(at);
+                    if (component_class == null) {
+                        component_class = vm.load_class(cp.class_at(c), false); // 🦋 不需要初始化
+                        rc.quick_cache_.set(at >> 2, component_class);
+                    }
+                    refs[base + a] = component_class.new_array(i1);
+                    break;
+                }
+
+                case NEW:
+                {
+                    frame.ip = src_ip[at >> 2];
+                    ZClass z_class = vm.load_class(cp.class_at(b), true);
+                    // 🦋 与栈式解释器一样, 初始化完成之后才能 quicken
+                    if (z_class.is_fully_initialized()) {
+                        rc.quicken(at, NEW_Q, z_class);
+                    }
+                    refs[base + a] = z_class.allocate();
+                    break;
+                }
+                case NEW_Q:
+                {
+                    ZClass z_class = (ZClass) rc.quick(at);
+                    if (z_class == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    refs[base + a] = z_class.allocate();
+                    break;
+                }
+                case GETFIELD:
+                {
+                    frame.ip = src_ip[at >> 2];
+                    ConstantPool.FieldRef field_ref = cp.field_ref_at(c);
+                    int index = Interpreter.resolve_field_index(vm, field_ref);
+                    char kind = Descriptor.kind(field_ref.name_and_type.descriptor, 0);
+                    // 下标与 kind 编码成一个 int 放在 quick_cache_, 操作数还是常量池下标
+                    rc.quicken(at, GETFIELD_Q, index << 8 | kind);
+                    Interpreter.get_field(prims, refs, base + a, (ZObject) refs[base + b], index, kind);
+                    break;
+                }
+                case GETFIELD_Q:
+                {
+                    Integer field = (Integer) rc.quick(at);
+                    if (field == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    Interpreter.get_field(prims, refs, base + a, (ZObject) refs[base + b], field >>> 8, (char) (field & 0xff));
+                    break;
+                }
+                case PUTFIELD:
+                {
+                    frame.ip = src_ip[at >> 2];
+                    ConstantPool.FieldRef field_ref = cp.field_ref_at(c);
+                    int index = Interpreter.resolve_field_index(vm, field_ref);
+                    char kind = Descriptor.kind(field_ref.name_and_type.descriptor, 0);
+                    rc.quicken(at, PUTFIELD_Q, index << 8 | kind);
+                    Interpreter.put_field(prims, refs, base + b, (ZObject) refs[base + a], index, kind);
+                    break;
+                }
+                case PUTFIELD_Q:
+                {
+                    Integer field = (Integer) rc.quick(at);
+                    if (field == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    Interpreter.put_field(prims, refs, base + b, (ZObject) refs[base + a], field >>> 8, (char) (field & 0xff));
+                    break;
+                }
+                case GETSTATIC:
+                {
+                    frame.ip = src_ip[at >> 2];
+                    ZField z_field = Interpreter.resolve_static_field(vm, cp.field_ref_at(b));
+                    if (z_field.declared_class().is_fully_initialized()) {
+                        rc.quicken(at, GETSTATIC_Q, z_field);
+                    }
+                    Object value = z_field.declared_class().get_static_field(z_field.field_slot());
+                    Interpreter.unbox(prims, refs, base + a, z_field.kind(), value);
+                    break;
+                }
+                case GETSTATIC_Q:
+                {
+                    ZField z_field = (ZField) rc.quick(at);
+                    if (z_field == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    Object value = z_field.declared_class().get_static_field(z_field.field_slot());
+                    Interpreter.unbox(prims, refs, base + a, z_field.kind(), value);
+                    break;
+                }
+                case PUTSTATIC:
+                {
+                    frame.ip = src_ip[at >> 2];
+                    ZField z_field = Interpreter.resolve_static_field(vm, cp.field_ref_at(b));
+                    if (z_field.declared_class().is_fully_initialized()) {
+                        rc.quicken(at, PUTSTATIC_Q, z_field);
+                    }
+                    Object value = Interpreter.box(prims, refs, base + a, z_field.kind());
+                    z_field.declared_class().put_static_field(z_field.field_slot(), value);
+                    break;
+                }
+                case PUTSTATIC_Q:
+                {
+                    ZField z_field = (ZField) rc.quick(at);
+                    if (z_field == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    Object value = Interpreter.box(prims, refs, base + a, z_field.kind());
+                    z_field.declared_class().put_static_field(z_field.field_slot(), value);
+                    break;
+                }
+                case CHECKCAST:
+                {
+                    Object obj = refs[base + a];
+                    if (obj != null) {
+                        frame.ip = src_ip[at >> 2];
+                        ZClass cast_class = (ZClass) rc.quick(at);
+                        if (cast_class == null) {
+                            cast_class = vm.load_class(cp.class_at(b), false); // 🦋 不需要初始化
+                            rc.quick_cache_.set(at >> 2, cast_class);
+                        }
+                        if (!cast_class.is_instance(vm, false, obj)) {
+                            throw vm.class_cast_exception(obj, cast_class);
+                        }
+                    }
+                    break;
+                }
+                case INSTANCEOF:
+                {
+                    ZClass ins_class = (ZClass) rc.quick(at);
+                    if (ins_class == null) {
+                        frame.ip = src_ip[at >> 2];
+                        ins_class = vm.load_class(cp.class_at(c), false); // 🦋 不需要初始化
+                        rc.quick_cache_.set(at >> 2, ins_class);
+                    }
+                    prims[base + a] = ins_class.is_instance(vm, false, refs[base + b]) ? 1 : 0;
+                    break;
+                }
+
+                case INVOKEVIRTUAL:
+                case INVOKESPECIAL:
+                case INVOKESTATIC:
+                case INVOKEINTERFACE:
+                {
+                    int ip = src_ip[at >> 2];
+                    frame.ip = ip;
+                    int instruction = Bytecodes.INVOKEVIRTUAL + (op - INVOKEVIRTUAL);
+                    ConstantPool.MethodRef method_ref = cp.method_ref_at(b, instruction);
+                    Interpreter.parameter_slots(method_ref.name_and_type);
+                    ZObject object_ref = op == INVOKESTATIC ? null : vm.check_null((ZObject) refs[base + a]);
+                    if (op == INVOKEVIRTUAL || op == INVOKEINTERFACE) {
+                        md.receiver(ip, object_ref.z_class());
+                    }
+                    ZMethod z_method = Interpreter.resolve_invoke(vm, instruction, method_ref, object_ref);
+                    if (op == INVOKESPECIAL
+                            || (op == INVOKESTATIC && z_method.declared_class().is_fully_initialized())) {
+                        rc.quicken(at, op == INVOKESPECIAL ? INVOKESPECIAL_Q : INVOKESTATIC_Q, z_method);
+                    } else if (op == INVOKEVIRTUAL || op == INVOKEINTERFACE) {
+                        rc.quicken(at, op == INVOKEVIRTUAL ? INVOKEVIRTUAL_Q : INVOKEINTERFACE_Q, new InlineCache(instruction, method_ref));
+                    }
+                    Interpreter.invoke(vm, thread, frame, z_method, object_ref,
+                            base + a, base + a + c, method_ref.name_and_type.parameter_kinds_cache_);
+                    break;
+                }
+                case INVOKESPECIAL_Q:
+                {
+                    ZMethod z_method = (ZMethod) rc.quick(at);
+                    if (z_method == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    frame.ip = src_ip[at >> 2];
+                    ZObject object_ref = vm.check_null((ZObject) refs[base + a]);
+                    Interpreter.invoke(vm, thread, frame, z_method, object_ref,
+                            base + a, base + a + c, z_method.parameter_kinds_cache_);
+                    break;
+                }
+                case INVOKESTATIC_Q:
+                {
+                    ZMethod z_method = (ZMethod) rc.quick(at);
+                    if (z_method == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    frame.ip = src_ip[at >> 2];
+                    Interpreter.invoke(vm, thread, frame, z_method, null,
+                            base + a, base + a + c, z_method.parameter_kinds_cache_);
+                    break;
+                }
+                case INVOKEVIRTUAL_Q:
+                case INVOKEINTERFACE_Q:
+                {
+                    InlineCache cache = (InlineCache) rc.quick(at);
+                    if (cache == null) {
+                        pc = rc.unquicken(at, op);
+                        break;
+                    }
+                    int ip = src_ip[at >> 2];
+                    frame.ip = ip;
+                    ZObject object_ref = vm.check_null((ZObject) refs[base + a]);
+                    ZClass receiver_class = object_ref.z_class();
+                    md.receiver(ip, receiver_class);
+                    Interpreter.invoke(vm, thread, frame, cache.lookup(receiver_class), object_ref,
+                            base + a, base + a + c, cache.method_ref.name_and_type.parameter_kinds_cache_);
+                    break;
+                }
+                default: throw new AssertionError(name_of(op));
+            }
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package zvm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static zvm.RegisterCode.*;
+
+/**
+ * RegisterCode 上的优化 pass, 翻译完按 pipeline 的顺序跑一遍
+ *
+ * 删掉的指令先改成 NOP, 最后由 RegisterCode.compact 统一去掉
+ * 常量传播、复制传播只在基本块内做, 活跃性分析、判空消除是全局的数据流分析
+ *
+ * 🦋 invoke 的参数是 [a, a + c) 这一段寄存器, 被调用者的 frame 从 a 开始与调用者重叠,
+ * 所以 invoke 之后 a 以上的寄存器都要当成被改写过
+ *
+ * @author chuxiaofeng
+ */
+final class RegisterPasses {
+
+    interface Pass {
+        void run(RegisterCode rc);
+    }
+
+    static final Pass[] pipeline = {
+            RegisterPasses::constant_propagation,
+            RegisterPasses::copy_propagation,
+            RegisterPasses::dead_store_elimination,
+            RegisterPasses::copy_coalescing,
+            RegisterPasses::dead_store_elimination,
+            RegisterPasses::null_check_elimination,
+    };
+
+    // ==================== 常量传播 ====================
+
+    // 块内常量传播 + 常量折叠, 常量条件跳转改成 goto 或者删掉
+    static void constant_propagation(RegisterCode rc) {
+        int[] code = rc.code;
+        boolean[] leader = leaders(rc);
+        // 0 不是常量, 1 int 常量, 2 long/double 常量(bits)
+        byte[] kind = new byte[rc.n_regs];
+        long[] value = new long[rc.n_regs];
+
+        for (int pc = 0; pc < code.length; pc += 4) {
+            if (leader[pc >> 2]) {
+                Arrays.fill(kind, (byte) 0);
+            }
+            int op = code[pc], a = code[pc + 1], b = code[pc + 2], c = code[pc + 3];
+            switch (op) {
+                case CONST_I:
+                    kind[a] = 1;
+                    value[a] = b;
+                    continue;
+                case CONST_W:
+                    kind[a] = 2;
+                    value[a] = (b & 0xffffffffL) | ((long) c << 32);
+                    continue;
+                case MOV_P:
+                    if (kind[b] == 1) {
+                        set(code, pc, CONST_I, a, (int) value[b], 0);
+                    } else if (kind[b] == 2) {
+                        set(code, pc, CONST_W, a, (int) value[b], (int) (value[b] >>> 32));
+                    }
+                    kind[a] = kind[b];
+                    value[a] = value[b];
+                    continue;
+                case IINC:
+                    if (kind[a] == 1) {
+                        value[a] = (int) value[a] + b;
+                        set(code, pc, CONST_I, a, (int) value[a], 0);
+                    }
+                    continue;
+                case IADD: case ISUB: case IMUL: case IDIV: case IREM:
+                case ISHL: case ISHR: case IUSHR: case IAND: case IOR: case IXOR:
+                    if (kind[b] == 1 && kind[c] == 1 && !((op == IDIV || op == IREM) && value[c] == 0)) {
+                        fold(code, pc, kind, value, a, int_op(op, (int) value[b], (int) value[c]));
+                        continue;
+                    }
+                    if (op == IADD && kind[c] == 1) {
+                        set(code, pc, IADD_I, a, b, (int) value[c]);
+                    } else if (op == IADD && kind[b] == 1) {
+                        set(code, pc, IADD_I, a, c, (int) value[b]);
+                    } else if (op == ISUB && kind[c] == 1) {
+                        set(code, pc, IADD_I, a, b, -(int) value[c]);
+                    }
+                    break;
+                case IADD_I:
+                    if (kind[b] == 1) {
+                        fold(code, pc, kind, value, a, (int) value[b] + c);
+                        continue;
+                    }
+                    break;
+                case INEG: case I2B: case I2C: case I2S:
+                    if (kind[b] == 1) {
+                        int v = (int) value[b];
+                        fold(code, pc, kind, value, a,
+                                op == INEG ? -v : op == I2B ? (byte) v : op == I2C ? (char) v : (short) v);
+                        continue;
+                    }
+                    break;
+                case IFEQ: case IFNE: case IFLT: case IFGE: case IFGT: case IFLE:
+                    if (kind[a] == 1) {
+                        branch(code, pc, int_cond(op - IFEQ, (int) value[a], 0), b);
+                    }
+                    continue;
+                case IF_ICMPEQ: case IF_ICMPNE: case IF_ICMPLT: case IF_ICMPGE: case IF_ICMPGT: case IF_ICMPLE:
+                    if (kind[a] == 1 && kind[b] == 1) {
+                        branch(code, pc, int_cond(op - IF_ICMPEQ, (int) value[a], (int) value[b]), c);
+                    }
+                    continue;
+            }
+            kill_defs(rc, pc, kind);
+        }
+    }
+
+    private static void set(int[] code, int pc, int op, int a, int b, int c) {
+        code[pc] = op;
+        code[pc + 1] = a;
+        code[pc + 2] = b;
+        code[pc + 3] = c;
+    }
+
+    private static void fold(int[] code, int pc, byte[] kind, long[] value, int d, int v) {
+        set(code, pc, CONST_I, d, v, 0);
+        kind[d] = 1;
+        value[d] = v;
+    }
+
+    private static void branch(int[] code, int pc, boolean taken, int target) {
+        if (taken) {
+            set(code, pc, GOTO, target, 0, 0);
+        } else {
+            set(code, pc, NOP, 0, 0, 0);
+        }
+    }
+
+    private static int int_op(int op, int x, int y) {
+        switch (op) {
+            case IADD: return x + y;
+            case ISUB: return x - y;
+            case IMUL: return x * y;
+            case IDIV: return x / y;
+            case IREM: return x % y;
+            case ISHL: return x << y;
+            case ISHR: return x >> y;
+            case IUSHR: return x >>> y;
+            case IAND: return x & y;
+            case IOR: return x | y;
+            case IXOR: return x ^ y;
+            default: throw new AssertionError();
+        }
+    }
+
+    // cond 按 eq ne lt ge gt le 的顺序
+    static boolean int_cond(int cond, int x, int y) {
+        switch (cond) {
+            case 0: return x == y;
+            case 1: return x != y;
+            case 2: return x < y;
+            case 3: return x >= y;
+            case 4: return x > y;
+            case 5: return x <= y;
+            default: throw new AssertionError();
+        }
+    }
+
+    private static void kill_defs(RegisterCode rc, int pc, byte[] kind) {
+        int op = rc.code[pc];
+        if (is_invoke(op)) {
+            Arrays.fill(kind, rc.code[pc + 1], kind.length, (byte) 0);
+            return;
+        }
+        int d = def_of(rc.code, pc);
+        if (d >= 0) {
+            kind[d] = 0;
+        }
+    }
+
+    // ==================== 复制传播 ====================
+
+    // 块内复制传播: MOV d, s 之后对 d 的使用换成 s, d 或 s 被改写之后失效
+    static void copy_propagation(RegisterCode rc) {
+        int[] code = rc.code;
+        boolean[] leader = leaders(rc);
+        // copy_of[r] == -1 表示 r 不是别的寄存器的拷贝
+        int[] copy_of = new int[rc.n_regs];
+
+        for (int pc = 0; pc < code.length; pc += 4) {
+            if (leader[pc >> 2]) {
+                Arrays.fill(copy_of, -1);
+            }
+            int op = code[pc];
+            String format = FORMAT[op];
+            for (int i = 0; i < 3; i++) {
+                if (format.charAt(i) == 'r') {
+                    int r = code[pc + 1 + i];
+                    if (copy_of[r] != -1) {
+                        code[pc + 1 + i] = copy_of[r];
+                    }
+                }
+            }
+
+            if (is_invoke(op)) {
+                int a = code[pc + 1];
+                Arrays.fill(copy_of, a, copy_of.length, -1);
+                for (int r = 0; r < a; r++) {
+                    if (copy_of[r] >= a) {
+                        copy_of[r] = -1;
+                    }
+                }
+                continue;
+            }
+            int d = def_of(code, pc);
+            if (d < 0) {
+                continue;
+            }
+            copy_of[d] = -1;
+            for (int r = 0; r < copy_of.length; r++) {
+                if (copy_of[r] == d) {
+                    copy_of[r] = -1;
+                }
+            }
+            if (op == MOV || op == MOV_P || op == MOV_A) {
+                int s = code[pc + 2];
+                if (s == d) {
+                    code[pc] = NOP;
+                } else {
+                    copy_of[d] = s;
+                }
+            }
+        }
+    }
+
+    // def s; MOV d, s 并且 s 之后不再使用, 直接让前一条指令写 d
+    // 只合并紧挨着的两条, 中间没有别的指令, 不用担心 d 在中间被读写或者被 invoke 覆盖
+    static void copy_coalescing(RegisterCode rc) {
+        int[] code = rc.code;
+        boolean[] leader = leaders(rc);
+        BitSet[] live_out = live_out(rc, leader);
+        for (int pc = 4; pc < code.length; pc += 4) {
+            int op = code[pc];
+            if ((op != MOV && op != MOV_P && op != MOV_A) || leader[pc >> 2]) {
+                continue;
+            }
+            int d = code[pc + 1];
+            int s = code[pc + 2];
+            int prev = pc - 4;
+            int prev_op = code[prev];
+            if ((FLAGS[prev_op] & RETARGETABLE) == 0 || code[prev + 1] != s || live_out[pc >> 2].get(s)) {
+                continue;
+            }
+            code[prev + 1] = d;
+            code[pc] = NOP;
+        }
+    }
+
+    // ==================== 死代码消除 ====================
+
+    // 目标寄存器不再活跃的无副作用指令直接删掉, 删掉之后可能又有新的死指令, 一直跑到不动点
+    static void dead_store_elimination(RegisterCode rc) {
+        int[] code = rc.code;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            boolean[] leader = leaders(rc);
+            BitSet[] live_out = live_out(rc, leader);
+            for (int pc = 0; pc < code.length; pc += 4) {
+                int op = code[pc];
+                if (op == NOP || (FLAGS[op] & PURE) == 0) {
+                    continue;
+                }
+                int d = def_of(code, pc);
+                if (d >= 0 && !live_out[pc >> 2].get(d)) {
+                    code[pc] = NOP;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // ==================== 判空消除 ====================
+
+    // 前向 must 数据流: 一个寄存器在所有前驱上都已知非空, NULL_CHECK 就是多余的
+    static void null_check_elimination(RegisterCode rc) {
+        int[] code = rc.code;
+        boolean[] leader = leaders(rc);
+        int[] block_of = new int[code.length >> 2];
+        int[] starts = blocks(leader, block_of);
+        int n_blocks = starts.length - 1;
+        int[][] succs = successors(rc, starts, block_of);
+
+        // 没走到过的块按全集算, 取交集时不起作用
+        BitSet[] in = new BitSet[n_blocks];
+        for (int i = 0; i < n_blocks; i++) {
+            in[i] = new BitSet(rc.n_regs);
+            in[i].set(0, rc.n_regs);
+        }
+        in[0].clear();
+        if (!rc.is_static()) {
+            in[0].set(0);
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int blk = 0; blk < n_blocks; blk++) {
+                BitSet state = (BitSet) in[blk].clone();
+                for (int pc = starts[blk]; pc < starts[blk + 1]; pc += 4) {
+                    non_null_transfer(code, pc, state);
+                }
+                for (int succ : succs[blk]) {
+                    BitSet before = (BitSet) in[succ].clone();
+                    in[succ].and(state);
+                    if (!in[succ].equals(before)) {
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        for (int blk = 0; blk < n_blocks; blk++) {
+            BitSet state = in[blk];
+            for (int pc = starts[blk]; pc < starts[blk + 1]; pc += 4) {
+                if (code[pc] == NULL_CHECK && state.get(code[pc + 1])) {
+                    code[pc] = NOP;
+                }
+                non_null_transfer(code, pc, state);
+            }
+        }
+    }
+
+    private static void non_null_transfer(int[] code, int pc, BitSet non_null) {
+        int op = code[pc];
+        int a = code[pc + 1];
+        switch (op) {
+            case NULL_CHECK:
+                non_null.set(a);
+                return;
+            case NEW: case NEW_Q: case NEWARRAY: case ANEWARRAY: case LDC_A: case CONST_A:
+                non_null.set(a);
+                return;
+            case MOV: case MOV_A:
+                non_null.set(a, non_null.get(code[pc + 2]));
+                return;
+        }
+        if (is_invoke(op)) {
+            non_null.clear(a, Math.max(a, non_null.length()));
+            return;
+        }
+        int d = def_of(code, pc);
+        if (d >= 0) {
+            non_null.clear(d);
+        }
+    }
+
+    // ==================== CFG 与活跃性 ====================
+
+    // 指令定义的寄存器, 没有返回 -1, invoke 只返回 a, a 以上的寄存器调用方自己处理
+    static int def_of(int[] code, int pc) {
+        String format = FORMAT[code[pc]];
+        char ch = format.charAt(0);
+        return ch == 'd' || ch == 'u' ? code[pc + 1] : -1;
+    }
+
+    // 基本块入口, 下标是 pc >> 2
+    static boolean[] leaders(RegisterCode rc) {
+        int[] code = rc.code;
+        boolean[] leader = new boolean[(code.length >> 2) + 1];
+        leader[0] = true;
+        for (int pc = 0; pc < code.length; pc += 4) {
+            int op = code[pc];
+            if ((FLAGS[op] & (BRANCH | STOP)) != 0) {
+                leader[(pc >> 2) + 1] = true;
+            }
+            String format = FORMAT[op];
+            for (int i = 0; i < 3; i++) {
+                if (format.charAt(i) == 't') {
+                    leader[code[pc + 1 + i] >> 2] = true;
+                }
+            }
+            if (op == TABLESWITCH || op == LOOKUPSWITCH) {
+                for (int target : switch_targets(rc, pc)) {
+                    leader[target >> 2] = true;
+                }
+            }
+        }
+        return leader;
+    }
+
+    static int[] switch_targets(RegisterCode rc, int pc) {
+        int[] table = (int[]) rc.aux[pc >> 2];
+        boolean is_table = rc.code[pc] == TABLESWITCH;
+        int n = is_table ? table.length - 3 : (table.length - 2) / 2;
+        int[] targets = new int[n + 1];
+        targets[0] = table[0];
+        for (int i = 0; i < n; i++) {
+            targets[i + 1] = is_table ? table[3 + i] : table[3 + i * 2];
+        }
+        return targets;
+    }
+
+    // 返回每个块的起始 pc, 最后多放一个 code.length, block_of 填每条指令所属的块
+    private static int[] blocks(boolean[] leader, int[] block_of) {
+        int n = block_of.length;
+        int n_blocks = 0;
+        for (int i = 0; i < n; i++) {
+            if (leader[i]) {
+                n_blocks++;
+            }
+        }
+        int[] starts = new int[n_blocks + 1];
+        int blk = -1;
+        for (int i = 0; i < n; i++) {
+            if (leader[i]) {
+                starts[++blk] = i << 2;
+            }
+            block_of[i] = blk;
+        }
+        starts[n_blocks] = n << 2;
+        return starts;
+    }
+
+    private static int[][] successors(RegisterCode rc, int[] starts, int[] block_of) {
+        int[] code = rc.code;
+        int n_blocks = starts.length - 1;
+        int[][] succs = new int[n_blocks][];
+        for (int blk = 0; blk < n_blocks; blk++) {
+            int last = starts[blk + 1] - 4;
+            int op = code[last];
+            int flags = FLAGS[op];
+            if (op == TABLESWITCH || op == LOOKUPSWITCH) {
+                int[] targets = switch_targets(rc, last);
+                succs[blk] = new int[targets.length];
+                for (int i = 0; i < targets.length; i++) {
+                    succs[blk][i] = block_of[targets[i] >> 2];
+                }
+                continue;
+            }
+            int target = -1;
+            if ((flags & BRANCH) != 0) {
+                String format = FORMAT[op];
+                target = block_of[code[last + 1 + format.indexOf('t')] >> 2];
+            }
+            boolean falls_through = (flags & STOP) == 0 && blk + 1 < n_blocks;
+            if (target >= 0 && falls_through) {
+                succs[blk] = new int[] { target, blk + 1 };
+            } else if (target >= 0) {
+                succs[blk] = new int[] { target };
+            } else if (falls_through) {
+                succs[blk] = new int[] { blk + 1 };
+            } else {
+                succs[blk] = new int[0];
+            }
+        }
+        return succs;
+    }
+
+    // 每条指令之后活跃的寄存器, 下标是 pc >> 2
+    static BitSet[] live_out(RegisterCode rc, boolean[] leader) {
+        int[] code = rc.code;
+        int n = code.length >> 2;
+        int[] block_of = new int[n];
+        int[] starts = blocks(leader, block_of);
+        int n_blocks = starts.length - 1;
+        int[][] succs = successors(rc, starts, block_of);
+
+        BitSet[] in = new BitSet[n_blocks];
+        for (int i = 0; i < n_blocks; i++) {
+            in[i] = new BitSet(rc.n_regs);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int blk = n_blocks - 1; blk >= 0; blk--) {
+                BitSet live = new BitSet(rc.n_regs);
+                for (int succ : succs[blk]) {
+                    live.or(in[succ]);
+                }
+                for (int pc = starts[blk + 1] - 4; pc >= starts[blk]; pc -= 4) {
+                    live_transfer(code, pc, live);
+                }
+                if (!live.equals(in[blk])) {
+                    in[blk] = live;
+                    changed = true;
+                }
+            }
+        }
+
+        BitSet[] out = new BitSet[n];
+        for (int blk = 0; blk < n_blocks; blk++) {
+            BitSet live = new BitSet(rc.n_regs);
+            for (int succ : succs[blk]) {
+                live.or(in[succ]);
+            }
+            for (int pc = starts[blk + 1] - 4; pc >= starts[blk]; pc -= 4) {
+                out[pc >> 2] = (BitSet) live.clone();
+                live_transfer(code, pc, live);
+            }
+        }
+        return out;
+    }
+
+    // pc 这条指令之前活跃的寄存器, OSR 入口只需要从 slot 读这些
+    static BitSet live_in(RegisterCode rc, int pc) {
+        BitSet live = live_out(rc, leaders(rc))[pc >> 2];
+        live_transfer(rc.code, pc, live);
+        return live;
+    }
+
+    private static void live_transfer(int[] code, int pc, BitSet live) {
+        int op = code[pc];
+        if (is_invoke(op)) {
+            int a = code[pc + 1];
+            live.clear(a, Math.max(a, live.length()));
+            live.set(a, a + code[pc + 3]);
+            return;
+        }
+        String format = FORMAT[op];
+        if (format.charAt(0) == 'd') {
+            live.clear(code[pc + 1]);
+        }
+        for (int i = 0; i < 3; i++) {
+            char ch = format.charAt(i);
+            if (ch == 'r' || ch == 'u') {
+                live.set(code[pc + 1 + i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package zvm;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static zvm.Bytecodes.*;
+
+/**
+ * 超级指令: 把高频的指令序列融合成一条, 省掉中间几次 switch 分派
+ *
+ * 候选序列来自 VM.opcode_pair_stats 在 kaffe / thirdparty / scimark2 上统计的相邻指令对
+ *
+ * 融合只改写序列第一条指令的 opcode, 后面几条指令原样留在指令流里, 超级指令直接读它们的操作数, 然后跳过去
+ * 所以 ip <-> bci 的映射、跳转目标、异常表都不受影响, 以下情况不融合:
+ *  1. 序列中间(第一条之后)的指令是跳转目标或者异常处理器入口, 别人会跳到中间来
+ *  2. 序列跨过 try 块的边界, 抛异常时按第一条指令的 ip 查异常表
+ *  3. 序列跨过行号表的边界, 栈帧行号按第一条指令算
+ *
+ * @author chuxiaofeng
+ */
+final class Superinstructions {
+
+    // === 融合 ===
+
+    static void fuse(DecodedCode decoded_code) {
+        int[] code = decoded_code.code;
+        boolean[] boundary = boundaries(decoded_code);
+        int ip = 0;
+        while (ip < code.length) {
+            int fused_length = fuse_at(code, boundary, ip);
+            ip += fused_length > 0 ? fused_length : length_of(code, ip);
+        }
+    }
+
+    // 尝试融合 ip 开始的序列, 长的优先, 返回融合掉的 int 个数, 没融合返回 0
+    private static int fuse_at(int[] code, boolean[] boundary, int ip) {
+        switch (code[ip]) {
+            case ALOAD:
+                if (is(code, boundary, ip + 2, GETFIELD)) {
+                    code[ip] = ALOAD_GETFIELD;
+                    return 4;
+                }
+                if (is(code, boundary, ip + 2, ILOAD)) {
+                    if (is(code, boundary, ip + 4, IALOAD)) {
+                        code[ip] = ALOAD_ILOAD_IALOAD;
+                        return 5;
+                    }
+                    if (is(code, boundary, ip + 4, DALOAD)) {
+                        code[ip] = ALOAD_ILOAD_DALOAD;
+                        return 5;
+                    }
+                    if (is(code, boundary, ip + 4, AALOAD)) {
+                        code[ip] = ALOAD_ILOAD_AALOAD;
+                        return 5;
+                    }
+                    code[ip] = ALOAD_ILOAD;
+                    return 4;
+                }
+                return 0;
+            case ILOAD:
+                if (is(code, boundary, ip + 2, ILOAD)) {
+                    if (ip + 4 < code.length && !boundary[ip + 4]
+                            && code[ip + 4] >= IF_ICMPEQ && code[ip + 4] <= IF_ICMPLE) {
+                        code[ip] = ILOAD_ILOAD_IF_ICMPEQ + (code[ip + 4] - IF_ICMPEQ);
+                        return 6;
+                    }
+                    code[ip] = ILOAD_ILOAD;
+                    return 4;
+                }
+                if (ip + 2 < code.length && !boundary[ip + 2]
+                        && code[ip + 2] >= ICONST_M1 && code[ip + 2] <= ICONST_5
+                        && is(code, boundary, ip + 3, IADD) && is(code, boundary, ip + 4, ISTORE)) {
+                    code[ip] = ILOAD_ICONST_IADD_ISTORE;
+                    return 6;
+                }
+                if ((is(code, boundary, ip + 2, BIPUSH) || is(code, boundary, ip + 2, SIPUSH))
+                        && is(code, boundary, ip + 4, IADD) && is(code, boundary, ip + 5, ISTORE)) {
+                    code[ip] = ILOAD_BIPUSH_IADD_ISTORE;
+                    return 7;
+                }
+                return 0;
+            case IINC:
+                if (is(code, boundary, ip + 3, GOTO)) {
+                    code[ip] = IINC_GOTO;
+                    return 5;
+                }
+                return 0;
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean is(int[] code, boolean[] boundary, int ip, int op) {
+        return ip < code.length && !boundary[ip] && code[ip] == op;
+    }
+
+    // 标出不能被融合进序列中间的 ip: 跳转目标、jsr 的返回点、异常处理器入口、try 块边界、行号表边界
+    private static boolean[] boundaries(DecodedCode decoded_code) {
+        int[] code = decoded_code.code;
+        boolean[] boundary = new boolean[code.length + 1];
+        int ip = 0;
+        while (ip < code.length) {
+            int op = code[ip];
+            switch (op) {
+                case IFEQ: case IFNE: case IFLT: case IFGE: case IFGT: case IFLE:
+                case IF_ICMPEQ: case IF_ICMPNE: case IF_ICMPLT: case IF_ICMPGE: case IF_ICMPGT: case IF_ICMPLE:
+                case IF_ACMPEQ: case IF_ACMPNE:
+                case IFNULL: case IFNONNULL:
+                case GOTO:
+                    boundary[code[ip + 1]] = true;
+                    break;
+                case JSR:
+                    boundary[code[ip + 1]] = true;
+                    boundary[ip + 2] = true;
+                    break;
+                case TABLESWITCH:
+                {
+                    boundary[code[ip + 1]] = true;
+                    int n = code[ip + 3] - code[ip + 2] + 1;
+                    for (int i = 0; i < n; i++) {
+                        boundary[code[ip + 4 + i]] = true;
+                    }
+                    break;
+                }
+                case LOOKUPSWITCH:
+                {
+                    boundary[code[ip + 1]] = true;
+                    int n_pairs = code[ip + 2];
+                    for (int i = 0; i < n_pairs; i++) {
+                        boundary[code[ip + 3 + i * 2 + 1]] = true;
+                    }
+                    break;
+                }
+            }
+            ip += length_of(code, ip);
+        }
+
+        ZMethod method = decoded_code.method;
+        ClassParser.ClassFile.Code method_code = method.code();
+        assert method_code != null;
+        if (method_code.exception_table != null) {
+            for (ClassParser.ClassFile.Exception handler : method_code.exception_table) {
+                boundary[decoded_code.ip(handler.start_pc)] = true;
+                boundary[decoded_code.ip(handler.end_pc)] = true;
+                boundary[decoded_code.ip(handler.handler_pc)] = true;
+            }
+        }
+        ClassParser.ClassFile.LineNumber[] lnt = method.line_number_table();
+        if (lnt != null) {
+            for (ClassParser.ClassFile.LineNumber ln : lnt) {
+                boundary[decoded_code.ip(ln.start_pc)] = true;
+            }
+        }
+        return boundary;
+    }
+
+    // 预解码之后(融合之前)一条指令占用的 int 个数, 格式见 DecodedCode
+    private static int length_of(int[] code, int ip) {
+        int op = code[ip];
+        switch (op) {
+            case IINC:
+            case MULTIANEWARRAY:
+                return 3;
+            case TABLESWITCH:
+                return 4 + code[ip + 3] - code[ip + 2] + 1;
+            case LOOKUPSWITCH:
+                return 3 + code[ip + 2] * 2;
+            default:
+                return lengthOf(op) == 1 ? 1 : 2;
+        }
+    }
+
+    // === 统计 ===
+
+    private static final long[] pair_counts_ = VM.opcode_pair_stats ? new long[256 * 256] : null;
+
+    static {
+        if (VM.opcode_pair_stats) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> dump_pairs(System.err, 60)));
+        }
+    }
+
+    static void record(int prev, int op) {
+        pair_counts_[prev << 8 | op]++;
+    }
+
+    static synchronized void dump_pairs(PrintStream out, int top_n) {
+        long total = 0;
+        Integer[] pairs = new Integer[pair_counts_.length];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = i;
+            total += pair_counts_[i];
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(pair_counts_[b], pair_counts_[a]));
+        out.println("=== opcode pairs, total " + total + " ===");
+        for (int i = 0; i < top_n && i < pairs.length; i++) {
+            long n = pair_counts_[pairs[i]];
+            if (n == 0) {
+                break;
+            }
+            out.printf("%-24s %-24s %12d %6.2f%%%n", nameOf(pairs[i] >>> 8), nameOf(pairs[i] & 0xff), n, n * 100.0 / total);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package zvm;
 
+import org.jetbrains.annotations.Nullable;
 import zvm.ClassParser.ClassFile;
 import zvm.helper.Reflect;
 
@@ -7,6 +8,7 @@ import java.io.FileInputStream;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import static zvm.ClassParser.AccessFlags.*;
 import static zvm.ClassParser.ConstantPool.instance_init;
@@ -49,14 +51,48 @@ public class VM {
     final static boolean log_invoke = false;
     final static boolean log_class_load = false;
     final static boolean fast_is_subtype_of = true;
+    // 解释器之间的调用在宿主上是递归的 (execute -> invoke -> execute), 一层 guest 调用要占好几个宿主栈帧
+    // guest 递归深度不能取决于宿主的 -Xss, 所以 guest 代码放到显式指定栈大小的宿主线程上跑, 见 on_guest_stack
+    final static long guest_stack_size = 512L << 20;
+    // 统计解释器相邻指令对的执行次数, 退出时打印, 超级指令就是照这个挑的, 见 Superinstructions
+    final static boolean opcode_pair_stats = false;
+    // 预解码之后把高频指令序列融合成一条超级指令
+    final static boolean superinstructions = true;
+    // 没有异常表、jsr、monitor 的方法翻译成寄存器 IR 执行, 见 RegisterCode
+    final static boolean register_ir = true;
+    // 寄存器 IR 的热点方法编译成宿主字节码, 见 Jit
+    final static boolean jit = true;
+    final static int jit_threshold = 2000;
+    // 回边次数到了这个数, 正在跑的循环换成 OSR 编译的版本
+    final static int osr_threshold = 5000;
+    // 关掉就在达到阈值的线程上同步编译, 调试用
+    final static boolean jit_background = true;
+    final static boolean log_jit = false;
+    // 退出时打印调用次数 + 回边次数最多的方法, 见 MethodData
+    final static boolean print_method_profiles = false;
+    // 隐式异常 (npe、数组越界、除零、强转失败) 先不创建 guest 对象, handler 用到或者抛到顶层才创建, 见 ZThrowable
+    final static boolean lazy_implicit_exceptions = true;
+    // 字段、数组访问前不判空, 数组不检查下标, 交给宿主抛 npe 与数组越界, 解释器在抛出的指令上换成 guest 异常, 见 ZThrowable.translate
+    // 只在抛出点是字段、数组、monitor 指令的时候换, 别的地方抛的 (虚拟机自己的 bug) 原样抛出去
+    final static boolean implicit_checks = true;
+    // 校验通过的方法跳过能静态证明不会失败的 aastore store check 与 checkcast, 见 Verifier
+    final static boolean verify = true;
+    final static boolean log_verify = false;
+    // 类层次分析: 静态类型下面已加载的具体类都选到同一个方法, 调用点去虚拟化, 加载了新的子类型再作废, 见 ClassHierarchy
+    final static boolean cha = true;
+    // 空方法、getter、setter、返回常量的方法调用时不建 frame, 直接在调用者的 slot 上执行, 见 Inliner
+    final static boolean inline_trivial_methods = true;
+    // String、Math、Integer、Long 的热点方法换成宿主实现, 见 Intrinsics
+    final static boolean intrinsics = true;
 
     final boolean initialized;
     final ThreadLocal<Map<String, FileInputStream>> open_files = ThreadLocal.withInitial(HashMap::new);
     final BootstrapClassLoader bootstrap_class_loader;
+    final ClassHierarchy class_hierarchy = new ClassHierarchy();
     final Map<String, Map<String, Object/*Invokable*/>> natives = new ConcurrentHashMap<>();
     final Map<String, ZObject> intern_strings = new ConcurrentHashMap<>();
-    final ThreadLocal<Deque<ZThread.Frame>> stacks = ThreadLocal.withInitial(ArrayDeque::new);
-    final InlineCache inline_cache_ = new InlineCache();
+    final ThreadLocal<ZThread> threads = ThreadLocal.withInitial(ZThread::new);
+    private final List<MethodData> method_data_ = new ArrayList<>();
     private final ZClass[] primitive_class_cache_;
 
     final ZClass class_boolean;
@@ -95,6 +131,9 @@ public class VM {
 
     public VM(String[] class_paths) {
         assert class_paths.length > 0;
+        if (print_method_profiles) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> MethodData.dump(System.err, method_profiles(), 30)));
+        }
         for (int i = 0; i < class_paths.length; i++) {
             class_paths[i] = Paths.get(class_paths[i]).toAbsolutePath().toString();
         }
@@ -139,10 +178,12 @@ public class VM {
         Reflect.of(java_lang_Object).field("z_class").set(java_lang_Class);
 
         // 处理 guard_ 造成的问题
-        int class_ins_field_sz = Reflect.of(java_lang_Class).field("instance_field_size_").get();
-        Reflect.ReflectField z_object_properties = Reflect.of(ZObject.class).field("properties");
-        z_object_properties.set(java_lang_Object, new Object[class_ins_field_sz]);
-        z_object_properties.set(java_lang_Class, new Object[class_ins_field_sz]);
+        Reflect.ReflectField z_object_prims = Reflect.of(ZObject.class).field("prims");
+        Reflect.ReflectField z_object_refs = Reflect.of(ZObject.class).field("refs");
+        z_object_prims.set(java_lang_Object, new long[java_lang_Class.prim_field_size()]);
+        z_object_prims.set(java_lang_Class, new long[java_lang_Class.prim_field_size()]);
+        z_object_refs.set(java_lang_Object, new Object[java_lang_Class.ref_field_size()]);
+        z_object_refs.set(java_lang_Class, new Object[java_lang_Class.ref_field_size()]);
 
         bootstrap_class_loader.put("java/lang/Class", java_lang_Class);
         bootstrap_class_loader.put("java/lang/Object", java_lang_Object);
@@ -154,6 +195,10 @@ public class VM {
         ZClass[] java_lang_Class_interfaces =
                 bootstrap_class_loader.load_class0_interfaces(java_lang_class_file, false);
         Reflect.of(java_lang_Class).field("interfaces").set(java_lang_Class_interfaces);
+        if (cha) {
+            class_hierarchy.class_loaded(java_lang_Object);
+            class_hierarchy.class_loaded(java_lang_Class);
+        }
 
         Reflect.of(java_lang_Class).field("init_state_").set(ZClass.ZClassState.loaded);
         Reflect.of(java_lang_Object).field("init_state_").set(ZClass.ZClassState.loaded);
@@ -162,10 +207,6 @@ public class VM {
         java_lang_Class.init_class_fields();
         java_lang_Object.init_class_fields();
 
-        // 初始化实例字段默认值
-        java_lang_Class.init_instance_field(java_lang_Class);
-        java_lang_Class.init_instance_field(java_lang_Object);
-
         // 调用构造函数
         ZMethod java_lang_class_init = java_lang_Class.special_method(instance_init, "(Ljava/lang/ClassLoader;)V");
         java_lang_class_init.invoke(java_lang_Class, new Object[] { null }); // new java.lang.Class(classloader = null)
@@ -270,6 +311,8 @@ public class VM {
             });
         } catch (ZThrowable t) {
             dump_stack_trace();
+            // 抛到顶层的隐式异常也要有 guest 对象
+            t.z_throwable();
             throw t;
         }
     }
@@ -288,44 +331,150 @@ public class VM {
         return primitive_class_cache_[type].new_array(array_length);
     }
 
+    void register_method_data(MethodData md) {
+        synchronized (method_data_) {
+            method_data_.add(md);
+        }
+    }
+
+    // 执行过的方法的 profile, 按调用次数 + 回边次数从大到小
+    List<MethodData> method_profiles() {
+        List<MethodData> profiles;
+        synchronized (method_data_) {
+            profiles = new ArrayList<>(method_data_);
+        }
+        profiles.sort((a, b) -> Long.compare(b.invocations + b.backedges, a.invocations + a.backedges));
+        return profiles;
+    }
+
+    // 给 VM 外面用的只读快照, 顺序同 method_profiles
+    public List<MethodProfile> method_profile_snapshot() {
+        List<MethodProfile> snapshot = new ArrayList<>();
+        for (MethodData md : method_profiles()) {
+            snapshot.add(MethodProfile.of(md));
+        }
+        return Collections.unmodifiableList(snapshot);
+    }
+
     <T> T check_null(T obj_ref) {
         if (obj_ref == null) {
-            throw new ZThrowable(load_class("java/lang/NullPointerException", true).new_instance());
+            throw ZThrowable.implicit(this, "java/lang/NullPointerException", null);
+        }
+        return obj_ref;
+    }
+
+    // 消息与 HotSpot (jdk8) 一样
+    ZThrowable class_cast_exception(Object obj_ref, ZClass cast_class) {
+        String message = ((ZObject) obj_ref).z_class.name().replace('/', '.')
+                + " cannot be cast to " + cast_class.name().replace('/', '.');
+        return ZThrowable.implicit(this, "java/lang/ClassCastException", message);
+    }
+
+    // 紧接着就要解引用的地方用这个, VM.implicit_checks 打开时不判空, 解引用时宿主自己会抛 npe
+    <T> T check_null_implicit(T obj_ref) {
+        if (!VM.implicit_checks && obj_ref == null) {
+            throw ZThrowable.implicit(this, "java/lang/NullPointerException", null);
         }
         return obj_ref;
     }
 
     void check_div_zero(int i) {
         if (i == 0) {
-            ZObject arith_ex = load_class("java/lang/ArithmeticException", true)
-                    .new_instance("(Ljava/lang/String;)V", new Object[] {
-                            Natives.new_string(this, "/ by zero")
-            });
-            throw new ZThrowable(arith_ex);
+            throw ZThrowable.implicit(this, "java/lang/ArithmeticException", "/ by zero");
         }
     }
     void check_div_zero(long l) {
         if (l == 0) {
-            ZObject arith_ex = load_class("java/lang/ArithmeticException", true)
-                    .new_instance("(Ljava/lang/String)V", new Object[] {
-                            Natives.new_string(this, "/ by zero")
-                    });
-            throw new ZThrowable(arith_ex);
+            throw ZThrowable.implicit(this, "java/lang/ArithmeticException", "/ by zero");
         }
     }
 
     private ZClass native_class_(Class<?> native_class) {
         ZClass z_class = ZClass.native_class(this, java_lang_Class, native_class);
-        ZClass.allocate0(java_lang_Class, z_class);
         ZMethod init = java_lang_Class.special_method(instance_init, "(Ljava/lang/ClassLoader;)V");
         init.invoke(z_class, new Object[] { null });
         return z_class;
     }
 
+    ZThread thread() {
+        return threads.get();
+    }
+
+    boolean on_guest_stack() {
+        Thread current = Thread.currentThread();
+        return current instanceof GuestStack && ((GuestStack<?>) current).vm == this;
+    }
+
+    // 宿主代码调进 guest 的入口 (ZMethod.invoke, BootstrapClassLoader.load_class) 先换到 guest 栈上,
+    // 调用者等着它跑完, 返回值与异常原样交回调用者
+    <T> T on_guest_stack(Supplier<T> call) {
+        if (on_guest_stack()) {
+            return call.get();
+        }
+        GuestStack<T> stack = new GuestStack<>(this, call);
+        stack.start();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                stack.join();
+                break;
+            } catch (InterruptedException e) {
+                // guest 没法中途停下, 等它跑完再把中断标记补回来
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable error = stack.error;
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new AssertionError(error);
+        }
+        return stack.result;
+    }
+
+    /**
+     * 一次宿主 -> guest 调用一个线程, 跑完就结束, 不会积攒线程, 多个宿主线程也不会排队
+     * ZThread 与 open_files 沿用调用者线程的: 调用者在 join 里等着, 同一时刻只有一个线程在用
+     * 整条 guest 调用链都在这一个线程上, guest 的 monitor (宿主的锁) 不会跨线程
+     */
+    private static final class GuestStack<T> extends Thread {
+        final VM vm;
+        private final Supplier<T> call;
+        private final ZThread z_thread;
+        private final Map<String, FileInputStream> files;
+        @Nullable T result;
+        @Nullable Throwable error;
+
+        GuestStack(VM vm, Supplier<T> call) {
+            super(null, null, Thread.currentThread().getName() + "-zvm", guest_stack_size);
+            this.vm = vm;
+            this.call = call;
+            this.z_thread = vm.threads.get();
+            this.files = vm.open_files.get();
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            vm.threads.set(z_thread);
+            vm.open_files.set(files);
+            try {
+                result = call.get();
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+    }
+
     private void dump_stack_trace() {
-        Deque<ZThread.Frame> stack = stacks.get();
-        while (!stack.isEmpty()) {
-            System.err.println(stack.pop());
+        ZThread thread = thread();
+        for (int i = 0; i < thread.depth(); i++) {
+            System.err.println(thread.frame(i));
         }
     }
 
@@ -0,0 +1,1066 @@
+package zvm;
+
+import org.jetbrains.annotations.Nullable;
+import zvm.ClassParser.ClassFile;
+import zvm.ClassParser.ConstantPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static zvm.Bytecodes.*;
+import static zvm.ClassParser.AccessFlags.ACC_FINAL;
+import static zvm.ClassParser.AccessFlags.ACC_STATIC;
+import static zvm.ClassParser.ClassFile.VerificationType.*;
+import static zvm.ClassParser.Constants.*;
+
+/**
+ * 字节码类型校验, 每个方法第一次用到的时候做一次, 结果缓存在 ZMethod.verifier_cache_
+ *
+ * 在没有融合的 DecodedCode 上跑数据流, 每条指令入口记下局部变量与操作数栈的类型:
+ *  有 StackMapTable (class 文件版本 >= 50) 跳转目标与 handler 入口直接用声明的 frame, 只检查流进来的类型与之兼容;
+ *  没有就做类型推导, 在跳转目标合并类型, 算到不动点
+ * 检查每条指令的操作数类型 (int long float double 引用 未初始化对象)、栈深、局部变量、方法与字段的签名
+ * 不支持 jsr/ret 与 ldc condy, 这种方法直接算校验失败, 仍然按原来的方式执行
+ *
+ * 校验通过的方法在 unchecked 模式下执行, 能静态证明不会失败的动态检查直接跳过:
+ *  1. aastore: 数组的实际类型确定 (new 出来的, 或者元素类型没有子类) 并且值的静态类型是元素类型的子类型
+ *  2. checkcast: 值的静态类型已经是目标类型的子类型
+ * 栈式解释器第一次执行 aastore / checkcast 的时候改写指令, 寄存器 IR 翻译的时候直接生成对应的指令
+ *
+ * 🦋 校验不能触发类加载 (第一次执行方法时 decode, 类加载又会执行 guest 代码), 只看已经加载的类:
+ *  校验的时候判断不了的子类型关系放过 (与 jvm 一样把接口当 Object 看), 证明 unchecked 的时候一律当作不成立
+ *
+ * @author chuxiaofeng
+ */
+final class Verifier {
+    // 下标是 ip, aastore 不需要 store check, checkcast 不需要检查
+    private final boolean[] unchecked;
+
+    private Verifier(boolean[] unchecked) {
+        this.unchecked = unchecked;
+    }
+
+    boolean unchecked(int ip) {
+        return unchecked[ip];
+    }
+
+    // 校验失败返回 null
+    static @Nullable Verifier verify(ZMethod method) {
+        DecodedCode plain = DecodedCode.decode(method, false);
+        if (plain == null) {
+            return null;
+        }
+        try {
+            return new Analyzer(method, plain).run();
+        } catch (VerifyError e) {
+            if (VM.log_verify) {
+                System.err.println("verify " + method + " " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    // ==================== 类型 ====================
+
+    static final int TOP = 0;
+    static final int INT = 1;
+    static final int FLOAT = 2;
+    static final int LONG = 3;
+    static final int DOUBLE = 4;
+    static final int NULL = 5;
+    static final int UNINIT_THIS = 6;
+    static final int REF = 7;
+    static final int UNINIT = 8;
+
+    static final class Type {
+        final int tag;
+        // REF 的类名, 与 load_class 的参数一样: java/lang/String, [I, [Ljava/lang/String;
+        final @Nullable String name;
+        // REF 的运行时类型就是 name, 不会是子类 (new 出来的)
+        final boolean exact;
+        // UNINIT 是 new 指令的 ip
+        final int new_ip;
+
+        Type(int tag, @Nullable String name, boolean exact, int new_ip) {
+            this.tag = tag;
+            this.name = name;
+            this.exact = exact;
+            this.new_ip = new_ip;
+        }
+
+        boolean is_reference() {
+            return tag == NULL || tag == REF || tag == UNINIT || tag == UNINIT_THIS;
+        }
+
+        // long double 占两个 slot, 第二个是 TOP
+        boolean is_wide() {
+            return tag == LONG || tag == DOUBLE;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Type)) {
+                return false;
+            }
+            Type t = (Type) o;
+            return tag == t.tag && exact == t.exact && new_ip == t.new_ip
+                    && (name == null ? t.name == null : name.equals(t.name));
+        }
+
+        @Override
+        public int hashCode() {
+            return tag * 31 + (name == null ? 0 : name.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            switch (tag) {
+                case TOP: return "top";
+                case INT: return "int";
+                case FLOAT: return "float";
+                case LONG: return "long";
+                case DOUBLE: return "double";
+                case NULL: return "null";
+                case UNINIT_THIS: return "uninit_this";
+                case UNINIT: return "uninit@" + new_ip;
+                default: return (exact ? "=" : "") + name;
+            }
+        }
+    }
+
+    static final Type T_TOP = new Type(TOP, null, false, -1);
+    static final Type T_INT = new Type(INT, null, false, -1);
+    static final Type T_FLOAT = new Type(FLOAT, null, false, -1);
+    static final Type T_LONG = new Type(LONG, null, false, -1);
+    static final Type T_DOUBLE = new Type(DOUBLE, null, false, -1);
+    static final Type T_NULL = new Type(NULL, null, false, -1);
+    static final Type T_UNINIT_THIS = new Type(UNINIT_THIS, null, false, -1);
+    static final String OBJECT = "java/lang/Object";
+    static final Type T_OBJECT = ref(OBJECT, false);
+    // 没有 StackMapTable 时合并出来的、算不出来的引用类型 (有类没加载), 校验放过, 证明不了任何事
+    static final String UNRESOLVED = "?";
+
+    static Type ref(String name, boolean exact) {
+        return new Type(REF, name, exact, -1);
+    }
+
+    private static final class State {
+        final Type[] locals;
+        final Type[] stack;
+        int sp;
+
+        State(int max_locals, int max_stack) {
+            locals = new Type[max_locals];
+            stack = new Type[max_stack];
+            Arrays.fill(locals, T_TOP);
+        }
+
+        private State(State s) {
+            locals = s.locals.clone();
+            stack = s.stack.clone();
+            sp = s.sp;
+        }
+
+        State copy() {
+            return new State(this);
+        }
+    }
+
+    // 覆盖某条指令的一个 exception handler
+    private static final class Handler {
+        final int handler_ip;
+        final String catch_type;
+
+        Handler(int handler_ip, String catch_type) {
+            this.handler_ip = handler_ip;
+            this.catch_type = catch_type;
+        }
+    }
+
+    // ==================== 数据流 ====================
+
+    private static final class Analyzer {
+        final VM vm;
+        final ZMethod method;
+        final DecodedCode plain;
+        final int[] code;
+        final ConstantPool cp;
+        final int max_locals;
+        final int max_stack;
+        final String this_class;
+        final boolean is_init;
+        // 每条指令入口的类型, null 表示还没到达
+        final State[] in;
+        // StackMapTable 声明的 frame
+        final @Nullable State[] declared;
+        // 每个 ip 上覆盖它的 handler, null 表示没有
+        final List<List<Handler>> handlers;
+        // 0 没到达, 1 每次经过都能证明 unchecked, 2 不能
+        final byte[] proven;
+        final int[] worklist;
+        final boolean[] queued;
+        int worklist_size;
+        // 正在检查的指令, 报错用
+        int current_ip = -1;
+
+        @SuppressWarnings("unchecked")
+        Analyzer(ZMethod method, DecodedCode plain) {
+            this.vm = method.declared_class().vm;
+            this.method = method;
+            this.plain = plain;
+            this.code = plain.code;
+            this.cp = method.constant_pool();
+            this.max_locals = plain.max_locals;
+            this.max_stack = plain.max_stack;
+            this.this_class = method.class_name();
+            this.is_init = method.name().equals("<init>");
+            this.in = new State[code.length];
+            this.proven = new byte[code.length];
+            this.worklist = new int[code.length];
+            this.queued = new boolean[code.length];
+            this.handlers = new ArrayList<>(Collections.nCopies(code.length, null));
+            ClassFile.Code code_attr = method.code();
+            assert code_attr != null;
+            for (ClassFile.Exception exception : code_attr.exception_table) {
+                int start = plain.ip(exception.start_pc);
+                int end = plain.ip(exception.end_pc);
+                int handler = plain.ip(exception.handler_pc);
+                String catch_type = exception.catch_type == 0 ? "java/lang/Throwable" : cp.class_at(exception.catch_type);
+                for (int ip = start; ip < end; ip++) {
+                    if (handlers.get(ip) == null) {
+                        handlers.set(ip, new ArrayList<>());
+                    }
+                    handlers.get(ip).add(new Handler(handler, catch_type));
+                }
+            }
+            this.declared = code_attr.stack_map_table == null ? null : expand(code_attr.stack_map_table);
+        }
+
+        @Nullable Verifier run() {
+            State entry = entry_state();
+            flow(0, entry);
+            while (worklist_size > 0) {
+                int ip = worklist[--worklist_size];
+                queued[ip] = false;
+                execute(ip, in[ip].copy());
+            }
+            boolean[] unchecked = new boolean[code.length];
+            for (int ip = 0; ip < code.length; ip++) {
+                unchecked[ip] = proven[ip] == 1;
+            }
+            return new Verifier(unchecked);
+        }
+
+        // 方法入口: this 与参数
+        State entry_state() {
+            List<Type> types = entry_types();
+            State s = new State(max_locals, max_stack);
+            set_locals(s, types);
+            return s;
+        }
+
+        List<Type> entry_types() {
+            List<Type> types = new ArrayList<>();
+            if ((method.access_flags() & ACC_STATIC) == 0) {
+                types.add(is_init && !this_class.equals(OBJECT) ? T_UNINIT_THIS : ref(this_class, false));
+            }
+            for (String type : Descriptor.parameter_types(method.descriptor())) {
+                types.add(type_of_name(type));
+            }
+            return types;
+        }
+
+        // 一个 long double 在 list 里是一项, 在 locals 里占两个 slot
+        void set_locals(State s, List<Type> types) {
+            int n = 0;
+            for (Type t : types) {
+                check(n + (t.is_wide() ? 2 : 1) <= max_locals, "locals 超过 max_locals");
+                s.locals[n++] = t;
+                if (t.is_wide()) {
+                    s.locals[n++] = T_TOP;
+                }
+            }
+        }
+
+        // StackMapTable 展开成每个 ip 上完整的 frame
+        @Nullable State[] expand(ClassFile.StackMapFrame[] frames) {
+            State[] declared = new State[code.length];
+            List<Type> locals = entry_types();
+            int bci = -1;
+            for (ClassFile.StackMapFrame frame : frames) {
+                bci += frame.offset_delta + 1;
+                int type = frame.frame_type;
+                if (type >= 248 && type <= 250) {
+                    // chop
+                    int k = 251 - type;
+                    check(k <= locals.size(), "chop_frame");
+                    locals = new ArrayList<>(locals.subList(0, locals.size() - k));
+                } else if (type >= 252 && type <= 254) {
+                    // append
+                    locals = new ArrayList<>(locals);
+                    for (ClassFile.VerificationType v : frame.locals) {
+                        locals.add(type_of(v));
+                    }
+                } else if (type == 255) {
+                    locals = new ArrayList<>();
+                    for (ClassFile.VerificationType v : frame.locals) {
+                        locals.add(type_of(v));
+                    }
+                }
+                check(bci < plain.ip_of_bci.length - 1 && plain.ip_of_bci[bci] != -1, "frame 不在指令上");
+                State s = new State(max_locals, max_stack);
+                set_locals(s, locals);
+                for (ClassFile.VerificationType v : frame.stack) {
+                    push(s, type_of(v));
+                }
+                declared[plain.ip_of_bci[bci]] = s;
+            }
+            return declared;
+        }
+
+        Type type_of(ClassFile.VerificationType v) {
+            switch (v.tag) {
+                case ITEM_Top: return T_TOP;
+                case ITEM_Integer: return T_INT;
+                case ITEM_Float: return T_FLOAT;
+                case ITEM_Double: return T_DOUBLE;
+                case ITEM_Long: return T_LONG;
+                case ITEM_Null: return T_NULL;
+                case ITEM_UninitializedThis: return T_UNINIT_THIS;
+                case ITEM_Object: return ref(cp.class_at(v.value), false);
+                case ITEM_Uninitialized:
+                    check(v.value < plain.ip_of_bci.length && plain.ip_of_bci[v.value] != -1, "uninitialized offset");
+                    return new Type(UNINIT, null, false, plain.ip_of_bci[v.value]);
+                default: throw new VerifyError("verification type " + v.tag);
+            }
+        }
+
+        // s 流到 ip
+        void flow(int ip, State s) {
+            check(ip >= 0 && ip < code.length && plain.bci[ip] != -1, "跳转目标不是指令");
+            State old = in[ip];
+            if (declared != null && declared[ip] != null) {
+                State frame = declared[ip];
+                check(compatible(s, frame), "与 StackMapTable 不一致 @" + plain.bci(ip));
+                if (old == null) {
+                    in[ip] = frame;
+                    enqueue(ip);
+                }
+            } else if (old == null) {
+                in[ip] = s;
+                enqueue(ip);
+            } else {
+                State merged = merge(old, s);
+                if (merged != old) {
+                    in[ip] = merged;
+                    enqueue(ip);
+                }
+            }
+        }
+
+        void enqueue(int ip) {
+            if (!queued[ip]) {
+                queued[ip] = true;
+                worklist[worklist_size++] = ip;
+            }
+        }
+
+        boolean compatible(State s, State frame) {
+            if (s.sp != frame.sp) {
+                return false;
+            }
+            for (int i = 0; i < max_locals; i++) {
+                if (!assignable(s.locals[i], frame.locals[i])) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < s.sp; i++) {
+                if (!assignable(s.stack[i], frame.stack[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 没有变化返回 old
+        State merge(State old, State s) {
+            check(old.sp == s.sp, "合并的栈深不同 " + old.sp + " " + s.sp);
+            State merged = null;
+            for (int i = 0; i < max_locals; i++) {
+                Type t = merge(old.locals[i], s.locals[i]);
+                if (!t.equals(old.locals[i])) {
+                    if (merged == null) {
+                        merged = old.copy();
+                    }
+                    merged.locals[i] = t;
+                }
+            }
+            for (int i = 0; i < s.sp; i++) {
+                Type t = merge(old.stack[i], s.stack[i]);
+                check(t.tag != TOP || old.stack[i].tag == TOP, "合并的栈类型不同");
+                if (!t.equals(old.stack[i])) {
+                    if (merged == null) {
+                        merged = old.copy();
+                    }
+                    merged.stack[i] = t;
+                }
+            }
+            return merged == null ? old : merged;
+        }
+
+        Type merge(Type a, Type b) {
+            if (a.equals(b)) {
+                return a;
+            }
+            if (a.tag == NULL && b.tag == REF) {
+                return b;
+            }
+            if (b.tag == NULL && a.tag == REF) {
+                return a;
+            }
+            if (a.tag == REF && b.tag == REF) {
+                assert a.name != null && b.name != null;
+                return a.name.equals(b.name) ? ref(a.name, false) : ref(lub(a.name, b.name), false);
+            }
+            return T_TOP;
+        }
+
+        // 最小公共父类, 接口、不同维度的数组当作 Object, 没加载的类是 UNRESOLVED
+        String lub(String a, String b) {
+            if (a.startsWith("[") && b.startsWith("[")) {
+                String ca = a.substring(1), cb = b.substring(1);
+                if (is_reference_descriptor(ca) && is_reference_descriptor(cb)) {
+                    return array_of(lub(class_name(ca), class_name(cb)));
+                }
+                return OBJECT;
+            }
+            ZClass ca = loaded(a), cb = loaded(b);
+            if (ca == null || cb == null) {
+                return UNRESOLVED;
+            }
+            if (ca.is_interface() || cb.is_interface()) {
+                return OBJECT;
+            }
+            for (ZClass c = ca; c != null; c = c.super_class()) {
+                if (c == cb || c.is_assignable_from(cb)) {
+                    return c.name();
+                }
+            }
+            return OBJECT;
+        }
+
+        // ==================== 指令 ====================
+
+        void execute(int ip, State s) {
+            current_ip = ip;
+            int op = code[ip];
+            int next = next_ip(ip);
+            // handler 看到的是指令执行之前的局部变量
+            if (handlers.get(ip) != null) {
+                for (Handler handler : handlers.get(ip)) {
+                    State h = new State(max_locals, max_stack);
+                    System.arraycopy(s.locals, 0, h.locals, 0, max_locals);
+                    push(h, ref(handler.catch_type, false));
+                    flow(handler.handler_ip, h);
+                }
+            }
+
+            Type t1, t2;
+            switch (op) {
+                case NOP: break;
+                case ACONST_NULL: push(s, T_NULL); break;
+                case ICONST_M1: case ICONST_0: case ICONST_1: case ICONST_2: case ICONST_3: case ICONST_4: case ICONST_5:
+                case BIPUSH: case SIPUSH:
+                    push(s, T_INT); break;
+                case LCONST_0: case LCONST_1: push(s, T_LONG); break;
+                case FCONST_0: case FCONST_1: case FCONST_2: push(s, T_FLOAT); break;
+                case DCONST_0: case DCONST_1: push(s, T_DOUBLE); break;
+                case LDC:
+                    switch (cp.tag(code[ip + 1])) {
+                        case CONSTANT_Integer: push(s, T_INT); break;
+                        case CONSTANT_Float: push(s, T_FLOAT); break;
+                        case CONSTANT_String: push(s, ref("java/lang/String", true)); break;
+                        case CONSTANT_Class: push(s, ref("java/lang/Class", true)); break;
+                        case CONSTANT_MethodType: push(s, ref("java/lang/invoke/MethodType", false)); break;
+                        case CONSTANT_MethodHandle: push(s, ref("java/lang/invoke/MethodHandle", false)); break;
+                        default: throw new VerifyError("ldc " + cp.tag(code[ip + 1]));
+                    }
+                    break;
+                case LDC2_W:
+                    switch (cp.tag(code[ip + 1])) {
+                        case CONSTANT_Long: push(s, T_LONG); break;
+                        case CONSTANT_Double: push(s, T_DOUBLE); break;
+                        default: throw new VerifyError("ldc2_w " + cp.tag(code[ip + 1]));
+                    }
+                    break;
+
+                case ILOAD: push(s, load(s, code[ip + 1], INT)); break;
+                case LLOAD: push(s, load(s, code[ip + 1], LONG)); break;
+                case FLOAD: push(s, load(s, code[ip + 1], FLOAT)); break;
+                case DLOAD: push(s, load(s, code[ip + 1], DOUBLE)); break;
+                case ALOAD:
+                    t1 = local(s, code[ip + 1]);
+                    check(t1.is_reference(), "aload " + t1);
+                    push(s, t1);
+                    break;
+                case ISTORE: store(s, code[ip + 1], pop(s, INT)); break;
+                case LSTORE: store(s, code[ip + 1], pop(s, LONG)); break;
+                case FSTORE: store(s, code[ip + 1], pop(s, FLOAT)); break;
+                case DSTORE: store(s, code[ip + 1], pop(s, DOUBLE)); break;
+                case ASTORE:
+                    t1 = pop(s);
+                    check(t1.is_reference(), "astore " + t1);
+                    store(s, code[ip + 1], t1);
+                    break;
+
+                case IALOAD: array_load(s, "[I", T_INT); break;
+                case LALOAD: array_load(s, "[J", T_LONG); break;
+                case FALOAD: array_load(s, "[F", T_FLOAT); break;
+                case DALOAD: array_load(s, "[D", T_DOUBLE); break;
+                case CALOAD: array_load(s, "[C", T_INT); break;
+                case SALOAD: array_load(s, "[S", T_INT); break;
+                case BALOAD: array_load(s, "[B", T_INT); break;
+                case AALOAD:
+                {
+                    pop(s, INT);
+                    t1 = pop(s);
+                    if (t1.tag == NULL) {
+                        push(s, T_NULL);
+                    } else {
+                        check(t1.tag == REF && is_reference_array(t1.name), "aaload " + t1);
+                        assert t1.name != null;
+                        push(s, ref(class_name(t1.name.substring(1)), false));
+                    }
+                    break;
+                }
+                case IASTORE: array_store(s, "[I", INT); break;
+                case LASTORE: array_store(s, "[J", LONG); break;
+                case FASTORE: array_store(s, "[F", FLOAT); break;
+                case DASTORE: array_store(s, "[D", DOUBLE); break;
+                case CASTORE: array_store(s, "[C", INT); break;
+                case SASTORE: array_store(s, "[S", INT); break;
+                case BASTORE: array_store(s, "[B", INT); break;
+                case AASTORE:
+                {
+                    t1 = pop(s);
+                    check(t1.tag == NULL || t1.tag == REF, "aastore " + t1);
+                    pop(s, INT);
+                    t2 = pop(s);
+                    check(t2.tag == NULL || (t2.tag == REF && is_reference_array(t2.name)), "aastore " + t2);
+                    prove(ip, t2.tag == NULL || store_never_fails(t2, t1));
+                    break;
+                }
+
+                // 移动的一组 slot 的最下面不能是 long double 的第二个 slot, 否则就把它拆开了
+                case POP: split(s, 1); s.sp -= 1; break;
+                case POP2: split(s, 2); s.sp -= 2; break;
+                case DUP: split(s, 1); dup(s, 1, 0); break;
+                case DUP_X1: split(s, 1); split(s, 2); dup(s, 1, 1); break;
+                case DUP_X2: split(s, 1); split(s, 3); dup(s, 1, 2); break;
+                case DUP2: split(s, 2); dup(s, 2, 0); break;
+                case DUP2_X1: split(s, 2); split(s, 3); dup(s, 2, 1); break;
+                case DUP2_X2: split(s, 2); split(s, 4); dup(s, 2, 2); break;
+                case SWAP:
+                    split(s, 1);
+                    split(s, 2);
+                    t1 = s.stack[s.sp - 1];
+                    s.stack[s.sp - 1] = s.stack[s.sp - 2];
+                    s.stack[s.sp - 2] = t1;
+                    break;
+
+                case IADD: case ISUB: case IMUL: case IDIV: case IREM:
+                case ISHL: case ISHR: case IUSHR: case IAND: case IOR: case IXOR:
+                    pop(s, INT); pop(s, INT); push(s, T_INT); break;
+                case LADD: case LSUB: case LMUL: case LDIV: case LREM:
+                case LAND: case LOR: case LXOR:
+                    pop(s, LONG); pop(s, LONG); push(s, T_LONG); break;
+                case LSHL: case LSHR: case LUSHR:
+                    pop(s, INT); pop(s, LONG); push(s, T_LONG); break;
+                case FADD: case FSUB: case FMUL: case FDIV: case FREM:
+                    pop(s, FLOAT); pop(s, FLOAT); push(s, T_FLOAT); break;
+                case DADD: case DSUB: case DMUL: case DDIV: case DREM:
+                    pop(s, DOUBLE); pop(s, DOUBLE); push(s, T_DOUBLE); break;
+                case INEG: pop(s, INT); push(s, T_INT); break;
+                case LNEG: pop(s, LONG); push(s, T_LONG); break;
+                case FNEG: pop(s, FLOAT); push(s, T_FLOAT); break;
+                case DNEG: pop(s, DOUBLE); push(s, T_DOUBLE); break;
+                case IINC: load(s, code[ip + 1], INT); break;
+
+                case I2L: pop(s, INT); push(s, T_LONG); break;
+                case I2F: pop(s, INT); push(s, T_FLOAT); break;
+                case I2D: pop(s, INT); push(s, T_DOUBLE); break;
+                case L2I: pop(s, LONG); push(s, T_INT); break;
+                case L2F: pop(s, LONG); push(s, T_FLOAT); break;
+                case L2D: pop(s, LONG); push(s, T_DOUBLE); break;
+                case F2I: pop(s, FLOAT); push(s, T_INT); break;
+                case F2L: pop(s, FLOAT); push(s, T_LONG); break;
+                case F2D: pop(s, FLOAT); push(s, T_DOUBLE); break;
+                case D2I: pop(s, DOUBLE); push(s, T_INT); break;
+                case D2L: pop(s, DOUBLE); push(s, T_LONG); break;
+                case D2F: pop(s, DOUBLE); push(s, T_FLOAT); break;
+                case I2B: case I2C: case I2S: pop(s, INT); push(s, T_INT); break;
+                case LCMP: pop(s, LONG); pop(s, LONG); push(s, T_INT); break;
+                case FCMPL: case FCMPG: pop(s, FLOAT); pop(s, FLOAT); push(s, T_INT); break;
+                case DCMPL: case DCMPG: pop(s, DOUBLE); pop(s, DOUBLE); push(s, T_INT); break;
+
+                case IFEQ: case IFNE: case IFLT: case IFGE: case IFGT: case IFLE:
+                    pop(s, INT);
+                    flow(code[ip + 1], s.copy());
+                    break;
+                case IF_ICMPEQ: case IF_ICMPNE: case IF_ICMPLT: case IF_ICMPGE: case IF_ICMPGT: case IF_ICMPLE:
+                    pop(s, INT);
+                    pop(s, INT);
+                    flow(code[ip + 1], s.copy());
+                    break;
+                case IF_ACMPEQ: case IF_ACMPNE:
+                    check(pop(s).is_reference() & pop(s).is_reference(), "if_acmp");
+                    flow(code[ip + 1], s.copy());
+                    break;
+                case IFNULL: case IFNONNULL:
+                    check(pop(s).is_reference(), "ifnull");
+                    flow(code[ip + 1], s.copy());
+                    break;
+                case GOTO:
+                    flow(code[ip + 1], s);
+                    return;
+                case TABLESWITCH:
+                {
+                    pop(s, INT);
+                    flow(code[ip + 1], s.copy());
+                    int n = code[ip + 3] - code[ip + 2] + 1;
+                    for (int i = 0; i < n; i++) {
+                        flow(code[ip + 4 + i], s.copy());
+                    }
+                    return;
+                }
+                case LOOKUPSWITCH:
+                {
+                    pop(s, INT);
+                    flow(code[ip + 1], s.copy());
+                    int n = code[ip + 2];
+                    for (int i = 0; i < n; i++) {
+                        flow(code[ip + 4 + i * 2], s.copy());
+                    }
+                    return;
+                }
+
+                case IRETURN: pop(s, INT); check_return("ZBCSI"); return;
+                case LRETURN: pop(s, LONG); check_return("J"); return;
+                case FRETURN: pop(s, FLOAT); check_return("F"); return;
+                case DRETURN: pop(s, DOUBLE); check_return("D"); return;
+                case ARETURN:
+                {
+                    t1 = pop(s);
+                    check_return("L[");
+                    check(assignable(t1, type_of_name(Descriptor.return_type(method.descriptor()))), "areturn " + t1);
+                    return;
+                }
+                case RETURN:
+                    check_return("V");
+                    if (is_init) {
+                        for (Type t : s.locals) {
+                            check(t.tag != UNINIT_THIS, "<init> 返回之前没有调用父类构造方法");
+                        }
+                    }
+                    return;
+                case ATHROW:
+                    t1 = pop(s);
+                    check(t1.tag == NULL || assignable(t1, ref("java/lang/Throwable", false)), "athrow " + t1);
+                    return;
+
+                case GETSTATIC:
+                    push(s, type_of_name(Descriptor.field_type(cp.field_ref_at(code[ip + 1]).name_and_type.descriptor)));
+                    break;
+                case PUTSTATIC:
+                    pop_value(s, Descriptor.field_type(cp.field_ref_at(code[ip + 1]).name_and_type.descriptor));
+                    break;
+                case GETFIELD:
+                {
+                    ConstantPool.FieldRef field_ref = cp.field_ref_at(code[ip + 1]);
+                    pop_receiver(s, field_ref.class_name, false);
+                    push(s, type_of_name(Descriptor.field_type(field_ref.name_and_type.descriptor)));
+                    break;
+                }
+                case PUTFIELD:
+                {
+                    ConstantPool.FieldRef field_ref = cp.field_ref_at(code[ip + 1]);
+                    pop_value(s, Descriptor.field_type(field_ref.name_and_type.descriptor));
+                    // 构造方法里调用父类构造方法之前可以给自己的字段赋值 (内部类的 this$0)
+                    pop_receiver(s, field_ref.class_name, is_init && field_ref.class_name.equals(this_class));
+                    break;
+                }
+                case INVOKEVIRTUAL: case INVOKESPECIAL: case INVOKESTATIC: case INVOKEINTERFACE:
+                {
+                    ConstantPool.MethodRef method_ref = cp.method_ref_at(code[ip + 1], op);
+                    String descriptor = method_ref.name_and_type.descriptor;
+                    String[] parameter_types = Descriptor.parameter_types(descriptor);
+                    for (int i = parameter_types.length - 1; i >= 0; i--) {
+                        pop_value(s, parameter_types[i]);
+                    }
+                    if (op == INVOKESPECIAL && method_ref.name_and_type.name.equals("<init>")) {
+                        initialize(s, pop(s), method_ref.class_name);
+                    } else if (op != INVOKESTATIC) {
+                        pop_receiver(s, method_ref.class_name, false);
+                    }
+                    push_return(s, descriptor);
+                    break;
+                }
+                case INVOKEDYNAMIC:
+                {
+                    String descriptor = cp.invoke_dynamic_at(code[ip + 1]).name_and_type.descriptor;
+                    String[] parameter_types = Descriptor.parameter_types(descriptor);
+                    for (int i = parameter_types.length - 1; i >= 0; i--) {
+                        pop_value(s, parameter_types[i]);
+                    }
+                    push_return(s, descriptor);
+                    break;
+                }
+
+                case NEW:
+                    push(s, new Type(UNINIT, null, false, ip));
+                    break;
+                case NEWARRAY:
+                    pop(s, INT);
+                    push(s, ref(primitive_array(code[ip + 1]), true));
+                    break;
+                case ANEWARRAY:
+                    pop(s, INT);
+                    push(s, ref(array_of(cp.class_at(code[ip + 1])), true));
+                    break;
+                case MULTIANEWARRAY:
+                {
+                    String array_type = cp.class_at(code[ip + 1]);
+                    int dims = code[ip + 2];
+                    check(dims >= 1 && array_type.length() > dims && array_type.lastIndexOf('[') >= dims - 1, "multianewarray");
+                    for (int i = 0; i < dims; i++) {
+                        pop(s, INT);
+                    }
+                    push(s, ref(array_type, true));
+                    break;
+                }
+                case ARRAYLENGTH:
+                    t1 = pop(s);
+                    check(t1.tag == NULL || (t1.tag == REF && t1.name != null && t1.name.startsWith("[")), "arraylength " + t1);
+                    push(s, T_INT);
+                    break;
+                case CHECKCAST:
+                {
+                    t1 = pop(s);
+                    check(t1.tag == NULL || t1.tag == REF, "checkcast " + t1);
+                    String target = cp.class_at(code[ip + 1]);
+                    boolean redundant = t1.tag == NULL || subtype(t1.name, target) == YES;
+                    prove(ip, redundant);
+                    // 多余的强转保留原来更精确的类型
+                    push(s, redundant ? t1 : ref(target, false));
+                    break;
+                }
+                case INSTANCEOF:
+                    t1 = pop(s);
+                    check(t1.tag == NULL || t1.tag == REF, "instanceof " + t1);
+                    push(s, T_INT);
+                    break;
+                case MONITORENTER: case MONITOREXIT:
+                    t1 = pop(s);
+                    check(t1.tag == NULL || t1.tag == REF, "monitor " + t1);
+                    break;
+
+                // JSR RET 以及其他
+                default:
+                    throw new VerifyError("不支持的指令 " + nameOf(op));
+            }
+            check(next < code.length, "执行到了方法末尾");
+            flow(next, s);
+        }
+
+        int next_ip(int ip) {
+            int next = ip + 1;
+            while (next < plain.bci.length && plain.bci[next] == -1) {
+                next++;
+            }
+            return next;
+        }
+
+        void prove(int ip, boolean ok) {
+            if (!ok) {
+                proven[ip] = 2;
+            } else if (proven[ip] == 0) {
+                proven[ip] = 1;
+            }
+        }
+
+        // ==================== 栈与局部变量 ====================
+
+        void push(State s, Type t) {
+            check(s.sp + (t.is_wide() ? 2 : 1) <= max_stack, "超过 max_stack");
+            s.stack[s.sp++] = t;
+            if (t.is_wide()) {
+                s.stack[s.sp++] = T_TOP;
+            }
+        }
+
+        Type pop(State s) {
+            check(s.sp > 0, "栈下溢");
+            Type t = s.stack[--s.sp];
+            check(t.tag != TOP, "把 long double 当一个 slot 弹出");
+            return t;
+        }
+
+        Type pop(State s, int tag) {
+            if (tag == LONG || tag == DOUBLE) {
+                check(s.sp >= 2 && s.stack[s.sp - 1].tag == TOP, "栈下溢");
+                s.sp--;
+            }
+            Type t = pop(s);
+            check(t.tag == tag, "期望 " + tag + " 实际 " + t);
+            return t;
+        }
+
+        void split(State s, int n) {
+            check(s.sp >= n, "栈下溢");
+            check(s.stack[s.sp - n].tag != TOP, "拆开了 long double");
+        }
+
+        // 复制栈顶 n 个 slot, 插到再往下 under 个 slot 的下面
+        void dup(State s, int n, int under) {
+            check(s.sp + n <= max_stack, "超过 max_stack");
+            Type[] st = s.stack;
+            int sp = s.sp;
+            System.arraycopy(st, sp - n - under, st, sp - under, n + under);
+            System.arraycopy(st, sp, st, sp - n - under, n);
+            s.sp = sp + n;
+        }
+
+        Type local(State s, int idx) {
+            check(idx >= 0 && idx < max_locals, "局部变量越界");
+            return s.locals[idx];
+        }
+
+        Type load(State s, int idx, int tag) {
+            Type t = local(s, idx);
+            check(t.tag == tag, "期望 " + tag + " 实际 " + t);
+            return t;
+        }
+
+        void store(State s, int idx, Type t) {
+            check(idx >= 0 && idx + (t.is_wide() ? 2 : 1) <= max_locals, "局部变量越界");
+            // 覆盖了前一个 long double 的第二个 slot
+            if (idx > 0 && s.locals[idx - 1].is_wide()) {
+                s.locals[idx - 1] = T_TOP;
+            }
+            s.locals[idx] = t;
+            if (t.is_wide()) {
+                s.locals[idx + 1] = T_TOP;
+            }
+        }
+
+        void array_load(State s, String array_type, Type element) {
+            pop(s, INT);
+            check_array(pop(s), array_type);
+            push(s, element);
+        }
+
+        void array_store(State s, String array_type, int tag) {
+            pop(s, tag);
+            pop(s, INT);
+            check_array(pop(s), array_type);
+        }
+
+        void check_array(Type t, String array_type) {
+            // baload bastore 同时用于 byte[] 与 boolean[]
+            check(t.tag == NULL || (t.tag == REF && (array_type.equals(t.name)
+                    || (array_type.equals("[B") && "[Z".equals(t.name)))), "期望 " + array_type + " 实际 " + t);
+        }
+
+        void pop_value(State s, String type) {
+            Type expected = type_of_name(type);
+            if (expected.tag == REF) {
+                Type t = pop(s);
+                check(assignable(t, expected), "期望 " + expected + " 实际 " + t);
+            } else {
+                pop(s, expected.tag);
+            }
+        }
+
+        void pop_receiver(State s, String class_name, boolean allow_uninit_this) {
+            Type t = pop(s);
+            if (allow_uninit_this && t.tag == UNINIT_THIS) {
+                return;
+            }
+            // 接收者是数组的时候 class_name 就是数组类型 (clone)
+            check(assignable(t, ref(class_name, false)), "接收者期望 " + class_name + " 实际 " + t);
+        }
+
+        // 构造方法调用之后, 所有同一个未初始化对象的引用都变成初始化好的类型
+        void initialize(State s, Type receiver, String class_name) {
+            Type initialized;
+            if (receiver.tag == UNINIT) {
+                String new_class = cp.class_at(code[receiver.new_ip + 1]);
+                check(new_class.equals(class_name), "new " + new_class + " 调用了 " + class_name + ".<init>");
+                initialized = ref(new_class, true);
+            } else {
+                check(receiver.tag == UNINIT_THIS, "<init> 的接收者 " + receiver);
+                initialized = ref(this_class, false);
+            }
+            for (int i = 0; i < max_locals; i++) {
+                if (s.locals[i].equals(receiver)) {
+                    s.locals[i] = initialized;
+                }
+            }
+            for (int i = 0; i < s.sp; i++) {
+                if (s.stack[i].equals(receiver)) {
+                    s.stack[i] = initialized;
+                }
+            }
+        }
+
+        void push_return(State s, String descriptor) {
+            String return_type = Descriptor.return_type(descriptor);
+            if (!return_type.equals("void")) {
+                push(s, type_of_name(return_type));
+            }
+        }
+
+        void check_return(String kinds) {
+            char kind = Descriptor.return_kind(method.descriptor());
+            check(kinds.indexOf(kind) != -1, "返回类型 " + kind);
+        }
+
+        // ==================== 子类型 ====================
+
+        static final int YES = 1;
+        static final int NO = 2;
+        static final int UNKNOWN = 3;
+
+        // 校验用, 判断不了的放过
+        boolean assignable(Type from, Type to) {
+            if (from.equals(to) || to.tag == TOP) {
+                return true;
+            }
+            if (to.tag == REF) {
+                if (from.tag == NULL) {
+                    return true;
+                }
+                if (from.tag != REF) {
+                    return false;
+                }
+                assert to.name != null;
+                ZClass to_class = loaded(to.name);
+                // 与 jvm 一样, 接口当作 Object
+                return (to_class != null && to_class.is_interface()) || subtype(from.name, to.name) != NO;
+            }
+            return false;
+        }
+
+        int subtype(@Nullable String sub, String sup) {
+            assert sub != null;
+            if (sup.equals(OBJECT)) {
+                return YES;
+            }
+            if (sub.equals(UNRESOLVED) || sup.equals(UNRESOLVED)) {
+                return UNKNOWN;
+            }
+            if (sub.equals(sup)) {
+                return YES;
+            }
+            boolean sub_array = sub.startsWith("["), sup_array = sup.startsWith("[");
+            if (sub_array && sup_array) {
+                String sub_component = sub.substring(1), sup_component = sup.substring(1);
+                if (is_reference_descriptor(sub_component) && is_reference_descriptor(sup_component)) {
+                    return subtype(class_name(sub_component), class_name(sup_component));
+                }
+                // 基础类型数组只是自己的子类型
+                return NO;
+            }
+            if (sub_array) {
+                return sup.equals("java/lang/Cloneable") || sup.equals("java/io/Serializable") ? YES : NO;
+            }
+            ZClass sub_class = loaded(sub), sup_class = loaded(sup);
+            if (sub_class == null || sup_class == null) {
+                return sup_array ? NO : UNKNOWN;
+            }
+            return sup_class.is_assignable_from(sub_class) ? YES : NO;
+        }
+
+        // 往 array 里存 value 一定不会 ArrayStoreException
+        boolean store_never_fails(Type array, Type value) {
+            if (value.tag == NULL) {
+                return true;
+            }
+            assert array.name != null;
+            String component = class_name(array.name.substring(1));
+            return (array.exact || is_leaf(component)) && subtype(value.name, component) == YES;
+        }
+
+        // 没有子类型: final 类, 基础类型数组, 元素没有子类型的数组
+        boolean is_leaf(String name) {
+            if (name.startsWith("[")) {
+                String component = name.substring(1);
+                return !is_reference_descriptor(component) || is_leaf(class_name(component));
+            }
+            ZClass z_class = loaded(name);
+            return z_class != null && !z_class.is_interface() && (z_class.access_flags() & ACC_FINAL) != 0;
+        }
+
+        @Nullable ZClass loaded(String name) {
+            return vm.bootstrap_class_loader.loaded_class(name);
+        }
+
+        // ==================== 类型名 ====================
+
+        // Descriptor.parameter_types 的格式: int, java/lang/String, [I, [Ljava/lang/String;
+        static Type type_of_name(String name) {
+            switch (name) {
+                case "boolean": case "byte": case "char": case "short": case "int":
+                    return T_INT;
+                case "long": return T_LONG;
+                case "float": return T_FLOAT;
+                case "double": return T_DOUBLE;
+                default: return ref(name, false);
+            }
+        }
+
+        // 数组元素的描述符是引用类型
+        static boolean is_reference_descriptor(String descriptor) {
+            char c = descriptor.charAt(0);
+            return c == 'L' || c == '[';
+        }
+
+        static boolean is_reference_array(@Nullable String name) {
+            return name != null && name.startsWith("[") && is_reference_descriptor(name.substring(1));
+        }
+
+        // Ljava/lang/String; -> java/lang/String, [I 不变
+        static String class_name(String descriptor) {
+            return descriptor.charAt(0) == 'L' ? descriptor.substring(1, descriptor.length() - 1) : descriptor;
+        }
+
+        static String array_of(String name) {
+            return name.startsWith("[") ? "[" + name : "[L" + name + ";";
+        }
+
+        static String primitive_array(int a_type) {
+            switch (a_type) {
+                case 4: return "[Z";
+                case 5: return "[C";
+                case 6: return "[F";
+                case 7: return "[D";
+                case 8: return "[B";
+                case 9: return "[S";
+                case 10: return "[I";
+                case 11: return "[J";
+                default: throw new VerifyError("newarray " + a_type);
+            }
+        }
+
+        void check(boolean ok, String message) {
+            if (!ok) {
+                throw new VerifyError(method + " @" + plain.bci(current_ip) + ": " + message);
+            }
+        }
+    }
+}
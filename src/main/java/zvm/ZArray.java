@@ -31,6 +31,9 @@ import java.util.Objects;
  */
 public final class ZArray extends ZObject {
     private final @NotNull Object array;
+    private final int length;
+    // 元素的 kind, 见 Descriptor.kind, 装箱读写按它分派
+    private final char kind_;
 
     ZArray(VM vm, @NotNull ZClass z_class, @NotNull Object array) {
         super(vm, z_class);
@@ -38,34 +41,130 @@ public final class ZArray extends ZObject {
         assert array.getClass().isArray();
         // 检查 array 类型 ???
         this.array = array;
+        this.length = Array.getLength(array);
+        this.kind_ = Descriptor.kind(z_class.name(), 1);
     }
 
     int length() {
-        return Array.getLength(array);
+        return length;
     }
 
+    // 装箱读写, 给 native 与反射用, 装箱类型与 java.lang.reflect.Array.get 一样
     <T> T index(int idx) {
         bound_check(idx);
+        Object val;
+        switch (kind_) {
+            case 'Z': val = ((boolean[]) array)[idx]; break;
+            case 'B': val = ((byte[]) array)[idx]; break;
+            case 'C': val = ((char[]) array)[idx]; break;
+            case 'S': val = ((short[]) array)[idx]; break;
+            case 'I': val = ((int[]) array)[idx]; break;
+            case 'J': val = ((long[]) array)[idx]; break;
+            case 'F': val = ((float[]) array)[idx]; break;
+            case 'D': val = ((double[]) array)[idx]; break;
+            default: val = ((Object[]) array)[idx]; break;
+        }
         //noinspection unchecked
-        return (T) Array.get(array, idx);
+        return (T) val;
     }
 
+    // store_check 保证了基本类型数组的值就是元素类型的装箱, 不会有 Array.set 那样的拓宽
     void index(int idx, Object val) {
         bound_check(idx);
         store_check(val);
-        Array.set(array, idx, val);
+        switch (kind_) {
+            case 'Z': ((boolean[]) array)[idx] = (Boolean) val; break;
+            case 'B': ((byte[]) array)[idx] = (Byte) val; break;
+            case 'C': ((char[]) array)[idx] = (Character) val; break;
+            case 'S': ((short[]) array)[idx] = (Short) val; break;
+            case 'I': ((int[]) array)[idx] = (Integer) val; break;
+            case 'J': ((long[]) array)[idx] = (Long) val; break;
+            case 'F': ((float[]) array)[idx] = (Float) val; break;
+            case 'D': ((double[]) array)[idx] = (Double) val; break;
+            default: ((Object[]) array)[idx] = val; break;
+        }
+    }
+
+    // 解释器用的类型化读写, 不走反射也不装箱
+    // 类型由字节码保证 (iaload 只会作用在 int[] 上), 基础类型数组不需要 store_check
+    // VM.implicit_checks 打开时不检查下标, 宿主自己会抛数组越界, 见 ZThrowable.translate
+    int int_at(int idx) { bound_check_implicit(idx); return ((int[]) array)[idx]; }
+    long long_at(int idx) { bound_check_implicit(idx); return ((long[]) array)[idx]; }
+    float float_at(int idx) { bound_check_implicit(idx); return ((float[]) array)[idx]; }
+    double double_at(int idx) { bound_check_implicit(idx); return ((double[]) array)[idx]; }
+    char char_at(int idx) { bound_check_implicit(idx); return ((char[]) array)[idx]; }
+    short short_at(int idx) { bound_check_implicit(idx); return ((short[]) array)[idx]; }
+    Object ref_at(int idx) { bound_check_implicit(idx); return ((Object[]) array)[idx]; }
+    // Verifier 证明了不需要 store check 的 aastore
+    void put_ref_unchecked(int idx, Object val) { bound_check_implicit(idx); ((Object[]) array)[idx] = val; }
+
+    /**
+     * aastore: 元素类与数组类上缓存的一样就不用再 is_instance, 见 ZClass.store_check_cache_
+     * 与 jvms 一样先判下标再判类型, 类型不对抛 ArrayStoreException
+     */
+    void store_ref(int idx, Object val) {
+        if (!storable(val)) {
+            bound_check(idx);
+            throw ZThrowable.implicit(vm, "java/lang/ArrayStoreException", ((ZObject) val).z_class.name().replace('/', '.'));
+        }
+        bound_check_implicit(idx);
+        ((Object[]) array)[idx] = val;
+    }
+
+    private boolean storable(Object val) {
+        if (val == null) {
+            return true;
+        }
+        ZClass value_class = ((ZObject) val).z_class;
+        if (value_class != z_class.store_check_cache_) {
+            if (!z_class.component_class().is_instance(vm, false, val)) {
+                return false;
+            }
+            z_class.store_check_cache_ = value_class;
+        }
+        return true;
+    }
+
+    // baload 同时处理 byte[] 与 boolean[]
+    int byte_or_bool_at(int idx) {
+        bound_check_implicit(idx);
+        if (array instanceof byte[]) {
+            return ((byte[]) array)[idx];
+        } else {
+            return ((boolean[]) array)[idx] ? 1 : 0;
+        }
+    }
+
+    void put_int(int idx, int val) { bound_check_implicit(idx); ((int[]) array)[idx] = val; }
+    void put_long(int idx, long val) { bound_check_implicit(idx); ((long[]) array)[idx] = val; }
+    void put_float(int idx, float val) { bound_check_implicit(idx); ((float[]) array)[idx] = val; }
+    void put_double(int idx, double val) { bound_check_implicit(idx); ((double[]) array)[idx] = val; }
+    void put_char(int idx, char val) { bound_check_implicit(idx); ((char[]) array)[idx] = val; }
+    void put_short(int idx, short val) { bound_check_implicit(idx); ((short[]) array)[idx] = val; }
+
+    // bastore 同时处理 byte[] 与 boolean[], boolean 只取最低位
+    void put_byte_or_bool(int idx, int val) {
+        bound_check_implicit(idx);
+        if (array instanceof byte[]) {
+            ((byte[]) array)[idx] = (byte) val;
+        } else {
+            ((boolean[]) array)[idx] = (val & 1) == 1;
+        }
+    }
+
+    private void bound_check_implicit(int idx) {
+        if (!VM.implicit_checks) {
+            bound_check(idx);
+        }
     }
 
     private void bound_check(int idx) {
-        if (idx < 0 || idx >= Array.getLength(array)) {
-//            ZObject ex = z_class_.vm.load_class("java/lang/ArrayIndexOutOfBoundsException", true)
-//                    .new_instance("(I)V", new Object[]{ idx });
-            ZObject ex = z_class.vm.load_class("java/lang/ArrayIndexOutOfBoundsException", true)
-                    .new_instance("()V", new Object[0]);
-            throw new ZThrowable(ex);
+        if (idx < 0 || idx >= length) {
+            throw ZThrowable.implicit(z_class.vm, "java/lang/ArrayIndexOutOfBoundsException", null);
         }
     }
 
+    // java.lang.reflect.Array.set 之类按装箱的值存, 类型不对是 IllegalArgumentException
     private void store_check(Object value) {
         boolean success;
         ZClass component_class = z_class.component_class();
@@ -82,6 +181,8 @@ public final class ZArray extends ZObject {
         }
     }
 
+    // 宿主数组本身, 给 Intrinsics 整块处理用
+    Object host_array() { return array; }
     boolean is_bool_array() { return array instanceof boolean[]; }
     boolean is_byte_array() { return array instanceof byte[]; }
     byte[] byte_array() { return (byte[]) array; }
@@ -120,7 +221,26 @@ public final class ZArray extends ZObject {
         return new ZArray(vm, z_class, copy);
     }
 
+    // 引用数组在宿主上都是 Object[], 宿主的 arraycopy 不会按 guest 类型检查元素
+    // 目标元素类型不能从源元素类型赋值时逐个检查, 与 HotSpot 一样先拷贝检查通过的元素, 第一个存不进去的抛 ArrayStoreException
+    // 抛的都是宿主异常, 由调用者换成 guest 异常
     static void copy(ZArray src, int src_pos, ZArray dest, int dest_pos, int length) {
+        if (src.array instanceof Object[] && dest.array instanceof Object[]
+                && !dest.z_class.component_class().is_assignable_from(src.z_class.component_class())) {
+            if (src_pos < 0 || dest_pos < 0 || length < 0
+                    || src_pos > src.length - length || dest_pos > dest.length - length) {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+            Object[] from = (Object[]) src.array, to = (Object[]) dest.array;
+            for (int i = 0; i < length; i++) {
+                Object val = from[src_pos + i];
+                if (!dest.storable(val)) {
+                    throw new ArrayStoreException();
+                }
+                to[dest_pos + i] = val;
+            }
+            return;
+        }
         //noinspection SuspiciousSystemArraycopy
         System.arraycopy(src.array, src_pos, dest.array, dest_pos, length);
     }
@@ -42,13 +42,31 @@ final class ZClass extends ZObject {
     int access_flags_cache_ = -1;
     private final int instance_field_size_;
     private final int static_field_size_;
+    // 实例字段的布局: slot (含父类, 父类在前) -> kind 与在 ZObject 基本类型区或者引用区的下标, 子类的布局以父类的为前缀
+    private final char[] field_kinds_;
+    private final int[] field_indexes_;
+    private final int prim_field_size_;
+    private final int ref_field_size_;
     private Map<String, ZField> field_cache_;
     private ZField[] instance_field_cache_;
     private ZField[] static_field_cache_;
     private volatile Map<String, ZMethod> methods_cache_;
     private volatile Map<String, List<ZMethod>> methods_cache0_;
     private volatile ZMethod[] methods_cache1_;
+    // 虚方法表与接口方法表, 第一次分派的时候建, 见 select
+    private volatile ZMethod[] vtable_;
+    // 接口自己声明的可以分派的方法
+    private volatile ZMethod[] interface_methods_;
+    private volatile ZMethod[] itable_methods_;
+    private ZClass[] itable_interfaces_;
+    // 实现的每个接口在 itable_methods_ 里的起始位置
+    private int[] itable_offsets_;
+    // 已加载的直接子类型 (子类、实现类、子接口) 与依赖类层次分析结果的调用点, 都由 ClassHierarchy 的锁保护
+    List<ZClass> subtypes_;
+    List<InlineCache> dependents_;
     private ZClass array_class_cache_;
+    // 数组类: 最近一次 aastore 检查通过的元素类, 只会是真的能存进来的类, 并发读到旧值也没关系, 见 ZArray.store_ref
+    ZClass store_check_cache_;
     private String name_cache_;
 
     ZArray declared_methods0_cache_;
@@ -114,6 +132,10 @@ final class ZClass extends ZObject {
             static_field_size_ = 0;
         }
         properties = new Object[static_field_size_];
+        field_kinds_ = instance_field_kinds(null, class_file);
+        field_indexes_ = new int[field_kinds_.length];
+        prim_field_size_ = layout(field_kinds_, field_indexes_);
+        ref_field_size_ = field_kinds_.length - prim_field_size_;
     }
 
     private ZClass(VM vm, @NotNull ZClass z_class,
@@ -134,11 +156,41 @@ final class ZClass extends ZObject {
             int super_static_field_size = (super_class == null ? 0 : super_class.static_field_size_);
             static_field_size_ = class_file.static_field_size() + super_static_field_size;
             properties = new Object[class_file.static_field_size()];
+            field_kinds_ = instance_field_kinds(super_class, class_file);
         } else {
             instance_field_size_ = -1;
             static_field_size_ = -1;
             properties = null;
+            field_kinds_ = new char[0];
         }
+        field_indexes_ = new int[field_kinds_.length];
+        prim_field_size_ = layout(field_kinds_, field_indexes_);
+        ref_field_size_ = field_kinds_.length - prim_field_size_;
+    }
+
+    // 父类的在前, 然后是自己声明的实例字段, 与 slot 的顺序一样, 见 field_cache_
+    private static char[] instance_field_kinds(@Nullable ZClass super_class, @Nullable ClassFile class_file) {
+        char[] super_kinds = super_class == null ? new char[0] : super_class.field_kinds_;
+        if (class_file == null) {
+            return super_kinds;
+        }
+        char[] kinds = Arrays.copyOf(super_kinds, super_kinds.length + class_file.instance_field_size());
+        int n = super_kinds.length;
+        for (ClassFile.Field field : class_file.fields) {
+            if ((field.access_flags & ACC_STATIC) == 0) {
+                kinds[n++] = Descriptor.kind(field.descriptor(), 0);
+            }
+        }
+        return kinds;
+    }
+
+    // 基本类型与引用各自按 slot 顺序编号, 返回基本类型字段的个数
+    private static int layout(char[] kinds, int[] indexes) {
+        int prims = 0, refs = 0;
+        for (int slot = 0; slot < kinds.length; slot++) {
+            indexes[slot] = kinds[slot] == 'L' ? refs++ : prims++;
+        }
+        return prims;
     }
 
     private Map<String, ZField> field_cache_() {
@@ -234,10 +286,33 @@ final class ZClass extends ZObject {
         return instance_field_size_;
     }
 
+    int prim_field_size() {
+        return prim_field_size_;
+    }
+
+    int ref_field_size() {
+        return ref_field_size_;
+    }
+
+    // 实例字段 slot 的 kind, 引用类型都是 L
+    char field_kind(int slot) {
+        return field_kinds_[slot];
+    }
+
+    // 实例字段 slot 在 ZObject 基本类型区或者引用区的下标
+    int field_index(int slot) {
+        return field_indexes_[slot];
+    }
+
     boolean is_initialized() {
         return init_state_ >= ZClassState.being_initialized;
     }
 
+    // <clinit> 已经执行完, quick 指令可以跳过初始化检查
+    boolean is_fully_initialized() {
+        return init_state_ == ZClassState.fully_initialized;
+    }
+
     void initialize(VM vm) {
         if (is_initialized()) {
             return;
@@ -571,17 +646,188 @@ final class ZClass extends ZObject {
         return resolve_method(name, descriptor);
     }
 
+    // interface method resolution
+    // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-5.html#jvms-5.4.3.4
+    // 解析出来的可以是接口自己的抽象/default 方法, 也可以是 Object 的 public 实例方法
     ZMethod interface_method(String name, String descriptor) {
-        return resolve_method(name, descriptor);
+        assert is_interface();
+        ZMethod method = resolve_interface_method(this, name, descriptor);
+        assert method != null;
+        // invokeinterface 不能调用静态方法 (接口静态方法只能 invokestatic)
+        assert (method.access_flags() & ACC_STATIC) == 0;
+        return method;
+    }
+
+    // ==================== vtable / itable ====================
+
+    // 以 this 为接收者类型, 选出 resolved (MethodRef 解析出来的方法) 实际调用的方法
+    // 类里声明的方法查 vtable, 接口里声明的方法查 itable, 一次数组下标访问 (接口多一次按接口找起始位置)
+    // static private <init> 不参与分派, 就是 resolved 自己
+    ZMethod select(ZMethod resolved) {
+        ZClass declared_class = resolved.declared_class();
+        if (declared_class.is_interface()) {
+            int index = declared_class.interface_method_index(resolved);
+            return index < 0 ? resolved : itable_method(declared_class, index);
+        } else {
+            int index = declared_class.vtable_index(resolved);
+            return index < 0 ? resolved : vtable()[index];
+        }
+    }
+
+    private int vtable_index(ZMethod declared_method) {
+        vtable();
+        return declared_method.dispatch_index_;
+    }
+
+    private int interface_method_index(ZMethod declared_method) {
+        interface_methods();
+        return declared_method.dispatch_index_;
+    }
+
+    private static boolean is_dispatched(ZMethod method) {
+        return (method.access_flags() & (ACC_STATIC | ACC_PRIVATE)) == 0 && !method.is_instance_init() && !method.is_class_init();
+    }
+
+    // 父类的 vtable 加上自己声明的方法, 覆盖父类的方法用父类的下标, 新的方法排在后面
+    private ZMethod[] vtable() {
+        ZMethod[] vtable = vtable_;
+        if (vtable == null) {
+            synchronized (this) {
+                vtable = vtable_;
+                if (vtable == null) {
+                    vtable = build_vtable();
+                    vtable_ = vtable;
+                }
+            }
+        }
+        return vtable;
+    }
+
+    private ZMethod[] build_vtable() {
+        assert !is_interface();
+        List<ZMethod> vtable = new ArrayList<>();
+        Map<String, Integer> index_of = new HashMap<>();
+        if (super_class != null) {
+            for (ZMethod method : super_class.vtable()) {
+                index_of.put(method.name() + method.descriptor(), vtable.size());
+                vtable.add(method);
+            }
+        }
+        ensure_cache_initialized();
+        for (ZMethod method : methods_cache1_) {
+            if (!is_dispatched(method)) {
+                continue;
+            }
+            Integer index = index_of.get(method.name() + method.descriptor());
+            if (index == null) {
+                method.dispatch_index_ = vtable.size();
+                vtable.add(method);
+            } else {
+                method.dispatch_index_ = index;
+                vtable.set(index, method);
+            }
+        }
+        return vtable.toArray(new ZMethod[0]);
+    }
+
+    // 接口自己声明的可以分派的方法, 下标记在 ZMethod.dispatch_index_
+    private ZMethod[] interface_methods() {
+        assert is_interface();
+        ZMethod[] methods = interface_methods_;
+        if (methods == null) {
+            synchronized (this) {
+                methods = interface_methods_;
+                if (methods == null) {
+                    List<ZMethod> list = new ArrayList<>();
+                    ensure_cache_initialized();
+                    for (ZMethod method : methods_cache1_) {
+                        if (is_dispatched(method)) {
+                            method.dispatch_index_ = list.size();
+                            list.add(method);
+                        }
+                    }
+                    methods = list.toArray(new ZMethod[0]);
+                    interface_methods_ = methods;
+                }
+            }
+        }
+        return methods;
+    }
+
+    // 所有实现的接口 (包括父类实现的与父接口) 的方法排成一个数组, itable_offsets_ 记每个接口的起始位置
+    // 建表的时候一次按 jvm 的规则选好所有方法 (类里的方法优先, 然后是最具体的 default 方法), 发布之后只读
+    private ZMethod itable_method(ZClass iface, int index) {
+        ZMethod[] methods = itable_methods_;
+        if (methods == null) {
+            synchronized (this) {
+                methods = itable_methods_;
+                if (methods == null) {
+                    methods = build_itable();
+                }
+            }
+        }
+        ZClass[] interfaces = itable_interfaces_;
+        for (int i = 0; i < interfaces.length; i++) {
+            if (interfaces[i] == iface) {
+                ZMethod method = methods[itable_offsets_[i] + index];
+                assert method != null;
+                return method;
+            }
+        }
+        throw new AssertionError(name() + " 没有实现 " + iface.name());
+    }
+
+    private ZMethod[] build_itable() {
+        Set<ZClass> all = new LinkedHashSet<>();
+        for (ZClass c = this; c != null; c = c.super_class) {
+            collect_interfaces(all, c.interfaces);
+        }
+        ZClass[] interfaces = all.toArray(new ZClass[0]);
+        int[] offsets = new int[interfaces.length];
+        int size = 0;
+        for (int i = 0; i < interfaces.length; i++) {
+            offsets[i] = size;
+            size += interfaces[i].interface_methods().length;
+        }
+        ZMethod[] methods = new ZMethod[size];
+        for (int i = 0; i < interfaces.length; i++) {
+            ZMethod[] declared = interfaces[i].interface_methods();
+            for (int j = 0; j < declared.length; j++) {
+                // 抽象类可能没有实现, 留 null, 具体的接收者类型不会查到这里
+                methods[offsets[i] + j] = resolve_class_method(this, declared[j].name(), declared[j].descriptor());
+            }
+        }
+        itable_interfaces_ = interfaces;
+        itable_offsets_ = offsets;
+        // volatile 写放最后, 读到 itable_methods_ 就能看到上面两个字段与填好的表项
+        itable_methods_ = methods;
+        return methods;
+    }
+
+    private static void collect_interfaces(Set<ZClass> all, ZClass[] interfaces) {
+        for (ZClass iface : interfaces) {
+            if (all.add(iface)) {
+                collect_interfaces(all, iface.interfaces);
+            }
+        }
     }
 
     ZMethod special_method(String name, String descriptor) {
+        ZMethod method = special_method0(name, descriptor);
+        // super.xxx 调用的是父类实现的接口里的 default 方法
+        if (method == null && !is_interface()) {
+            method = resolve_class_method_step3(this, name, descriptor);
+        }
+        assert method != null;
+        return method;
+    }
+
+    private @Nullable ZMethod special_method0(String name, String descriptor) {
         ZMethod method = method(name + descriptor);
         // invoke_special 的一种情况，子类构造函数 super.xxx 父类方法
         if (method == null && super_class != null) {
-            method = super_class.special_method(name, descriptor);
+            method = super_class.special_method0(name, descriptor);
         }
-        assert method != null;
         return method;
     }
 
@@ -703,27 +949,23 @@ final class ZClass extends ZObject {
     }
 
     // superinterfaces of the specified class C:
+    // 🦋 包括父类实现的接口, 子类自己没有 implements 也要找, 比如父类实现的接口里的 default 方法
     private static @Nullable ZMethod resolve_class_method_step3(ZClass z_class, String name, String descriptor) {
-        if (z_class.interfaces.length > 0) {
-            Set<ZMethod> z_methods = maximally_specific_superinterface_methods(name, descriptor, z_class);
-            if (z_methods.size() == 1) {
-                ZMethod[] methods = new ZMethod[1];
-                z_methods.toArray(methods);
-                if ((methods[0].access_flags() & ACC_ABSTRACT) == 0) {
-                    return methods[0];
-                }
-            }
-
-            if (z_methods.isEmpty()) {
-                return null;
-            } else {
-                // !!! 有多个的话随意选择了 ... arbitrarily chosen
-                throw new AssertionError(); // todo remove
-                // return z_methods.iterator().next();
-            }
-        } else {
+        Set<ZMethod> z_methods = maximally_specific_superinterface_methods(name, descriptor, z_class);
+        if (z_methods.isEmpty()) {
             return null;
         }
+        // 只有一个非 abstract 的就是它, 否则随便选一个 (arbitrarily chosen)
+        // 按接口解析 MethodRef 的时候多个父接口声明同一个 abstract 方法很常见, 实际调用的方法按接收者再选, 见 select
+        ZMethod non_abstract = null;
+        int n_non_abstract = 0;
+        for (ZMethod method : z_methods) {
+            if ((method.access_flags() & ACC_ABSTRACT) == 0) {
+                non_abstract = method;
+                n_non_abstract++;
+            }
+        }
+        return n_non_abstract == 1 ? non_abstract : z_methods.iterator().next();
     }
 
     // https://docs.oracle.com/javase/specs/jvms/se14/html/jvms-5.html#jvms-5.4.3.3
@@ -845,17 +1087,8 @@ final class ZClass extends ZObject {
     ZObject allocate() {
         assert !is_interface();
         assert this != vm.java_lang_Class;
-        ZObject z_object = new ZObject(vm, this);
-        return allocate0(this, z_object);
-    }
-
-    static <T extends ZObject > T allocate0(ZClass z_class, T z_object) {
-        while (z_class != null) {
-            assert !z_class.is_interface();
-            z_class.init_instance_field(z_object);
-            z_class = z_class.super_class;
-        }
-        return z_object;
+        // 实例字段的默认值就是 0 与 null, 见 ZObject
+        return new ZObject(vm, this);
     }
 
     void init_class_fields() {
@@ -883,20 +1116,6 @@ final class ZClass extends ZObject {
         }
     }
 
-    void init_instance_field(ZObject z_object) {
-        for (ClassFile.Field field : fields()) {
-            if ((field.access_flags & ACC_STATIC) != 0) {
-                continue;
-            }
-            // final 字段这里不初始化, construct 初始化
-            if ((field.access_flags & ACC_FINAL) != 0) {
-                continue;
-            }
-            assert field.constant_value_index == -1;
-            init_primitive_field(field, z_object);
-        }
-    }
-
     void init_class_const_field(ClassFile.Field field) {
         assert class_file != null;
         ConstantPool cp = class_file.constant_pool();
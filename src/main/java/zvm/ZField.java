@@ -13,12 +13,14 @@ public final class ZField {
     private final ClassFile.Field field;
 //    private final String key_;
     private final int slot_;
+    private final char kind_;
 
     ZField(ZClass z_class, ClassFile.Field field, int slot) {
         this.z_class = z_class;
         this.field = field;
 //        this.key_ = field_key0();
         this.slot_ = slot;
+        this.kind_ = Descriptor.kind(field.descriptor(), 0);
     }
 
     // 这里用来区分父子继承类同名属性（应该全部处理成数组+slot）
@@ -46,6 +48,17 @@ public final class ZField {
         return slot_;
     }
 
+    // 实例字段在 ZObject 基本类型区 (kind 不是 L) 或者引用区的下标
+    int field_index() {
+        assert (field.access_flags & ACC_STATIC) == 0;
+        return z_class.field_index(slot_);
+    }
+
+    // 见 Descriptor.kind
+    char kind() {
+        return kind_;
+    }
+
     ZClass declared_class() {
         return z_class;
     }
@@ -152,7 +165,7 @@ public final class ZField {
         if ((field.access_flags & ACC_FINAL) != 0) {
             // java_lang_system 中 这三个 final static 字段 不是在 <clinit> 中赋值的, 已经 hack 掉
             if (field.constant_value_index == -1) {
-                ZThread.Frame frame = z_class.vm.stacks.get().peek();
+                ZThread.Frame frame = z_class.vm.thread().top();
                 assert frame != null;
                 if (instance == null) {
                     assert frame.method.is_class_init();
@@ -4,7 +4,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import zvm.ClassParser.ClassFile;
 
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static zvm.ClassParser.AccessFlags.*;
 import static zvm.ClassParser.ConstantPool.*;
@@ -22,9 +23,38 @@ public class ZMethod {
     private Boolean is_signature_polymorphic_cache_;
     private final String return_type;
     private final String[] parameter_types;
-    final int[] parameter_type_size_cache_;
+    // 参数与返回值的类型, 解释器拆箱装箱用, 见 Descriptor.kind
+    final char[] parameter_kinds_cache_;
+    // 参数占用的 slot 数, 不包括 this
+    final int parameter_slots_cache_;
+    final char return_kind_cache_;
+    private final boolean interpreted_cache_;
+    // 同步方法也在 slot arena 上调用, 由 Interpreter.invoke 加锁
+    final boolean synchronized_cache_;
     private ZClass[] param_types_cache_;
     private ZClass return_type_cache_;
+    private DecodedCode decoded_code_cache_;
+    // 翻译失败(不支持的方法)也只翻译一次; volatile: 先写 register_code_cache_ 再写这个, 别的线程看到 true 就能看到完整的 RegisterCode
+    private volatile boolean register_code_translated_;
+    private RegisterCode register_code_cache_;
+    private @Nullable MethodData method_data_cache_;
+    // 校验失败也只校验一次; volatile: 先写 verifier_cache_ 再写这个, 与 register_code_translated_ 一样
+    private volatile boolean verified_;
+    private @Nullable Verifier verifier_cache_;
+    // 按 start_pc 排好序的行号表, [start_pc..., line_number...], 抓栈之后第一次要行号时构造
+    private int[] line_numbers_cache_;
+    // 类的方法是 vtable 下标, 接口的方法是接口方法表下标, 不参与分派的是 -1, 声明的类建表的时候填, 见 ZClass.select
+    int dispatch_index_ = -1;
+    // String.charAt、Math.min 之类换成宿主实现, 创建的时候查一次, 见 Intrinsics
+    final @Nullable Intrinsics.Intrinsic intrinsic_;
+    // 空方法、getter、setter、返回常量的方法不建 frame 执行, 第一次调用时归类, 见 Inliner
+    private @Nullable Inliner inliner_cache_;
+    // 调用次数 + 回边次数到了 VM.jit_threshold 提交编译, 见 MethodData, Jit
+    boolean jit_submitted_;
+    // 编译线程写, 解释器读
+    volatile @Nullable Jit.Compiled compiled_code_;
+    // 按 RegisterCode 指令下标放 OSR 版本, 解释器与编译线程都会写, 见 Jit.osr
+    volatile @Nullable AtomicReferenceArray<Object> osr_code_;
 
     ZMethod(ZClass z_class, ClassFile.Method method) {
         this(z_class, method, null);
@@ -36,12 +66,17 @@ public class ZMethod {
         this.invokable = invokable;
         this.return_type = Descriptor.return_type(descriptor());
         this.parameter_types = Descriptor.parameter_types(descriptor());
-
-        this.parameter_type_size_cache_ = new int[parameter_types.length];
-        for (int i = 0; i < parameter_types.length; i++) {
-            parameter_type_size_cache_[i] =
-                    (parameter_types[i].equals("long") || parameter_types[i].equals("double")) ? 1 : 0;
+        this.parameter_kinds_cache_ = Descriptor.parameter_kinds(descriptor());
+        int parameter_slots = 0;
+        for (char kind : parameter_kinds_cache_) {
+            parameter_slots += Interpreter.slots_of(kind);
         }
+        this.parameter_slots_cache_ = parameter_slots;
+        this.return_kind_cache_ = Descriptor.return_kind(descriptor());
+        this.interpreted_cache_ = invokable == null
+                && (method.access_flags & (ACC_NATIVE | ACC_ABSTRACT)) == 0;
+        this.synchronized_cache_ = (method.access_flags & ACC_SYNCHRONIZED) != 0;
+        this.intrinsic_ = VM.intrinsics ? Intrinsics.lookup(z_class.name(), name(), descriptor()) : null;
     }
 
     String name() {
@@ -74,6 +109,10 @@ public class ZMethod {
     }
 
     // instance initialization method
+    boolean is_native() {
+        return (access_flags() & ACC_NATIVE) != 0;
+    }
+
     boolean is_instance_init() {
         return name().equals(instance_init);
     }
@@ -131,10 +170,112 @@ public class ZMethod {
         return method.code.line_number_table;
     }
 
+    // 字节码偏移 bci 所在的行号, 没有行号表返回 -1
+    // 行号表按 start_pc 排序之后二分, 找 start_pc <= bci 的最后一项
+    int line_number(int bci) {
+        int[] table = line_numbers_cache_;
+        if (table == null) {
+            table = line_numbers();
+            line_numbers_cache_ = table;
+        }
+        int n = table.length >> 1;
+        int lo = 0, hi = n - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (table[mid] <= bci) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found == -1 ? -1 : table[n + found];
+    }
+
+    private int[] line_numbers() {
+        ClassFile.LineNumber[] lnt = line_number_table();
+        if (lnt == null) {
+            return new int[0];
+        }
+        ClassFile.LineNumber[] sorted = lnt.clone();
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.start_pc, b.start_pc));
+        int n = sorted.length;
+        int[] table = new int[n << 1];
+        for (int i = 0; i < n; i++) {
+            table[i] = sorted[i].start_pc;
+            table[n + i] = sorted[i].line_number;
+        }
+        return table;
+    }
+
     @Nullable ClassFile.Code code() {
         return method.code;
     }
 
+    // 预解码的指令流, 第一次执行时解码一次
+    @Nullable DecodedCode decoded_code() {
+        if (decoded_code_cache_ == null) {
+            decoded_code_cache_ = DecodedCode.decode(this);
+        }
+        return decoded_code_cache_;
+    }
+
+    // 寄存器形式的 IR, 第一次执行时翻译一次, 不支持的方法返回 null, 见 RegisterCode
+    @Nullable RegisterCode register_code() {
+        if (!register_code_translated_) {
+            register_code_cache_ = RegisterCode.translate(this);
+            register_code_translated_ = true;
+        }
+        return register_code_cache_;
+    }
+
+    // 编译好的代码换掉 Interpreter::interpret, 解释器之间的调用在 Interpreter.execute 里分派
+    void install(Jit.Compiled compiled) {
+        compiled_code_ = compiled;
+        invokable_cache_ = null;
+    }
+
+    // 不能内联返回 Inliner.NONE
+    Inliner inliner() {
+        Inliner inliner = inliner_cache_;
+        if (inliner == null) {
+            // 先占上, 互相调用的方法归类时不会递归下去
+            inliner_cache_ = Inliner.NONE;
+            inliner = Inliner.classify(this);
+            inliner_cache_ = inliner;
+        }
+        return inliner;
+    }
+
+    // 第一次用到时校验, 校验失败返回 null, 见 Verifier
+    @Nullable Verifier verifier() {
+        if (!verified_) {
+            synchronized (this) {
+                if (!verified_) {
+                    verifier_cache_ = Verifier.verify(this);
+                    verified_ = true;
+                }
+            }
+        }
+        return verifier_cache_;
+    }
+
+    // 第一次执行时创建, 登记到 VM 上, 见 VM.method_profiles
+    MethodData method_data() {
+        MethodData md = method_data_cache_;
+        if (md == null) {
+            synchronized (this) {
+                md = method_data_cache_;
+                if (md == null) {
+                    md = new MethodData(this);
+                    z_class.vm.register_method_data(md);
+                    method_data_cache_ = md;
+                }
+            }
+        }
+        return md;
+    }
+
     ClassParser.ConstantPool constant_pool() {
         return method.class_file().constant_pool();
     }
@@ -145,6 +286,8 @@ public class ZMethod {
             boolean is_native = (access_flags() & ACC_NATIVE) != 0;
             if (is_native) {
                 invokable = Natives.resolve(z_class.vm, this);
+            } else if (compiled_code_ != null) {
+                invokable = compiled_code_;
             } else {
                 invokable = Interpreter::interpret;
             }
@@ -152,8 +295,7 @@ public class ZMethod {
             invokable = this.invokable;
         }
 
-        boolean synchronized0 = (access_flags() & ACC_SYNCHRONIZED) != 0;
-        if (synchronized0) {
+        if (synchronized_cache_) {
             return (vm, z_method, object_ref, args) -> {
                 synchronized (lock_object(object_ref)) {
                     return invokable.invoke(vm, z_method, object_ref, args);
@@ -164,7 +306,7 @@ public class ZMethod {
         }
     }
 
-    private Object lock_object(ZObject object_ref) {
+    Object lock_object(ZObject object_ref) {
         if ((access_flags() & ACC_STATIC) != 0) {
             assert object_ref == null : "静态方法不应该有 this";
             return this;
@@ -176,22 +318,40 @@ public class ZMethod {
 
     // todo var_args
     Object invoke(ZObject object_ref, Object[] args) {
-        Deque<ZThread.Frame> stack = z_class.vm.stacks.get();
+        VM vm = z_class.vm;
+        if (!vm.on_guest_stack()) {
+            return vm.on_guest_stack(() -> invoke(object_ref, args));
+        }
+        ZThread thread = vm.thread();
+        ZThread.Frame frame = thread.push_frame(this);
         try {
-            stack.push(new ZThread.Frame(this));
             debug();
+            if (!interpreted_cache_) {
+                // 解释执行的方法在 Interpreter.execute 里计数
+                method_data().invocations++;
+            }
             if (invokable_cache_ == null) {
                 invokable_cache_ = resolve_invokable();
             }
             return invokable_cache_.invoke(z_class.vm, this, object_ref, args);
         } finally {
-            if (!stack.isEmpty()) { // 非异常
-                stack.pop();
-            }
+            thread.pop_frame(frame);
         }
     }
 
-    void check_args(Object[] args) {
+    // 解释器可以直接在 ZThread 的 slot arena 上调用, 不走 Invokable, 参数返回值都不装箱
+    boolean is_interpreted() {
+        return interpreted_cache_;
+    }
+
+    // frame 在 slot arena 上占用的 slot 数
+    int frame_slots() {
+        DecodedCode code = decoded_code();
+        return code == null ? 0 : code.max_locals + code.max_stack;
+    }
+
+    // 只在 assert 里调用, 参数的类第一次检查的时候才加载
+    boolean check_args(Object[] args) {
         if (param_types_cache_ == null) {
             param_types_cache_ = new ZClass[parameter_types.length];
             for (int i = 0; i < parameter_types.length; i++) {
@@ -200,32 +360,35 @@ public class ZMethod {
         }
         for (int i = 0; i < param_types_cache_.length; i++) {
             // todo 参数类型检查失败抛异常
-            param_types_cache_[i].type_check(args[i]);
+            if (!param_types_cache_[i].type_check(args[i])) {
+                return false;
+            }
         }
+        return true;
     }
 
-    void check_return(Object return_value) {
-        if (has_return()) {
-            if (return_type_cache_ == null) {
-                return_type_cache_ = z_class.vm.load_class(Descriptor.return_type(descriptor()), false);
-            }
-            // todo 返回类型检查失败抛异常
-            assert return_type_cache_.type_check(return_value);
+    // 同 check_args, 只在 assert 里调用
+    boolean check_return(Object return_value) {
+        if (!has_return()) {
+            return true;
+        }
+        if (return_type_cache_ == null) {
+            return_type_cache_ = z_class.vm.load_class(Descriptor.return_type(descriptor()), false);
         }
+        // todo 返回类型检查失败抛异常
+        return return_type_cache_.type_check(return_value);
     }
 
-    private void debug() {
+    void debug() {
         if (!z_class.vm.log_invoke) {
             return;
         }
 
-        Deque<ZThread.Frame> frames = z_class.vm.stacks.get();
-        String padding = new String(new char[frames.size() - 1]).replace("\0", "  ");
+        ZThread thread = z_class.vm.thread();
+        String padding = new String(new char[thread.depth() - 1]).replace("\0", "  ");
         System.err.print(padding + " invoke " + this);
-        if (frames.size() > 1) {
-            ZThread.Frame top = frames.pop();
-            System.err.println(" at " + frames.peek());
-            frames.push(top);
+        if (thread.depth() > 1) {
+            System.err.println(" at " + thread.frame(1));
         } else {
             System.err.println();
         }
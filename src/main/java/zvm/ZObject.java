@@ -13,19 +13,29 @@ public class ZObject {
     final @NotNull ZClass z_class;
     // 注意父子类的同名属性不同...
     // private Map<String, Object> values;
-    private final Object[] properties;
+    // 实例字段按 ZClass 的布局分成基本类型区与引用区, 基本类型按 slot 的格式存 (见 Interpreter.box), 不装箱
+    // 默认值就是 0 与 null, 分配的时候不用再初始化
+    private final long[] prims;
+    private final Object[] refs;
     private Lock monitor;
     private ZMethod to_string_method_cache_;
 
+    private final static long[] NO_PRIMS = new long[0];
+    private final static Object[] NO_REFS = new Object[0];
+
     ZObject(VM vm, @NotNull ZClass z_class) {
         this.vm = vm;
         this.z_class = z_class;
         int sz = z_class.instance_field_size();
         if (sz == -1) {
             // 数组 接口...
-            properties = null;
+            prims = null;
+            refs = null;
         } else {
-            properties = new Object[sz];
+            int prim_sz = z_class.prim_field_size();
+            int ref_sz = z_class.ref_field_size();
+            prims = prim_sz == 0 ? NO_PRIMS : new long[prim_sz];
+            refs = ref_sz == 0 ? NO_REFS : new Object[ref_sz];
         }
     }
 
@@ -33,13 +43,30 @@ public class ZObject {
         return z_class;
     }
 
+    // 按 slot 读写, 基本类型装箱, 给 ZField 与 native 用; 解释器、编译之后的代码按下标直接读写, 见 ZField.field_index
     Object get_field(int slot) {
-        return properties[slot];
+        return Interpreter.box(prims, refs, z_class.field_index(slot), z_class.field_kind(slot));
     }
 
     void put_field(int slot, Object value) {
         assert !(this instanceof ZArray);
-        properties[slot] = value;
+        Interpreter.unbox(prims, refs, z_class.field_index(slot), z_class.field_kind(slot), value);
+    }
+
+    long get_prim(int index) {
+        return prims[index];
+    }
+
+    void put_prim(int index, long value) {
+        prims[index] = value;
+    }
+
+    Object get_ref(int index) {
+        return refs[index];
+    }
+
+    void put_ref(int index, Object value) {
+        refs[index] = value;
     }
 
 //    // 字段读写必须通过 ZField 不能直接使用 get_field_
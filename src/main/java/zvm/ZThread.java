@@ -1,42 +1,62 @@
 package zvm;
 
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
 /**
+ * 每个宿主线程一个, 见 VM.thread()
+ *
+ * 所有栈帧共用一块按 chunk 分配的 slot arena, frame 只是 arena 上的一个窗口 [base, limit):
+ *  [base, base + max_locals) 局部变量表, [base + max_locals, limit) 操作数栈
+ * 解释器之间直接调用时, 被调用者的 base 就是调用者操作数栈上第一个参数的位置,
+ * 参数原地变成被调用者的局部变量, 不需要拷贝, 返回值写回 base
+ *
+ * 一个 frame 必须完整落在一个 chunk 里, 放不下就切到下一个 chunk (这时才需要拷贝参数)
+ * 退出 chunk 的时候只保留紧挨着的一个空闲 chunk, 再后面的扔掉, 避免在 chunk 边界上反复分配
+ *
  * @author chuxiaofeng
  */
 public final class ZThread {
     // todo classloader
     // todo native thread
-    // todo frame: 把 Deque<ZThread.Frame> 迁移到 这里
-    // todo pc: 从 Interpreter 迁移到这里
-    // todo locals: 从 Interpreter 迁移到这里
-    // todo stack: 从 Interpreter 迁移到这里
+
+    final static int CHUNK_SLOTS = 16 * 1024;
+
+    private final Chunk first_chunk = new Chunk(CHUNK_SLOTS);
+    // frame 对象复用, frames[depth - 1] 是栈顶
+    private Frame[] frames = new Frame[64];
+    private int depth = 0;
+
+    static final class Chunk {
+        final long[] prims;
+        final Object[] refs;
+        @Nullable Chunk next;
+
+        Chunk(int n_slots) {
+            prims = new long[n_slots];
+            refs = new Object[n_slots];
+        }
+    }
 
     public static class Frame {
-        final ZMethod method;
-        volatile int program_counter = -1;
-//不引用这两个玩意了, 不知道 interpret1 这么长会不会做优化，如果做逃逸分析话，会导致这两个局部数组逃逸
-//        Object[] local_variables;
-//        Object[] operand_stack;
-//        int operand_stack_pointer = -1;
-//        int instruction = -1;
+        ZMethod method;
+        // 当前指令在预解码指令流中的 ip, 见 DecodedCode, 需要字节码偏移时用 program_counter() 换算
+        int ip = -1;
+        Chunk chunk;
+        // 局部变量表起始 slot
+        int base;
+        // base + max_locals + max_stack, native 方法不占 slot, limit == base
+        int limit;
 
-        Frame(ZMethod method) {
-            this.method = method;
+        int program_counter() {
+            DecodedCode code = method.decoded_code();
+            return code == null ? -1 : code.bci(ip);
         }
 
         int line_number() {
-            int line_number = -1;
-            ClassParser.ClassFile.LineNumber[] lnt = method.line_number_table();
-            if (lnt == null || lnt.length == 0) {
-                return line_number;
-            }
-            for (ClassParser.ClassFile.LineNumber ln : lnt) {
-                if (program_counter >= ln.start_pc) {
-                    line_number = ln.line_number;
-                    break;
-                }
-            }
-            return line_number;
+            int program_counter = program_counter();
+            return program_counter == -1 ? -1 : method.line_number(program_counter);
         }
 
         @Override
@@ -45,4 +65,78 @@ public final class ZThread {
         }
     }
 
+    int depth() {
+        return depth;
+    }
+
+    @Nullable Frame top() {
+        return depth == 0 ? null : frames[depth - 1];
+    }
+
+    // n = 0 是栈顶
+    Frame frame(int n) {
+        assert n >= 0 && n < depth;
+        return frames[depth - 1 - n];
+    }
+
+    // 从 Invokable 边界进入, frame 紧挨着栈顶 frame 分配
+    Frame push_frame(ZMethod method) {
+        Frame caller = top();
+        if (caller == null) {
+            return push_frame(method, first_chunk, 0, 0);
+        } else {
+            return push_frame(method, caller.chunk, caller.limit, 0);
+        }
+    }
+
+    // 解释器直接调用, chunk[base, base + n_args) 是调用者操作数栈上的参数
+    Frame push_frame(ZMethod method, Chunk chunk, int base, int n_args) {
+        int n_slots = method.frame_slots();
+        if (base + n_slots > chunk.prims.length) {
+            Chunk next = next_chunk(chunk, n_slots);
+            System.arraycopy(chunk.prims, base, next.prims, 0, n_args);
+            System.arraycopy(chunk.refs, base, next.refs, 0, n_args);
+            chunk = next;
+            base = 0;
+        }
+
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Frame frame = frames[depth];
+        if (frame == null) {
+            frame = frames[depth] = new Frame();
+        }
+        depth++;
+
+        frame.method = method;
+        frame.ip = -1;
+        frame.chunk = chunk;
+        frame.base = base;
+        frame.limit = base + n_slots;
+        return frame;
+    }
+
+    void pop_frame(Frame frame) {
+        assert depth > 0 && frames[depth - 1] == frame;
+        depth--;
+        // base 上可能放着返回值, 其他的引用清掉, 不然 arena 会一直拽着已经死掉的对象
+        if (frame.limit > frame.base + 1) {
+            Arrays.fill(frame.chunk.refs, frame.base + 1, frame.limit, null);
+        }
+        Frame caller = top();
+        if (caller != null && caller.chunk != frame.chunk) {
+            // 退回上一个 chunk, 留着 frame.chunk 备用, 再往后的都不要了
+            frame.chunk.next = null;
+        }
+    }
+
+    private static Chunk next_chunk(Chunk chunk, int n_slots) {
+        Chunk next = chunk.next;
+        if (next == null || next.prims.length < n_slots) {
+            next = new Chunk(Math.max(CHUNK_SLOTS, n_slots));
+            chunk.next = next;
+        }
+        return next;
+    }
 }
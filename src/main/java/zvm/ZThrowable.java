@@ -1,17 +1,130 @@
 package zvm;
 
+import org.jetbrains.annotations.Nullable;
+
+import static zvm.Bytecodes.*;
+
 /**
+ * 包装 guest 异常在宿主上抛, 栈在 guest Throwable 里 (见 Backtrace), 宿主的栈没用,
+ * 不抓宿主栈 (writableStackTrace = false), 抛异常不再付 fillInStackTrace 的钱
+ *
+ * 虚拟机自己抛的隐式异常 (npe、数组越界、除零、强转失败...) 只记类名、message 与抛出点的栈,
+ * 不跑 guest 的构造方法; catch 按类名匹配, handler 真的用到异常对象 (见 HandlerTable.Handler.uses_exception)
+ * 或者抛到顶层才创建 guest 对象, 用 try/catch 探测数组、map 的代码大部分时间花在创建异常上
+ *
  * @author chuxiaofeng
  */
 public final class ZThrowable extends RuntimeException {
-    final ZObject z_throwable;
+    private final VM vm;
+    private @Nullable ZObject z_throwable_;
+    // 以下只有隐式异常有
+    private final @Nullable String class_name;
+    private final @Nullable String message;
+    private final @Nullable Backtrace backtrace;
 
     ZThrowable(ZObject z_throwable) {
-        this.z_throwable = z_throwable;
+        super(null, null, false, false);
+        this.vm = z_throwable.vm;
+        this.z_throwable_ = z_throwable;
+        this.class_name = null;
+        this.message = null;
+        this.backtrace = null;
+    }
+
+    private ZThrowable(VM vm, String class_name, @Nullable String message, Backtrace backtrace) {
+        super(null, null, false, false);
+        this.vm = vm;
+        this.class_name = class_name;
+        this.message = message;
+        this.backtrace = backtrace;
+    }
+
+    static ZThrowable implicit(VM vm, String class_name, @Nullable String message) {
+        if (VM.lazy_implicit_exceptions) {
+            return new ZThrowable(vm, class_name, message, Backtrace.capture(vm.thread()));
+        } else {
+            return new ZThrowable(new_throwable(vm, class_name, message));
+        }
+    }
+
+    // VM.implicit_checks: 解释器与编译好的代码里宿主抛的 npe 与数组越界换成 guest 异常
+    // 抛出点是 frame.ip, 可能抛的指令都已经设好了; 只有 frame.ip 上是字段、数组、monitor 指令才换,
+    // 别的地方 (调用的 native、虚拟机自己的 bug) 抛的原样抛出去, 不会变成 guest 异常被 catch 吞掉
+    static ZThrowable translate(VM vm, ZThread.Frame frame, RuntimeException ex) {
+        if (ex instanceof ZThrowable) {
+            return (ZThrowable) ex;
+        }
+        if (VM.implicit_checks) {
+            DecodedCode decoded_code = frame.method.decoded_code();
+            assert decoded_code != null;
+            int op = decoded_code.code[frame.ip];
+            if (ex instanceof NullPointerException && (is_array_access(op) || is_object_access(op))) {
+                return implicit(vm, "java/lang/NullPointerException", null);
+            }
+            if (ex instanceof ArrayIndexOutOfBoundsException && is_array_access(op)) {
+                return implicit(vm, "java/lang/ArrayIndexOutOfBoundsException", null);
+            }
+        }
+        throw ex;
+    }
+
+    // 不判空、不检查下标的数组指令, 包括 unchecked 与超级指令
+    private static boolean is_array_access(int op) {
+        switch (op) {
+            case IALOAD: case LALOAD: case FALOAD: case DALOAD: case AALOAD: case BALOAD: case CALOAD: case SALOAD:
+            case IASTORE: case LASTORE: case FASTORE: case DASTORE: case AASTORE: case BASTORE: case CASTORE: case SASTORE:
+            case AASTORE_UNCHECKED:
+            case ALOAD_ILOAD_IALOAD: case ALOAD_ILOAD_DALOAD: case ALOAD_ILOAD_AALOAD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // 不判空的字段、arraylength 与 monitor 指令, 包括 quick 与超级指令
+    private static boolean is_object_access(int op) {
+        switch (op) {
+            case GETFIELD: case PUTFIELD: case GETFIELD_QUICK: case PUTFIELD_QUICK: case ALOAD_GETFIELD:
+            case ARRAYLENGTH: case MONITORENTER: case MONITOREXIT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // 不需要创建异常对象就能匹配 catch
+    ZClass z_class() {
+        ZObject z_throwable = z_throwable_;
+        if (z_throwable != null) {
+            return z_throwable.z_class;
+        }
+        assert class_name != null;
+        return vm.load_class(class_name, false);
+    }
+
+    ZObject z_throwable() {
+        ZObject z_throwable = z_throwable_;
+        if (z_throwable == null) {
+            assert class_name != null && backtrace != null;
+            z_throwable = new_throwable(vm, class_name, message);
+            // 构造方法里 fillInStackTrace 抓的是 catch 的位置, 换成抛出点的
+            Natives.java_lang_Throwable.set_backtrace(z_throwable, backtrace);
+            z_throwable_ = z_throwable;
+        }
+        return z_throwable;
+    }
+
+    private static ZObject new_throwable(VM vm, String class_name, @Nullable String message) {
+        ZClass z_class = vm.load_class(class_name, true);
+        if (message == null) {
+            return z_class.new_instance();
+        } else {
+            return z_class.new_instance("(Ljava/lang/String;)V", new Object[] { Natives.new_string(vm, message) });
+        }
     }
 
     @Override
     public String toString() {
-        return z_throwable.toString();
+        return z_throwable().toString();
     }
 }
@@ -112,7 +112,7 @@ public class Test {
                         }
                     } else if (e1 != null && e2 != null) {
                         // test... stacktrace 估计有问题...
-                        if (!vs_eq(vm, e1, e2.z_throwable)) {
+                        if (!vs_eq(vm, e1, e2.z_throwable())) {
                             return false;
                         }
                     } else {
@@ -163,7 +163,7 @@ public class Test {
                     }
                 } else if (e1 != null && e2 != null) {
                     // test... stacktrace 估计有问题...
-                    if (!vs_eq(vm, e1, e2.z_throwable)) {
+                    if (!vs_eq(vm, e1, e2.z_throwable())) {
                         return false;
                     }
                 } else {
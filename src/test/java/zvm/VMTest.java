@@ -4,6 +4,30 @@ import org.junit.Test;
 import zvm.test.Test_instanceof;
 import zvm.test.Test_isAssignableFrom;
 import zvm.test.Test_getName0;
+import zvm.test.Test_Quicken;
+import zvm.test.Test_Recursion;
+import zvm.test.Test_Slots;
+import zvm.test.Test_Superinstructions;
+import zvm.test.Test_RegisterIR;
+import zvm.test.Test_Jit;
+import zvm.test.Test_Osr;
+import zvm.test.Test_HandlerTable;
+import zvm.test.Test_StackTrace;
+import zvm.test.Test_LazyExceptions;
+import zvm.test.Test_ImplicitChecks;
+import zvm.test.Test_LookupSwitch;
+import zvm.test.Test_CallingConvention;
+import zvm.test.Test_Verifier;
+import zvm.test.Test_InlineCache;
+import zvm.test.Test_Dispatch;
+import zvm.test.Test_CHA;
+import zvm.test.Test_Inliner;
+import zvm.test.Test_Intrinsics;
+import zvm.test.Test_ArrayIntrinsics;
+import zvm.test.Test_HotNatives;
+import zvm.test.Test_FieldLayout;
+import zvm.test.Test_ArrayStore;
+import zvm.test.Test_Wide;
 import zvm.test.thirdparty.Test_Inheritance;
 import zvm.test.thirdparty.*;
 
@@ -50,6 +74,30 @@ public class VMTest {
         assertTrue(zvm.Test.diff(vm, Test_getName0.class));
         assertTrue(zvm.Test.diff(vm, Test_isAssignableFrom.class));
         assertTrue(zvm.Test.diff(vm, Test_instanceof.class));
+        assertTrue(zvm.Test.diff(vm, Test_Wide.class));
+        assertTrue(zvm.Test.diff(vm, Test_Slots.class));
+        assertTrue(zvm.Test.diff(vm, Test_Recursion.class));
+        assertTrue(zvm.Test.diff(vm, Test_Quicken.class));
+        assertTrue(zvm.Test.diff(vm, Test_Superinstructions.class));
+        assertTrue(zvm.Test.diff(vm, Test_RegisterIR.class));
+        assertTrue(zvm.Test.diff(vm, Test_Jit.class));
+        assertTrue(zvm.Test.diff(vm, Test_Osr.class));
+        assertTrue(zvm.Test.diff(vm, Test_HandlerTable.class));
+        assertTrue(zvm.Test.diff(vm, Test_StackTrace.class));
+        assertTrue(zvm.Test.diff(vm, Test_LazyExceptions.class));
+        assertTrue(zvm.Test.diff(vm, Test_ImplicitChecks.class));
+        assertTrue(zvm.Test.diff(vm, Test_LookupSwitch.class));
+        assertTrue(zvm.Test.diff(vm, Test_CallingConvention.class));
+        assertTrue(zvm.Test.diff(vm, Test_Verifier.class));
+        assertTrue(zvm.Test.diff(vm, Test_InlineCache.class));
+        assertTrue(zvm.Test.diff(vm, Test_Dispatch.class));
+        assertTrue(zvm.Test.diff(vm, Test_CHA.class));
+        assertTrue(zvm.Test.diff(vm, Test_Inliner.class));
+        assertTrue(zvm.Test.diff(vm, Test_Intrinsics.class));
+        assertTrue(zvm.Test.diff(vm, Test_ArrayIntrinsics.class));
+        assertTrue(zvm.Test.diff(vm, Test_HotNatives.class));
+        assertTrue(zvm.Test.diff(vm, Test_FieldLayout.class));
+        assertTrue(zvm.Test.diff(vm, Test_ArrayStore.class));
     }
 
     @Test
@@ -164,6 +212,55 @@ public class VMTest {
     }
 
 
+    @Test
+    public void test_method_data() {
+        ZClass z_class = vm.load_class(Test_Jit.class.getName());
+        ZMethod mix = z_class.static_method("mix", "(IJFD)J");
+        ZMethod calls = z_class.static_method("calls", "()J");
+        ZMethod switch_ops = z_class.static_method("switch_ops", "()Ljava/lang/Object;");
+        long before = mix.method_data().invocation_count();
+        calls.invoke(null, new Object[0]);
+        assertEquals(before + 5000, mix.method_data().invocation_count());
+        assertTrue(calls.method_data().backedge_count() >= 5000);
+        assertTrue(vm.method_profiles().contains(mix.method_data()));
+
+        // sb.append 只有 StringBuilder 一种接收者, switches 里的 k % 2 == 0 两边都走过
+        switch_ops.invoke(null, new Object[0]);
+        MethodData md = switch_ops.method_data();
+        boolean append = false;
+        for (int ip = 0; ip < switch_ops.decoded_code().code.length; ip++) {
+            MethodData.ReceiverTypeData receivers = md.receiver_types(ip);
+            if (receivers != null && receivers.types[0].name().equals("java/lang/StringBuilder")) {
+                append = receivers.is_monomorphic();
+            }
+        }
+        assertTrue(append);
+        MethodData switches = z_class.static_method("switches", "(I)Ljava/lang/String;").method_data();
+        int both = 0;
+        for (int ip = 0; ip < switches.method.decoded_code().code.length; ip++) {
+            if (switches.taken_count(ip) > 0 && switches.not_taken_count(ip) > 0) {
+                both++;
+            }
+        }
+        assertTrue(both > 0);
+
+        // 公开的只读快照
+        MethodProfile profile = null;
+        for (MethodProfile p : vm.method_profile_snapshot()) {
+            if (p.method().equals(switches.method.toString())) {
+                profile = p;
+            }
+        }
+        assertNotNull(profile);
+        assertEquals(switches.invocation_count(), profile.invocation_count());
+        assertFalse(profile.branches().isEmpty());
+        try {
+            profile.branches().clear();
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+
     @Test
     public void test_arrays() {
         ZClass z_class = vm.load_class(Test_Arrays.class.getName());
@@ -0,0 +1,186 @@
+package zvm.test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * VM.intrinsics: java.util.Arrays 的 fill copyOf copyOfRange equals hashCode sort binarySearch 直接处理宿主数组, 见 Intrinsics
+ * 各种基本类型、引用数组回调 equals hashCode compareTo compare, 越界、null、不可比较的元素交给方法体抛异常
+ * @author chuxiaofeng
+ */
+public class Test_ArrayIntrinsics {
+
+    public static Object ints() {
+        long sum = 0;
+        int[] a = new int[64];
+        for (int k = 0; k < 300; k++) {
+            for (int i = 0; i < a.length; i++) {
+                a[i] = (i * 0x9E3779B9 + k) >> 7;
+            }
+            int[] b = Arrays.copyOf(a, a.length);
+            Arrays.sort(b);
+            Arrays.sort(a, 10, 40);
+            sum += Arrays.hashCode(a) + Arrays.hashCode(b) + (Arrays.equals(a, b) ? 1 : 0) + Arrays.binarySearch(b, b[k % b.length])
+                    + Arrays.binarySearch(b, 12345) + Arrays.binarySearch(a, 10, 40, a[20]);
+            int[] c = Arrays.copyOfRange(b, 5, 80);
+            Arrays.fill(c, 60, 75, k);
+            sum += Arrays.hashCode(c) + c.length + (Arrays.equals(Arrays.copyOf(c, 64), b) ? 1 : 0);
+        }
+        int[] big = new int[5000];
+        for (int i = 0; i < big.length; i++) {
+            big[i] = (i * 7919) % 1013 - 500;
+        }
+        Arrays.sort(big);
+        return sum + " " + Arrays.hashCode(big) + " " + big[0] + " " + big[4999] + " " + Arrays.toString(Arrays.copyOf(new int[] { 1, 2 }, 4));
+    }
+
+    public static Object primitives() {
+        long[] l = { 5, -3, Long.MIN_VALUE, Long.MAX_VALUE, 0, 7 };
+        short[] s = { 5, -3, Short.MIN_VALUE, 9 };
+        char[] c = "zvm intrinsic".toCharArray();
+        byte[] b = { 3, -1, 127, -128, 0 };
+        boolean[] z = { true, false, true };
+        float[] f = { 1.5f, -0.0f, 0.0f, Float.NaN, -7f, Float.NEGATIVE_INFINITY };
+        double[] d = { 1.5, Double.NaN, -0.0, 0.0, -7, Double.POSITIVE_INFINITY, Double.MIN_VALUE };
+        long sum = 0;
+        for (int k = 0; k < 500; k++) {
+            long[] l2 = Arrays.copyOf(l, l.length);
+            short[] s2 = Arrays.copyOfRange(s, 1, 6);
+            char[] c2 = Arrays.copyOf(c, c.length);
+            byte[] b2 = Arrays.copyOfRange(b, 0, 5);
+            boolean[] z2 = Arrays.copyOf(z, 5);
+            float[] f2 = Arrays.copyOf(f, f.length);
+            double[] d2 = Arrays.copyOfRange(d, 0, d.length);
+            Arrays.sort(l2);
+            Arrays.sort(s2);
+            Arrays.sort(c2, 2, 9);
+            Arrays.sort(b2);
+            Arrays.sort(f2);
+            Arrays.sort(d2);
+            Arrays.fill(l2, 0, 1, k * 1000000007L);
+            Arrays.fill(z2, 3, 5, k % 2 == 0);
+            Arrays.fill(f2, 5, 6, k * 0.5f);
+            Arrays.fill(d2, 6, 7, -k / 3.0);
+            sum += Arrays.hashCode(l2) + Arrays.hashCode(s2) + Arrays.hashCode(c2) + Arrays.hashCode(b2) + Arrays.hashCode(z2)
+                    + Arrays.hashCode(f2) + Arrays.hashCode(d2)
+                    + Arrays.binarySearch(s2, (short) 5) + Arrays.binarySearch(b2, (byte) -1) + Arrays.binarySearch(f2, Float.NaN)
+                    + Arrays.binarySearch(d2, 0, 5, -0.0) + Arrays.binarySearch(c2, 2, 9, 'n') + Arrays.binarySearch(l2, 1, 6, 7L)
+                    + (Arrays.equals(z2, z) ? 1 : 0) + (Arrays.equals(f2, f) ? 1 : 0) + (Arrays.equals(d2, d2.clone()) ? 1 : 0);
+        }
+        double[] d3 = d.clone();
+        Arrays.sort(d3);
+        float[] f3 = new float[4];
+        Arrays.fill(f3, -0.0f);
+        return sum + " " + Arrays.toString(d3) + " " + Arrays.toString(f3) + " " + Arrays.equals(new double[] { Double.NaN }, new double[] { Double.NaN })
+                + Arrays.equals(new double[] { -0.0 }, new double[] { 0.0 }) + Arrays.equals((char[]) null, null) + Arrays.hashCode((long[]) null)
+                + " " + new String(Arrays.copyOfRange(c, 4, 20)).length();
+    }
+
+    public static Object exceptions() {
+        StringBuilder sb = new StringBuilder();
+        int[] a = { 3, 1, 2 };
+        try {
+            Arrays.sort(a, 2, 1);
+        } catch (IllegalArgumentException e) {
+            sb.append("iae ").append(e.getMessage()).append(' ');
+        }
+        try {
+            Arrays.fill(a, -1, 2, 0);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            sb.append("aioobe ").append(e.getMessage()).append(' ');
+        }
+        try {
+            Arrays.binarySearch(a, 0, 4, 1);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            sb.append("aioobe ").append(e.getMessage()).append(' ');
+        }
+        try {
+            Arrays.copyOf(a, -1);
+        } catch (NegativeArraySizeException e) {
+            sb.append("nase ");
+        }
+        try {
+            Arrays.copyOfRange(a, 4, 5);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            sb.append("aioobe ");
+        }
+        try {
+            Arrays.sort((int[]) null);
+        } catch (NullPointerException e) {
+            sb.append("npe ");
+        }
+        try {
+            Arrays.fill(new String[2], 1);
+        } catch (ArrayStoreException e) {
+            sb.append("ase ").append(e.getMessage()).append(' ');
+        }
+        try {
+            Arrays.sort(new Object[] { "a", 1 });
+        } catch (ClassCastException e) {
+            sb.append("cce ");
+        }
+        try {
+            Arrays.sort(new Object[] { "a", null, "b" });
+        } catch (NullPointerException e) {
+            sb.append("npe ");
+        }
+        try {
+            Arrays.sort(new Object[] { new Object(), new Object() });
+        } catch (ClassCastException e) {
+            sb.append("cce ");
+        }
+        try {
+            Arrays.binarySearch(new String[] { "a", "b" }, 1);
+        } catch (ClassCastException e) {
+            sb.append("cce ");
+        }
+        return sb.append(Arrays.equals((Object[]) null, new Object[0])).append(Arrays.hashCode((Object[]) null)).toString();
+    }
+
+    static class Item implements Comparable<Item> {
+        final int key;
+        final String name;
+        Item(int key, String name) { this.key = key; this.name = name; }
+        public int compareTo(Item o) { return Integer.compare(key, o.key); }
+        @Override public boolean equals(Object o) { return o instanceof Item && ((Item) o).key == key; }
+        @Override public int hashCode() { return key * 31; }
+        @Override public String toString() { return key + name; }
+    }
+
+    static class ByName implements Comparator<Item> {
+        public int compare(Item a, Item b) { return a.name.compareTo(b.name); }
+    }
+
+    public static Object objects() {
+        String[] words = { "pear", "apple", "fig", "kiwi", "banana", "cherry", "date", "apple" };
+        long sum = 0;
+        for (int k = 0; k < 300; k++) {
+            String[] w = Arrays.copyOf(words, words.length);
+            Arrays.sort(w);
+            Object[] o = Arrays.copyOfRange(words, 1, 10);
+            Arrays.sort(o, 0, 7);
+            Arrays.fill(o, 8, 9, "x" + k);
+            sum += Arrays.hashCode(w) + Arrays.hashCode(o) + (Arrays.equals(w, words) ? 1 : 0) + (Arrays.equals(w, w.clone()) ? 1 : 0)
+                    + Arrays.binarySearch(w, "fig") + Arrays.binarySearch(w, "grape") + Arrays.binarySearch(o, 0, 7, "kiwi")
+                    + w.getClass().getName().length() + o.getClass().getName().length();
+        }
+        Item[] items = new Item[200];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item((i * 37) % 50, "n" + (char) ('a' + (i * 11) % 26));
+        }
+        Item[] stable = items.clone();
+        Arrays.sort(stable);
+        Item[] by_name = items.clone();
+        Arrays.sort(by_name, new ByName());
+        Item[] part = items.clone();
+        Arrays.sort(part, 20, 80, new ByName());
+        Arrays.sort(part, 100, 150, null);
+        Integer[] boxed = { 5, 3, 9, 1 };
+        Arrays.sort(boxed, Comparator.reverseOrder());
+        return sum + " " + Arrays.toString(Arrays.copyOf(stable, 12)) + " " + Arrays.toString(Arrays.copyOf(by_name, 12))
+                + " " + Arrays.hashCode(part) + " " + Arrays.binarySearch(stable, new Item(7, "")) + " " + Arrays.binarySearch(by_name, new Item(0, "nq"), new ByName())
+                + " " + Arrays.equals(items, stable) + Arrays.equals(new Object[] { new Item(1, "a") }, new Object[] { new Item(1, "b") })
+                + " " + Arrays.toString(boxed) + " " + Arrays.hashCode(new Object[] { new int[0] }) * 0 + Arrays.equals(new Object[] { new int[0] }, new Object[] { null })
+                + " " + Arrays.copyOf(words, 3, Object[].class).getClass().getName() + Arrays.copyOf(words, 10).length;
+    }
+}
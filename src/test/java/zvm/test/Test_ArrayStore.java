@@ -0,0 +1,79 @@
+package zvm.test;
+
+import java.io.Serializable;
+
+/**
+ * aastore 的 store check: 数组类上缓存最近检查通过的元素类, 见 ZArray.store_ref
+ * 协变数组存错类型抛 ArrayStoreException, 下标与类型都不对先抛越界
+ * @author chuxiaofeng
+ */
+public class Test_ArrayStore {
+
+    interface Shape { }
+    static class Circle implements Shape { }
+    static class Square implements Shape { }
+    static class Blob { }
+
+    public static Object hot() {
+        Object[] objs = new Object[16];
+        Shape[] shapes = new Shape[16];
+        Number[] nums = new Number[16];
+        Object[][] grid = new Object[4][];
+        Object[] any = { "s", 1, 2L, new Circle(), new int[1], null, new String[0], shapes };
+        int n = 0;
+        for (int i = 0; i < 5000; i++) {
+            objs[i & 15] = any[i % any.length];
+            shapes[i & 15] = i % 3 == 0 ? new Circle() : new Square();
+            nums[i & 15] = i % 2 == 0 ? (Number) i : (Number) (long) i;
+            grid[i & 3] = i % 2 == 0 ? new String[i & 7] : new Object[1];
+            n += (objs[i & 15] == null ? 0 : 1) + (shapes[(i + 1) & 15] instanceof Circle ? 1 : 0) + grid[i & 3].length;
+        }
+        return n + " " + nums[3] + " " + nums[4];
+    }
+
+    public static Object covariant() {
+        StringBuilder sb = new StringBuilder();
+        Object[] strs = new String[4];
+        Object[] shapes = new Shape[4];
+        Object[] cloneables = new Cloneable[2];
+        Object[] serials = new Serializable[2];
+        Object[] ints = new int[2][];
+        for (int i = 0; i < 2000; i++) {
+            strs[i & 3] = "x" + i;
+            shapes[i & 3] = new Circle();
+            cloneables[i & 1] = new int[i & 3];
+            serials[i & 1] = i % 2 == 0 ? "s" : new long[0];
+        }
+        Object[] bad = { 1, new Blob(), new Object(), new int[0], new Circle() };
+        for (Object[] target : new Object[][] { strs, shapes, cloneables, serials }) {
+            for (Object o : bad) {
+                try {
+                    target[0] = o;
+                    sb.append("ok ");
+                } catch (ArrayStoreException e) {
+                    sb.append("ase:").append(e.getMessage()).append(' ');
+                }
+            }
+        }
+        try {
+            ints[0] = new long[0];
+        } catch (ArrayStoreException e) {
+            sb.append("ase:").append(e.getMessage()).append(' ');
+        }
+        try {
+            strs[9] = 1;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            sb.append("aioobe ");
+        } catch (ArrayStoreException e) {
+            sb.append("ase ");
+        }
+        try {
+            Object[] nil = null;
+            nil[0] = 1;
+        } catch (NullPointerException e) {
+            sb.append("npe ");
+        }
+        strs[1] = null;
+        return sb.append(strs[0]).append(strs[1]).append(shapes[3] instanceof Circle).toString();
+    }
+}
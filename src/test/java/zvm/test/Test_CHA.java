@@ -0,0 +1,135 @@
+package zvm.test;
+
+/**
+ * VM.cha: 静态类型下面已加载的具体类只有一个选择, 调用点去虚拟化, 见 ClassHierarchy
+ * 热循环之后才第一次用到的子类, 加载的时候作废依赖它父类型的调用点, 之后调用要选到子类覆盖的方法
+ * 每个方法用自己的类层次, 互不影响
+ * @author chuxiaofeng
+ */
+public class Test_CHA {
+
+    // ==================== 类, 后加载的子类覆盖 ====================
+
+    static abstract class Animal {
+        abstract String sound();
+        int legs() { return 4; }
+    }
+
+    static class Dog extends Animal {
+        String sound() { return "woof"; }
+    }
+
+    // 热循环之后才加载
+    static class Bird extends Animal {
+        String sound() { return "tweet"; }
+        @Override int legs() { return 2; }
+    }
+
+    static int legs(Animal a) {
+        return a.legs() + a.sound().length();
+    }
+
+    public static Object late_subclass() {
+        Animal dog = new Dog();
+        long sum = 0;
+        for (int i = 0; i < 5000; i++) {
+            sum += legs(dog);
+        }
+        Animal bird = new Bird();
+        for (int i = 0; i < 5000; i++) {
+            sum += legs(i % 3 == 0 ? bird : dog);
+        }
+        return sum + " " + legs(bird) + " " + legs(dog);
+    }
+
+    // ==================== 接口只有一个实现类 ====================
+
+    interface Codec {
+        int encode(int x);
+        default int twice(int x) { return encode(encode(x)); }
+    }
+
+    static class Plain implements Codec {
+        public int encode(int x) { return x + 1; }
+    }
+
+    // 热循环之后才加载, 覆盖了 default 方法
+    static class Shifted implements Codec {
+        public int encode(int x) { return x << 1; }
+        public int twice(int x) { return x << 2; }
+    }
+
+    static int run(Codec c, int n) {
+        int r = 0;
+        for (int i = 0; i < n; i++) {
+            r = r * 7 + c.twice(i) + c.encode(i);
+        }
+        return r;
+    }
+
+    public static Object single_implementor() {
+        Codec plain = new Plain();
+        int a = run(plain, 5000);
+        Codec shifted = new Shifted();
+        int b = run(shifted, 5000);
+        int c = run(plain, 100);
+        return a + " " + b + " " + c;
+    }
+
+    // ==================== 孙子类, 作废登记在祖先上的调用点 ====================
+
+    static class Base {
+        String name() { return "base"; }
+        final String tag() { return "<" + name() + ">"; }
+    }
+
+    static class Middle extends Base {
+    }
+
+    static class Leaf extends Middle {
+        @Override String name() { return "leaf"; }
+    }
+
+    static String name(Base b) {
+        return b.name();
+    }
+
+    static String name(Middle m) {
+        return m.name();
+    }
+
+    public static Object deep() {
+        Base base = new Base();
+        Middle middle = new Middle();
+        StringBuilder sb = new StringBuilder();
+        int len = 0;
+        for (int i = 0; i < 5000; i++) {
+            len += name(base).length() + name(middle).length() + base.tag().length();
+        }
+        sb.append(len).append(' ');
+        Middle leaf = new Leaf();
+        for (int i = 0; i < 3000; i++) {
+            len += name(leaf).length() + name((Base) leaf).length() + name(middle).length() + leaf.tag().length();
+        }
+        return sb.append(len).append(' ').append(name(leaf)).append(leaf.tag()).append(middle.tag()).toString();
+    }
+
+    // ==================== final 类、final 方法 ====================
+
+    static final class Counter {
+        int n;
+        void inc() { n++; }
+        int get() { return n; }
+    }
+
+    public static Object finals() {
+        Counter c = new Counter();
+        Base b = new Base();
+        int len = 0;
+        for (int i = 0; i < 5000; i++) {
+            c.inc();
+            len += b.tag().length();
+        }
+        return c.get() + " " + len + " " + "abc".length();
+    }
+}
@@ -0,0 +1,78 @@
+package zvm.test;
+
+/**
+ * 解释执行的方法 (包括同步方法) 在 slot arena 上原地传参, native 绑成 Invokable 之后直接调用, 不走反射
+ * @author chuxiaofeng
+ */
+public class Test_CallingConvention {
+    int count;
+
+    synchronized void inc() {
+        count++;
+    }
+
+    synchronized int inc_twice() {
+        // 重入
+        inc();
+        inc();
+        return count;
+    }
+
+    static int static_count;
+
+    static synchronized long add(long a, int b, double c, Object d) {
+        static_count++;
+        return a + b + (long) c + (d == null ? 0 : 1);
+    }
+
+    synchronized int fact(int n) {
+        return n <= 1 ? 1 : n * fact(n - 1);
+    }
+
+    synchronized void fail(int i) {
+        count += i;
+        if (i % 3 == 0) {
+            throw new IllegalStateException("i=" + i);
+        }
+    }
+
+    public static Object synchronized_methods() {
+        Test_CallingConvention t = new Test_CallingConvention();
+        long sum = 0;
+        for (int i = 0; i < 3000; i++) {
+            t.inc();
+            sum += add(i, i, 0.5 + i, i % 2 == 0 ? null : t);
+        }
+        sum += t.inc_twice() + t.fact(10);
+        int failures = 0;
+        for (int i = 0; i < 10; i++) {
+            try {
+                t.fail(i);
+            } catch (IllegalStateException e) {
+                failures++;
+            }
+        }
+        // 异常出去之后锁要释放, 重入计数也要对
+        t.inc();
+        return sum + " " + t.count + " " + static_count + " " + failures;
+    }
+
+    // 各种参数与返回值类型的 native
+    public static Object natives() {
+        double d = 0;
+        long l = 0;
+        int h = 0;
+        Object o = new Object();
+        int[] src = { 1, 2, 3, 4, 5 };
+        int[] dst = new int[5];
+        for (int i = 0; i < 2000; i++) {
+            d += StrictMath.sqrt(i) + StrictMath.atan2(i, 3) + Math.sin(i);
+            l += Double.doubleToRawLongBits(i) >>> 40;
+            l += Float.floatToRawIntBits(i) >>> 20;
+            h += System.identityHashCode(o) == System.identityHashCode(o) ? 1 : 0;
+            System.arraycopy(src, i % 5, dst, 0, 5 - i % 5);
+            h += dst[0] + (Thread.currentThread() == null ? 1 : 0);
+        }
+        return d + " " + l + " " + h + " " + Double.longBitsToDouble(l) + " " + Float.intBitsToFloat(h);
+    }
+}
@@ -0,0 +1,220 @@
+package zvm.test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 虚方法按 vtable 下标分派, 接口方法按 itable 分派, 见 ZClass.select
+ * 覆盖、default 方法、父接口重新声明、桥方法、父类实现的接口、通过接口调用 Object 的方法
+ * @author chuxiaofeng
+ */
+public class Test_Dispatch {
+
+    // ==================== visitor, 超多态 ====================
+
+    interface Node {
+        <R> R accept(Visitor<R> v);
+    }
+
+    interface Visitor<R> {
+        R num(Num n);
+        R add(Add n);
+        R mul(Mul n);
+        R neg(Neg n);
+        R var(Var n);
+        default R visit(Node n) {
+            return n.accept(this);
+        }
+    }
+
+    static final class Num implements Node {
+        final int v;
+        Num(int v) { this.v = v; }
+        public <R> R accept(Visitor<R> v) { return v.num(this); }
+    }
+
+    static abstract class Binary implements Node {
+        final Node l, r;
+        Binary(Node l, Node r) { this.l = l; this.r = r; }
+    }
+
+    static final class Add extends Binary {
+        Add(Node l, Node r) { super(l, r); }
+        public <R> R accept(Visitor<R> v) { return v.add(this); }
+    }
+
+    static final class Mul extends Binary {
+        Mul(Node l, Node r) { super(l, r); }
+        public <R> R accept(Visitor<R> v) { return v.mul(this); }
+    }
+
+    static final class Neg implements Node {
+        final Node e;
+        Neg(Node e) { this.e = e; }
+        public <R> R accept(Visitor<R> v) { return v.neg(this); }
+    }
+
+    static final class Var implements Node {
+        final String name;
+        Var(String name) { this.name = name; }
+        public <R> R accept(Visitor<R> v) { return v.var(this); }
+    }
+
+    static class Eval implements Visitor<Integer> {
+        final int x;
+        Eval(int x) { this.x = x; }
+        public Integer num(Num n) { return n.v; }
+        public Integer add(Add n) { return visit(n.l) + visit(n.r); }
+        public Integer mul(Mul n) { return visit(n.l) * visit(n.r); }
+        public Integer neg(Neg n) { return -visit(n.e); }
+        public Integer var(Var n) { return x; }
+    }
+
+    static class Show implements Visitor<String> {
+        public String num(Num n) { return String.valueOf(n.v); }
+        public String add(Add n) { return "(" + visit(n.l) + "+" + visit(n.r) + ")"; }
+        public String mul(Mul n) { return visit(n.l) + "*" + visit(n.r); }
+        public String neg(Neg n) { return "-" + visit(n.e); }
+        public String var(Var n) { return n.name; }
+    }
+
+    // 覆盖 default 方法
+    static class CountingShow extends Show {
+        int visits;
+        @Override
+        public String visit(Node n) {
+            visits++;
+            return super.visit(n);
+        }
+    }
+
+    public static Object visitor() {
+        Node e = new Add(new Mul(new Num(3), new Var("x")), new Neg(new Add(new Var("x"), new Num(1))));
+        long sum = 0;
+        for (int x = 0; x < 2000; x++) {
+            sum += e.accept(new Eval(x));
+        }
+        CountingShow cs = new CountingShow();
+        return sum + " " + e.accept(new Show()) + " " + cs.visit(e) + " " + cs.visits;
+    }
+
+    // ==================== 接口继承 ====================
+
+    interface Named {
+        String name();
+        default String greet() { return "hi " + name(); }
+    }
+
+    interface Titled extends Named {
+        // 父接口重新声明
+        String name();
+        default String greet() { return "dear " + name(); }
+    }
+
+    static abstract class Person implements Titled {
+        public String toString() { return "P:" + name(); }
+    }
+
+    static class Alice extends Person {
+        public String name() { return "alice"; }
+    }
+
+    static class Bob extends Alice {
+        public String name() { return "bob"; }
+        public String greet() { return "yo " + name(); }
+    }
+
+    // 子类自己没有 implements, 接口来自父类
+    static class Carol extends Bob {
+        private String name(int unused) { return "nope"; }
+        public String name() { return "carol" + name(0).length(); }
+    }
+
+    public static Object interfaces() {
+        Named[] ns = { new Alice(), new Bob(), new Carol() };
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 500; k++) {
+            for (Named n : ns) {
+                Titled t = (Titled) n;
+                Person p = (Person) n;
+                String s = n.greet() + t.greet() + p.greet() + n.name() + p.toString() + n.toString() + n.equals(p) + (n.hashCode() == p.hashCode());
+                if (k == 0) {
+                    sb.append(s).append(' ');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    // ==================== 桥方法 ====================
+
+    interface Source<T> {
+        T get();
+    }
+
+    static class StringSource implements Source<String>, Comparable<StringSource> {
+        final String s;
+        StringSource(String s) { this.s = s; }
+        public String get() { return s; }
+        public int compareTo(StringSource o) { return s.compareTo(o.s); }
+    }
+
+    static class Upper extends StringSource {
+        Upper(String s) { super(s); }
+        @Override public String get() { return s.toUpperCase(); }
+    }
+
+    public static Object bridges() {
+        List<Source<?>> sources = new ArrayList<>();
+        sources.add(new StringSource("b"));
+        sources.add(new Upper("a"));
+        sources.add(new Source<Integer>() {
+            public Integer get() { return 42; }
+        });
+        StringBuilder sb = new StringBuilder();
+        for (Source<?> s : sources) {
+            sb.append(s.get()).append(',');
+        }
+        List<StringSource> list = new ArrayList<>();
+        list.add(new StringSource("z"));
+        list.add(new Upper("m"));
+        list.add(new StringSource("c"));
+        list.sort(null);
+        for (StringSource s : list) {
+            sb.append(s.get());
+        }
+        return sb.toString();
+    }
+
+    // ==================== 集合, 很多实现类 ====================
+
+    public static Object collections() {
+        List<List<Integer>> lists = new ArrayList<>();
+        lists.add(new ArrayList<>());
+        lists.add(new LinkedList<>());
+        Map<String, Integer> hash = new HashMap<>();
+        Map<String, Integer> tree = new TreeMap<>(Comparator.reverseOrder());
+        List<Map<String, Integer>> maps = new ArrayList<>();
+        maps.add(hash);
+        maps.add(tree);
+        long sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            for (List<Integer> l : lists) {
+                l.add(i);
+                sum += l.size() + l.get(l.size() / 2);
+            }
+            for (Map<String, Integer> m : maps) {
+                String k = "k" + (i % 13);
+                Integer old = m.get(k);
+                m.put(k, old == null ? i : old + i);
+                sum += m.size();
+            }
+        }
+        return sum + " " + tree.keySet() + " " + hash.get("k3");
+    }
+}
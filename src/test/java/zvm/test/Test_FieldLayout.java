@@ -0,0 +1,135 @@
+package zvm.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 实例字段分成基本类型区与引用区, 基本类型不装箱, 见 ZClass.field_index
+ * 父子类交错的各种类型、同名字段、默认值、构造器之前读 final 字段、Unsafe 按 offset 读写 (Atomic*)
+ * @author chuxiaofeng
+ */
+public class Test_FieldLayout {
+
+    static class Base {
+        boolean z;
+        String s = "base";
+        byte b;
+        long j;
+        Object o;
+        char c;
+        int shadow = 1;
+
+        Base() {
+            init();
+        }
+
+        // 子类覆盖, 父类构造器里调用, 这时子类的字段还是默认值
+        void init() { }
+    }
+
+    static class Vec extends Base {
+        double x, y;
+        float f;
+        short sh;
+        int[] arr;
+        int shadow = 2;
+        final int fin;
+        final long fin_j;
+        String seen;
+
+        Vec(int k) {
+            fin = k;
+            fin_j = k * 3L;
+        }
+
+        @Override
+        void init() {
+            seen = fin + " " + fin_j + " " + x + " " + arr + " " + shadow + " " + super.shadow;
+        }
+    }
+
+    public static Object kinds() {
+        Vec v = new Vec(7);
+        StringBuilder sb = new StringBuilder(v.seen).append(' ');
+        sb.append(v.z).append(v.s).append(v.b).append(v.j).append(v.o).append((int) v.c).append(v.shadow).append(((Base) v).shadow)
+                .append(v.x).append(v.y).append(v.f).append(v.sh).append(v.arr).append(' ');
+        double sum = 0;
+        for (int i = 0; i < 5000; i++) {
+            v.z = i % 2 == 0;
+            v.b = (byte) i;
+            v.j = i * 1000000007L;
+            v.c = (char) ('a' + i % 26);
+            v.x = i / 3.0;
+            v.y = -v.x;
+            v.f = i * 0.25f;
+            v.sh = (short) (i * 7);
+            v.shadow = i;
+            ((Base) v).shadow = -i;
+            v.o = i % 3 == 0 ? null : v;
+            v.arr = new int[i % 4];
+            sum += (v.z ? 1 : 0) + v.b + v.j % 1000 + v.c + v.x + v.y + v.f + v.sh + v.shadow + ((Base) v).shadow
+                    + (v.o == null ? 0 : 1) + v.arr.length + v.fin + v.fin_j;
+        }
+        v.x = Double.NaN;
+        v.f = -0.0f;
+        v.j = Long.MIN_VALUE;
+        v.b = (byte) 200;
+        v.c = '￿';
+        return sb.append(sum).append(' ').append(v.x).append(v.f).append(v.j).append(v.b).append((int) v.c).toString();
+    }
+
+    static class Particle {
+        double px, py, vx, vy, m;
+        int id;
+
+        Particle(int id) {
+            this.id = id;
+            px = id;
+            py = -id;
+            vx = 1;
+            vy = 0.5;
+            m = 1 + id % 3;
+        }
+
+        void step(double dt) {
+            px += vx * dt;
+            py += vy * dt;
+            vx *= 0.999;
+            vy -= 9.8 * dt / m;
+        }
+    }
+
+    public static Object numeric() {
+        Particle[] ps = new Particle[50];
+        for (int i = 0; i < ps.length; i++) {
+            ps[i] = new Particle(i);
+        }
+        for (int t = 0; t < 400; t++) {
+            for (Particle p : ps) {
+                p.step(0.01);
+            }
+        }
+        double e = 0;
+        long ids = 0;
+        for (Particle p : ps) {
+            e += p.m * (p.vx * p.vx + p.vy * p.vy) / 2 + p.px + p.py;
+            ids += p.id;
+        }
+        return e + " " + ids;
+    }
+
+    public static Object atomics() {
+        AtomicInteger ai = new AtomicInteger();
+        AtomicLong al = new AtomicLong(5);
+        AtomicReference<String> ar = new AtomicReference<>("a");
+        for (int i = 0; i < 3000; i++) {
+            ai.incrementAndGet();
+            long v = al.get();
+            al.compareAndSet(v, v + i);
+            ar.compareAndSet(i % 2 == 0 ? "a" : "b", i % 2 == 0 ? "b" : "a");
+        }
+        boolean cas = ai.compareAndSet(3000, -1) && !ai.compareAndSet(3000, 0) && al.compareAndSet(4498505, 1);
+        return ai.get() + " " + al.get() + " " + ar.get() + " " + cas;
+    }
+}
@@ -0,0 +1,105 @@
+package zvm.test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 按 ip 展开的异常表: 嵌套 try、finally (catch any)、catch 的顺序、精确类型与父类型、穿过多层栈帧
+ * @author chuxiaofeng
+ */
+public class Test_HandlerTable {
+
+    static int thrower(int k) throws IOException {
+        switch (k % 5) {
+            case 0: throw new IllegalStateException("s" + k);
+            case 1: throw new IOException("io" + k);
+            case 2: throw new UncheckedIOException(new IOException("u" + k));
+            case 3: return 100 / (k - 3 - k % 5 + 3);
+            default: return k;
+        }
+    }
+
+    static int deep(int depth, int k) throws IOException {
+        try {
+            return depth == 0 ? thrower(k) : deep(depth - 1, k) + 1;
+        } finally {
+            counter++;
+        }
+    }
+
+    static int counter;
+
+    public static Object nested() {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 20; k++) {
+            try {
+                try {
+                    sb.append(thrower(k));
+                } catch (IllegalStateException e) {
+                    sb.append("[ise ").append(e.getMessage()).append(']');
+                } catch (RuntimeException e) {
+                    // UncheckedIOException ArithmeticException 走父类型
+                    sb.append("[rt ").append(e.getClass().getSimpleName()).append(']');
+                } finally {
+                    sb.append(';');
+                }
+            } catch (IOException e) {
+                sb.append("[io ").append(e.getMessage()).append(']');
+            }
+        }
+        return sb.toString();
+    }
+
+    // 异常穿过多层带 finally 的栈帧
+    public static Object through_frames() {
+        counter = 0;
+        int r = 0;
+        for (int k = 0; k < 10; k++) {
+            try {
+                r += deep(8, k);
+            } catch (Exception e) {
+                r += 1000 + e.getClass().getName().length();
+            }
+        }
+        return r + ":" + counter;
+    }
+
+    // 同一个 handler 覆盖多段代码, try 里面又 return
+    public static int ranges() {
+        int r = 0;
+        for (int k = 0; k < 12; k++) {
+            try {
+                if (k % 3 == 0) {
+                    continue;
+                }
+                r += thrower(k);
+                if (k % 4 == 0) {
+                    break;
+                }
+            } catch (Throwable t) {
+                r -= k;
+            } finally {
+                r += 10;
+            }
+        }
+        return r;
+    }
+
+    // handler 里再抛, 交给外层
+    public static Object rethrow() {
+        String s = "";
+        for (int k = 0; k < 6; k++) {
+            try {
+                try {
+                    thrower(k);
+                    s += "ok";
+                } catch (Exception e) {
+                    throw new RuntimeException("wrap " + k, e);
+                }
+            } catch (RuntimeException e) {
+                s += e.getMessage() + "<" + e.getCause().getClass().getSimpleName() + ">";
+            }
+        }
+        return s;
+    }
+}
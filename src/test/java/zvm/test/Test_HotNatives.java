@@ -0,0 +1,136 @@
+package zvm.test;
+
+/**
+ * VM.intrinsics: System.arraycopy、Object.hashCode、System.identityHashCode、Float/Double 的 bits 转换不走 Natives 的分派, 见 Intrinsics
+ * 越界、类型不匹配、null 照旧由 native 抛 guest 异常
+ * @author chuxiaofeng
+ */
+public class Test_HotNatives {
+
+    public static Object arraycopy() {
+        int[] a = new int[100];
+        long[] l = new long[100];
+        char[] c = new char[100];
+        Object[] o = new Object[100];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i * 31;
+            l[i] = i * 1000000007L;
+            c[i] = (char) ('a' + i % 26);
+            o[i] = i % 3 == 0 ? null : "s" + i;
+        }
+        long sum = 0;
+        for (int k = 0; k < 2000; k++) {
+            int n = k % 50;
+            System.arraycopy(a, n, a, n / 2, 40);
+            System.arraycopy(l, n / 2, l, n, 40);
+            char[] c2 = new char[60];
+            System.arraycopy(c, n, c2, 10, 50);
+            Object[] o2 = new String[60];
+            System.arraycopy(o, n, o2, 0, 0);
+            System.arraycopy(o, 50, o, n, 10);
+            sum += a[n] + l[n + 1] + c2[10 + n % 40] + (o[n] == null ? 1 : ((String) o[n]).length());
+        }
+        StringBuilder sb = new StringBuilder().append(sum).append(' ');
+        try {
+            System.arraycopy(a, 90, a, 0, 20);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            sb.append("aioobe ");
+        }
+        try {
+            System.arraycopy(a, 0, l, 0, 1);
+        } catch (ArrayStoreException e) {
+            sb.append("ase ");
+        }
+        try {
+            System.arraycopy(null, 0, a, 0, 1);
+        } catch (NullPointerException e) {
+            sb.append("npe ");
+        }
+        try {
+            System.arraycopy(a, 0, null, 0, 1);
+        } catch (NullPointerException e) {
+            sb.append("npe ");
+        }
+        try {
+            System.arraycopy(a, -1, a, 0, 1);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            sb.append("aioobe ");
+        }
+        int[][] m = new int[3][];
+        Object[] rows = { new int[] { 1 }, new int[] { 2, 3 }, null };
+        System.arraycopy(rows, 0, m, 0, 3);
+        return sb.append(m[1][1]).append(m[2] == null).append(' ').append(a[0]).append(l[99]).toString();
+    }
+
+    // Object[] 拷到 String[] 要逐个检查元素, 拷完前面存得进去的再抛 ArrayStoreException
+    public static Object arraycopy_store_check() {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 200; k++) {
+            String[] d = new String[4];
+            try {
+                System.arraycopy(new Object[] { "a", "b", k, "c" }, 0, d, 0, 4);
+                sb.append("copied ");
+            } catch (ArrayStoreException e) {
+                if (k == 0) {
+                    sb.append(e.getMessage()).append(java.util.Arrays.toString(d)).append(' ');
+                }
+            }
+        }
+        String[] all = new String[3];
+        System.arraycopy(new Object[] { "x", null, "z" }, 0, all, 0, 3);
+        sb.append(java.util.Arrays.toString(all)).append(' ');
+
+        Number[] numbers = new Number[3];
+        System.arraycopy(new Object[] { 1, 2L, 3.0 }, 0, numbers, 0, 3);
+        sb.append(java.util.Arrays.toString(numbers)).append(' ');
+        try {
+            System.arraycopy(new Object[] { 1, "2" }, 0, numbers, 1, 2);
+        } catch (ArrayStoreException e) {
+            sb.append("ase ").append(java.util.Arrays.toString(numbers)).append(' ');
+        }
+        try {
+            System.arraycopy(new Object[] { "a" }, 0, new String[1], 0, 2);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            sb.append("aioobe ");
+        }
+        Object[] objects = new Object[2];
+        System.arraycopy(new String[] { "p", "q" }, 0, objects, 0, 2);
+        return sb.append(java.util.Arrays.toString(objects)).toString();
+    }
+
+    static class Key {
+        final int k;
+        Key(int k) { this.k = k; }
+        @Override public int hashCode() { return k; }
+    }
+
+    public static Object hash_codes() {
+        Object[] objs = { new Object(), new Object(), "str", new Key(7), new int[0] };
+        int same = 0;
+        for (int k = 0; k < 5000; k++) {
+            Object o = objs[k % objs.length];
+            if (o.hashCode() == System.identityHashCode(o)) {
+                same++;
+            }
+            if (o.hashCode() == o.hashCode()) {
+                same++;
+            }
+        }
+        return same + " " + System.identityHashCode(null) + " " + new Key(42).hashCode();
+    }
+
+    public static Object bits() {
+        float[] fs = { 0f, -0f, 1.5f, Float.NaN, Float.intBitsToFloat(0x7fc00001), Float.NEGATIVE_INFINITY, Float.MIN_VALUE };
+        double[] ds = { 0, -0.0, 1.5, Double.NaN, Double.longBitsToDouble(0x7ff8000000000001L), Double.POSITIVE_INFINITY, Double.MIN_VALUE };
+        long sum = 0;
+        for (int k = 0; k < 5000; k++) {
+            float f = fs[k % fs.length] * (k % 3 == 0 ? 1 : k);
+            double d = ds[k % ds.length] * (k % 3 == 0 ? 1 : k);
+            sum += Float.floatToRawIntBits(f) + Float.floatToIntBits(f) + Double.doubleToRawLongBits(d) + Double.doubleToLongBits(d)
+                    + (long) Float.intBitsToFloat(k * 12345) + (long) Double.longBitsToDouble(k * 0x123456789L)
+                    + Float.hashCode(f) + Double.hashCode(d);
+        }
+        return sum + " " + Integer.toHexString(Float.floatToIntBits(fs[4])) + " " + Long.toHexString(Double.doubleToLongBits(ds[4]))
+                + " " + Float.intBitsToFloat(0x7f800000) + " " + Double.longBitsToDouble(0x8000000000000000L);
+    }
+}
@@ -0,0 +1,124 @@
+package zvm.test;
+
+/**
+ * VM.implicit_checks: 字段、数组访问不判空, 数组不检查下标, 宿主抛的 npe 与数组越界在抛出的指令上换成 guest 异常
+ * 带 try/catch 的方法走栈式解释器, 没有的走寄存器解释器或者编译好的代码
+ * @author chuxiaofeng
+ */
+public class Test_ImplicitChecks {
+    int i;
+    long l;
+    Object o;
+
+    static String top(Throwable t) {
+        StackTraceElement e = t.getStackTrace()[0];
+        return t.getClass().getSimpleName() + "@" + e.getMethodName() + ":" + e.getLineNumber();
+    }
+
+    // 每种数组读写, 同一个方法里 catch
+    public static Object arrays_local() {
+        StringBuilder sb = new StringBuilder();
+        int[] is = null;
+        long[] ls = null;
+        double[] ds = null;
+        byte[] bs = null;
+        char[] cs = null;
+        Object[] os = null;
+        for (int k = 0; k < 2; k++) {
+            int idx = k == 0 ? 0 : 7;
+            try { sb.append(is[idx]); } catch (RuntimeException e) { sb.append(top(e)).append(' '); }
+            try { ls[idx] = 1; } catch (RuntimeException e) { sb.append(top(e)).append(' '); }
+            try { sb.append(ds[idx]); } catch (RuntimeException e) { sb.append(top(e)).append(' '); }
+            try { bs[idx] = 1; } catch (RuntimeException e) { sb.append(top(e)).append(' '); }
+            try { sb.append(cs[idx]); } catch (RuntimeException e) { sb.append(top(e)).append(' '); }
+            try { os[idx] = "x"; } catch (RuntimeException e) { sb.append(top(e)).append(' '); }
+            try { sb.append(os.length); } catch (RuntimeException e) { sb.append(top(e)).append(' '); }
+            is = new int[3];
+            ls = new long[3];
+            ds = new double[3];
+            bs = new byte[3];
+            cs = new char[3];
+            os = new String[3];
+        }
+        try { sb.append(is[-1]); } catch (ArrayIndexOutOfBoundsException e) { sb.append("neg "); }
+        try { sb.append(is[is.length]); } catch (ArrayIndexOutOfBoundsException e) { sb.append("len "); }
+        return sb.toString();
+    }
+
+    public static Object fields_local() {
+        StringBuilder sb = new StringBuilder();
+        Test_ImplicitChecks t = null;
+        try { sb.append(t.i); } catch (NullPointerException e) { sb.append(top(e)).append(' '); }
+        try { t.l = 3; } catch (NullPointerException e) { sb.append(top(e)).append(' '); }
+        try { t.i += 1; } catch (NullPointerException e) { sb.append(top(e)).append(' '); }
+        try {
+            synchronized (t) {
+                sb.append("in");
+            }
+        } catch (NullPointerException e) {
+            sb.append(top(e)).append(' ');
+        }
+        t = new Test_ImplicitChecks();
+        t.o = t;
+        sb.append(((Test_ImplicitChecks) t.o).i);
+        return sb.toString();
+    }
+
+    // 值先算出来再判空, 与 jvm 一样
+    static int calls;
+
+    static int side_effect() {
+        return ++calls;
+    }
+
+    public static Object evaluation_order() {
+        calls = 0;
+        int[] arr = null;
+        Test_ImplicitChecks t = null;
+        try {
+            arr[side_effect()] = side_effect();
+        } catch (NullPointerException e) {
+            // ignore
+        }
+        try {
+            t.i = side_effect();
+        } catch (NullPointerException e) {
+            // ignore
+        }
+        return calls;
+    }
+
+    // 没有 try/catch 的方法, 走寄存器解释器, 热了之后是编译好的代码
+    static int load(int[] arr, int idx) {
+        return arr[idx];
+    }
+
+    static void store(Object[] arr, int idx, Object v) {
+        arr[idx] = v;
+    }
+
+    static long field(Test_ImplicitChecks t) {
+        return t.l + t.i;
+    }
+
+    public static Object callees() {
+        int[] arr = { 1, 2, 3 };
+        Object[] os = new Object[2];
+        Test_ImplicitChecks t = new Test_ImplicitChecks();
+        long sum = 0;
+        String first = "";
+        for (int k = 0; k < 5000; k++) {
+            try {
+                sum += load(k % 97 == 0 ? null : arr, k % 4);
+                store(os, k % 3, "s");
+                sum += field(k % 101 == 0 ? null : t);
+            } catch (RuntimeException e) {
+                sum += 1000;
+                if (first.length() < 200) {
+                    first += top(e) + " ";
+                }
+            }
+        }
+        return first + sum;
+    }
+}
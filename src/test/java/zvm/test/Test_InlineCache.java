@@ -0,0 +1,116 @@
+package zvm.test;
+
+/**
+ * invokevirtual / invokeinterface 每个调用点一个内联缓存: 单态 -> 多态 -> 超多态, 见 InlineCache
+ * 带 try/catch 的方法走栈式解释器, 没有的走寄存器解释器, 热了编译
+ * @author chuxiaofeng
+ */
+public class Test_InlineCache {
+
+    interface Shape {
+        int area();
+
+        default String name() {
+            return "s" + area();
+        }
+    }
+
+    static abstract class Base implements Shape {
+        int id() {
+            return 1;
+        }
+    }
+
+    static class A extends Base {
+        public int area() { return 1; }
+    }
+
+    static class B extends Base {
+        public int area() { return 2; }
+        @Override int id() { return 2; }
+    }
+
+    static class C extends B {
+        public int area() { return 3; }
+        @Override public String name() { return "c"; }
+    }
+
+    static class D extends Base {
+        public int area() { return 4; }
+    }
+
+    static class E extends A {
+        @Override int id() { return 5; }
+    }
+
+    static class F extends Base {
+        public int area() { return 6; }
+        @Override int id() { return 6; }
+    }
+
+    static final Shape[] SHAPES = { new A(), new B(), new C(), new D(), new E(), new F() };
+
+    static int area(Shape s) {
+        return s.area();
+    }
+
+    static int id(Base b) {
+        return b.id();
+    }
+
+    // 同一个调用点接收者从 1 种逐渐变到 6 种
+    public static long hot() {
+        long r = 0;
+        for (int n = 1; n <= SHAPES.length; n++) {
+            for (int i = 0; i < 2000; i++) {
+                Shape s = SHAPES[i % n];
+                r = r * 31 + area(s) + id((Base) s) * 7;
+            }
+        }
+        return r;
+    }
+
+    // 单态的调用点不受别的调用点影响
+    public static long separate_sites() {
+        long r = 0;
+        A a = new A();
+        for (int i = 0; i < 3000; i++) {
+            Shape s = SHAPES[i % SHAPES.length];
+            r += s.area();
+            r += a.area();
+            r += a.id();
+        }
+        return r;
+    }
+
+    public static Object stack() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (int k = 0; k < 3; k++) {
+                for (Shape s : SHAPES) {
+                    sb.append(s.area()).append(s.name()).append(((Base) s).id()).append(s.hashCode() == System.identityHashCode(s)).append(' ');
+                }
+            }
+            Shape s = null;
+            sb.append(s.area());
+        } catch (NullPointerException e) {
+            sb.append("npe");
+        }
+        return sb.toString();
+    }
+
+    // Object 上的方法与 String, 很多种接收者
+    public static Object megamorphic() {
+        Object[] objs = { "s", 1, 2L, 'c', 1.5, new StringBuilder("sb"), Boolean.TRUE, (byte) 3, new A() };
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 200; k++) {
+            for (Object o : objs) {
+                String s = o.toString();
+                if (k == 0) {
+                    sb.append(o instanceof A ? "A" : s).append(',');
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,138 @@
+package zvm.test;
+
+/**
+ * VM.inline_trivial_methods: 空方法、getter、setter、返回常量的方法调用时不建 frame, 见 Inliner
+ * 构造器链、各种类型的字段、各种常量, 调用点是 invokespecial / invokestatic / 内联缓存 / 编译之后的代码
+ * @author chuxiaofeng
+ */
+public class Test_Inliner {
+
+    static class Point {
+        private int x;
+        private long y;
+        private double z;
+        private boolean flag;
+        private char c;
+        private String name;
+        private int[] arr;
+
+        int getX() { return x; }
+        void setX(int x) { this.x = x; }
+        long getY() { return y; }
+        void setY(long y) { this.y = y; }
+        double getZ() { return z; }
+        void setZ(double z) { this.z = z; }
+        boolean isFlag() { return flag; }
+        void setFlag(boolean flag) { this.flag = flag; }
+        char getC() { return c; }
+        void setC(char c) { this.c = c; }
+        String getName() { return name; }
+        void setName(String name) { this.name = name; }
+        int[] getArr() { return arr; }
+        void setArr(int[] arr) { this.arr = arr; }
+    }
+
+    public static Object accessors() {
+        Point p = new Point();
+        long sum = 0;
+        for (int i = 0; i < 5000; i++) {
+            p.setX(i);
+            p.setY(i * 1000000007L);
+            p.setZ(i / 3.0);
+            p.setFlag(i % 3 == 0);
+            p.setC((char) ('a' + i % 26));
+            p.setName(i % 2 == 0 ? "even" : null);
+            p.setArr(new int[i % 5]);
+            sum += p.getX() + p.getY() + (long) p.getZ() + (p.isFlag() ? 1 : 0) + p.getC()
+                    + (p.getName() == null ? 0 : p.getName().length()) + p.getArr().length;
+        }
+        return sum + " " + p.getX() + " " + p.getY() + " " + p.getZ() + " " + p.isFlag() + " " + p.getC() + " " + p.getName();
+    }
+
+    // 空构造器链, 带字段初始化的构造器不是空的
+    static class A { }
+    static class B extends A { }
+    static class C extends B { }
+    static class D extends C {
+        int v = 7;
+    }
+    static class E extends D {
+        E() { }
+    }
+
+    public static Object constructors() {
+        long sum = 0;
+        for (int i = 0; i < 5000; i++) {
+            Object o = new C();
+            E e = new E();
+            sum += e.v + (o instanceof B ? 1 : 0) + new A().hashCode() * 0;
+        }
+        return sum;
+    }
+
+    static int m1() { return -1; }
+    static int five() { return 5; }
+    static int byte_() { return 100; }
+    static int short_() { return -30000; }
+    static int big() { return 1234567; }
+    static long lzero() { return 0L; }
+    static long lone() { return 1L; }
+    static long lbig() { return 123456789012345L; }
+    static float f2() { return 2f; }
+    static float fpi() { return 3.14f; }
+    static double d1() { return 1d; }
+    static double dpi() { return Math.PI; }
+    static boolean yes() { return true; }
+    static char ch() { return 'z'; }
+    static String str() { return "const"; }
+    static Object nil() { return null; }
+    static void nop(int a, long b, Object c) { }
+
+    public static Object constants() {
+        double sum = 0;
+        int same = 0;
+        for (int i = 0; i < 5000; i++) {
+            nop(i, i, null);
+            sum += m1() + five() + byte_() + short_() + big() + lzero() + lone() + lbig() % 1000
+                    + f2() + fpi() + d1() + dpi() + (yes() ? 1 : 0) + ch() + (nil() == null ? 1 : 0);
+            if (str() == "const") {
+                same++;
+            }
+        }
+        return sum + " " + same + " " + lbig() + " " + fpi() + " " + dpi() + " " + str();
+    }
+
+    // 内联缓存选出来的 getter
+    static abstract class Shape {
+        abstract int sides();
+        String kind() { return "shape"; }
+    }
+    static class Tri extends Shape {
+        int sides() { return 3; }
+    }
+    static class Sq extends Shape {
+        final int n = 4;
+        int sides() { return n; }
+        @Override String kind() { return "sq"; }
+    }
+
+    public static Object virtuals() {
+        Shape[] shapes = { new Tri(), new Sq(), new Tri() };
+        long sum = 0;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            Shape s = shapes[i % 3];
+            sum += s.sides() + s.kind().length();
+            if (i < 3) {
+                sb.append(s.kind());
+            }
+        }
+        try {
+            Shape s = null;
+            s.sides();
+        } catch (NullPointerException e) {
+            sb.append(" npe");
+        }
+        return sum + " " + sb;
+    }
+}
@@ -0,0 +1,82 @@
+package zvm.test;
+
+/**
+ * VM.intrinsics: String、Math、Integer、Long 的热点方法换成宿主实现, 见 Intrinsics
+ * 边界情况 (越界、null、增补字符、NaN、-0.0) 要与方法体一样, 热循环让编译之后的代码也跑到
+ * @author chuxiaofeng
+ */
+public class Test_Intrinsics {
+
+    public static Object strings() {
+        String[] words = { "alpha", "beta", "", "gamma", "alpha", "Aa", "BB", "😀x" };
+        long sum = 0;
+        for (int k = 0; k < 3000; k++) {
+            String w = words[k % words.length];
+            String v = words[(k + 4) % words.length];
+            sum += w.length() + (w.isEmpty() ? 1 : 0) + w.hashCode() + w.indexOf('a') + w.indexOf('a', 2) + w.indexOf('a', -5)
+                    + (w.equals(v) ? 1 : 0) + (w.equals(null) ? 1 : 0) + (w.equals((Object) k) ? 1 : 0) + w.compareTo(v);
+            for (int i = 0; i < w.length(); i++) {
+                sum += w.charAt(i);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(sum).append(' ');
+        sb.append("Aa".hashCode() == "BB".hashCode()).append(' ');
+        sb.append("".hashCode()).append(' ');
+        sb.append("😀x".indexOf(0x1F600)).append(' ');
+        sb.append("abc".indexOf('c', 10)).append(' ');
+        try {
+            sb.append("abc".charAt(3));
+        } catch (StringIndexOutOfBoundsException e) {
+            sb.append("sioobe ").append(e.getMessage()).append(' ');
+        }
+        try {
+            sb.append("abc".compareTo(null));
+        } catch (NullPointerException e) {
+            sb.append("npe");
+        }
+        return sb.toString();
+    }
+
+    public static Object to_string() {
+        long sum = 0;
+        for (int i = -2000; i < 2000; i++) {
+            sum += Integer.toString(i * 7919).length() + Long.toString(i * 1000000007L).hashCode();
+        }
+        String a = Integer.toString(42);
+        String b = Integer.toString(42);
+        return sum + " " + (a == b) + " " + a.equals(b) + " " + Integer.toString(Integer.MIN_VALUE) + " " + Long.toString(Long.MIN_VALUE)
+                + " " + String.valueOf(-7) + " " + ("" + 123L);
+    }
+
+    public static Object bits() {
+        long sum = 0;
+        for (int i = -3000; i < 3000; i++) {
+            int x = i * 0x9E3779B9;
+            long y = x * 0x5DEECE66DL;
+            sum += Integer.numberOfLeadingZeros(x) + Integer.numberOfTrailingZeros(x) + Integer.bitCount(x) + Integer.reverseBytes(x)
+                    + Integer.rotateLeft(x, i) + Integer.rotateRight(x, 3)
+                    + Long.numberOfLeadingZeros(y) + Long.numberOfTrailingZeros(y) + Long.bitCount(y) + Long.reverseBytes(y)
+                    + Long.rotateLeft(y, i) + Long.rotateRight(y, 7);
+        }
+        return sum + " " + Integer.numberOfLeadingZeros(0) + " " + Long.numberOfTrailingZeros(0);
+    }
+
+    public static Object math() {
+        double d = 0;
+        long l = 0;
+        float f = 0;
+        for (int i = -3000; i < 3000; i++) {
+            l += Math.min(i, 7) + Math.max(i, -7) + Math.abs(i) + Math.min((long) i << 20, 5L) + Math.max((long) i, 3L) + Math.abs((long) i * 3);
+            f += Math.min(i * 0.5f, 1f) + Math.max(i * 0.25f, -1f) + Math.abs(i * 0.125f);
+            d += Math.sqrt(Math.abs(i)) + StrictMath.sqrt(i + 3000) + Math.min(i * 0.1, 2) + Math.max(i * 0.3, -2) + Math.abs(i * 0.7)
+                    + Math.floor(i / 7.0) + Math.ceil(i / 7.0) + StrictMath.floor(i / 3.0);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(d).append(' ').append(l).append(' ').append(f).append(' ');
+        sb.append(Math.min(0.0, -0.0)).append(Math.max(-0.0, 0.0)).append(Math.min(Double.NaN, 1)).append(Math.max(1f, Float.NaN)).append(' ');
+        sb.append(Math.abs(Integer.MIN_VALUE)).append(Math.abs(Long.MIN_VALUE)).append(Math.abs(-0.0)).append(Math.abs(-0.0f)).append(' ');
+        sb.append(Math.sqrt(-1)).append(Math.sqrt(2)).append(StrictMath.sqrt(Double.POSITIVE_INFINITY)).append(Math.floor(-0.5)).append(Math.ceil(-0.5));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package zvm.test;
+
+/**
+ * 调用次数超过 VM.jit_threshold 的方法会被编译成宿主字节码, 编译在后台线程, 结果必须与解释执行一致
+ * @author chuxiaofeng
+ */
+public class Test_Jit {
+    static int counter;
+    int i = 1;
+    long l = 2;
+    float f = 3;
+    double d = 4;
+    Object o;
+
+    static long mix(int a, long b, float c, double d) {
+        long r = a * 31 + b;
+        r ^= (long) (c * 1.5f) << 3;
+        r += (long) (d / 3) % 1000;
+        r += a >>> 3;
+        r -= b >> 2;
+        return r;
+    }
+
+    static int fields(Test_Jit t) {
+        t.i += 1;
+        t.l *= 3;
+        t.f -= 0.5f;
+        t.d = t.d * 0.5 + t.i;
+        t.o = t.i % 2 == 0 ? "even" : null;
+        counter += t.i;
+        return t.i + (t.o == null ? 0 : 1);
+    }
+
+    static double arrays(double[] ds, int[] is, Object[] os, int k) {
+        is[k % is.length] += k;
+        ds[k % ds.length] = ds[(k + 1) % ds.length] * 0.75 + is[k % is.length];
+        os[k % os.length] = os.length > 2 ? "x" + (k % 3) : null;
+        return ds[k % ds.length];
+    }
+
+    static String switches(int k) {
+        switch (k % 7) {
+            case 0: return "a";
+            case 1: return "b";
+            case 2: case 3: return "c";
+            default:
+                switch (k * 100) {
+                    case 300: return "x";
+                    case 100000: return "y";
+                    default: return k % 2 == 0 ? "e" : "o";
+                }
+        }
+    }
+
+    static int div(int a, int b) {
+        return a / b;
+    }
+
+    static int elem(int[] a, int idx) {
+        return a[idx];
+    }
+
+    static Object cast(Object o) {
+        return (String) o;
+    }
+
+    public static long calls() {
+        long r = 0;
+        for (int k = 0; k < 5000; k++) {
+            r = r * 7 + mix(k, r % 1000, k * 0.25f, k * 3.5) % 100003;
+        }
+        return r;
+    }
+
+    public static Object objects() {
+        Test_Jit t = new Test_Jit();
+        int r = 0;
+        for (int k = 0; k < 5000; k++) {
+            r += fields(t);
+        }
+        return new Object[] { r, counter, t.i, t.l, t.f, t.d, t.o };
+    }
+
+    public static double array_ops() {
+        double[] ds = new double[5];
+        int[] is = new int[3];
+        Object[] os = new String[4];
+        double r = 0;
+        for (int k = 0; k < 5000; k++) {
+            r += arrays(ds, is, os, k);
+        }
+        return r + is[1] + os[1].hashCode();
+    }
+
+    public static Object switch_ops() {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 5000; k++) {
+            String s = switches(k);
+            if (k % 250 == 0 || k == 3 || k == 1000) {
+                sb.append(s);
+            }
+        }
+        return sb.toString();
+    }
+
+    // 编译后的代码抛出的异常由解释执行的调用者捕获
+    public static int exceptions() {
+        int r = 0;
+        int[] arr = { 1, 2, 3 };
+        for (int k = 0; k < 5000; k++) {
+            try {
+                r += div(k, k % 100 - 50);
+            } catch (ArithmeticException e) {
+                r += 1000;
+            }
+            try {
+                r += elem(k % 500 == 0 ? null : arr, k % 4);
+            } catch (NullPointerException e) {
+                r += 10000;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                r += 3;
+            }
+            try {
+                cast(k % 1000 == 0 ? Integer.valueOf(k) : "s");
+            } catch (ClassCastException e) {
+                r += 100000;
+            }
+        }
+        return r;
+    }
+}
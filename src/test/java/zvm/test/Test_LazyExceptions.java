@@ -0,0 +1,126 @@
+package zvm.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 隐式异常 (npe、数组越界、除零、强转失败) 只在 handler 用到的时候才创建 guest 对象
+ * handler 用到的时候栈、消息都要与直接创建一样, 栈是抛出点的, 不是 catch 的位置
+ * @author chuxiaofeng
+ */
+public class Test_LazyExceptions {
+
+    static int at(int[] arr, int i) {
+        return arr[i];
+    }
+
+    static String top(Throwable t) {
+        StackTraceElement e = t.getStackTrace()[0];
+        return t.getClass().getSimpleName() + "@" + e.getMethodName() + ":" + e.getLineNumber();
+    }
+
+    // handler 不读异常对象
+    public static int probe_arrays() {
+        int[] arr = { 1, 2, 3, 4 };
+        int sum = 0;
+        for (int i = -5; i < 10; i++) {
+            try {
+                sum += at(arr, i);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                sum += 100;
+            }
+        }
+        return sum;
+    }
+
+    public static int probe_map() {
+        Map<String, Integer> map = new HashMap<>();
+        map.put("a", 1);
+        int sum = 0;
+        for (String k : new String[] { "a", "b", "a", "c" }) {
+            try {
+                sum += map.get(k);
+            } catch (NullPointerException e) {
+                sum -= 1;
+            }
+        }
+        return sum;
+    }
+
+    // handler 读异常对象, 栈顶是抛出点
+    public static Object used() {
+        StringBuilder sb = new StringBuilder();
+        int[] arr = new int[2];
+        try {
+            at(arr, 5);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            sb.append(top(e)).append(' ');
+        }
+        try {
+            at(null, 0);
+        } catch (NullPointerException e) {
+            sb.append(top(e)).append(' ').append(e.getMessage()).append(' ');
+        }
+        int zero = arr.length - 2;
+        try {
+            sb.append(10 / zero);
+        } catch (ArithmeticException e) {
+            sb.append(top(e)).append(' ').append(e.getMessage()).append(' ');
+        }
+        try {
+            sb.append(10L % zero);
+        } catch (ArithmeticException e) {
+            sb.append(e.getMessage()).append(' ');
+        }
+        Object o = Integer.valueOf(1);
+        try {
+            sb.append((String) o);
+        } catch (ClassCastException e) {
+            sb.append(top(e)).append(' ').append(e.getMessage()).append(' ');
+        }
+        Object arrays = new int[0][];
+        try {
+            sb.append(((Object[][]) arrays).length);
+        } catch (ClassCastException e) {
+            sb.append(e.getMessage());
+        }
+        return sb.toString();
+    }
+
+    // 局部变量先被覆盖再读, 只在一个分支上读
+    public static Object overwritten() {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 4; k++) {
+            try {
+                at(null, k);
+            } catch (NullPointerException e) {
+                if (k % 2 == 0) {
+                    e = new NullPointerException("k" + k);
+                }
+                sb.append(e.getMessage()).append(',');
+            }
+        }
+        return sb.toString();
+    }
+
+    static int rethrows(int[] arr, int i) {
+        try {
+            return arr[i];
+        } finally {
+            counter++;
+        }
+    }
+
+    static int counter;
+
+    // finally 重新抛出, 交给调用者
+    public static Object through_finally() {
+        counter = 0;
+        try {
+            rethrows(new int[1], 3);
+            return "no";
+        } catch (RuntimeException e) {
+            return top(e) + " " + counter;
+        }
+    }
+}
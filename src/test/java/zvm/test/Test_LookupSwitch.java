@@ -0,0 +1,119 @@
+package zvm.test;
+
+/**
+ * lookupswitch 第一次执行时换成二分或者完美哈希, 见 LookupSwitch
+ * case 少的走二分, 多的 (字符串 switch) 走哈希; 带 try/catch 的方法走栈式解释器, 不带的走寄存器解释器, 热了编译
+ * @author chuxiaofeng
+ */
+public class Test_LookupSwitch {
+
+    static int small(int k) {
+        switch (k) {
+            case -1000: return 1;
+            case 7: return 2;
+            case 300: return 3;
+            case 100000: return 4;
+            default: return 0;
+        }
+    }
+
+    static int large(int k) {
+        switch (k) {
+            case Integer.MIN_VALUE: return 1;
+            case -65536: return 2;
+            case -100: return 3;
+            case 0: return 4;
+            case 1: return 5;
+            case 17: return 6;
+            case 1000: return 7;
+            case 4096: return 8;
+            case 65536: return 9;
+            case 123456: return 10;
+            case 1 << 20: return 11;
+            case 99999999: return 12;
+            case Integer.MAX_VALUE: return 13;
+            default: return -1;
+        }
+    }
+
+    static int command(String s) {
+        switch (s) {
+            case "GET": return 1;
+            case "PUT": return 2;
+            case "POST": return 3;
+            case "DELETE": return 4;
+            case "HEAD": return 5;
+            case "OPTIONS": return 6;
+            case "PATCH": return 7;
+            case "TRACE": return 8;
+            case "CONNECT": return 9;
+            case "LOGIN": return 10;
+            case "LOGOUT": return 11;
+            case "PING": return 12;
+            case "PONG": return 13;
+            case "SUBSCRIBE": return 14;
+            case "UNSUBSCRIBE": return 15;
+            case "PUBLISH": return 16;
+            // 与 "Aa" hashCode 相同
+            case "BB": return 17;
+            default: return 0;
+        }
+    }
+
+    static final int[] PROBES = {
+            Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -65536, -1000, -100, -99, -1, 0, 1, 2, 7, 17, 300, 1000,
+            4096, 65536, 65537, 100000, 123456, 1 << 20, 99999999, Integer.MAX_VALUE - 1, Integer.MAX_VALUE
+    };
+    static final String[] WORDS = {
+            "GET", "PUT", "POST", "DELETE", "HEAD", "OPTIONS", "PATCH", "TRACE", "CONNECT", "LOGIN", "LOGOUT",
+            "PING", "PONG", "SUBSCRIBE", "UNSUBSCRIBE", "PUBLISH", "BB", "Aa", "get", "", "GETX"
+    };
+
+    // 热循环, 寄存器解释器与编译之后的代码
+    public static long hot() {
+        long r = 0;
+        for (int i = 0; i < 3000; i++) {
+            for (int p : PROBES) {
+                r = r * 31 + small(p) + large(p) * 7;
+            }
+            for (String w : WORDS) {
+                r = r * 17 + command(w);
+            }
+        }
+        return r;
+    }
+
+    // 带 try/catch, 栈式解释器
+    public static Object stack() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (int p : PROBES) {
+                switch (p) {
+                    case -1000: sb.append('a'); break;
+                    case 7: sb.append('b'); break;
+                    case 300: sb.append('c'); break;
+                    default: sb.append('.'); break;
+                }
+                switch (p) {
+                    case Integer.MIN_VALUE: sb.append(1); break;
+                    case -65536: sb.append(2); break;
+                    case -100: sb.append(3); break;
+                    case 0: sb.append(4); break;
+                    case 1: sb.append(5); break;
+                    case 17: sb.append(6); break;
+                    case 1000: sb.append(7); break;
+                    case 4096: sb.append(8); break;
+                    case 65536: sb.append(9); break;
+                    case Integer.MAX_VALUE: sb.append('M'); break;
+                    default: sb.append('-'); break;
+                }
+            }
+            for (String w : WORDS) {
+                sb.append(command(w)).append(',');
+            }
+        } catch (RuntimeException e) {
+            sb.append(e);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package zvm.test;
+
+/**
+ * 只调用一次、循环很长的方法, 回边次数超过 VM.osr_threshold 之后从循环头转到编译好的代码
+ * 循环头活跃的 int long double 引用都要带过去
+ * @author chuxiaofeng
+ */
+public class Test_Osr {
+    int hits;
+
+    public static long long_loop() {
+        long r = 1;
+        double d = 0.5;
+        int[] arr = new int[16];
+        Test_Osr t = new Test_Osr();
+        for (int i = 0; i < 200000; i++) {
+            r = r * 31 + (i ^ (r >>> 7));
+            d = d * 0.999 + (i & 7);
+            arr[i & 15] += i;
+            if ((i & 1023) == 0) {
+                t.hits++;
+            }
+        }
+        return r + (long) d + arr[3] + t.hits;
+    }
+
+    // 内层循环先热, OSR 入口在内层循环头, 外层的变量也活跃
+    public static Object nested() {
+        StringBuilder sb = new StringBuilder();
+        long sum = 0;
+        float f = 1;
+        for (int i = 0; i < 30; i++) {
+            for (int j = 0; j < 3000; j++) {
+                sum += (long) i * j + (j % 7);
+                f = f * 1.0001f;
+            }
+            if (i % 10 == 0) {
+                sb.append(sum).append(',');
+            }
+        }
+        return sb.append(f).toString();
+    }
+
+    static int sum(int[] a) {
+        int r = 0;
+        for (int x : a) {
+            r += x;
+        }
+        return r;
+    }
+
+    // OSR 之后的代码里继续调用方法、抛异常给调用者
+    public static int calls_after_osr() {
+        int[] a = { 1, 2, 3, 4 };
+        int r = 0;
+        for (int i = 0; i < 100000; i++) {
+            r += sum(a) + i % 3;
+        }
+        int k = 0;
+        while (true) {
+            k++;
+            if (k > 60000) {
+                return r + k / (k - 60001 + 1 - 1 + 1) + k;
+            }
+        }
+    }
+}
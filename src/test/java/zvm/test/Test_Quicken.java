@@ -0,0 +1,104 @@
+package zvm.test;
+
+/**
+ * 指令 quicken 之后第二次执行走的是另一条路径, 所以都要在循环里多跑几遍
+ * @author chuxiaofeng
+ */
+public class Test_Quicken {
+    static class Point {
+        int x;
+        long y;
+        double z;
+        Object tag;
+
+        Point(int x, long y, double z, Object tag) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.tag = tag;
+        }
+
+        private int sum() {
+            return x + (int) y + (int) z;
+        }
+    }
+
+    // <clinit> 执行过程中 new 自己、读写自己的静态字段
+    static class Self {
+        static final StringBuilder log = new StringBuilder();
+        static int count;
+        static final Self first = new Self();
+        static final Self second = new Self();
+
+        final int id;
+
+        Self() {
+            id = count++;
+            log.append(id);
+        }
+
+        static int next() {
+            return count++;
+        }
+    }
+
+    public static Object fields() {
+        long r = 0;
+        for (int i = 0; i < 10; i++) {
+            Point p = new Point(i, i * 2L, i / 2.0, i % 2 == 0 ? "even" : null);
+            p.x += p.sum();
+            p.y <<= 1;
+            p.z *= 1.5;
+            r += p.x + p.y + (long) p.z + (p.tag == null ? 0 : 1);
+        }
+        return r;
+    }
+
+    public static Object constants() {
+        Object[] r = new Object[12];
+        for (int i = 0; i < 3; i++) {
+            r[i * 4] = 123456789 + i;
+            r[i * 4 + 1] = 3.25f * i;
+            r[i * 4 + 2] = "literal";
+            r[i * 4 + 3] = String.class;
+        }
+        // 字面量 quicken 之后还是同一个 intern 的字符串
+        String s = null;
+        boolean same = true;
+        for (int i = 0; i < 3; i++) {
+            String t = "same";
+            same &= s == null || s == t;
+            s = t;
+        }
+        return new Object[] { r, same };
+    }
+
+    public static Object types() {
+        Object[] objs = { "s", 1, null, new int[0], new Object[0][] };
+        int r = 0;
+        for (int i = 0; i < 3; i++) {
+            for (Object o : objs) {
+                r = r * 3 + (o instanceof String ? 1 : 0) + (o instanceof Number ? 2 : 0);
+                try {
+                    CharSequence cs = (CharSequence) o;
+                    r += cs == null ? 5 : cs.length();
+                } catch (ClassCastException e) {
+                    r++;
+                }
+            }
+            String[] a = new String[i];
+            int[][][] m = new int[i + 1][2][];
+            r += a.length + m.length + m[0].length;
+        }
+        return r;
+    }
+
+    public static Object class_init() {
+        int[] r = new int[6];
+        for (int i = 0; i < 3; i++) {
+            r[i * 2] = Self.next();
+            r[i * 2 + 1] = new Self().id;
+        }
+        return new Object[] { r, Self.log.toString(), Self.first.id, Self.second.id };
+    }
+}
@@ -0,0 +1,84 @@
+package zvm.test;
+
+/**
+ * 递归调用, 栈帧会跨过 ZThread slot arena 的 chunk 边界
+ * @author chuxiaofeng
+ */
+public class Test_Recursion {
+    static long sum(long n, double d, int depth) {
+        if (depth == 0) {
+            return n;
+        }
+        // 多占几个 slot, 递归不用太深就能跨过 chunk
+        long a = n + depth;
+        double b = d * 0.5;
+        long c1 = a ^ depth, c2 = a | depth, c3 = a & depth, c4 = a * 3;
+        double e1 = b + 1, e2 = b - 1;
+        return sum(a, b, depth - 1) + (long) b + ((c1 + c2 + c3 + c4 + (long) (e1 + e2)) & 1);
+    }
+
+    static Object ref(Object o, int depth) {
+        if (depth == 0) {
+            return o;
+        }
+        long l1 = depth, l2 = depth * 2L, l3 = depth * 3L, l4 = depth * 4L, l5 = depth * 5L, l6 = depth * 6L;
+        Object[] box = { o, l1 + l2 + l3 + l4 + l5 + l6 };
+        return ((Object[]) ref(box, depth - 1))[0];
+    }
+
+    static int throw_at(int depth) {
+        if (depth == 0) {
+            throw new IllegalStateException("bottom");
+        }
+        int r = depth;
+        long l1 = depth, l2 = depth * 2L, l3 = depth * 3L, l4 = depth * 4L, l5 = depth * 5L, l6 = depth * 6L;
+        r += (int) ((l1 + l2 + l3 + l4 + l5 + l6) & 1);
+        try {
+            r += throw_at(depth - 1);
+        } finally {
+            r--;
+        }
+        return r;
+    }
+
+    public static long deep_long() {
+        return sum(1, 1024.0, 1200);
+    }
+
+    public static Object deep_ref() {
+        Object r = null;
+        // 反复进出 chunk
+        for (int i = 0; i < 20; i++) {
+            r = ref("r" + i, 1200 + i);
+        }
+        return r;
+    }
+
+    public static Object deep_throw() {
+        try {
+            return throw_at(1200);
+        } catch (IllegalStateException e) {
+            return e.getMessage();
+        }
+    }
+
+    static int fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+
+    public static int fib() {
+        return fib(22);
+    }
+
+    static double mixed(int i, long l, float f, double d, Object o, boolean z, char c) {
+        return i + l + f + d + (o == null ? 0 : 1) + (z ? 1 : 0) + c;
+    }
+
+    public static double mixed_args() {
+        double r = 0;
+        for (int i = 0; i < 100; i++) {
+            r += mixed(i, i * 3L, i / 2f, i / 3.0, i % 2 == 0 ? null : "x", i % 3 == 0, (char) ('a' + i % 26));
+        }
+        return r;
+    }
+}
@@ -0,0 +1,181 @@
+package zvm.test;
+
+/**
+ * 没有异常表的方法走寄存器 IR, 这里的方法大都不带 try, 覆盖 dup/swap 系列的翻译、常量与复制传播、判空消除
+ * @author chuxiaofeng
+ */
+public class Test_RegisterIR {
+    int i = 1;
+    long l = 2;
+    double d = 3;
+    Test_RegisterIR next;
+
+    // dup_x1 dup2_x1 dup2_x2
+    public static Object dups() {
+        long[] ls = { 1, 2, 3 };
+        double[] ds = { 0.5, 1.5 };
+        int[] is = { 10, 20 };
+        long r = 0;
+        for (int k = 0; k < 3; k++) {
+            r += ls[k] += 7;
+            r += ls[k]++;
+            r += is[k % 2] *= 3;
+            r += (long) (ds[k % 2] -= 0.25);
+        }
+        Test_RegisterIR t = new Test_RegisterIR();
+        r += t.i += 5;
+        r += t.l += 6;
+        r += (long) (t.d *= 2);
+        r += t.l++;
+        return new Object[] { r, ls, ds, is, t.i, t.l, t.d };
+    }
+
+    // 常量折叠、常量条件跳转
+    public static int constants() {
+        int a = 3;
+        int b = a * 4 + 2;
+        int c = b - 20;
+        if (c < 0) {
+            c = -c;
+        }
+        int r = 0;
+        for (int k = 0; k < 10; k++) {
+            r += k + 1000;
+            r -= 7;
+            r ^= b << 2;
+        }
+        byte by = (byte) (b * 100);
+        char ch = (char) (c - 10);
+        short sh = (short) (a << 20);
+        return r + c + by + ch + sh + (b / a) + (b % a);
+    }
+
+    // 复制传播跨过分支、变量被重新赋值之后原来的拷贝要失效
+    public static int copies() {
+        int x = 1;
+        int y = x;
+        int r = 0;
+        for (int k = 0; k < 5; k++) {
+            int z = y;
+            y = x + k;
+            x = z;
+            r = r * 7 + x - y + z;
+            if ((k & 1) == 0) {
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return r;
+    }
+
+    static long wide(long a, double b, int c, long d) {
+        return a * 3 + (long) b - c + d;
+    }
+
+    // 参数里混着 long double, 参数区在被调用者的 frame 里
+    public static long invokes() {
+        long r = 0;
+        for (int k = 0; k < 4; k++) {
+            r = wide(r, k * 1.5, k, wide(k, r, 1, 2)) % 1000003;
+        }
+        return r;
+    }
+
+    public static Object switches() {
+        StringBuilder sb = new StringBuilder();
+        for (int k = -2; k < 12; k++) {
+            switch (k) {
+                case 0: sb.append('a'); break;
+                case 1: sb.append('b');
+                case 2: sb.append('c'); break;
+                case 3: sb.append('d'); break;
+                default: sb.append('-');
+            }
+            switch (k * 1000) {
+                case -2000: sb.append('x'); break;
+                case 5000: sb.append('y'); break;
+                case 11000: sb.append('z'); break;
+                default: break;
+            }
+        }
+        return sb.toString();
+    }
+
+    public static Object arithmetic() {
+        long l = Long.MAX_VALUE;
+        double d = 1e300;
+        float f = 3.5f;
+        int i = Integer.MIN_VALUE;
+        Object[] r = {
+                l + 1, l * 3, l >>> 7, l >> 63, l << 65, -l, l / -7, l % 13, l ^ 0x5555L,
+                d * d, -d, d / 0, d % 7, (int) d, (long) -d, (float) d, Double.NaN < 1, Double.NaN > 1,
+                f / 0.0f, f % 1.25f, (long) f, (double) f, -f, f > Float.NaN,
+                i - 1, -i, i / -1, i >> 33, i >>> 31, (short) i, (char) (i + 65), (byte) 300, (long) i << 4,
+                (float) i, (double) l, (float) l, 0.0 == -0.0, Long.compare(l, -l)
+        };
+        return r;
+    }
+
+    // 引用比较 instanceof checkcast 数组
+    public static Object refs() {
+        Object[] objs = { "a", null, new int[1], new Test_RegisterIR(), "a" };
+        int r = 0;
+        for (int k = 0; k < objs.length; k++) {
+            Object o = objs[k];
+            r = r * 5 + (o == objs[0] ? 1 : 0) + (o != null ? 2 : 0) + (o instanceof int[] ? 3 : 0);
+            if (o instanceof Test_RegisterIR) {
+                Test_RegisterIR t = (Test_RegisterIR) o;
+                t.next = t;
+                r += t.next.next.i;
+            }
+        }
+        String[][] ss = new String[2][];
+        ss[1] = new String[] { "x", "y" };
+        return r + ss[1][1] + ss.length + ss[1].length;
+    }
+
+    static int field_of(Test_RegisterIR t) {
+        return t.i + t.i;
+    }
+
+    static int elem_of(int[] a, int idx) {
+        return a[idx] + a[idx];
+    }
+
+    static int div(int a, int b) {
+        return a / b;
+    }
+
+    static Object store(Object[] a, Object o) {
+        a[0] = o;
+        return a[0];
+    }
+
+    // 被调用者没有异常表走寄存器 IR, 异常抛给有异常表的调用者
+    public static int exceptions() {
+        int r = 0;
+        Object[] slots = new Object[1];
+        for (int k = 0; k < 4; k++) {
+            try {
+                r += field_of(k == 1 ? null : new Test_RegisterIR());
+            } catch (NullPointerException e) {
+                r += 10;
+            }
+            try {
+                r += elem_of(k == 2 ? null : new int[] { 1, 2 }, k);
+            } catch (NullPointerException e) {
+                r += 100;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                r += 1000;
+            }
+            try {
+                r += div(10, k - 3);
+            } catch (ArithmeticException e) {
+                r += 10000;
+            }
+            r += store(slots, k == 0 ? null : "s") == null ? 100000 : 1;
+        }
+        return r;
+    }
+}
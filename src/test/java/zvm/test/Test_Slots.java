@@ -0,0 +1,101 @@
+package zvm.test;
+
+/**
+ * 局部变量表与操作数栈不装箱之后, 按 slot 类型容易写错的指令
+ * @author chuxiaofeng
+ */
+public class Test_Slots {
+    public static Object float_compare() {
+        float[] fs = { -0.0f, 0.0f, Float.NaN, 1.5f, -1.5f, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY };
+        int[] r = new int[fs.length * fs.length * 2];
+        int n = 0;
+        for (float a : fs) {
+            for (float b : fs) {
+                r[n++] = a < b ? 1 : 0;  // fcmpg
+                r[n++] = a > b ? 1 : 0;  // fcmpl
+            }
+        }
+        return r;
+    }
+
+    public static Object double_compare() {
+        double[] ds = { -0.0, 0.0, Double.NaN, 1.5, -1.5, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        int[] r = new int[ds.length * ds.length * 3];
+        int n = 0;
+        for (double a : ds) {
+            for (double b : ds) {
+                r[n++] = a < b ? 1 : 0;  // dcmpg
+                r[n++] = a > b ? 1 : 0;  // dcmpl
+                r[n++] = a == b ? 1 : 0;
+            }
+        }
+        return r;
+    }
+
+    public static Object nan_bits() {
+        float f = Float.intBitsToFloat(0x7fc00001);
+        double d = Double.longBitsToDouble(0x7ff8000000000001L);
+        float[] fa = { f };
+        double[] da = { d };
+        return new long[] {
+                Float.floatToRawIntBits(fa[0]),
+                Double.doubleToRawLongBits(da[0]),
+                Float.floatToRawIntBits(-0.0f),
+                Double.doubleToRawLongBits(-0.0)
+        };
+    }
+
+    public static Object conversions() {
+        long l = Long.MIN_VALUE + 7;
+        double d = -1e300;
+        float f = 3.9e10f;
+        int i = -123456789;
+        return new Object[] {
+                (int) l, (float) l, (double) l,
+                (int) d, (long) d, (float) d,
+                (int) f, (long) f, (double) f,
+                (long) i, (float) i, (double) i,
+                (byte) i, (char) i, (short) i,
+                (int) Double.NaN, (long) Float.NaN
+        };
+    }
+
+    public static Object long_shifts() {
+        long l = 0x8000_0000_0000_0001L;
+        return new long[] { l << 63, l >> 65, l >>> 1, l >>> 64, -1L >>> 33 };
+    }
+
+    public static Object bool_array() {
+        boolean[] bs = new boolean[4];
+        bs[0] = true;
+        bs[2] = bs[0] & !bs[1];
+        byte[] bytes = { (byte) 0xff, 127 };
+        return new Object[] { bs, bytes[0], (int) bytes[0] + bytes[1] };
+    }
+
+    public static long dup2_long() {
+        long[] ls = { 1L, 2L };
+        long l = 10;
+        // lastore + dup2_x2
+        long r = ls[1] = l += 5;
+        // dup2_x1
+        long[] a = { 0L };
+        int i = 0;
+        long x = a[i] = r * 3;
+        return r + x + ls[1] + a[0];
+    }
+
+    public static double double_locals() {
+        double a = 1.0;
+        long b = 2L;
+        double c = 3.0;
+        long d = 4L;
+        for (int i = 0; i < 10; i++) {
+            a += b * c - d / 2.0;
+            b ^= (long) a;
+            c = -c;
+            d <<= 1;
+        }
+        return a + b + c + d;
+    }
+}
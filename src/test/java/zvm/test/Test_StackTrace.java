@@ -0,0 +1,105 @@
+package zvm.test;
+
+/**
+ * 抓栈只记 (method, ip), getStackTrace 的时候才换算行号、创建 StackTraceElement
+ * 只比较本类的栈帧, 再往下是测试框架, 宿主与 zvm 不一样
+ * @author chuxiaofeng
+ */
+public class Test_StackTrace {
+
+    static class MyException extends RuntimeException {
+        MyException(String msg) {
+            super(msg);
+        }
+        MyException() {
+            this("my");
+        }
+    }
+
+    static class Stackless extends RuntimeException {
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    static String frames(Throwable t) {
+        StringBuilder sb = new StringBuilder();
+        for (StackTraceElement e : t.getStackTrace()) {
+            if (!e.getClassName().startsWith(Test_StackTrace.class.getName())) {
+                break;
+            }
+            sb.append(e.getClassName()).append('.').append(e.getMethodName())
+                    .append(':').append(e.getLineNumber())
+                    .append(' ').append(e.getFileName()).append(';');
+        }
+        return sb.toString();
+    }
+
+    void a(int k) {
+        b(k);
+    }
+    void b(int k) {
+        if (k == 0) {
+            throw new IllegalStateException();
+        }
+        c(k);
+    }
+    void c(int k) {
+        if (k == 1) {
+            int[] arr = new int[1];
+            arr[k]++;
+        }
+        // 构造方法里的栈帧不算
+        throw new MyException();
+    }
+
+    public static Object nested_calls() {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 3; k++) {
+            try {
+                new Test_StackTrace().a(k);
+            } catch (RuntimeException e) {
+                sb.append(frames(e)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    // 不抛出来也一样, 栈在 new 的时候抓
+    public static Object not_thrown() {
+        Throwable t = new Throwable();
+        return frames(t);
+    }
+
+    // 多次取栈结果相同, 只看深度
+    public static Object repeated() {
+        Exception e = new MyException("x");
+        StackTraceElement[] s1 = e.getStackTrace();
+        StackTraceElement[] s2 = e.getStackTrace();
+        return s1[0].equals(s2[0]) + " " + frames(e);
+    }
+
+    public static Object stackless() {
+        return new Stackless().getStackTrace().length;
+    }
+
+    // 重新 fillInStackTrace 之后栈是新的位置
+    public static Object refill() {
+        Exception e = new RuntimeException();
+        String before = frames(e);
+        refill0(e);
+        return before + " | " + frames(e);
+    }
+
+    static void refill0(Exception e) {
+        e.fillInStackTrace();
+    }
+
+    public static Object set_stack_trace() {
+        Exception e = new RuntimeException();
+        e.setStackTrace(new StackTraceElement[] { new StackTraceElement("A", "b", "C.java", 42) });
+        StackTraceElement s = e.getStackTrace()[0];
+        return s + " " + e.getStackTrace().length;
+    }
+}
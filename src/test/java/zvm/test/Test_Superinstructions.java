@@ -0,0 +1,124 @@
+package zvm.test;
+
+/**
+ * 超级指令覆盖到的序列, 以及序列中间抛异常、跳转到序列中间的情况
+ * @author chuxiaofeng
+ */
+public class Test_Superinstructions {
+    int x = 7;
+    Holder holder;
+
+    static class Holder {
+        long l = 3;
+        double d = 0.5;
+        Object o = "o";
+    }
+
+    public static int loops() {
+        int[] a = new int[64];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i * i;
+        }
+        int r = 0;
+        for (int i = 0, j = 63; i < j; i++, j--) {
+            int k = i + 1;
+            int m = j + 100;
+            int n = k + -30000;
+            r += a[i] - a[j] + k + m + n;
+        }
+        int i = 0;
+        while (i <= 10) {
+            i++;
+        }
+        int j = 10;
+        do {
+            j -= 3;
+        } while (j > i);
+        return r + i + j;
+    }
+
+    public static double arrays() {
+        double[] ds = { 1.5, 2.5, -3.25 };
+        Object[] os = { "a", null, 1 };
+        double r = 0;
+        for (int i = 0; i < ds.length; i++) {
+            r += ds[i] * i;
+            r += os[i] == null ? 100 : os[i].hashCode();
+        }
+        return r;
+    }
+
+    public Object fields() {
+        holder = new Holder();
+        long r = 0;
+        for (int i = 0; i < 5; i++) {
+            r += x + holder.l;
+            holder.d *= holder.l;
+            x++;
+        }
+        return r + ":" + holder.d + ":" + holder.o;
+    }
+
+    public static Object fields_instance() {
+        return new Test_Superinstructions().fields();
+    }
+
+    static int get_x(Test_Superinstructions t) {
+        return t.x;
+    }
+
+    static int at(int[] a, int i) {
+        return a[i];
+    }
+
+    // 融合序列中间的指令抛异常
+    public static Object throw_inside() {
+        int[] a = { 1, 2, 3 };
+        int r = 0;
+        for (int i = 0; i < 5; i++) {
+            try {
+                r += at(i % 2 == 0 ? a : null, i);
+            } catch (NullPointerException e) {
+                r += 10;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                r += 100;
+            }
+            try {
+                r += get_x(i == 2 ? null : new Test_Superinstructions());
+            } catch (NullPointerException e) {
+                r += 1000;
+            }
+        }
+        return r;
+    }
+
+    // try 块边界、异常处理器入口正好落在可融合的序列中间
+    public static int try_boundary() {
+        int[] a = { 5, 6 };
+        int i = 0;
+        int r = 0;
+        for (int n = 0; n < 4; n++) {
+            try {
+                r += a[i];
+                i = i + 1;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                i = 0;
+                r = r + 1;
+            }
+        }
+        return r * 10 + i;
+    }
+
+    static int ternary(int a, int b) {
+        int c = a < b ? a : b;
+        return c + (a == b ? 1 : 0);
+    }
+
+    public static int ternaries() {
+        int r = 0;
+        for (int i = -3; i < 3; i++) {
+            r = r * 3 + ternary(i, -i) + ternary(i, i);
+        }
+        return r;
+    }
+}
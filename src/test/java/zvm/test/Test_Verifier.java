@@ -0,0 +1,108 @@
+package zvm.test;
+
+/**
+ * VM.verify: 校验通过的方法里, 能证明不会失败的 aastore 不做 store check, checkcast 直接跳过, 见 Verifier
+ * 证明不了的 (协变数组, 非 final 元素类型) 照旧检查, checkcast 照旧抛 ClassCastException
+ * @author chuxiaofeng
+ */
+public class Test_Verifier {
+
+    static String join(Object... args) {
+        StringBuilder sb = new StringBuilder();
+        for (Object arg : args) {
+            sb.append(arg).append(',');
+        }
+        return sb.toString();
+    }
+
+    // varargs: new Object[] 之后存, 数组类型确定
+    public static Object varargs() {
+        String r = "";
+        for (int i = 0; i < 3; i++) {
+            r += join(i, "s" + i, null, 'c', 1.5);
+        }
+        return r;
+    }
+
+    // String 是 final, 任何 String[] 存 String 都不会失败
+    static void fill(String[] arr, String s) {
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = s + i;
+        }
+    }
+
+    public static Object final_component() {
+        String[] arr = new String[4];
+        long sum = 0;
+        for (int k = 0; k < 3000; k++) {
+            fill(arr, "x");
+            sum += arr[k % 4].length();
+        }
+        return sum + arr[3];
+    }
+
+    // 多余的 checkcast
+    static int redundant(Object o) {
+        String s = (String) o;
+        CharSequence cs = (CharSequence) s;
+        Object back = (Object) cs;
+        return ((String) back).length() + cs.length();
+    }
+
+    public static Object redundant_casts() {
+        int sum = 0;
+        for (int k = 0; k < 3000; k++) {
+            sum += redundant("abc" + (k % 10));
+        }
+        return sum;
+    }
+
+    static void store(Object[] arr, int idx, Object v) {
+        arr[idx] = v;
+    }
+
+    // 协变数组证明不了, 照旧检查
+    public static Object covariant() {
+        StringBuilder sb = new StringBuilder();
+        Object[] arr = new Integer[2];
+        for (int k = 0; k < 3000; k++) {
+            store(arr, k % 2, k);
+        }
+        arr[0] = -1;
+        sb.append(arr[0]).append(' ');
+        try {
+            Object o = arr;
+            String[] ss = (String[]) o;
+            sb.append(ss.length);
+        } catch (ClassCastException e) {
+            sb.append("cast");
+        }
+        return sb.toString() + arr[1];
+    }
+
+    // 分支合并之后的类型, 带 try/catch 走栈式解释器
+    public static Object merge() {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < 4; k++) {
+            Object[] arr;
+            Number n;
+            if (k % 2 == 0) {
+                arr = new Number[1];
+                n = k;
+            } else {
+                arr = new Long[1];
+                n = (long) k;
+            }
+            try {
+                arr[0] = n;
+                sb.append(arr[0]).append(' ');
+                Object o = k == 1 ? null : n;
+                sb.append((Number) o).append(' ');
+                sb.append((Integer) o).append(' ');
+            } catch (ClassCastException e) {
+                sb.append("cce ");
+            }
+        }
+        return sb.toString();
+    }
+}
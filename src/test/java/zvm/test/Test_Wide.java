@@ -0,0 +1,69 @@
+package zvm.test;
+
+/**
+ * wide / sipush / 大跨度 switch 等预解码时需要归一化的指令
+ * @author chuxiaofeng
+ */
+public class Test_Wide {
+    public static int wide_iinc() {
+        int r = 0;
+        for (int i = 0; i < 100_000; i += 1000) {
+            r -= 300;
+            r += i;
+        }
+        return r;
+    }
+
+    public static Object sipush() {
+        return new int[] { 128, -129, 32767, -32768, 65535, -65536 };
+    }
+
+    public static Object sparse_lookup_switch() {
+        int[] keys = { Integer.MIN_VALUE, -100_000, -1, 0, 1, 100_000, Integer.MAX_VALUE, 42 };
+        Object[] r = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            switch (keys[i]) {
+                case Integer.MIN_VALUE: r[i] = "min"; break;
+                case -100_000: r[i] = "-100000"; break;
+                case 0: r[i] = "zero"; break;
+                case 100_000: r[i] = "100000"; break;
+                case Integer.MAX_VALUE: r[i] = "max"; break;
+                default: r[i] = keys[i];
+            }
+        }
+        return r;
+    }
+
+    public static Object negative_table_switch() {
+        Object[] r = new Object[8];
+        for (int i = -4; i < 4; i++) {
+            switch (i) {
+                case -3: r[i + 4] = "-3"; break;
+                case -2: r[i + 4] = "-2"; break;
+                case -1: r[i + 4] = "-1"; break;
+                case 0: r[i + 4] = "0"; break;
+                case 1: r[i + 4] = "1"; break;
+                case 2: r[i + 4] = "2"; break;
+                default: r[i + 4] = i;
+            }
+        }
+        return r;
+    }
+
+    public static int nested_loops() {
+        int r = 0;
+        outer:
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 50; j++) {
+                if (j > i) {
+                    continue outer;
+                }
+                if (i * j > 1000) {
+                    break outer;
+                }
+                r += i ^ j;
+            }
+        }
+        return r;
+    }
+}